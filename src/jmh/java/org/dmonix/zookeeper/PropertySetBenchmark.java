@@ -0,0 +1,105 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javascalautils.Option;
+
+/**
+ * Micro benchmarks of the {@link PropertySet} accessors. <br>
+ * Run with <tt>mvn -P jmh test-compile exec:exec -Djmh.args="PropertySetBenchmark -prof gc"</tt>
+ * 
+ * @author Peter Nerg
+ * @since 1.4
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PropertySetBenchmark {
+
+	/** The number of properties in the property set. */
+	@Param({ "1", "100", "10000" })
+	private int size;
+
+	/** The size (characters) of each property value. */
+	@Param({ "16", "1024" })
+	private int valueSize;
+
+	private PropertySet propertySet;
+	private String key;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		propertySet = StorageBenchmark.propertySet("benchmark-set", size, valueSize);
+		key = "property-" + (size / 2);
+		propertySet.set("number", "4711");
+	}
+
+	@Benchmark
+	public Option<String> property() {
+		return propertySet.property(key);
+	}
+
+	@Benchmark
+	public String propertyOrDefault() {
+		return propertySet.propertyOrDefault(key, null);
+	}
+
+	@Benchmark
+	public int intProperty() {
+		return propertySet.intProperty("number", 0);
+	}
+
+	@Benchmark
+	public Set<String> properties() {
+		return propertySet.properties();
+	}
+
+	@Benchmark
+	public void forEach(Blackhole blackhole) {
+		propertySet.forEach((name, value) -> blackhole.consume(value));
+	}
+
+	@Benchmark
+	public Map<String, String> asMap() {
+		return propertySet.asMap();
+	}
+
+	@Benchmark
+	public String toString_t() {
+		return propertySet.toString();
+	}
+}
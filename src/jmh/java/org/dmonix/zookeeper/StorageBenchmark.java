@@ -0,0 +1,133 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javascalautils.Option;
+import javascalautils.Try;
+import javascalautils.Unit;
+import zookeeperjunit.ZKFactory;
+import zookeeperjunit.ZKInstance;
+
+/**
+ * Benchmarks the operations of the {@link PropertiesStorage} against an embedded ZooKeeper server. <br>
+ * Run with <tt>mvn -P jmh test-compile exec:exec -Djmh.args="StorageBenchmark -prof gc"</tt>
+ * 
+ * @author Peter Nerg
+ * @since 1.4
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class StorageBenchmark {
+	private static final Duration Timeout = Duration.ofSeconds(30);
+	private static final String RootPath = "/benchmark";
+	private static final String SetName = "benchmark-set";
+	private static final String DeleteSetName = "delete-set";
+
+	/** The number of properties in the property set. */
+	@Param({ "1", "100", "10000" })
+	private int size;
+
+	/** The size (characters) of each property value. */
+	@Param({ "16", "1024" })
+	private int valueSize;
+
+	private ZKInstance instance;
+	private PropertiesStorage storage;
+	private PropertySet propertySet;
+
+	@Setup(Level.Trial)
+	public void setup() throws Throwable {
+		instance = ZKFactory.apply().create();
+		instance.start().result(Timeout);
+		storage = PropertiesStorageFactory.apply(instance.connectString().get()).withRootPath(RootPath).create().get();
+		propertySet = propertySet(SetName, size, valueSize);
+		storage.store(propertySet).get();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Throwable {
+		storage.close();
+		instance.destroy().result(Timeout);
+	}
+
+	@Benchmark
+	public Try<Option<PropertySet>> get() {
+		return storage.get(SetName);
+	}
+
+	@Benchmark
+	public Try<Unit> store() {
+		return storage.store(propertySet);
+	}
+
+	@Benchmark
+	public Try<Unit> delete(DeleteState state) {
+		return storage.delete(DeleteSetName);
+	}
+
+	@Benchmark
+	public Try<List<String>> propertySets() {
+		return storage.propertySets();
+	}
+
+	/**
+	 * Creates a property set with the provided number of properties.
+	 */
+	static PropertySet propertySet(String name, int size, int valueSize) {
+		StringBuilder value = new StringBuilder(valueSize);
+		for (int i = 0; i < valueSize; i++) {
+			value.append((char) ('a' + i % 26));
+		}
+		PropertySet propertySet = PropertySet.apply(name);
+		for (int i = 0; i < size; i++) {
+			propertySet.set("property-" + i, value.toString());
+		}
+		return propertySet;
+	}
+
+	/**
+	 * Stores the property set to be deleted before each invocation of the delete benchmark.
+	 */
+	@State(Scope.Thread)
+	public static class DeleteState {
+		@Setup(Level.Invocation)
+		public void setup(StorageBenchmark benchmark) throws Throwable {
+			benchmark.storage.store(propertySet(DeleteSetName, benchmark.size, benchmark.valueSize)).get();
+		}
+	}
+}
@@ -0,0 +1,87 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import java.util.List;
+
+import javascalautils.None;
+import javascalautils.Option;
+import javascalautils.Some;
+import javascalautils.Unit;
+import javascalautils.concurrent.Future;
+
+/**
+ * The non-blocking interface for managing persisted property sets. <br>
+ * Each operation returns immediately with a {@link Future} that is completed once ZooKeeper has responded. <br>
+ * The semantics of the operations are the same as for the corresponding operation in {@link PropertiesStorage}. <br>
+ * Note that callbacks installed on the returned futures may be executed by the ZooKeeper event thread, hence they should not perform any blocking operations.
+ * Instances are obtained using {@link PropertiesStorage#async()}.
+ * @author Peter Nerg
+ * @since 1.4
+ */
+public interface AsyncPropertiesStorage {
+
+	/**
+	 * Get a named property set from ZooKeeper. <br>
+	 * If there was not property set with the provided name the future is completed with {@link None} else {@link Some} containing the property set.
+	 * @param name The name of the property set
+	 * @return The future result, failed in case there was a problem reading the data
+	 */
+	Future<Option<PropertySet>> get(String name);
+
+	/**
+	 * Get a named property set from ZooKeeper where the values of the properties are read on first access, see {@link PropertiesStorage#getLazy(String)}.
+	 * <br>
+	 * The default implementation reads the entire property set using {@link #get(String)}, i.e. all values are read up front.
+	 * @param name The name of the property set
+	 * @return The future result, failed in case there was a problem listing the properties
+	 */
+	default Future<Option<LazyPropertySet>> getLazy(String name) {
+		return get(name).map(propertySet -> propertySet.map(LazyPropertySetImpl::loaded));
+	}
+
+	/**
+	 * Store the provided property set. <br>
+	 * Any existing property set in ZooKeeper will be overwritten, see {@link PropertiesStorage#store(PropertySet)}.
+	 * @param propertySet The property set to store
+	 * @return The future result, failed in case there was a problem persisting the data
+	 */
+	Future<Unit> store(PropertySet propertySet);
+
+	/**
+	 * Store the provided property set provided it has not been modified since it was read, see {@link PropertiesStorage#storeIfUnchanged(PropertySet)}.
+	 * @param propertySet The property set to store
+	 * @return The future result, failed with {@link java.util.ConcurrentModificationException} in case of a version conflict, the default implementation
+	 *         fails with {@link UnsupportedOperationException}
+	 */
+	default Future<Unit> storeIfUnchanged(PropertySet propertySet) {
+		return Future.failed(new UnsupportedOperationException("Versioned store is not supported by [" + getClass().getName() + "]"));
+	}
+
+	/**
+	 * Deletes an existing property set. <br>
+	 * Attempting to delete non-existing data will <u>not</u> fail the future.
+	 * @param name The name of the property set to delete
+	 * @return The future result, failed in case there was a problem deleting the data
+	 */
+	Future<Unit> delete(String name);
+
+	/**
+	 * List the names of all persisted property sets.
+	 * @return The future result, failed in case there was issues with ZooKeeper
+	 */
+	Future<List<String>> propertySets();
+}
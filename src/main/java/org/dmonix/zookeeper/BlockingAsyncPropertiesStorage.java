@@ -0,0 +1,104 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static javascalautils.concurrent.FutureCompanion.Future;
+
+import java.util.List;
+
+import javascalautils.Option;
+import javascalautils.Unit;
+import javascalautils.concurrent.Future;
+
+/**
+ * Provides the asynchronous view of a storage lacking a non-blocking implementation. <br>
+ * Each operation is executed using the blocking operation of the storage on a separate thread, see {@link PropertiesStorage#async()}.
+ *
+ * @author Peter Nerg
+ * @since 1.4
+ */
+final class BlockingAsyncPropertiesStorage implements AsyncPropertiesStorage {
+
+	private final PropertiesStorage storage;
+
+	/**
+	 * @param storage
+	 *            The storage to perform the operations on
+	 */
+	BlockingAsyncPropertiesStorage(PropertiesStorage storage) {
+		this.storage = storage;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.dmonix.zookeeper.AsyncPropertiesStorage#get(java.lang.String)
+	 */
+	@Override
+	public Future<Option<PropertySet>> get(String name) {
+		return Future(() -> storage.get(name).get());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.dmonix.zookeeper.AsyncPropertiesStorage#getLazy(java.lang.String)
+	 */
+	@Override
+	public Future<Option<LazyPropertySet>> getLazy(String name) {
+		return Future(() -> storage.getLazy(name).get());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.dmonix.zookeeper.AsyncPropertiesStorage#store(org.dmonix.zookeeper.PropertySet)
+	 */
+	@Override
+	public Future<Unit> store(PropertySet propertySet) {
+		return Future(() -> storage.store(propertySet).get());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.dmonix.zookeeper.AsyncPropertiesStorage#storeIfUnchanged(org.dmonix.zookeeper.PropertySet)
+	 */
+	@Override
+	public Future<Unit> storeIfUnchanged(PropertySet propertySet) {
+		return Future(() -> storage.storeIfUnchanged(propertySet).get());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.dmonix.zookeeper.AsyncPropertiesStorage#delete(java.lang.String)
+	 */
+	@Override
+	public Future<Unit> delete(String name) {
+		return Future(() -> storage.delete(name).get());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.dmonix.zookeeper.AsyncPropertiesStorage#propertySets()
+	 */
+	@Override
+	public Future<List<String>> propertySets() {
+		return Future(() -> storage.propertySets().get());
+	}
+}
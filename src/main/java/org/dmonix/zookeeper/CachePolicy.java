@@ -0,0 +1,266 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decides which entries to keep in a cache bounded by the estimated number of bytes retained by the entries. <br>
+ * Entries are evicted in approximated least recently used order using the CLOCK (second chance) algorithm, an accessed entry is merely flagged as
+ * referenced making a cache hit lock free. <br>
+ * New entries are subject to TinyLFU admission. Should a new entry not fit the candidates for eviction are compared to the new entry by their estimated
+ * access frequency, the new entry is only admitted if more frequently accessed than the entries it would replace. <br>
+ * This keeps the frequently used working set in the cache even when scanning through large numbers of infrequently used entries. <br>
+ * The access frequency is tracked for all keys including those not in the cache, see {@link FrequencySketch}. <br>
+ * An unbounded policy admits all entries and never evicts any.
+ *
+ * @author Peter Nerg
+ * @since 1.4
+ */
+final class CachePolicy {
+
+	/** The max size denoting an unbounded cache. */
+	static final long Unbounded = Long.MAX_VALUE;
+
+	/** The assumed average size (bytes) of an entry, used for sizing the frequency sketch. */
+	private static final int AverageEntrySize = 2048;
+
+	/**
+	 * An entry tracked by the policy.
+	 *
+	 * @author Peter Nerg
+	 * @since 1.4
+	 */
+	abstract static class Node {
+		private final String key;
+		/** If accessed since the clock hand last passed the entry. */
+		private volatile boolean referenced = false;
+		/** The estimated size of the entry, guarded by the policy. */
+		private long weight = 0;
+		/** If admitted to the cache, guarded by the policy. */
+		private boolean resident = false;
+		/** If removed from the cache, i.e. may no longer be admitted. Guarded by the policy. */
+		private boolean removed = false;
+
+		Node(String key) {
+			this.key = key;
+		}
+
+		/**
+		 * Get the key of the entry.
+		 *
+		 * @return The key
+		 */
+		final String key() {
+			return key;
+		}
+	}
+
+	private final long maxSize;
+	/** The frequency of all accessed keys, <code>null</code> if unbounded. */
+	private final FrequencySketch sketch;
+	/** The resident entries in clock order, the head being the next candidate for eviction. */
+	private final Set<Node> clock = new LinkedHashSet<>();
+	private long size = 0;
+
+	/**
+	 * @param maxSize
+	 *            The max estimated size (bytes) of all entries, {@link #Unbounded} for no limit
+	 */
+	CachePolicy(long maxSize) {
+		this.maxSize = maxSize;
+		this.sketch = maxSize == Unbounded ? null : new FrequencySketch((int) Math.min(Integer.MAX_VALUE, maxSize / AverageEntrySize));
+	}
+
+	/**
+	 * Records a cache hit of the provided entry.
+	 *
+	 * @param node
+	 *            The entry
+	 */
+	void onHit(Node node) {
+		node.referenced = true;
+		if (sketch != null) {
+			sketch.increment(node.key);
+		}
+	}
+
+	/**
+	 * Records a cache miss of the provided key.
+	 *
+	 * @param key
+	 *            The key
+	 */
+	void onMiss(String key) {
+		if (sketch != null) {
+			sketch.increment(key);
+		}
+	}
+
+	/**
+	 * Admits a new entry or updates the size of a resident entry. <br>
+	 * Any entries that have to be evicted to make room are added to the provided list and are no longer tracked by the policy. <br>
+	 * A resident entry that grows beyond the max size by itself is evicted, i.e. added to the list of evicted entries. <br>
+	 * A new entry that is rejected is not added to the list of evicted entries.
+	 *
+	 * @param node
+	 *            The entry
+	 * @param weight
+	 *            The estimated size (bytes) of the entry
+	 * @param evicted
+	 *            Receives the evicted entries
+	 * @return <code>true</code> if the entry is resident after the operation, <code>false</code> if rejected, evicted or already removed
+	 */
+	synchronized boolean admit(Node node, long weight, List<Node> evicted) {
+		if (node.removed) {
+			return false;
+		}
+		if (node.resident) {
+			size += weight - node.weight;
+			node.weight = weight;
+			evict(node, evicted);
+			return node.resident;
+		}
+		if (weight > maxSize || !makeRoom(node, weight, evicted)) {
+			node.removed = true;
+			return false;
+		}
+		node.weight = weight;
+		node.resident = true;
+		size += weight;
+		clock.add(node);
+		return true;
+	}
+
+	/**
+	 * Removes the entry from the policy, e.g. as it has been invalidated. <br>
+	 * A removed entry is never admitted.
+	 *
+	 * @param node
+	 *            The entry
+	 */
+	synchronized void remove(Node node) {
+		node.removed = true;
+		if (node.resident) {
+			node.resident = false;
+			size -= node.weight;
+			clock.remove(node);
+		}
+	}
+
+	/**
+	 * Removes all entries from the policy.
+	 */
+	synchronized void clear() {
+		clock.forEach(node -> {
+			node.removed = true;
+			node.resident = false;
+		});
+		clock.clear();
+		size = 0;
+	}
+
+	/**
+	 * The estimated size of all resident entries.
+	 *
+	 * @return The size (bytes)
+	 */
+	synchronized long size() {
+		return size;
+	}
+
+	/**
+	 * The number of resident entries.
+	 *
+	 * @return The number of entries
+	 */
+	synchronized int entries() {
+		return clock.size();
+	}
+
+	/**
+	 * Selects the victims needed to make room for the candidate, only evicting them if all are less frequently used than the candidate.
+	 */
+	private boolean makeRoom(Node candidate, long weight, List<Node> evicted) {
+		long excess = size + weight - maxSize;
+		if (excess <= 0) {
+			return true;
+		}
+		int frequency = sketch.frequency(candidate.key);
+		List<Node> victims = new ArrayList<>();
+		long freed = 0;
+		// each entry is passed at most twice, once clearing the referenced flag and once selected as victim
+		for (int passes = 2 * clock.size(); freed < excess && passes > 0; passes--) {
+			Node head = clock.iterator().next();
+			clock.remove(head);
+			clock.add(head); // moves to the tail, selected victims are removed below
+			if (head.referenced) {
+				head.referenced = false;
+				continue;
+			}
+			if (victims.contains(head)) {
+				break;
+			}
+			if (sketch.frequency(head.key) >= frequency) {
+				return false; // the candidate is not worth evicting a more (or as) frequently used entry
+			}
+			victims.add(head);
+			freed += head.weight;
+		}
+		if (freed < excess) {
+			return false;
+		}
+		victims.forEach(victim -> {
+			clock.remove(victim);
+			evicted.add(evicted(victim));
+		});
+		return true;
+	}
+
+	/**
+	 * Evicts entries in clock order until within the max size, used when a resident entry grows. <br>
+	 * Should the grown entry by itself exceed the max size only the grown entry is evicted.
+	 */
+	private void evict(Node grown, List<Node> evicted) {
+		if (grown.weight > maxSize) {
+			clock.remove(grown);
+			evicted.add(evicted(grown));
+			return;
+		}
+		Iterator<Node> iterator = clock.iterator();
+		while (size > maxSize && iterator.hasNext()) {
+			Node node = iterator.next();
+			if (node != grown) {
+				iterator.remove();
+				evicted.add(evicted(node));
+			}
+		}
+	}
+
+	/**
+	 * Marks the entry as evicted, the entry must already have been removed from the clock.
+	 */
+	private Node evicted(Node node) {
+		node.resident = false;
+		node.removed = true;
+		size -= node.weight;
+		return node;
+	}
+}
@@ -0,0 +1,595 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static javascalautils.OptionCompanion.None;
+import static javascalautils.OptionCompanion.Option;
+import static javascalautils.concurrent.PromiseCompanion.Promise;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.Watcher.Event.EventType;
+import org.apache.zookeeper.Watcher.Event.KeeperState;
+import org.apache.zookeeper.ZooKeeper;
+import org.dmonix.zookeeper.StorageMetrics.CacheEvent;
+
+import javascalautils.Option;
+import javascalautils.Try;
+import javascalautils.Unit;
+import javascalautils.concurrent.Future;
+import javascalautils.concurrent.Promise;
+
+/**
+ * Decorates a {@link ZooKeeperStorage} with a local in-memory cache. <br>
+ * Property sets and the list of property set names are read once from ZooKeeper and thereafter served from memory. <br>
+ * The cached data is kept up to date using watches on the root path, the property set znodes and each individual property znode. <br>
+ * Property sets stored in the {@link StorageFormat#Compact} format are kept up to date with a data watch on the property set znode. <br>
+ * I.e. a cache hit never yields any request to ZooKeeper and upon a change only the affected znodes are re-read. <br>
+ * Should the session expire the cached property sets are served as last known until re-read once the session has been recovered. <br>
+ * All updates to the cache are performed by the single event thread of ZooKeeper, readers only access immutable snapshots of the cached data. <br>
+ * <br>
+ * The cache may be bounded by the estimated number of bytes retained by the cached property sets, see {@link CachePolicy}. <br>
+ * A property set is subject to admission once read, a property set not admitted (or later evicted) is still returned to the readers awaiting it but is
+ * thereafter no longer kept up to date. <br>
+ * An optional expiry removes property sets that have been cached for longer than the expiry, e.g. to release the watches of no longer used property sets.
+ * <br>
+ * Hits, misses, evictions, expiries and rejections are reported to the {@link StorageMetrics} of the underlying storage.
+ *
+ * @author Peter Nerg
+ * @since 1.4
+ */
+final class CachingPropertiesStorage implements PropertiesStorage {
+
+	/** The assumed number of bytes retained per cached property set regardless of its properties, e.g. watchers, maps and snapshots. */
+	static final int EntryOverhead = 512;
+
+	/** The assumed number of bytes retained per cached property regardless of its name and value, e.g. map entries and wrappers. */
+	static final int PropertyOverhead = 160;
+
+	private final ZooKeeperStorage storage;
+	private final ConcurrentMap<String, CachedPropertySet> cache = new ConcurrentHashMap<>();
+	private volatile CachedPropertySets propertySets;
+	private final AsyncPropertiesStorage async = new AsyncCachingStorage();
+	private final CachePolicy policy;
+	private final StorageMetrics metrics;
+	/** The max time (nanos) a property set is cached, 0 for no expiry. */
+	private final long expiryNanos;
+
+	/**
+	 * Creates an unbounded cache without expiry.
+	 * @param storage The storage to cache
+	 */
+	CachingPropertiesStorage(ZooKeeperStorage storage) {
+		this(storage, CachePolicy.Unbounded, 0);
+	}
+
+	/**
+	 * @param storage The storage to cache
+	 * @param maxBytes The max estimated number of bytes retained by the cached property sets, {@link CachePolicy#Unbounded} for no limit
+	 * @param expiryNanos The max time (nanos) a property set is cached, 0 for no expiry
+	 */
+	CachingPropertiesStorage(ZooKeeperStorage storage, long maxBytes, long expiryNanos) {
+		this.storage = storage;
+		this.policy = new CachePolicy(maxBytes);
+		this.metrics = storage.metrics();
+		this.expiryNanos = expiryNanos;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.dmonix.zookeeper.PropertiesStorage#get(java.lang.String)
+	 */
+	@Override
+	public Try<Option<PropertySet>> get(String name) {
+		CachedPropertySet cached = cachedPropertySet(name);
+		Try<Option<PropertySet>> result = storage.await(cached.loaded());
+		if (result.isFailure() && cache.remove(name, cached)) {
+			remove(cached); // failed to load, remove the entry to allow for a new attempt
+		}
+		return result;
+	}
+
+	/**
+	 * Gets all the named property sets. <br>
+	 * The loading of all property sets not already in the cache is initiated before awaiting any result.
+	 */
+	@Override
+	public Map<String, Try<Option<PropertySet>>> getAll(Collection<String> names) {
+		names.forEach(this::cachedPropertySet);
+		return PropertiesStorage.super.getAll(names);
+	}
+
+	/**
+	 * Lazy reads are not cached but delegated to the underlying storage. <br>
+	 * The purpose of a lazy read is to not hold all the properties in memory, which is exactly what the cache does.
+	 */
+	@Override
+	public Try<Option<LazyPropertySet>> getLazy(String name) {
+		return storage.getLazy(name);
+	}
+
+	/**
+	 * Stores the property set. <br>
+	 * Any cached copy of the property set is removed to guarantee that a subsequent read reflects the stored data.
+	 */
+	@Override
+	public Try<Unit> store(PropertySet propertySet) {
+		try {
+			return storage.store(propertySet);
+		} finally {
+			invalidate(propertySet.name(), true);
+		}
+	}
+
+	/**
+	 * Stores the property set provided it has not been modified since it was read. <br>
+	 * Property sets served from the cache carry the version as last seen by the watches, i.e. a cached property set that is outdated fails to be stored
+	 * the same as any other outdated property set. <br>
+	 * Any cached copy of the property set is removed to guarantee that a subsequent read reflects the stored data.
+	 */
+	@Override
+	public Try<Unit> storeIfUnchanged(PropertySet propertySet) {
+		try {
+			return storage.storeIfUnchanged(propertySet);
+		} finally {
+			invalidate(propertySet.name(), true);
+		}
+	}
+
+	/**
+	 * Deletes the property set. <br>
+	 * Any cached copy of the property set is removed to guarantee that a subsequent read reflects the deletion.
+	 */
+	@Override
+	public Try<Unit> delete(String name) {
+		try {
+			return storage.delete(name);
+		} finally {
+			invalidate(name, false);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.dmonix.zookeeper.PropertiesStorage#propertySets()
+	 */
+	@Override
+	public Try<List<String>> propertySets() {
+		CachedPropertySets cached = cachedPropertySets();
+		Try<List<String>> result = storage.await(cached.loaded());
+		if (result.isFailure() && propertySets == cached) {
+			propertySets = null; // failed to load, remove the entry to allow for a new attempt
+		}
+		return result;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.dmonix.zookeeper.PropertiesStorage#subscribe(java.lang.String, org.dmonix.zookeeper.PropertySetListener)
+	 */
+	@Override
+	public Subscription subscribe(String name, PropertySetListener listener) {
+		return storage.subscribe(name, listener);
+	}
+
+	/**
+	 * Layered property sets are kept up to date by their own watches, hence they are delegated to the underlying storage.
+	 */
+	@Override
+	public Try<LayeredPropertySet> layered(String... names) {
+		return storage.layered(names);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.dmonix.zookeeper.PropertiesStorage#async()
+	 */
+	@Override
+	public AsyncPropertiesStorage async() {
+		return async;
+	}
+
+	/**
+	 * Closes the underlying storage and clears the cache.
+	 */
+	@Override
+	public void close() {
+		invalidateAll();
+		storage.close();
+	}
+
+	/**
+	 * Get the cached entry for the property set, creating and starting the load of a new entry if there is none or the entry has expired.
+	 */
+	private CachedPropertySet cachedPropertySet(String name) {
+		CachedPropertySet cached = cache.get(name);
+		if (cached != null && cached.isExpired()) {
+			if (cache.remove(name, cached)) {
+				remove(cached);
+				metrics.onCacheEvent(CacheEvent.Expiry);
+			}
+			cached = cache.get(name);
+		}
+		if (cached != null) {
+			policy.onHit(cached);
+			// an entry still being loaded is yet to be read from ZooKeeper, i.e. not a hit
+			metrics.onCacheEvent(cached.isLoaded() ? CacheEvent.Hit : CacheEvent.Miss);
+			return cached;
+		}
+		policy.onMiss(name);
+		metrics.onCacheEvent(CacheEvent.Miss);
+		CachedPropertySet created = new CachedPropertySet(name);
+		cached = cache.putIfAbsent(name, created);
+		if (cached == null) {
+			// started outside of the map as a failure to load removes the entry from the map
+			created.watched.start();
+			cached = created;
+		}
+		return cached;
+	}
+
+	/**
+	 * Removes an entry already removed from the map from the policy and stops keeping it up to date.
+	 */
+	private void remove(CachedPropertySet cached) {
+		policy.remove(cached);
+		cached.discard();
+		metrics.onCacheSize(policy.size(), policy.entries());
+	}
+
+	/**
+	 * Estimates the number of bytes retained by a cached property set. <br>
+	 * Only an approximation as the actual size depends on the JVM, e.g. compressed pointers, and if the values have been decoded to strings.
+	 */
+	static long estimateSize(Map<String, PropertyValue> properties) {
+		long size = EntryOverhead;
+		for (Map.Entry<String, PropertyValue> entry : properties.entrySet()) {
+			size += PropertyOverhead + 2L * entry.getKey().length() + entry.getValue().bytes().length;
+		}
+		return size;
+	}
+
+	private CachedPropertySets cachedPropertySets() {
+		CachedPropertySets cached = propertySets;
+		if (cached == null) {
+			synchronized (this) {
+				if (propertySets == null) {
+					propertySets = new CachedPropertySets();
+				}
+				cached = propertySets;
+			}
+		}
+		return cached;
+	}
+
+	/**
+	 * Invalidates the cached property set once the provided future is completed. <br>
+	 * The returned future is completed only after the invalidation, i.e. any read issued as a result of the completion reflects the write.
+	 */
+	private <T> Future<T> invalidateOnComplete(String name, boolean exists, Future<T> future) {
+		Promise<T> promise = Promise();
+		future.onComplete(result -> {
+			invalidate(name, exists);
+			promise.complete(result);
+		});
+		return promise.future();
+	}
+
+	/**
+	 * Invalidates the cached property set after a write. <br>
+	 * The cached list of property sets only changes if a property set is created or deleted, i.e. it is kept as long as it already lists (or doesn't list)
+	 * the written property set.
+	 * @param name The name of the written property set
+	 * @param exists If the property set exists after the write, i.e. stored rather than deleted
+	 */
+	private void invalidate(String name, boolean exists) {
+		Option(cache.remove(name)).forEach(this::remove);
+		CachedPropertySets cached = propertySets;
+		if (cached != null && !cached.isListed(name, exists)) {
+			cached.discard();
+			if (propertySets == cached) {
+				propertySets = null;
+			}
+		}
+	}
+
+	private void invalidateAll() {
+		cache.values().forEach(CachedPropertySet::discard);
+		cache.clear();
+		policy.clear();
+		metrics.onCacheSize(0, 0);
+		Option(propertySets).forEach(CachedPropertySets::discard);
+		propertySets = null;
+	}
+
+	/**
+	 * Removes an entry evicted by the policy from the cache.
+	 */
+	private void evict(CachedPropertySet evicted) {
+		if (cache.remove(evicted.name, evicted)) {
+			metrics.onCacheEvent(CacheEvent.Eviction);
+		}
+		evicted.discard();
+	}
+
+	/**
+	 * Fails the promise with the provided error unless it is already completed.
+	 */
+	private static void fail(Promise<?> promise, Code code, String path) {
+		promise.tryFailure(KeeperException.create(code, path));
+	}
+
+	/**
+	 * Holds the cached state of a single property set, kept up to date by a {@link WatchedPropertySet}.
+	 *
+	 * @author Peter Nerg
+	 * @since 1.4
+	 */
+	private final class CachedPropertySet extends CachePolicy.Node implements WatchedPropertySet.Listener {
+		private final String name;
+		private final Promise<Unit> loaded = Promise();
+		private final WatchedPropertySet watched;
+		/** Immutable snapshot of the property set shared by all readers, None if the set does not exist. */
+		private volatile Option<PropertySet> snapshot = None();
+		/** The time (nanos) the property set initially was loaded, 0 until loaded. */
+		private volatile long loadedAt = 0;
+
+		private CachedPropertySet(String name) {
+			super(name);
+			this.name = name;
+			this.watched = new WatchedPropertySet(storage, name, this);
+		}
+
+		/**
+		 * If the property set initially has been loaded.
+		 * @return <code>true</code> if loaded
+		 */
+		private boolean isLoaded() {
+			return loadedAt != 0;
+		}
+
+		/**
+		 * If the property set has been cached for longer than the expiry.
+		 * @return <code>true</code> if expired
+		 */
+		private boolean isExpired() {
+			long loadedAt = this.loadedAt;
+			return expiryNanos > 0 && loadedAt != 0 && System.nanoTime() - loadedAt > expiryNanos;
+		}
+
+		/**
+		 * Future completed once the property set initially has been loaded.
+		 * @return The future with the cached property set
+		 */
+		private Future<Option<PropertySet>> loaded() {
+			return loaded.future().map(u -> snapshot);
+		}
+
+		/**
+		 * Marks this instance as no longer in use, any further watch events are ignored. <br>
+		 * Any ongoing initial load is still allowed to complete as there may be readers awaiting it.
+		 */
+		private void discard() {
+			watched.discard();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.dmonix.zookeeper.WatchedPropertySet.Listener#onUpdate(javascalautils.Option, javascalautils.Option)
+		 */
+		@Override
+		public void onUpdate(Option<Map<String, PropertyValue>> snapshot, Option<PropertySetVersion> version) {
+			this.snapshot = snapshot.map(properties -> ImmutablePropertySet.ofValues(name, properties, version));
+			if (loadedAt == 0) {
+				loadedAt = Math.max(1, System.nanoTime());
+			}
+			// admitted (or rejected) and reported before completing the load, i.e. a reader served by this entry never finds a rejected entry in the cache
+			List<CachePolicy.Node> evicted = new ArrayList<>();
+			long size = estimateSize(snapshot.getOrElse(Collections::emptyMap));
+			boolean resident = policy.admit(this, size, evicted);
+			evicted.forEach(node -> evict((CachedPropertySet) node));
+			if (!resident && !evicted.contains(this) && cache.remove(name, this)) {
+				discard();
+				metrics.onCacheEvent(CacheEvent.Rejection);
+			}
+			metrics.onCacheSize(policy.size(), policy.entries());
+			loaded.trySuccess(Unit.Instance);
+		}
+
+		/**
+		 * Any error while updating the cache means we can no longer guarantee the cached data, hence the entry is removed.
+		 */
+		@Override
+		public void onError(Throwable error) {
+			loaded.tryFailure(error);
+			if (cache.remove(name, this)) {
+				remove(this);
+			}
+		}
+	}
+
+	/**
+	 * Holds the cached list of property set names, kept up to date with a child watch on the root path.
+	 *
+	 * @author Peter Nerg
+	 * @since 1.4
+	 */
+	private final class CachedPropertySets implements Watcher {
+		private final Promise<Unit> loaded = Promise();
+		private volatile List<String> names = Collections.emptyList();
+		private volatile boolean discarded = false;
+
+		private CachedPropertySets() {
+			storage.connection().forEach(this::load);
+			storage.connection().failed().forEach(loaded::failure);
+		}
+
+		private Future<List<String>> loaded() {
+			return loaded.future().map(u -> names);
+		}
+
+		/**
+		 * If the list has been loaded and lists the named property set as expected.
+		 * @param name The name of the property set
+		 * @param exists If the property set is expected to be listed
+		 * @return <code>true</code> if loaded and the named property set is listed as expected
+		 */
+		private boolean isListed(String name, boolean exists) {
+			return loaded.future().value().exists(Try::isSuccess) && names.contains(name) == exists;
+		}
+
+		private void discard() {
+			discarded = true;
+		}
+
+		private void load(ZooKeeper zk) {
+			String path = storage.rootPath();
+			zk.getChildren(path, this, (rc, p, ctx, children) -> {
+				Code code = Code.get(rc);
+				if (code == Code.OK) {
+					names = Collections.unmodifiableList(new ArrayList<>(children));
+					loaded.trySuccess(Unit.Instance);
+				} else {
+					fail(loaded, code, path);
+					discard();
+					if (propertySets == this) {
+						propertySets = null;
+					}
+				}
+			}, null);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.apache.zookeeper.Watcher#process(org.apache.zookeeper.WatchedEvent)
+		 */
+		@Override
+		public void process(WatchedEvent event) {
+			if (discarded) {
+				return;
+			}
+			if (event.getType() == EventType.NodeChildrenChanged) {
+				storage.connection().forEach(this::load);
+			} else if (event.getType() != EventType.None || event.getState() == KeeperState.Expired) {
+				// e.g. the root path was deleted or the session expired
+				discard();
+				if (propertySets == this) {
+					propertySets = null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * The asynchronous view of the caching storage. <br>
+	 * Cache hits yield an already completed future.
+	 *
+	 * @author Peter Nerg
+	 * @since 1.4
+	 */
+	private final class AsyncCachingStorage implements AsyncPropertiesStorage {
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.dmonix.zookeeper.AsyncPropertiesStorage#get(java.lang.String)
+		 */
+		@Override
+		public Future<Option<PropertySet>> get(String name) {
+			CachedPropertySet cached = cachedPropertySet(name);
+			Future<Option<PropertySet>> result = cached.loaded();
+			result.onFailure(ex -> {
+				if (cache.remove(name, cached)) { // failed to load, remove the entry to allow for a new attempt
+					remove(cached);
+				}
+			});
+			return result;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.dmonix.zookeeper.AsyncPropertiesStorage#getLazy(java.lang.String)
+		 */
+		@Override
+		public Future<Option<LazyPropertySet>> getLazy(String name) {
+			return storage.async().getLazy(name);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.dmonix.zookeeper.AsyncPropertiesStorage#store(org.dmonix.zookeeper.PropertySet)
+		 */
+		@Override
+		public Future<Unit> store(PropertySet propertySet) {
+			return invalidateOnComplete(propertySet.name(), true, storage.async().store(propertySet));
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.dmonix.zookeeper.AsyncPropertiesStorage#storeIfUnchanged(org.dmonix.zookeeper.PropertySet)
+		 */
+		@Override
+		public Future<Unit> storeIfUnchanged(PropertySet propertySet) {
+			return invalidateOnComplete(propertySet.name(), true, storage.async().storeIfUnchanged(propertySet));
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.dmonix.zookeeper.AsyncPropertiesStorage#delete(java.lang.String)
+		 */
+		@Override
+		public Future<Unit> delete(String name) {
+			return invalidateOnComplete(name, false, storage.async().delete(name));
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.dmonix.zookeeper.AsyncPropertiesStorage#propertySets()
+		 */
+		@Override
+		public Future<List<String>> propertySets() {
+			CachedPropertySets cached = cachedPropertySets();
+			Future<List<String>> result = cached.loaded();
+			result.onFailure(ex -> {
+				if (propertySets == cached) {
+					propertySets = null; // failed to load, remove the entry to allow for a new attempt
+				}
+			});
+			return result;
+		}
+	}
+}
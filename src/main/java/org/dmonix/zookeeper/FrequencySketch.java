@@ -0,0 +1,146 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Approximates the access frequency of keys using a count-min sketch of 4-bit counters, as used by the TinyLFU admission policy. <br>
+ * Each key is mapped to four counters, the estimated frequency is the smallest of these. <br>
+ * Sixteen counters are packed into each <code>long</code>, the memory used is fixed regardless of the number of distinct keys. <br>
+ * To let the sketch adapt to changing access patterns all counters are halved once the number of recorded accesses reaches the sample size. <br>
+ * The sketch is thread safe and lock free, the counters are updated using CAS. An increment lost due to a concurrent halving is of no concern as the
+ * sketch is an approximation.
+ *
+ * @author Peter Nerg
+ * @since 1.4
+ */
+final class FrequencySketch {
+
+	/** The max value of a counter. */
+	static final int MaxFrequency = 15;
+
+	/** The seeds for the four hash functions. */
+	private static final long[] Seeds = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+
+	/** Mask clearing the most significant bit of each counter after shifting, i.e. halving all 16 counters of a word at once. */
+	private static final long HalfMask = 0x7777777777777777L;
+
+	private final AtomicLongArray table;
+	private final int mask;
+	private final int sampleSize;
+	private final AtomicInteger additions = new AtomicInteger();
+
+	/**
+	 * @param expectedKeys
+	 *            The expected number of keys to track, decides the size of the sketch
+	 */
+	FrequencySketch(int expectedKeys) {
+		int width = Integer.highestOneBit(Math.max(16, Math.min(expectedKeys, 1 << 24)) - 1) << 1;
+		this.table = new AtomicLongArray(width);
+		this.mask = width - 1;
+		this.sampleSize = 10 * width;
+	}
+
+	/**
+	 * Get the estimated frequency of the provided key.
+	 *
+	 * @param key
+	 *            The key
+	 * @return The frequency, between 0 and {@link #MaxFrequency}
+	 */
+	int frequency(Object key) {
+		int hash = spread(key.hashCode());
+		int frequency = MaxFrequency;
+		for (int i = 0; i < Seeds.length; i++) {
+			long index = index(hash, i);
+			frequency = Math.min(frequency, counter(table.get(word(index)), index));
+		}
+		return frequency;
+	}
+
+	/**
+	 * Records an access of the provided key. <br>
+	 * Only the smallest of the counters for the key are incremented (conservative update), reducing the over-estimation caused by collisions.
+	 *
+	 * @param key
+	 *            The key
+	 */
+	void increment(Object key) {
+		int hash = spread(key.hashCode());
+		int frequency = frequency(key);
+		if (frequency == MaxFrequency) {
+			return;
+		}
+		for (int i = 0; i < Seeds.length; i++) {
+			long index = index(hash, i);
+			int word = word(index);
+			long current;
+			do {
+				current = table.get(word);
+			} while (counter(current, index) == frequency && !table.compareAndSet(word, current, current + (1L << offset(index))));
+		}
+		if (additions.incrementAndGet() >= sampleSize) {
+			reset();
+		}
+	}
+
+	/**
+	 * Halves all counters, done once the sample size has been reached.
+	 */
+	private void reset() {
+		int current = additions.get();
+		if (current < sampleSize || !additions.compareAndSet(current, current / 2)) {
+			return; // concurrently reset by some other thread
+		}
+		for (int i = 0; i < table.length(); i++) {
+			long value;
+			do {
+				value = table.get(i);
+			} while (!table.compareAndSet(i, value, (value >>> 1) & HalfMask));
+		}
+	}
+
+	/**
+	 * The index of the counter for the provided hash and hash function, the upper bits select the word and the lower four bits the counter within the word.
+	 */
+	private long index(int hash, int i) {
+		long h = (hash + Seeds[i]) * Seeds[i];
+		h += h >>> 32;
+		return h;
+	}
+
+	private int word(long index) {
+		return (int) (index >>> 4) & mask;
+	}
+
+	private static int offset(long index) {
+		return ((int) index & 15) << 2;
+	}
+
+	private static int counter(long word, long index) {
+		return (int) (word >>> offset(index)) & 0xf;
+	}
+
+	/**
+	 * Applies a supplemental hash function to defend against poor quality hash codes.
+	 */
+	private static int spread(int hash) {
+		int h = hash * 0x9e3779b9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,462 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static javascalautils.OptionCompanion.None;
+import static javascalautils.OptionCompanion.Some;
+import static org.dmonix.zookeeper.PropertyParsers.BooleanParser;
+import static org.dmonix.zookeeper.PropertyParsers.DurationParser;
+import static org.dmonix.zookeeper.PropertyParsers.IntParser;
+import static org.dmonix.zookeeper.PropertyParsers.ListParser;
+import static org.dmonix.zookeeper.PropertyParsers.LongParser;
+import static org.dmonix.zookeeper.PropertyValue.string;
+
+import java.time.Duration;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import org.dmonix.zookeeper.PropertyParsers.Parsed;
+
+import javascalautils.Option;
+
+/**
+ * An immutable snapshot of a property set. <br>
+ * The properties are kept in sorted arrays searched using binary search, making the instance compact and safe for concurrent lock free reads. <br>
+ * All results are created once and shared between all readers, e.g. {@link #property(String)} returns the same {@link Option} for each read and
+ * {@link #properties()}/{@link #asMap()} return read-only views of the arrays. <br>
+ * Values read as raw bytes are only decoded once read as strings, the string and its {@link Option} are created on first access. <br>
+ * Typed values are parsed on first access and cached per property, racing threads may both parse a value but the results are equal. <br>
+ * Use {@link #toMutable()} to get an editable copy.
+ *
+ * @author Peter Nerg
+ * @since 1.4
+ */
+final class ImmutablePropertySet implements PropertySet, PropertyValue.Values {
+
+	private final String name;
+	private final Option<PropertySetVersion> version;
+	private final String[] keys;
+	private final PropertyValue[] values;
+	/** The value per property as returned by {@link #property(String)}, created on first access and written without synchronization as {@link Option} is immutable. */
+	private final Option<String>[] options;
+	/** The parsed typed value per property, written without synchronization as {@link Parsed} is immutable. */
+	private final Parsed[] parsed;
+	private final Set<String> keySet = new KeySet();
+	private final Map<String, String> map = new MapView();
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private ImmutablePropertySet(String name, Map<String, PropertyValue> properties, Option<PropertySetVersion> version) {
+		this.name = name;
+		this.version = version;
+		this.keys = properties.keySet().toArray(new String[properties.size()]);
+		Arrays.sort(keys);
+		this.values = new PropertyValue[keys.length];
+		this.options = new Option[keys.length];
+		this.parsed = new Parsed[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			values[i] = properties.get(keys[i]);
+		}
+	}
+
+	/**
+	 * Creates an immutable snapshot of the provided properties.
+	 *
+	 * @param name
+	 *            The name of the property set
+	 * @param properties
+	 *            The properties, copied into the snapshot
+	 * @return The property set
+	 */
+	static PropertySet of(String name, Map<String, String> properties) {
+		Map<String, PropertyValue> values = new HashMap<>(properties.size() * 4 / 3 + 1);
+		properties.forEach((key, value) -> values.put(key, PropertyValue.of(value)));
+		return new ImmutablePropertySet(name, values, None());
+	}
+
+	/**
+	 * Creates an immutable snapshot of the provided property values.
+	 *
+	 * @param name
+	 *            The name of the property set
+	 * @param properties
+	 *            The property values, copied into the snapshot
+	 * @return The property set
+	 */
+	static PropertySet ofValues(String name, Map<String, PropertyValue> properties) {
+		return new ImmutablePropertySet(name, properties, None());
+	}
+
+	/**
+	 * Creates an immutable snapshot of the provided property values read from ZooKeeper.
+	 *
+	 * @param name
+	 *            The name of the property set
+	 * @param properties
+	 *            The property values, copied into the snapshot
+	 * @param version
+	 *            The version of the property set as read from ZooKeeper
+	 * @return The property set
+	 */
+	static PropertySet ofValues(String name, Map<String, PropertyValue> properties, Option<PropertySetVersion> version) {
+		return new ImmutablePropertySet(name, properties, version);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#name()
+	 */
+	@Override
+	public String name() {
+		return name;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#property(java.lang.String)
+	 */
+	@Override
+	public Option<String> property(String name) {
+		int index = index(name);
+		if (index < 0 || values[index] == null) {
+			return None();
+		}
+		Option<String> option = options[index];
+		if (option == null) {
+			option = Some(values[index].string());
+			options[index] = option;
+		}
+		return option;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#bytesProperty(java.lang.String)
+	 */
+	@Override
+	public Option<byte[]> bytesProperty(String name) {
+		PropertyValue value = value(name);
+		return value != null ? Some(value.copyOfBytes()) : None();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#propertyOrDefault(java.lang.String, java.lang.String)
+	 */
+	@Override
+	public String propertyOrDefault(String name, String defaultValue) {
+		int index = index(name);
+		return index < 0 || values[index] == null ? defaultValue : values[index].string();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#containsProperty(java.lang.String)
+	 */
+	@Override
+	public boolean containsProperty(String name) {
+		return index(name) >= 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#size()
+	 */
+	@Override
+	public int size() {
+		return keys.length;
+	}
+
+	/**
+	 * Performs the action for each property in the sorted order of the property names.
+	 */
+	@Override
+	public void forEach(BiConsumer<String, String> action) {
+		for (int i = 0; i < keys.length; i++) {
+			action.accept(keys[i], string(values[i]));
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertyValue.Values#value(java.lang.String)
+	 */
+	@Override
+	public PropertyValue value(String name) {
+		int index = index(name);
+		return index < 0 ? null : values[index];
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertyValue.Values#forEachValue(java.util.function.BiConsumer)
+	 */
+	@Override
+	public void forEachValue(BiConsumer<String, PropertyValue> action) {
+		for (int i = 0; i < keys.length; i++) {
+			action.accept(keys[i], values[i]);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#intProperty(java.lang.String, int)
+	 */
+	@Override
+	public int intProperty(String name, int defaultValue) {
+		return typedProperty(name, IntParser, defaultValue);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#longProperty(java.lang.String, long)
+	 */
+	@Override
+	public long longProperty(String name, long defaultValue) {
+		return typedProperty(name, LongParser, defaultValue);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#booleanProperty(java.lang.String, boolean)
+	 */
+	@Override
+	public boolean booleanProperty(String name, boolean defaultValue) {
+		return typedProperty(name, BooleanParser, defaultValue);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#durationProperty(java.lang.String, java.time.Duration)
+	 */
+	@Override
+	public Duration durationProperty(String name, Duration defaultValue) {
+		return typedProperty(name, DurationParser, defaultValue);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#listProperty(java.lang.String, java.util.List)
+	 */
+	@Override
+	public List<String> listProperty(String name, List<String> defaultValue) {
+		return typedProperty(name, ListParser, defaultValue);
+	}
+
+	/**
+	 * Returns a read-only view of the property names.
+	 */
+	@Override
+	public Set<String> properties() {
+		return keySet;
+	}
+
+	/**
+	 * Always throws {@link UnsupportedOperationException} as the property set is immutable, use {@link #toMutable()} to get an editable copy.
+	 */
+	@Override
+	public Option<String> set(String name, String value) {
+		throw new UnsupportedOperationException("The property set [" + this.name + "] is immutable, use toMutable() to get an editable copy");
+	}
+
+	/**
+	 * Always throws {@link UnsupportedOperationException} as the property set is immutable, use {@link #toMutable()} to get an editable copy.
+	 */
+	@Override
+	public Option<byte[]> setBytes(String name, byte[] value) {
+		throw new UnsupportedOperationException("The property set [" + this.name + "] is immutable, use toMutable() to get an editable copy");
+	}
+
+	/**
+	 * Returns a read-only view of the properties.
+	 */
+	@Override
+	public Map<String, String> asMap() {
+		return map;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#version()
+	 */
+	@Override
+	public Option<PropertySetVersion> version() {
+		return version;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#toMutable()
+	 */
+	@Override
+	public PropertySet toMutable() {
+		PropertySetImpl propertySet = new PropertySetImpl(name, version);
+		for (int i = 0; i < keys.length; i++) {
+			propertySet.setValue(keys[i], values[i]);
+		}
+		return propertySet;
+	}
+
+	/**
+	 * Provides a meaningful string representation of the property set
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(name.length() + 2 + keys.length * 32);
+		sb.append(name).append("{");
+		for (int i = 0; i < keys.length; i++) {
+			sb.append(keys[i]).append(":").append(values[i]).append(",");
+		}
+		sb.append("}");
+		return sb.toString();
+	}
+
+	private int index(Object key) {
+		return key instanceof String ? Arrays.binarySearch(keys, key) : -1;
+	}
+
+	private <T> T typedProperty(String name, Function<String, T> parser, T defaultValue) {
+		int index = index(name);
+		if (index < 0 || values[index] == null) {
+			return defaultValue;
+		}
+		Parsed cached = parsed[index];
+		T result = cached != null ? cached.value(parser) : null;
+		if (result == null) {
+			result = PropertyParsers.parse(this.name, name, values[index].string(), parser);
+			parsed[index] = new Parsed(parser, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Iterates over the indexes of the properties.
+	 */
+	private abstract class IndexIterator<T> implements Iterator<T> {
+		private int index = 0;
+
+		@Override
+		public boolean hasNext() {
+			return index < keys.length;
+		}
+
+		@Override
+		public T next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return get(index++);
+		}
+
+		abstract T get(int index);
+	}
+
+	/**
+	 * Read-only set view of the property names.
+	 */
+	private final class KeySet extends AbstractSet<String> {
+		@Override
+		public Iterator<String> iterator() {
+			return new IndexIterator<String>() {
+				@Override
+				String get(int index) {
+					return keys[index];
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return keys.length;
+		}
+
+		@Override
+		public boolean contains(Object key) {
+			return index(key) >= 0;
+		}
+	}
+
+	/**
+	 * Read-only map view of the properties.
+	 */
+	private final class MapView extends AbstractMap<String, String> {
+		private final Set<Map.Entry<String, String>> entries = new AbstractSet<Map.Entry<String, String>>() {
+			@Override
+			public Iterator<Map.Entry<String, String>> iterator() {
+				return new IndexIterator<Map.Entry<String, String>>() {
+					@Override
+					Map.Entry<String, String> get(int index) {
+						return new AbstractMap.SimpleImmutableEntry<>(keys[index], string(values[index]));
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return keys.length;
+			}
+		};
+
+		@Override
+		public Set<Map.Entry<String, String>> entrySet() {
+			return entries;
+		}
+
+		@Override
+		public int size() {
+			return keys.length;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return index(key) >= 0;
+		}
+
+		@Override
+		public String get(Object key) {
+			int index = index(key);
+			return index < 0 ? null : string(values[index]);
+		}
+
+		@Override
+		public Set<String> keySet() {
+			return keySet;
+		}
+	}
+}
@@ -0,0 +1,255 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lightweight in-memory implementation of {@link StorageMetrics}. <br>
+ * Keeps a {@link LatencyHistogram} and counters per {@link StorageMetrics.Operation operation}. <br>
+ * All data structures are allocated up front, recording a measurement is allocation and lock free. <br>
+ * The collected data is intended to be read periodically and exported to the monitoring system of choice.
+ * 
+ * <pre>
+ * InMemoryStorageMetrics metrics = new InMemoryStorageMetrics();
+ * PropertiesStorage storage = PropertiesStorageFactory.apply("localhost:2181").withMetrics(metrics).create().get();
+ * ...
+ * long p99 = metrics.latency(Operation.Get).percentile(99);
+ * </pre>
+ *
+ * @author Peter Nerg
+ * @since 1.4
+ */
+public final class InMemoryStorageMetrics implements StorageMetrics {
+
+	private final LatencyHistogram[] latencies = new LatencyHistogram[Operation.values().length];
+	private final LongAdder[] failures = adders();
+	private final LongAdder[] requests = adders();
+	private final LongAdder[] bytesRead = adders();
+	private final LongAdder[] bytesWritten = adders();
+	private final LongAdder[] cacheEvents = new LongAdder[CacheEvent.values().length];
+	private volatile long cacheBytes = 0;
+	private volatile int cacheEntries = 0;
+
+	/**
+	 * Creates an instance with no recorded measurements.
+	 */
+	public InMemoryStorageMetrics() {
+		for (int i = 0; i < latencies.length; i++) {
+			latencies[i] = new LatencyHistogram();
+		}
+		for (int i = 0; i < cacheEvents.length; i++) {
+			cacheEvents[i] = new LongAdder();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.StorageMetrics#onOperation(org.dmonix.zookeeper.StorageMetrics.Operation, long, boolean)
+	 */
+	@Override
+	public void onOperation(Operation operation, long nanos, boolean success) {
+		latencies[operation.ordinal()].record(nanos);
+		if (!success) {
+			failures[operation.ordinal()].increment();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.StorageMetrics#onRequests(org.dmonix.zookeeper.StorageMetrics.Operation, int)
+	 */
+	@Override
+	public void onRequests(Operation operation, int count) {
+		requests[operation.ordinal()].add(count);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.StorageMetrics#onBytesRead(org.dmonix.zookeeper.StorageMetrics.Operation, long)
+	 */
+	@Override
+	public void onBytesRead(Operation operation, long bytes) {
+		bytesRead[operation.ordinal()].add(bytes);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.StorageMetrics#onBytesWritten(org.dmonix.zookeeper.StorageMetrics.Operation, long)
+	 */
+	@Override
+	public void onBytesWritten(Operation operation, long bytes) {
+		bytesWritten[operation.ordinal()].add(bytes);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.StorageMetrics#onCacheEvent(org.dmonix.zookeeper.StorageMetrics.CacheEvent)
+	 */
+	@Override
+	public void onCacheEvent(CacheEvent event) {
+		cacheEvents[event.ordinal()].increment();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.StorageMetrics#onCacheSize(long, int)
+	 */
+	@Override
+	public void onCacheSize(long bytes, int entries) {
+		cacheBytes = bytes;
+		cacheEntries = entries;
+	}
+
+	/**
+	 * The latency (nanoseconds) of all completed invocations of the operation, successful as well as failed.
+	 * 
+	 * @param operation
+	 *            The operation
+	 * @return The histogram
+	 */
+	public LatencyHistogram latency(Operation operation) {
+		return latencies[operation.ordinal()];
+	}
+
+	/**
+	 * The number of successfully completed invocations of the operation.
+	 * 
+	 * @param operation
+	 *            The operation
+	 * @return The count
+	 */
+	public long successes(Operation operation) {
+		return latency(operation).count() - failures(operation);
+	}
+
+	/**
+	 * The number of failed invocations of the operation.
+	 * 
+	 * @param operation
+	 *            The operation
+	 * @return The count
+	 */
+	public long failures(Operation operation) {
+		return failures[operation.ordinal()].sum();
+	}
+
+	/**
+	 * The number of requests sent to ZooKeeper by the operation.
+	 * 
+	 * @param operation
+	 *            The operation
+	 * @return The count
+	 */
+	public long requests(Operation operation) {
+		return requests[operation.ordinal()].sum();
+	}
+
+	/**
+	 * The number of bytes of znode data read by the operation.
+	 * 
+	 * @param operation
+	 *            The operation
+	 * @return The count
+	 */
+	public long bytesRead(Operation operation) {
+		return bytesRead[operation.ordinal()].sum();
+	}
+
+	/**
+	 * The number of bytes of znode data written by the operation.
+	 * 
+	 * @param operation
+	 *            The operation
+	 * @return The count
+	 */
+	public long bytesWritten(Operation operation) {
+		return bytesWritten[operation.ordinal()].sum();
+	}
+
+	/**
+	 * The number of occurrences of the cache event.
+	 * 
+	 * @param event
+	 *            The event
+	 * @return The count
+	 */
+	public long cacheEvents(CacheEvent event) {
+		return cacheEvents[event.ordinal()].sum();
+	}
+
+	/**
+	 * The ratio of cache hits to all cache lookups.
+	 * 
+	 * @return The ratio (0.0 - 1.0), 0 if no lookups
+	 */
+	public double cacheHitRatio() {
+		long hits = cacheEvents(CacheEvent.Hit);
+		long lookups = hits + cacheEvents(CacheEvent.Miss);
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+	/**
+	 * The estimated number of bytes retained by the cached property sets as last reported.
+	 * 
+	 * @return The size (bytes)
+	 */
+	public long cacheBytes() {
+		return cacheBytes;
+	}
+
+	/**
+	 * The number of cached property sets as last reported.
+	 * 
+	 * @return The number of property sets
+	 */
+	public int cacheEntries() {
+		return cacheEntries;
+	}
+
+	/**
+	 * Provides a summary of the collected measurements.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (Operation operation : Operation.values()) {
+			sb.append(operation).append("{").append(latency(operation)).append(", failures=").append(failures(operation)).append(", requests=")
+					.append(requests(operation)).append(", bytesRead=").append(bytesRead(operation)).append(", bytesWritten=").append(bytesWritten(operation))
+					.append("}\n");
+		}
+		sb.append("Cache{");
+		for (CacheEvent event : CacheEvent.values()) {
+			sb.append(event).append("=").append(cacheEvents(event)).append(", ");
+		}
+		sb.append("bytes=").append(cacheBytes).append(", entries=").append(cacheEntries).append("}\n");
+		return sb.toString();
+	}
+
+	private static LongAdder[] adders() {
+		LongAdder[] adders = new LongAdder[Operation.values().length];
+		for (int i = 0; i < adders.length; i++) {
+			adders[i] = new LongAdder();
+		}
+		return adders;
+	}
+}
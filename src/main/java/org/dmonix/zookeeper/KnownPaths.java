@@ -0,0 +1,98 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of paths known to exist in ZooKeeper, allowing for skipping requests to create paths that already have been created. <br>
+ * A known path is only a hint, the path may have been removed by some other client. <br>
+ * Hence any operation relying on a known path must handle the path being missing, after which the path is to be {@link #forget(String) forgotten}. <br>
+ * The paths are tied to a single session, a new session starts with no known paths. <br>
+ * The number of tracked paths is bounded, should the bound be reached all paths are forgotten and tracking starts over.
+ *
+ * @author Peter Nerg
+ * @since 1.4
+ */
+final class KnownPaths {
+
+	/** The default max number of tracked paths. */
+	static final int DefaultMaxSize = 10_000;
+
+	private final Set<String> paths = ConcurrentHashMap.newKeySet();
+	private final int maxSize;
+
+	KnownPaths() {
+		this(DefaultMaxSize);
+	}
+
+	KnownPaths(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * If the provided path is known to exist.
+	 *
+	 * @param path
+	 *            The path
+	 * @return <code>true</code> if known to exist
+	 */
+	boolean isKnown(String path) {
+		return paths.contains(path);
+	}
+
+	/**
+	 * Marks the provided path as existing.
+	 *
+	 * @param path
+	 *            The path
+	 */
+	void add(String path) {
+		if (paths.size() >= maxSize) {
+			paths.clear();
+		}
+		paths.add(path);
+	}
+
+	/**
+	 * Forgets the provided path and any known paths below it, e.g. as the path has been deleted.
+	 *
+	 * @param path
+	 *            The path
+	 */
+	void forget(String path) {
+		paths.remove(path);
+		String prefix = path + "/";
+		paths.removeIf(p -> p.startsWith(prefix));
+	}
+
+	/**
+	 * Forgets all known paths.
+	 */
+	void clear() {
+		paths.clear();
+	}
+
+	/**
+	 * The number of known paths.
+	 *
+	 * @return The number of paths
+	 */
+	int size() {
+		return paths.size();
+	}
+}
@@ -0,0 +1,157 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A concurrent histogram of non-negative values, typically latencies measured in nanoseconds. <br>
+ * The values are counted in log-linear buckets in the same manner as HdrHistogram. <br>
+ * Values below {@value #SubBuckets} are counted exactly, larger values are counted in buckets where the width of each bucket is less than 1/{@value #HalfSubBuckets}
+ * of its value. <br>
+ * I.e. any reported value is within 1.6% of the actual recorded value. <br>
+ * All buckets are allocated up front, recording a value is allocation and lock free.
+ *
+ * @author Peter Nerg
+ * @since 1.4
+ */
+public final class LatencyHistogram {
+
+	/** The number of bits of precision for each value. */
+	private static final int PrecisionBits = 7;
+
+	/** The number of linear buckets for values below the first exponential bucket. */
+	private static final int SubBuckets = 1 << PrecisionBits;
+
+	/** The number of buckets per power of two above {@link #SubBuckets}. */
+	private static final int HalfSubBuckets = SubBuckets / 2;
+
+	/** The total number of buckets needed to cover all positive long values. */
+	private static final int BucketCount = SubBuckets + (63 - PrecisionBits + 1) * HalfSubBuckets;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BucketCount);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a value. <br>
+	 * Negative values are recorded as zero.
+	 *
+	 * @param value
+	 *            The value
+	 */
+	public void record(long value) {
+		long v = Math.max(0, value);
+		counts.incrementAndGet(index(v));
+		count.incrementAndGet();
+		total.addAndGet(v);
+		long current;
+		while (v > (current = max.get()) && !max.compareAndSet(current, v)) {
+			// retry until the max is updated or some other thread recorded a larger value
+		}
+	}
+
+	/**
+	 * The number of recorded values.
+	 *
+	 * @return The count
+	 */
+	public long count() {
+		return count.get();
+	}
+
+	/**
+	 * The largest recorded value.
+	 *
+	 * @return The max value, 0 if no values are recorded
+	 */
+	public long max() {
+		return max.get();
+	}
+
+	/**
+	 * The mean of the recorded values.
+	 *
+	 * @return The mean value, 0 if no values are recorded
+	 */
+	public double mean() {
+		long c = count.get();
+		return c == 0 ? 0 : (double) total.get() / c;
+	}
+
+	/**
+	 * The value at the provided percentile. <br>
+	 * I.e. the value that the provided percentage of all recorded values are less than or equal to.
+	 *
+	 * @param percentile
+	 *            The percentile, e.g. <tt>99.9</tt>
+	 * @return The value, 0 if no values are recorded
+	 */
+	public long percentile(double percentile) {
+		long[] snapshot = new long[BucketCount];
+		long recorded = 0;
+		for (int i = 0; i < BucketCount; i++) {
+			snapshot[i] = counts.get(i);
+			recorded += snapshot[i];
+		}
+		if (recorded == 0) {
+			return 0;
+		}
+		long target = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * recorded));
+		long accumulated = 0;
+		for (int i = 0; i < BucketCount; i++) {
+			accumulated += snapshot[i];
+			if (accumulated >= target) {
+				return Math.min(highestValue(i), max());
+			}
+		}
+		return max();
+	}
+
+	/**
+	 * Provides a summary of the recorded values.
+	 */
+	@Override
+	public String toString() {
+		return "count=" + count() + ", mean=" + (long) mean() + ", p50=" + percentile(50) + ", p99=" + percentile(99) + ", p99.9=" + percentile(99.9) + ", max="
+				+ max();
+	}
+
+	/**
+	 * Get the bucket for the provided value.
+	 */
+	static int index(long value) {
+		if (value < SubBuckets) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - (PrecisionBits - 1);
+		return SubBuckets + (shift - 1) * HalfSubBuckets + (int) ((value >>> shift) - HalfSubBuckets);
+	}
+
+	/**
+	 * Get the highest value counted in the provided bucket.
+	 */
+	static long highestValue(int index) {
+		if (index < SubBuckets) {
+			return index;
+		}
+		int shift = (index - SubBuckets) / HalfSubBuckets + 1;
+		long subBucket = (index - SubBuckets) % HalfSubBuckets + HalfSubBuckets;
+		return ((subBucket + 1) << shift) - 1;
+	}
+}
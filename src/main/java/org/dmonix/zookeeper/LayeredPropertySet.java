@@ -0,0 +1,66 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static javascalautils.OptionCompanion.None;
+
+import java.util.List;
+
+import javascalautils.None;
+import javascalautils.Option;
+import javascalautils.Some;
+
+/**
+ * A live view of multiple property sets layered on top of each other, e.g. a service specific property set on top of a global property set. <br>
+ * A property is resolved from the first layer in which it exists, i.e. the first layer takes precedence over the second and so on. <br>
+ * The merged properties are kept in a single map, resolving a property costs one lookup regardless of the number of layers. <br>
+ * All layers are watched in ZooKeeper and any change to a layer is applied to the merged properties, only the changed properties are resolved anew. <br>
+ * The view is immutable, use {@link #toMutable()} to get an editable copy of the currently merged properties. <br>
+ * The layers are watched until the view is closed, or any of the watches fail in which case the view retains the last known properties and the
+ * {@link #failure() failure} is reported. <br>
+ * An expired session is not a failure, the layers are re-read once the session has been recovered. <br>
+ * Instances are obtained using {@link PropertiesStorage#layered(String...)}.
+ * @author Peter Nerg
+ * @since 1.4
+ */
+public interface LayeredPropertySet extends PropertySet, Subscription {
+
+	/**
+	 * Get the names of the layered property sets in order of precedence. <br>
+	 * The {@link #name()} of the view is the name of the first layer.
+	 * @return The names of the property sets
+	 * @since 1.4
+	 */
+	List<String> layers();
+
+	/**
+	 * Get the name of the layer from which the named property is resolved.
+	 * @param name The name of the property
+	 * @return {@link Some} with the name of the property set providing the property, {@link None} if the property does not exist in any layer
+	 * @since 1.4
+	 */
+	Option<String> layerOf(String name);
+
+	/**
+	 * Get the failure that stopped the view from being kept up to date, e.g. failing to read any of the layers. <br>
+	 * A failed view is closed and retains the last known properties.
+	 * @return {@link Some} with the failure, {@link None} if the view is kept up to date or has been closed by the user
+	 * @since 1.4
+	 */
+	default Option<Throwable> failure() {
+		return None();
+	}
+}
@@ -0,0 +1,551 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static javascalautils.OptionCompanion.None;
+import static javascalautils.OptionCompanion.Option;
+import static javascalautils.OptionCompanion.Some;
+import static javascalautils.TryCompanion.Failure;
+import static javascalautils.TryCompanion.Try;
+import static javascalautils.concurrent.PromiseCompanion.Promise;
+import static org.dmonix.zookeeper.PropertyParsers.BooleanParser;
+import static org.dmonix.zookeeper.PropertyParsers.DurationParser;
+import static org.dmonix.zookeeper.PropertyParsers.IntParser;
+import static org.dmonix.zookeeper.PropertyParsers.ListParser;
+import static org.dmonix.zookeeper.PropertyParsers.LongParser;
+
+import java.time.Duration;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import org.dmonix.zookeeper.PropertyParsers.Parsed;
+
+import javascalautils.Option;
+import javascalautils.Try;
+import javascalautils.concurrent.Future;
+import javascalautils.concurrent.Promise;
+
+/**
+ * The implementation of the layered property set. <br>
+ * Each layer is tracked using a {@link PropertiesStorage#subscribe(String, PropertySetListener) subscription}. <br>
+ * The merged properties are kept in a concurrent map holding the resolved value per property, upon a change in a layer only the properties reported as
+ * changed are resolved anew. <br>
+ * The resolved values are shared with the layers, i.e. values are only decoded once read as strings. <br>
+ * Readers access the merged map without locking, each property is updated atomically but a change spanning multiple properties may be observed partially
+ * applied.
+ *
+ * @author Peter Nerg
+ * @since 1.4
+ */
+final class LayeredPropertySetImpl implements LayeredPropertySet, PropertyValue.Values {
+
+	private final List<String> layers;
+	/** The current property set per layer, <code>null</code> if not existing, guarded by this instance. */
+	private final PropertySet[] layerProperties;
+	/** The number of layers yet to be initially read, guarded by this instance. */
+	private int pending;
+	private final Map<String, Resolved> merged = new ConcurrentHashMap<>();
+	private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+	private final Promise<LayeredPropertySet> loaded = Promise();
+	private final Set<String> keySet = Collections.unmodifiableSet(merged.keySet());
+	private final Map<String, String> map = new MapView();
+	private volatile boolean closed = false;
+	private volatile Option<Throwable> failure = None();
+
+	private LayeredPropertySetImpl(List<String> layers) {
+		this.layers = Collections.unmodifiableList(new ArrayList<>(layers));
+		this.layerProperties = new PropertySet[layers.size()];
+		this.pending = layers.size();
+	}
+
+	/**
+	 * Creates a layered property set subscribing to changes of all layers.
+	 *
+	 * @param storage
+	 *            The storage to subscribe to
+	 * @param layers
+	 *            The names of the property sets in order of precedence
+	 * @return The future completed once all layers have initially been read, failed if any layer could not be read
+	 */
+	static Future<LayeredPropertySet> subscribe(PropertiesStorage storage, List<String> layers) {
+		LayeredPropertySetImpl propertySet = new LayeredPropertySetImpl(layers);
+		for (int i = 0; i < layers.size(); i++) {
+			Subscription subscription = storage.subscribe(layers.get(i), propertySet.new Layer(i));
+			propertySet.subscriptions.add(subscription);
+			if (propertySet.closed) {
+				subscription.close(); // a previous layer failed while subscribing
+			}
+		}
+		return propertySet.loaded.future();
+	}
+
+	/**
+	 * Creates a layered property set subscribing to changes of all layers, awaiting the layers to initially be read.
+	 *
+	 * @param storage
+	 *            The storage to subscribe to
+	 * @param layers
+	 *            The names of the property sets in order of precedence
+	 * @param timeout
+	 *            The max time (millis) to wait for the layers to be read
+	 * @return The result, {@link javascalautils.Failure} if no layers are provided or any layer could not be read within the timeout
+	 */
+	static Try<LayeredPropertySet> layered(PropertiesStorage storage, List<String> layers, long timeout) {
+		if (layers.isEmpty()) {
+			return Failure(new IllegalArgumentException("At least one property set is required"));
+		}
+		return Try(() -> subscribe(storage, layers)).flatMap(layered -> {
+			Try<LayeredPropertySet> result = Try(() -> layered.result(timeout, TimeUnit.MILLISECONDS));
+			if (result.isFailure()) {
+				layered.onSuccess(LayeredPropertySet::close); // timed out, make sure the subscriptions are closed should the layers eventually be read
+			}
+			return result;
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.LayeredPropertySet#layers()
+	 */
+	@Override
+	public List<String> layers() {
+		return layers;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.LayeredPropertySet#layerOf(java.lang.String)
+	 */
+	@Override
+	public Option<String> layerOf(String name) {
+		return Option(resolved(name)).map(resolved -> layers.get(resolved.layer));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#name()
+	 */
+	@Override
+	public String name() {
+		return layers.get(0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#property(java.lang.String)
+	 */
+	@Override
+	public Option<String> property(String name) {
+		Resolved resolved = resolved(name);
+		return resolved != null ? resolved.option() : None();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#bytesProperty(java.lang.String)
+	 */
+	@Override
+	public Option<byte[]> bytesProperty(String name) {
+		Resolved resolved = resolved(name);
+		return resolved != null ? Some(resolved.value.copyOfBytes()) : None();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#propertyOrDefault(java.lang.String, java.lang.String)
+	 */
+	@Override
+	public String propertyOrDefault(String name, String defaultValue) {
+		Resolved resolved = resolved(name);
+		return resolved != null ? resolved.value.string() : defaultValue;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#containsProperty(java.lang.String)
+	 */
+	@Override
+	public boolean containsProperty(String name) {
+		return resolved(name) != null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#size()
+	 */
+	@Override
+	public int size() {
+		return merged.size();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#forEach(java.util.function.BiConsumer)
+	 */
+	@Override
+	public void forEach(BiConsumer<String, String> action) {
+		merged.forEach((key, resolved) -> action.accept(key, resolved.value.string()));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertyValue.Values#value(java.lang.String)
+	 */
+	@Override
+	public PropertyValue value(String name) {
+		Resolved resolved = resolved(name);
+		return resolved != null ? resolved.value : null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertyValue.Values#forEachValue(java.util.function.BiConsumer)
+	 */
+	@Override
+	public void forEachValue(BiConsumer<String, PropertyValue> action) {
+		merged.forEach((key, resolved) -> action.accept(key, resolved.value));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#intProperty(java.lang.String, int)
+	 */
+	@Override
+	public int intProperty(String name, int defaultValue) {
+		return typedProperty(name, IntParser, defaultValue);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#longProperty(java.lang.String, long)
+	 */
+	@Override
+	public long longProperty(String name, long defaultValue) {
+		return typedProperty(name, LongParser, defaultValue);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#booleanProperty(java.lang.String, boolean)
+	 */
+	@Override
+	public boolean booleanProperty(String name, boolean defaultValue) {
+		return typedProperty(name, BooleanParser, defaultValue);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#durationProperty(java.lang.String, java.time.Duration)
+	 */
+	@Override
+	public Duration durationProperty(String name, Duration defaultValue) {
+		return typedProperty(name, DurationParser, defaultValue);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#listProperty(java.lang.String, java.util.List)
+	 */
+	@Override
+	public List<String> listProperty(String name, List<String> defaultValue) {
+		return typedProperty(name, ListParser, defaultValue);
+	}
+
+	/**
+	 * Returns a read-only live view of the merged property names.
+	 */
+	@Override
+	public Set<String> properties() {
+		return keySet;
+	}
+
+	/**
+	 * Always throws {@link UnsupportedOperationException} as the property set is immutable, use {@link #toMutable()} to get an editable copy.
+	 */
+	@Override
+	public Option<String> set(String name, String value) {
+		throw new UnsupportedOperationException("The layered property set [" + layers + "] is immutable, use toMutable() to get an editable copy");
+	}
+
+	/**
+	 * Always throws {@link UnsupportedOperationException} as the property set is immutable, use {@link #toMutable()} to get an editable copy.
+	 */
+	@Override
+	public Option<byte[]> setBytes(String name, byte[] value) {
+		throw new UnsupportedOperationException("The layered property set [" + layers + "] is immutable, use toMutable() to get an editable copy");
+	}
+
+	/**
+	 * Returns a read-only live view of the merged properties.
+	 */
+	@Override
+	public Map<String, String> asMap() {
+		return map;
+	}
+
+	/**
+	 * Always {@link javascalautils.None} as the properties are merged from multiple property sets.
+	 */
+	@Override
+	public Option<PropertySetVersion> version() {
+		return None();
+	}
+
+	/**
+	 * Creates a mutable copy of the currently merged properties, named as the first layer.
+	 */
+	@Override
+	public PropertySet toMutable() {
+		PropertySetImpl propertySet = new PropertySetImpl(name());
+		forEachValue(propertySet::setValue);
+		return propertySet;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.dmonix.zookeeper.LayeredPropertySet#failure()
+	 */
+	@Override
+	public Option<Throwable> failure() {
+		return failure;
+	}
+
+	/**
+	 * Closes the subscriptions of all layers, the merged properties are retained as they were.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		subscriptions.forEach(Subscription::close);
+	}
+
+	/**
+	 * Provides a meaningful string representation of the property set
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(merged.size() * 32);
+		sb.append(layers).append("{");
+		forEach((k, v) -> sb.append(k).append(":").append(v).append(","));
+		sb.append("}");
+		return sb.toString();
+	}
+
+	/**
+	 * Applies a change of a layer to the merged properties. <br>
+	 * Only the changed properties are resolved, a property changed in a layer shadowed by a layer with higher precedence yields no change.
+	 */
+	private synchronized void update(int layer, Option<PropertySet> propertySet, Set<String> changedProperties) {
+		if (closed) {
+			return;
+		}
+		layerProperties[layer] = propertySet.orNull();
+		changedProperties.forEach(this::resolve);
+		if (pending > 0 && --pending == 0) {
+			loaded.trySuccess(this);
+		}
+	}
+
+	/**
+	 * Resolves the named property from the first layer in which it has a value.
+	 */
+	private void resolve(String name) {
+		for (int i = 0; i < layerProperties.length; i++) {
+			PropertyValue value = layerProperties[i] != null ? PropertyValue.of(layerProperties[i], name) : null;
+			if (value != null) {
+				Resolved current = merged.get(name);
+				if (current == null || current.layer != i || !current.value.equals(value)) {
+					merged.put(name, new Resolved(value, i));
+				}
+				return;
+			}
+		}
+		merged.remove(name);
+	}
+
+	/**
+	 * Fails the view, it is closed retaining the merged properties and the failure is reported by {@link #failure()}.
+	 */
+	private void fail(Throwable error) {
+		if (!closed) {
+			failure = Some(error);
+		}
+		loaded.tryFailure(error);
+		close();
+	}
+
+	/**
+	 * Get the resolved property, the merged map does not allow for <code>null</code> keys.
+	 */
+	private Resolved resolved(Object name) {
+		return name != null ? merged.get(name) : null;
+	}
+
+	private <T> T typedProperty(String name, Function<String, T> parser, T defaultValue) {
+		Resolved resolved = resolved(name);
+		if (resolved == null) {
+			return defaultValue;
+		}
+		Parsed cached = resolved.parsed;
+		T result = cached != null ? cached.value(parser) : null;
+		if (result == null) {
+			result = PropertyParsers.parse(layers.get(resolved.layer), name, resolved.value.string(), parser);
+			resolved.parsed = new Parsed(parser, result);
+		}
+		return result;
+	}
+
+	/**
+	 * The resolved value of a property.
+	 */
+	private static final class Resolved {
+		private final PropertyValue value;
+		/** The index of the layer providing the value. */
+		private final int layer;
+		/** The value as returned by {@link LayeredPropertySetImpl#property(String)}, created on first access and written without synchronization as {@link Option} is immutable. */
+		private Option<String> option;
+		/** The parsed typed value, written without synchronization as {@link Parsed} is immutable. */
+		private Parsed parsed;
+
+		private Resolved(PropertyValue value, int layer) {
+			this.value = value;
+			this.layer = layer;
+		}
+
+		private Option<String> option() {
+			Option<String> result = option;
+			if (result == null) {
+				result = Some(value.string());
+				option = result;
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Listener for changes to a single layer.
+	 */
+	private final class Layer implements PropertySetListener {
+		private final int index;
+
+		private Layer(int index) {
+			this.index = index;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see org.dmonix.zookeeper.PropertySetListener#onChange(javascalautils.Option, java.util.Set)
+		 */
+		@Override
+		public void onChange(Option<PropertySet> propertySet, Set<String> changedProperties) {
+			update(index, propertySet, changedProperties);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see org.dmonix.zookeeper.PropertySetListener#onError(java.lang.Throwable)
+		 */
+		@Override
+		public void onError(Throwable error) {
+			fail(error);
+		}
+	}
+
+	/**
+	 * Read-only live map view of the merged properties.
+	 */
+	private final class MapView extends AbstractMap<String, String> {
+		private final Set<Map.Entry<String, String>> entries = new AbstractSet<Map.Entry<String, String>>() {
+			@Override
+			public Iterator<Map.Entry<String, String>> iterator() {
+				Iterator<Map.Entry<String, Resolved>> iterator = merged.entrySet().iterator();
+				return new Iterator<Map.Entry<String, String>>() {
+					@Override
+					public boolean hasNext() {
+						return iterator.hasNext();
+					}
+
+					@Override
+					public Map.Entry<String, String> next() {
+						Map.Entry<String, Resolved> entry = iterator.next();
+						return new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue().value.string());
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return merged.size();
+			}
+		};
+
+		@Override
+		public Set<Map.Entry<String, String>> entrySet() {
+			return entries;
+		}
+
+		@Override
+		public int size() {
+			return merged.size();
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return resolved(key) != null;
+		}
+
+		@Override
+		public String get(Object key) {
+			Resolved resolved = resolved(key);
+			return resolved != null ? resolved.value.string() : null;
+		}
+
+		@Override
+		public Set<String> keySet() {
+			return keySet;
+		}
+	}
+}
@@ -0,0 +1,58 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import java.util.Collection;
+
+import javascalautils.Failure;
+import javascalautils.Success;
+import javascalautils.Try;
+import javascalautils.Unit;
+
+/**
+ * A property set where only the names of the properties are read up front. <br>
+ * The value of each property is read from ZooKeeper on first access and thereafter kept in the instance. <br>
+ * This is intended for very large property sets where a process only reads a few of the properties, memory and load time are then proportional to the
+ * properties actually accessed. <br>
+ * The names of the properties are fixed at the time the property set was read. <br>
+ * Should a property be removed before its value is read it is treated as having no value. <br>
+ * Any method requiring a value not yet read performs a blocking read, failing with an {@link IllegalStateException} if the value could not be read.
+ * Use {@link #prefetch(Collection)} to read a known set of properties in a single round trip. <br>
+ * The property set is immutable, use {@link #toMutable()} to get an editable copy (which reads all values). <br>
+ * Instances are obtained using {@link PropertiesStorage#getLazy(String)}.
+ * @author Peter Nerg
+ * @since 1.4
+ */
+public interface LazyPropertySet extends PropertySet {
+
+	/**
+	 * Reads the values of the provided properties in one go. <br>
+	 * All values not already read are requested at the same time, i.e. the cost is roughly one round trip regardless of the number of properties. <br>
+	 * Names not part of this property set are ignored.
+	 * @param names The names of the properties to read
+	 * @return The result, {@link Failure} in case there was a problem reading the data else {@link Success}
+	 * @since 1.4
+	 */
+	Try<Unit> prefetch(Collection<String> names);
+
+	/**
+	 * Check if the value of the named property has been read.
+	 * @param name The name of the property
+	 * @return <code>true</code> if the value has been read
+	 * @since 1.4
+	 */
+	boolean isLoaded(String name);
+}
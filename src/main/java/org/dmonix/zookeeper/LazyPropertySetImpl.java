@@ -0,0 +1,393 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static javascalautils.OptionCompanion.None;
+import static javascalautils.OptionCompanion.Option;
+import static javascalautils.OptionCompanion.Some;
+import static javascalautils.TryCompanion.Success;
+import static org.dmonix.zookeeper.PropertyParsers.BooleanParser;
+import static org.dmonix.zookeeper.PropertyParsers.DurationParser;
+import static org.dmonix.zookeeper.PropertyParsers.IntParser;
+import static org.dmonix.zookeeper.PropertyParsers.ListParser;
+import static org.dmonix.zookeeper.PropertyParsers.LongParser;
+import static org.dmonix.zookeeper.PropertyValue.string;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import org.dmonix.zookeeper.PropertyParsers.Parsed;
+
+import javascalautils.Option;
+import javascalautils.Try;
+import javascalautils.Unit;
+
+/**
+ * The implementation of the lazy property set. <br>
+ * The names of the properties are kept in a sorted array with the read values in an array of the same order. <br>
+ * A value not yet read is represented by <code>null</code>, once read it is never changed. <br>
+ * The values are kept as read from ZooKeeper and only decoded once read as strings. <br>
+ * Concurrent readers may both read the same value from ZooKeeper, the outcome is the same regardless of which read is stored.
+ *
+ * @author Peter Nerg
+ * @since 1.4
+ */
+final class LazyPropertySetImpl implements LazyPropertySet, PropertyValue.Values {
+
+	private final String name;
+	private final Option<PropertySetVersion> version;
+	private final String[] keys;
+	private final AtomicReferenceArray<Option<PropertyValue>> values;
+	/** The parsed typed value per property, written without synchronization as {@link Parsed} is immutable. */
+	private final Parsed[] parsed;
+	private final Set<String> names;
+	/** Reads the values of the provided properties, properties missing in the result are treated as not existing. */
+	private final Function<Collection<String>, Try<Map<String, PropertyValue>>> loader;
+
+	/**
+	 * @param name The name of the property set
+	 * @param version The version of the property set as read from ZooKeeper
+	 * @param properties The names of the properties
+	 * @param loaded The values of the properties already read
+	 * @param loader Reads the values of the provided properties
+	 */
+	LazyPropertySetImpl(String name, Option<PropertySetVersion> version, Collection<String> properties, Map<String, PropertyValue> loaded,
+			Function<Collection<String>, Try<Map<String, PropertyValue>>> loader) {
+		this.name = name;
+		this.version = version;
+		this.keys = properties.toArray(new String[properties.size()]);
+		Arrays.sort(keys);
+		this.values = new AtomicReferenceArray<>(keys.length);
+		this.parsed = new Parsed[keys.length];
+		this.names = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(keys)));
+		this.loader = loader;
+		for (int i = 0; i < keys.length; i++) {
+			if (loaded.containsKey(keys[i])) {
+				values.set(i, Option(loaded.get(keys[i])));
+			}
+		}
+	}
+
+	/**
+	 * Creates a lazy property set with all values already read from the provided property set, used by storages not able to read values on demand.
+	 * @param propertySet The property set
+	 * @return The lazy property set
+	 */
+	static LazyPropertySet loaded(PropertySet propertySet) {
+		Map<String, PropertyValue> values = new HashMap<>();
+		PropertyValue.forEach(propertySet, values::put);
+		return new LazyPropertySetImpl(propertySet.name(), propertySet.version(), values.keySet(), values, names -> Success(Collections.emptyMap()));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#name()
+	 */
+	@Override
+	public String name() {
+		return name;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#property(java.lang.String)
+	 */
+	@Override
+	public Option<String> property(String name) {
+		PropertyValue value = value(name);
+		return value != null ? Some(value.string()) : None();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#bytesProperty(java.lang.String)
+	 */
+	@Override
+	public Option<byte[]> bytesProperty(String name) {
+		PropertyValue value = value(name);
+		return value != null ? Some(value.copyOfBytes()) : None();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#propertyOrDefault(java.lang.String, java.lang.String)
+	 */
+	@Override
+	public String propertyOrDefault(String name, String defaultValue) {
+		PropertyValue value = value(name);
+		return value != null ? value.string() : defaultValue;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#containsProperty(java.lang.String)
+	 */
+	@Override
+	public boolean containsProperty(String name) {
+		return index(name) >= 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#size()
+	 */
+	@Override
+	public int size() {
+		return keys.length;
+	}
+
+	/**
+	 * Reads all values not yet read before performing the action for each property.
+	 */
+	@Override
+	public void forEach(BiConsumer<String, String> action) {
+		forEachValue((key, value) -> action.accept(key, string(value)));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertyValue.Values#value(java.lang.String)
+	 */
+	@Override
+	public PropertyValue value(String name) {
+		int index = index(name);
+		return index < 0 ? null : value(index).orNull();
+	}
+
+	/**
+	 * Reads all values not yet read before performing the action for each property.
+	 */
+	@Override
+	public void forEachValue(BiConsumer<String, PropertyValue> action) {
+		loadAll();
+		for (int i = 0; i < keys.length; i++) {
+			action.accept(keys[i], values.get(i).orNull());
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#intProperty(java.lang.String, int)
+	 */
+	@Override
+	public int intProperty(String name, int defaultValue) {
+		return typedProperty(name, IntParser, defaultValue);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#longProperty(java.lang.String, long)
+	 */
+	@Override
+	public long longProperty(String name, long defaultValue) {
+		return typedProperty(name, LongParser, defaultValue);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#booleanProperty(java.lang.String, boolean)
+	 */
+	@Override
+	public boolean booleanProperty(String name, boolean defaultValue) {
+		return typedProperty(name, BooleanParser, defaultValue);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#durationProperty(java.lang.String, java.time.Duration)
+	 */
+	@Override
+	public Duration durationProperty(String name, Duration defaultValue) {
+		return typedProperty(name, DurationParser, defaultValue);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#listProperty(java.lang.String, java.util.List)
+	 */
+	@Override
+	public List<String> listProperty(String name, List<String> defaultValue) {
+		return typedProperty(name, ListParser, defaultValue);
+	}
+
+	/**
+	 * Returns a read-only view of the property names, no values are read.
+	 */
+	@Override
+	public Set<String> properties() {
+		return names;
+	}
+
+	/**
+	 * Always throws {@link UnsupportedOperationException} as the property set is immutable, use {@link #toMutable()} to get an editable copy.
+	 */
+	@Override
+	public Option<String> set(String name, String value) {
+		throw new UnsupportedOperationException("The property set [" + this.name + "] is immutable, use toMutable() to get an editable copy");
+	}
+
+	/**
+	 * Always throws {@link UnsupportedOperationException} as the property set is immutable, use {@link #toMutable()} to get an editable copy.
+	 */
+	@Override
+	public Option<byte[]> setBytes(String name, byte[] value) {
+		throw new UnsupportedOperationException("The property set [" + this.name + "] is immutable, use toMutable() to get an editable copy");
+	}
+
+	/**
+	 * Reads all values not yet read and returns a read-only map of the properties.
+	 */
+	@Override
+	public Map<String, String> asMap() {
+		Map<String, String> map = new HashMap<>();
+		forEach(map::put);
+		return Collections.unmodifiableMap(map);
+	}
+
+	/**
+	 * The version as of when the names of the properties were listed, values read later on may be of a later version.
+	 */
+	@Override
+	public Option<PropertySetVersion> version() {
+		return version;
+	}
+
+	/**
+	 * Reads all values not yet read and returns a mutable copy of the property set.
+	 */
+	@Override
+	public PropertySet toMutable() {
+		PropertySetImpl propertySet = new PropertySetImpl(name, version);
+		forEachValue(propertySet::setValue);
+		return propertySet;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.LazyPropertySet#prefetch(java.util.Collection)
+	 */
+	@Override
+	public Try<Unit> prefetch(Collection<String> names) {
+		List<String> missing = new ArrayList<>();
+		for (String property : names) {
+			int index = index(property);
+			if (index >= 0 && values.get(index) == null) {
+				missing.add(property);
+			}
+		}
+		if (missing.isEmpty()) {
+			return Success(Unit.Instance);
+		}
+		return loader.apply(missing).map(loaded -> {
+			for (String property : missing) {
+				values.compareAndSet(index(property), null, Option(loaded.get(property)));
+			}
+			return Unit.Instance;
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.LazyPropertySet#isLoaded(java.lang.String)
+	 */
+	@Override
+	public boolean isLoaded(String name) {
+		int index = index(name);
+		return index >= 0 && values.get(index) != null;
+	}
+
+	/**
+	 * Provides a meaningful string representation of the property set, properties not yet read are shown with the value <tt>?</tt>.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(name.length() + 2 + keys.length * 32);
+		sb.append(name).append("{");
+		for (int i = 0; i < keys.length; i++) {
+			Option<PropertyValue> value = values.get(i);
+			sb.append(keys[i]).append(":").append(value != null ? value.orNull() : "?").append(",");
+		}
+		sb.append("}");
+		return sb.toString();
+	}
+
+	private int index(String key) {
+		return key != null ? Arrays.binarySearch(keys, key) : -1;
+	}
+
+	/**
+	 * Get the value at the provided index, reading it from ZooKeeper if not already read.
+	 */
+	private Option<PropertyValue> value(int index) {
+		Option<PropertyValue> value = values.get(index);
+		if (value == null) {
+			prefetch(Collections.singleton(keys[index])).failed().forEach(ex -> {
+				throw new IllegalStateException("Failed to read the property [" + keys[index] + "] of the property set [" + name + "]", ex);
+			});
+			value = values.get(index);
+		}
+		return value;
+	}
+
+	private void loadAll() {
+		prefetch(names).failed().forEach(ex -> {
+			throw new IllegalStateException("Failed to read the properties of the property set [" + name + "]", ex);
+		});
+	}
+
+	private <T> T typedProperty(String name, Function<String, T> parser, T defaultValue) {
+		int index = index(name);
+		if (index < 0) {
+			return defaultValue;
+		}
+		PropertyValue value = value(index).orNull();
+		if (value == null) {
+			return defaultValue;
+		}
+		Parsed cached = parsed[index];
+		T result = cached != null ? cached.value(parser) : null;
+		if (result == null) {
+			result = PropertyParsers.parse(this.name, name, value.string(), parser);
+			parsed[index] = new Parsed(parser, result);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,217 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static javascalautils.concurrent.PromiseCompanion.Promise;
+import static org.apache.zookeeper.CreateMode.PERSISTENT;
+import static org.apache.zookeeper.ZooDefs.Ids.OPEN_ACL_UNSAFE;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.Op;
+import org.apache.zookeeper.ZooKeeper;
+
+import javascalautils.Unit;
+import javascalautils.concurrent.Future;
+import javascalautils.concurrent.Promise;
+
+/**
+ * Collects operations to be executed as <tt>multi</tt> transactions in ZooKeeper. <br>
+ * A single request to ZooKeeper may not exceed the size of <tt>jute.maxbuffer</tt>, hence the operations are split into chunks where the estimated size
+ * of each chunk stays well below that limit. <br>
+ * As long as the operations fit into a single chunk they are executed as one atomic transaction.
+ *
+ * @author Peter Nerg
+ * @since 1.4
+ */
+final class OpBatch {
+
+	/** The default max size of a chunk, half the size of the max buffer in ZooKeeper to leave room for the overhead of the request. */
+	static final int DefaultMaxSize = Integer.getInteger("jute.maxbuffer", 0xfffff) / 2;
+
+	/** The estimated overhead (bytes) of each operation, e.g. type, version, ACL and flags. */
+	private static final int OpOverhead = 64;
+
+	private final int maxSize;
+	private final List<List<Op>> chunks = new ArrayList<>();
+	private List<Op> current = new ArrayList<>();
+	private int currentSize = 0;
+	private int size = 0;
+	private long bytes = 0;
+	/** The number of operations in the chunks committed so far, written by the ZooKeeper event thread. */
+	private volatile int committed = 0;
+
+	OpBatch() {
+		this(DefaultMaxSize);
+	}
+
+	OpBatch(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Adds a create operation for a persistent node.
+	 *
+	 * @param path
+	 *            The path to create
+	 * @param data
+	 *            The data for the node
+	 * @return This instance
+	 */
+	OpBatch create(String path, byte[] data) {
+		return add(Op.create(path, data, OPEN_ACL_UNSAFE, PERSISTENT), path, data.length);
+	}
+
+	/**
+	 * Adds a delete operation.
+	 *
+	 * @param path
+	 *            The path to delete
+	 * @param version
+	 *            The expected version, -1 for any version
+	 * @return This instance
+	 */
+	OpBatch delete(String path, int version) {
+		return add(Op.delete(path, version), path, 0);
+	}
+
+	/**
+	 * Adds a set data operation.
+	 *
+	 * @param path
+	 *            The path to set the data on
+	 * @param data
+	 *            The data
+	 * @param version
+	 *            The expected version, -1 for any version
+	 * @return This instance
+	 */
+	OpBatch setData(String path, byte[] data, int version) {
+		return add(Op.setData(path, data, version), path, data.length);
+	}
+
+	/**
+	 * If there are no operations in this batch.
+	 *
+	 * @return <code>true</code> if empty
+	 */
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * The number of operations in this batch.
+	 *
+	 * @return The number of operations
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * The number of <tt>multi</tt> transactions needed to commit this batch.
+	 *
+	 * @return The number of transactions
+	 */
+	int transactions() {
+		return current.isEmpty() ? chunks.size() : chunks.size() + 1;
+	}
+
+	/**
+	 * The total size of the data written by the operations in this batch.
+	 *
+	 * @return The number of bytes
+	 */
+	long bytes() {
+		return bytes;
+	}
+
+	/**
+	 * The number of operations committed by {@link #commit(ZooKeeper)}. <br>
+	 * Should a chunk fail this is the number of operations in the chunks committed before the failing one.
+	 *
+	 * @return The number of committed operations
+	 */
+	int committed() {
+		return committed;
+	}
+
+	/**
+	 * Get the operations split into chunks each fitting into a single <tt>multi</tt> request.
+	 *
+	 * @return The chunks, empty if there are no operations
+	 */
+	List<List<Op>> chunks() {
+		List<List<Op>> result = new ArrayList<>(chunks);
+		if (!current.isEmpty()) {
+			result.add(current);
+		}
+		return Collections.unmodifiableList(result);
+	}
+
+	/**
+	 * Asynchronously executes the chunks in sequence, one <tt>multi</tt> transaction per chunk. <br>
+	 * Should a chunk fail the remaining chunks are not executed.
+	 *
+	 * @param zooKeeper
+	 *            The ZooKeeper connection
+	 * @return The future result, failed with the {@link KeeperException} of the first failing operation
+	 */
+	Future<Unit> commit(ZooKeeper zooKeeper) {
+		Promise<Unit> promise = Promise();
+		committed = 0;
+		commit(zooKeeper, chunks().iterator(), promise);
+		return promise.future();
+	}
+
+	private void commit(ZooKeeper zooKeeper, Iterator<List<Op>> chunks, Promise<Unit> promise) {
+		if (!chunks.hasNext()) {
+			promise.success(Unit.Instance);
+			return;
+		}
+		List<Op> chunk = chunks.next();
+		zooKeeper.multi(chunk, (rc, path, ctx, results) -> {
+			Code code = Code.get(rc);
+			if (code == Code.OK) {
+				committed += chunk.size();
+				commit(zooKeeper, chunks, promise);
+			} else {
+				promise.failure(KeeperException.create(code));
+			}
+		}, null);
+	}
+
+	private OpBatch add(Op op, String path, int dataSize) {
+		// the path is serialized as UTF-8, i.e. non-ASCII characters take more than one byte
+		int opSize = OpOverhead + path.getBytes(UTF_8).length + dataSize;
+		if (!current.isEmpty() && currentSize + opSize > maxSize) {
+			chunks.add(current);
+			current = new ArrayList<>();
+			currentSize = 0;
+		}
+		current.add(op);
+		currentSize += opSize;
+		bytes += dataSize;
+		size++;
+		return this;
+	}
+}
@@ -15,8 +15,14 @@
  */
 package org.dmonix.zookeeper;
 
+import static javascalautils.TryCompanion.Failure;
+
 import java.io.Closeable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javascalautils.Failure;
 import javascalautils.None;
@@ -43,18 +49,77 @@ public interface PropertiesStorage extends Closeable {
 	 * @since 1.0
 	 */
 	Try<Option<PropertySet>> get(String name);
+
+	/**
+	 * Attempt to get all the named property sets. <br>
+	 * The result for each property set is reported individually in the same manner as for {@link #get(String)}. <br>
+	 * I.e. the failure to get one property set does not affect the others. <br>
+	 * The returned map contains one entry per provided name and retains the iteration order of the provided names.
+	 * @param names The names of the property sets
+	 * @return The result per property set name
+	 * @since 1.4
+	 */
+	default Map<String, Try<Option<PropertySet>>> getAll(Collection<String> names) {
+		Map<String, Try<Option<PropertySet>>> result = new LinkedHashMap<>();
+		names.forEach(name -> result.put(name, get(name)));
+		return result;
+	}
+
+	/**
+	 * Attempt to get all persisted property sets. <br>
+	 * The names of the property sets are first listed using {@link #propertySets()} after which all the property sets are fetched using {@link #getAll(Collection)}.
+	 * @return {@link Failure} in case listing the property sets fails, else {@link Success} with the result per property set name
+	 * @since 1.4
+	 */
+	default Try<Map<String, Try<Option<PropertySet>>>> getAll() {
+		return propertySets().map(this::getAll);
+	}
+	
+	/**
+	 * Attempt to get a named property set where only the names of the properties are read up front. <br>
+	 * The value of each property is read on first access, see {@link LazyPropertySet}. <br>
+	 * This is intended for very large property sets of which only a few properties are read. <br>
+	 * The result is reported in the same manner as for {@link #get(String)}. <br>
+	 * The default implementation reads the entire property set using {@link #get(String)}, i.e. all values are read up front.
+	 * @param name The name of the property set
+	 * @return The result
+	 * @since 1.4
+	 */
+	default Try<Option<LazyPropertySet>> getLazy(String name) {
+		return get(name).map(propertySet -> propertySet.map(LazyPropertySetImpl::loaded));
+	}
 	
 	/**
 	 * Attempt to store the provided property set. <br>
      * Note: Any existing property set in ZooKeeper will be overwritten.<br>
-     * In an essence the path is first removed and then re-created with the properties provided. <br>
-     * This mimics the behavior of storing property sets to a file where the actual file is overwritten
+     * In an essence the existing properties are first removed and then re-created with the properties provided. <br>
+     * This mimics the behavior of storing property sets to a file where the actual file is overwritten. <br>
+     * The removal and re-creation is performed as a single transaction, i.e. readers never see a partially written property set. <br>
+     * Only property sets too large to fit in a single ZooKeeper request (<tt>jute.maxbuffer</tt>) are written using multiple transactions.
 	 * @param propertySet The property set to store
 	 * @return The result, {@link Failure} in case there was a problem persisting the data else {@link Success}
 	 * @since 1.0
 	 */
 	Try<Unit> store(PropertySet propertySet);
 
+	/**
+	 * Attempt to store the provided property set provided it has not been modified since it was read. <br>
+	 * The {@link PropertySet#version() version} of the property set is compared to the persisted version, should they differ the operation fails without
+	 * writing anything. A property set without version is only stored if there is no persisted property set with the same name. <br>
+	 * The version is verified as part of the same <tt>multi</tt> transaction as the write, i.e. of concurrent writers of the same version only one succeeds. <br>
+	 * This allows for optimistic concurrency, upon a conflict the property set is read anew, modified and stored once more. <br>
+	 * The data version is incremented by every store, changes made directly to the property znodes bypassing this library are only detected if they
+	 * add or remove properties. <br>
+	 * The check cannot be built atomically on top of the other operations, the default implementation therefore fails with
+	 * {@link UnsupportedOperationException}.
+	 * @param propertySet The property set to store
+	 * @return The result, {@link Failure} with {@link java.util.ConcurrentModificationException} in case of a version conflict, else {@link Success}
+	 * @since 1.4
+	 */
+	default Try<Unit> storeIfUnchanged(PropertySet propertySet) {
+		return Failure(new UnsupportedOperationException("Versioned store is not supported by [" + getClass().getName() + "]"));
+	}
+
 	/**
 	 * Attempts to delete an existing property set. <br>
 	 * Attempting to delete non-existing data will <u>not</u> yield a {@link Failure}.
@@ -72,6 +137,49 @@ public interface PropertiesStorage extends Closeable {
 	 */
 	Try<List<String>> propertySets();
 	
+	/**
+	 * Subscribe for changes to the named property set. <br>
+	 * The property set is watched in ZooKeeper and the listener is notified each time it is created, changed or deleted. <br>
+	 * The listener is initially notified once the property set has been read, thereafter only when the property set actually has changed. <br>
+	 * Bursts of changes, e.g. storing a property set with many properties, are coalesced into a single notification with the resulting state of the property set. <br>
+	 * The subscription is active until closed or this storage is closed. <br>
+	 * Watching requires support by the storage, the default implementation throws {@link UnsupportedOperationException}.
+	 * @param name The name of the property set
+	 * @param listener The listener to notify
+	 * @return The subscription
+	 * @throws UnsupportedOperationException If the storage does not support subscriptions
+	 * @since 1.4
+	 */
+	default Subscription subscribe(String name, PropertySetListener listener) {
+		throw new UnsupportedOperationException("Subscriptions are not supported by [" + getClass().getName() + "]");
+	}
+	
+	/**
+	 * Creates a live view of the named property sets layered on top of each other. <br>
+	 * A property is resolved from the first property set in which it exists, e.g. <code>layered("service-a", "global")</code> yields the properties of
+	 * <tt>global</tt> overridden by those of <tt>service-a</tt>. <br>
+	 * The layers are watched and the view is kept up to date until it is closed or this storage is closed, see {@link LayeredPropertySet}. <br>
+	 * Property sets that do not exist are treated as empty layers. <br>
+	 * The default implementation builds the view on {@link #subscribe(String, PropertySetListener)}, i.e. requires the storage to support subscriptions.
+	 * @param names The names of the property sets in order of precedence
+	 * @return The result, {@link Failure} in case any of the property sets could not be read else {@link Success} once all layers have been read
+	 * @since 1.4
+	 */
+	default Try<LayeredPropertySet> layered(String... names) {
+		return LayeredPropertySetImpl.layered(this, Arrays.asList(names), ZooKeeperStorage.DefaultSessionTimeout);
+	}
+	
+	/**
+	 * Get the asynchronous view of this storage. <br>
+	 * The view operates on the same connection and data as this instance, it is merely a non-blocking way of performing the same operations. <br>
+	 * The default implementation executes the blocking operations of this instance on a separate thread.
+	 * @return The asynchronous view
+	 * @since 1.4
+	 */
+	default AsyncPropertiesStorage async() {
+		return new BlockingAsyncPropertiesStorage(this);
+	}
+	
 	/**
 	 * Overrides the {@link Closeable#close()} method by not throwing an exception
 	 * @since 1.3
@@ -15,8 +15,12 @@
  */
 package org.dmonix.zookeeper;
 
+import java.nio.file.Path;
+import java.time.Duration;
+
 import javascalautils.Try;
 import javascalautils.Validator;
+import javascalautils.concurrent.Future;
 
 /**
  * Factory for creating {@link PropertiesStorage} instances.
@@ -42,12 +46,132 @@ public interface PropertiesStorageFactory {
 	 * @since 1.1
 	 */
 	PropertiesStorageFactory withRootPath(String rootPath);
+
+	/**
+	 * Enables local caching of the property sets. <br>
+	 * The created storage will serve property sets and the list of property set names from memory, only reading from ZooKeeper on the first access. <br>
+	 * The cached data is kept up to date using watches in ZooKeeper, i.e. any change to the data in ZooKeeper is automatically reflected in the cache.
+	 * @return The factory instance
+	 * @since 1.4
+	 */
+	PropertiesStorageFactory withCache();
+
+	/**
+	 * Enables local caching of the property sets bounded by the estimated memory retained by the cached property sets. <br>
+	 * Works as {@link #withCache()} with the difference that the cache holds at most the provided number of bytes (estimated). <br>
+	 * Once full a newly read property set is only cached if it is more frequently used than the property sets it would replace (TinyLFU admission), the
+	 * replaced property sets are those least recently used. This keeps the frequently used property sets cached even when a large number of property sets
+	 * are read once. <br>
+	 * The cache activity (hits, misses, evictions, rejections) and size is reported to the {@link #withMetrics(StorageMetrics) metrics}.
+	 * @param maxBytes The max estimated number of bytes retained by the cached property sets
+	 * @return The factory instance
+	 * @since 1.4
+	 */
+	PropertiesStorageFactory withCache(long maxBytes);
+
+	/**
+	 * Enables local caching of the property sets where each property set is cached at most the provided time. <br>
+	 * A cached property set is kept up to date by watches, the expiry is not about stale data but to release the memory and watches of property sets no
+	 * longer used. An expired property set is read anew from ZooKeeper on the next access. <br>
+	 * Can be combined with {@link #withCache(long)}.
+	 * @param expiry The max time a property set is cached
+	 * @return The factory instance
+	 * @since 1.4
+	 */
+	PropertiesStorageFactory withCacheExpiry(Duration expiry);
+
+	/**
+	 * Enables incremental storing of property sets. <br>
+	 * Instead of replacing all properties of a stored property set the current properties are read and only the ones added, changed or removed are written. <br>
+	 * This reduces the amount of writes to ZooKeeper and the number of triggered watches when only a few properties of a set are changed. <br>
+	 * The cost is an additional read of the property set for each store.
+	 * @return The factory instance
+	 * @since 1.4
+	 */
+	PropertiesStorageFactory withIncrementalStore();
+
+	/**
+	 * Provides the format used when storing property sets. <br>
+	 * Property sets stored in any format can always be read, the format only decides how property sets are written. <br>
+	 * Default is {@link StorageFormat#Tree}.
+	 * @param format The format
+	 * @return The factory instance
+	 * @since 1.4
+	 */
+	PropertiesStorageFactory withStorageFormat(StorageFormat format);
+
+	/**
+	 * Provides the metrics to report the latency, outcome, ZooKeeper requests and data volume of all storage operations to. <br>
+	 * Note that with a {@link #withCache() cache} only the operations actually performed towards ZooKeeper are reported. <br>
+	 * Default is to not collect any metrics.
+	 * @param metrics The metrics
+	 * @return The factory instance
+	 * @see InMemoryStorageMetrics
+	 * @since 1.4
+	 */
+	PropertiesStorageFactory withMetrics(StorageMetrics metrics);
+
+	/**
+	 * Enables compression of data written to ZooKeeper. <br>
+	 * Property values (or the complete property set in the {@link StorageFormat#Compact} format) of at least the provided size are compressed using
+	 * <tt>Deflate</tt> before being written, reducing the memory used by the ZooKeeper ensemble and the network traffic. <br>
+	 * Compressed data is marked with a header, hence compressed and plain data can be read side by side regardless of this setting. <br>
+	 * Data is only stored compressed if compressing actually makes it smaller. <br>
+	 * Default is to not compress any data.
+	 * @param threshold The minimum size (bytes) of the data to compress
+	 * @return The factory instance
+	 * @since 1.4
+	 */
+	PropertiesStorageFactory withCompression(int threshold);
+
+	/**
+	 * Enables a local on-disk snapshot of the property sets. <br>
+	 * Each property set read from ZooKeeper is kept in the snapshot file, should ZooKeeper not be available the property sets are served from the snapshot. <br>
+	 * With a snapshot the {@link #create()} operation does not wait for the connection to ZooKeeper, the connection is instead established in the background. <br>
+	 * I.e. the storage is immediately usable serving property sets from the snapshot until connected, once connected all property sets in the snapshot
+	 * are read anew from ZooKeeper.
+	 * @param file The snapshot file, created if it does not exist
+	 * @return The factory instance
+	 * @since 1.4
+	 */
+	PropertiesStorageFactory withSnapshot(Path file);
+
+	/**
+	 * Sets the session timeout of the ZooKeeper session. <br>
+	 * This is also the max time any blocking operation waits for the response from ZooKeeper. <br>
+	 * Defaults to 10 seconds. Note that the session timeout is negotiated with the ZooKeeper server, the server may adjust it to within its own limits.
+	 * @param timeout The session timeout
+	 * @return The factory instance
+	 * @since 1.4
+	 */
+	PropertiesStorageFactory withSessionTimeout(Duration timeout);
+
+	/**
+	 * Sets the max time to wait for the connection to ZooKeeper to be established when creating the storage. <br>
+	 * Defaults to 10 seconds.
+	 * @param timeout The connect timeout
+	 * @return The factory instance
+	 * @since 1.4
+	 */
+	PropertiesStorageFactory withConnectTimeout(Duration timeout);
 	
 	/**
-	 * Creates a properties storage instance.
+	 * Creates a properties storage instance. <br>
+	 * All storage instances using the same connect string share a single ZooKeeper session, regardless of e.g. the root path. <br>
+	 * The session is closed once all the storage instances using it have been {@link PropertiesStorage#close() closed}.
 	 * @return The result of creating the instance
 	 * @since 1.0
 	 */
 	Try<PropertiesStorage> create();
 
+	/**
+	 * Asynchronously creates a properties storage instance. <br>
+	 * As opposed to {@link #create()} no thread is blocked while connecting to ZooKeeper, the returned future is completed once connected. <br>
+	 * This allows for establishing the connection in parallel with other initialization of an application. <br>
+	 * A storage with a {@link #withSnapshot(Path) snapshot} doesn't wait for the connection at all, the future is then completed immediately.
+	 * @return The future result, failed if the connection could not be established within the {@link #withConnectTimeout(Duration) connect timeout}
+	 * @since 1.4
+	 */
+	Future<PropertiesStorage> createAsync();
+
 }
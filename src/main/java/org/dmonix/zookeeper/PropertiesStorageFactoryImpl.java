@@ -15,9 +15,17 @@
  */
 package org.dmonix.zookeeper;
 
+import static javascalautils.OptionCompanion.None;
+import static javascalautils.OptionCompanion.Some;
 import static javascalautils.TryCompanion.Try;
 
+import java.nio.file.Path;
+import java.time.Duration;
+
+import javascalautils.Option;
 import javascalautils.Try;
+import javascalautils.Validator;
+import javascalautils.concurrent.Future;
 
 /**
  * The implementation of the factory
@@ -28,6 +36,26 @@ final class PropertiesStorageFactoryImpl implements PropertiesStorageFactory {
 	private final String connectString;
 	
 	private String rootPath = "/etc/property-sets";
+	
+	private boolean cache = false;
+
+	private long cacheMaxBytes = CachePolicy.Unbounded;
+
+	private long cacheExpiryNanos = 0;
+
+	private boolean incrementalStore = false;
+
+	private StorageFormat format = StorageFormat.Tree;
+
+	private StorageMetrics metrics = StorageMetrics.noOp();
+
+	private Option<Path> snapshot = None();
+
+	private ValueCompression compression = ValueCompression.Disabled;
+
+	private int sessionTimeout = ZooKeeperStorage.DefaultSessionTimeout;
+
+	private int connectTimeout = ZooKeeperStorage.DefaultConnectTimeout;
 
 	PropertiesStorageFactoryImpl(String connectString) {
 		this.connectString = connectString;
@@ -41,6 +69,108 @@ final class PropertiesStorageFactoryImpl implements PropertiesStorageFactory {
 		this.rootPath = rootPath; 
 		return this;
 	}
+
+	/* (non-Javadoc)
+	 * @see org.dmonix.zookeeper.PropertiesStorageFactory#withCache()
+	 */
+	@Override
+	public PropertiesStorageFactory withCache() {
+		this.cache = true;
+		return this;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.dmonix.zookeeper.PropertiesStorageFactory#withCache(long)
+	 */
+	@Override
+	public PropertiesStorageFactory withCache(long maxBytes) {
+		if (maxBytes <= 0) {
+			throw new IllegalArgumentException("The max cache size must be positive [" + maxBytes + "]");
+		}
+		this.cache = true;
+		this.cacheMaxBytes = maxBytes;
+		return this;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.dmonix.zookeeper.PropertiesStorageFactory#withCacheExpiry(java.time.Duration)
+	 */
+	@Override
+	public PropertiesStorageFactory withCacheExpiry(Duration expiry) {
+		if (Validator.requireNonNull(expiry).isNegative() || expiry.isZero()) {
+			throw new IllegalArgumentException("The cache expiry must be positive [" + expiry + "]");
+		}
+		this.cache = true;
+		this.cacheExpiryNanos = expiry.toNanos();
+		return this;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.dmonix.zookeeper.PropertiesStorageFactory#withIncrementalStore()
+	 */
+	@Override
+	public PropertiesStorageFactory withIncrementalStore() {
+		this.incrementalStore = true;
+		return this;
+	}
+
+
+	/* (non-Javadoc)
+	 * @see org.dmonix.zookeeper.PropertiesStorageFactory#withStorageFormat(org.dmonix.zookeeper.StorageFormat)
+	 */
+	@Override
+	public PropertiesStorageFactory withStorageFormat(StorageFormat format) {
+		this.format = Validator.requireNonNull(format);
+		return this;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.dmonix.zookeeper.PropertiesStorageFactory#withMetrics(org.dmonix.zookeeper.StorageMetrics)
+	 */
+	@Override
+	public PropertiesStorageFactory withMetrics(StorageMetrics metrics) {
+		this.metrics = Validator.requireNonNull(metrics);
+		return this;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.dmonix.zookeeper.PropertiesStorageFactory#withCompression(int)
+	 */
+	@Override
+	public PropertiesStorageFactory withCompression(int threshold) {
+		if (threshold < 0) {
+			throw new IllegalArgumentException("The compression threshold must not be negative [" + threshold + "]");
+		}
+		this.compression = new ValueCompression(threshold);
+		return this;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.dmonix.zookeeper.PropertiesStorageFactory#withSnapshot(java.nio.file.Path)
+	 */
+	@Override
+	public PropertiesStorageFactory withSnapshot(Path file) {
+		this.snapshot = Some(Validator.requireNonNull(file));
+		return this;
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.dmonix.zookeeper.PropertiesStorageFactory#withSessionTimeout(java.time.Duration)
+	 */
+	@Override
+	public PropertiesStorageFactory withSessionTimeout(Duration timeout) {
+		this.sessionTimeout = millis("session", timeout);
+		return this;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.dmonix.zookeeper.PropertiesStorageFactory#withConnectTimeout(java.time.Duration)
+	 */
+	@Override
+	public PropertiesStorageFactory withConnectTimeout(Duration timeout) {
+		this.connectTimeout = millis("connect", timeout);
+		return this;
+	}
 	
 	/**
 	 * Creates a properties storage instance.
@@ -49,10 +179,43 @@ final class PropertiesStorageFactoryImpl implements PropertiesStorageFactory {
 	 */
 	public Try<PropertiesStorage> create() {
 		return Try(() -> {
-			ZooKeeperStorage storage = new ZooKeeperStorage(connectString, rootPath);
+			ZooKeeperStorage storage = newStorage();
+			PropertiesStorage decorated = decorate(storage);
+			if (snapshot.isDefined()) {
+				return new SnapshotPropertiesStorage(storage, decorated, new SnapshotFile(snapshot.orNull())).start();
+			}
 			storage.connect();
-			return storage;
+			return decorated;
 		});
 	}
+
+	/* (non-Javadoc)
+	 * @see org.dmonix.zookeeper.PropertiesStorageFactory#createAsync()
+	 */
+	@Override
+	public Future<PropertiesStorage> createAsync() {
+		if (snapshot.isDefined()) {
+			return Future.fromTry(create()); // never waits for the connection
+		}
+		ZooKeeperStorage storage = newStorage();
+		PropertiesStorage decorated = decorate(storage);
+		return storage.connectAsync().map(u -> decorated);
+	}
+
+	private ZooKeeperStorage newStorage() {
+		return new ZooKeeperStorage(connectString, rootPath, incrementalStore, format, metrics, compression, sessionTimeout, connectTimeout);
+	}
+
+	private PropertiesStorage decorate(ZooKeeperStorage storage) {
+		return cache ? new CachingPropertiesStorage(storage, cacheMaxBytes, cacheExpiryNanos) : storage;
+	}
+
+	private static int millis(String name, Duration timeout) {
+		long millis = Validator.requireNonNull(timeout).toMillis();
+		if (millis <= 0 || millis > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Invalid " + name + " timeout [" + timeout + "]");
+		}
+		return (int) millis;
+	}
 	
 }
@@ -0,0 +1,150 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * The parsers used by the typed accessors of the {@link PropertySet} implementations.
+ *
+ * @author Peter Nerg
+ * @since 1.4
+ */
+final class PropertyParsers {
+
+	static final Function<String, Integer> IntParser = Integer::valueOf;
+	static final Function<String, Long> LongParser = Long::valueOf;
+	static final Function<String, Boolean> BooleanParser = PropertyParsers::parseBoolean;
+	static final Function<String, Duration> DurationParser = PropertyParsers::parseDuration;
+	static final Function<String, List<String>> ListParser = PropertyParsers::parseList;
+
+	/**
+	 * Inhibitive constructor.
+	 */
+	private PropertyParsers() {
+	}
+
+	/**
+	 * Parses the value of a property.
+	 *
+	 * @param setName
+	 *            The name of the property set
+	 * @param name
+	 *            The name of the property
+	 * @param value
+	 *            The value to parse
+	 * @param parser
+	 *            The parser
+	 * @return The parsed value
+	 * @throws IllegalArgumentException
+	 *             If the value could not be parsed
+	 */
+	static <T> T parse(String setName, String name, String value, Function<String, T> parser) {
+		try {
+			return parser.apply(value.trim());
+		} catch (IllegalArgumentException | DateTimeParseException ex) {
+			throw new IllegalArgumentException("The value [" + value + "] of the property [" + name + "] in [" + setName + "] is not valid", ex);
+		}
+	}
+
+	private static Boolean parseBoolean(String value) {
+		if ("true".equalsIgnoreCase(value)) {
+			return Boolean.TRUE;
+		}
+		if ("false".equalsIgnoreCase(value)) {
+			return Boolean.FALSE;
+		}
+		throw new IllegalArgumentException("Not a boolean [" + value + "]");
+	}
+
+	private static Duration parseDuration(String value) {
+		if (value.startsWith("P") || value.startsWith("p") || value.startsWith("-P") || value.startsWith("-p")) {
+			return Duration.parse(value);
+		}
+		int unitStart = value.length();
+		while (unitStart > 0 && Character.isLetter(value.charAt(unitStart - 1))) {
+			unitStart--;
+		}
+		long amount = Long.parseLong(value.substring(0, unitStart).trim());
+		return Duration.ofNanos(unit(value.substring(unitStart)).toNanos(amount));
+	}
+
+	private static TimeUnit unit(String unit) {
+		switch (unit.toLowerCase(Locale.ROOT)) {
+		case "ns":
+			return TimeUnit.NANOSECONDS;
+		case "us":
+			return TimeUnit.MICROSECONDS;
+		case "":
+		case "ms":
+			return TimeUnit.MILLISECONDS;
+		case "s":
+			return TimeUnit.SECONDS;
+		case "m":
+			return TimeUnit.MINUTES;
+		case "h":
+			return TimeUnit.HOURS;
+		case "d":
+			return TimeUnit.DAYS;
+		default:
+			throw new IllegalArgumentException("Unknown time unit [" + unit + "]");
+		}
+	}
+
+	private static List<String> parseList(String value) {
+		List<String> values = new ArrayList<>();
+		for (String item : value.split(",")) {
+			String trimmed = item.trim();
+			if (!trimmed.isEmpty()) {
+				values.add(trimmed);
+			}
+		}
+		return Collections.unmodifiableList(values);
+	}
+
+	/**
+	 * A parsed value and the parser used to parse it. <br>
+	 * Immutable, hence safe to publish to other threads without synchronization.
+	 */
+	static final class Parsed {
+		private final Function<String, ?> parser;
+		private final Object value;
+
+		Parsed(Function<String, ?> parser, Object value) {
+			this.parser = parser;
+			this.value = value;
+		}
+
+		/**
+		 * Get the value if it was parsed using the provided parser.
+		 *
+		 * @param parser
+		 *            The parser
+		 * @return The value, <code>null</code> if parsed with another parser
+		 */
+		@SuppressWarnings("unchecked")
+		<T> T value(Function<String, T> parser) {
+			return this.parser == parser ? (T) value : null;
+		}
+	}
+}
@@ -15,8 +15,14 @@
  */
 package org.dmonix.zookeeper;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static javascalautils.OptionCompanion.None;
+
+import java.time.Duration;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.BiConsumer;
 
 import javascalautils.None;
 import javascalautils.Option;
@@ -43,22 +49,168 @@ public interface PropertySet {
 	 * @since 1.0
 	 */
 	Option<String> property(String name);
+
+	/**
+	 * Get the named property as raw bytes. <br>
+	 * Values set as strings are encoded using UTF-8, values stored as raw bytes (e.g. binary key stores) are returned exactly as stored. <br>
+	 * The returned array is a copy, modifying it does not affect the property set. <br>
+	 * The default implementation encodes the value of {@link #property(String)} using UTF-8.
+	 * @param name The name of the property
+	 * @return If exists then {@link Some} containing the value, else {@link None}
+	 * @since 1.4
+	 */
+	default Option<byte[]> bytesProperty(String name) {
+		return property(name).map(value -> value.getBytes(UTF_8));
+	}
+
+	/**
+	 * Get the named property or the provided default value if no such property. <br>
+	 * As opposed to {@link #property(String)} the property sets provided by this library do not allocate any objects, making it suitable for frequent lookups.
+	 * @param name The name of the property
+	 * @param defaultValue The value to return if the property does not exist
+	 * @return The value of the property, or the default value if no such property
+	 * @since 1.4
+	 */
+	default String propertyOrDefault(String name, String defaultValue) {
+		return property(name).getOrElse(() -> defaultValue);
+	}
+
+	/**
+	 * Check if the named property exists.
+	 * @param name The name of the property
+	 * @return <code>true</code> if the property exists
+	 * @since 1.4
+	 */
+	default boolean containsProperty(String name) {
+		return properties().contains(name);
+	}
+
+	/**
+	 * Get the number of properties in the set.
+	 * @return The number of properties
+	 * @since 1.4
+	 */
+	default int size() {
+		return properties().size();
+	}
+
+	/**
+	 * Performs the provided action for each property (name, value) in the set. <br>
+	 * The property sets provided by this library iterate the properties without allocating any intermediate collections.
+	 * @param action The action to perform
+	 * @since 1.4
+	 */
+	default void forEach(BiConsumer<String, String> action) {
+		asMap().forEach(action);
+	}
+
+	/**
+	 * Get the named property as an <code>int</code>. <br>
+	 * The property sets provided by this library cache the parsed value, i.e. repeated reads of the same property do not parse the value again until the property is {@link #set(String, String) set}.
+	 * @param name The name of the property
+	 * @param defaultValue The value to return if the property does not exist
+	 * @return The value of the property, or the default value if no such property
+	 * @throws IllegalArgumentException If the value is not a valid <code>int</code>
+	 * @since 1.4
+	 */
+	default int intProperty(String name, int defaultValue) {
+		String value = property(name).orNull();
+		return value != null ? PropertyParsers.parse(name(), name, value, PropertyParsers.IntParser) : defaultValue;
+	}
+
+	/**
+	 * Get the named property as a <code>long</code>. <br>
+	 * The property sets provided by this library cache the parsed value, i.e. repeated reads of the same property do not parse the value again until the property is {@link #set(String, String) set}.
+	 * @param name The name of the property
+	 * @param defaultValue The value to return if the property does not exist
+	 * @return The value of the property, or the default value if no such property
+	 * @throws IllegalArgumentException If the value is not a valid <code>long</code>
+	 * @since 1.4
+	 */
+	default long longProperty(String name, long defaultValue) {
+		String value = property(name).orNull();
+		return value != null ? PropertyParsers.parse(name(), name, value, PropertyParsers.LongParser) : defaultValue;
+	}
+
+	/**
+	 * Get the named property as a <code>boolean</code>. <br>
+	 * Only the values <tt>true</tt> and <tt>false</tt> (ignoring case) are accepted. <br>
+	 * The property sets provided by this library cache the parsed value, i.e. repeated reads of the same property do not parse the value again until the property is {@link #set(String, String) set}.
+	 * @param name The name of the property
+	 * @param defaultValue The value to return if the property does not exist
+	 * @return The value of the property, or the default value if no such property
+	 * @throws IllegalArgumentException If the value is neither <tt>true</tt> nor <tt>false</tt>
+	 * @since 1.4
+	 */
+	default boolean booleanProperty(String name, boolean defaultValue) {
+		String value = property(name).orNull();
+		return value != null ? PropertyParsers.parse(name(), name, value, PropertyParsers.BooleanParser) : defaultValue;
+	}
+
+	/**
+	 * Get the named property as a {@link Duration}. <br>
+	 * The value is either in ISO-8601 format (e.g. <tt>PT30S</tt>) or a number followed by one of the units <tt>ns, us, ms, s, m, h, d</tt> (e.g. <tt>30s</tt>).
+	 * A number without unit is treated as milliseconds. <br>
+	 * The property sets provided by this library cache the parsed value, i.e. repeated reads of the same property do not parse the value again until the property is {@link #set(String, String) set}.
+	 * @param name The name of the property
+	 * @param defaultValue The value to return if the property does not exist
+	 * @return The value of the property, or the default value if no such property
+	 * @throws IllegalArgumentException If the value is not a valid duration
+	 * @since 1.4
+	 */
+	default Duration durationProperty(String name, Duration defaultValue) {
+		String value = property(name).orNull();
+		return value != null ? PropertyParsers.parse(name(), name, value, PropertyParsers.DurationParser) : defaultValue;
+	}
+
+	/**
+	 * Get the named property as a list of comma separated values. <br>
+	 * Each value is trimmed from leading/trailing whitespace and empty values are omitted. <br>
+	 * The property sets provided by this library cache the parsed value, i.e. repeated reads of the same property do not parse the value again until the property is {@link #set(String, String) set}.
+	 * @param name The name of the property
+	 * @param defaultValue The value to return if the property does not exist
+	 * @return The unmodifiable list of values, or the default value if no such property
+	 * @since 1.4
+	 */
+	default List<String> listProperty(String name, List<String> defaultValue) {
+		String value = property(name).orNull();
+		return value != null ? PropertyParsers.parse(name(), name, value, PropertyParsers.ListParser) : defaultValue;
+	}
 	
 	/**
-	 * List the names of all properties
+	 * List the names of all properties. <br>
+	 * The returned set is a read-only view of the property names, i.e. it is not copied on each invocation.
 	 * @return The names, empty if no properties
 	 * @since 1.0
 	 */
 	Set<String> properties();
 	
 	/**
-	 * Sets a property in the set
+	 * Sets a property in the set. <br>
+	 * The value is written to ZooKeeper encoded using UTF-8, a <code>null</code> value is written as an empty value.
 	 * @param name The name of the property
 	 * @param value The value of the property
 	 * @return {@link Some} with previous value if such existed else {@link None}
+	 * @throws UnsupportedOperationException If the property set is immutable, see {@link #toMutable()}
 	 * @since 1.0
 	 */
 	Option<String> set(String name, String value);
+
+	/**
+	 * Sets a property in the set using raw bytes. <br>
+	 * The bytes are stored as is, reading the property as a string decodes the bytes using UTF-8. <br>
+	 * The provided array is copied, modifying it after this call does not affect the property set. <br>
+	 * The default implementation decodes the bytes using UTF-8 and {@link #set(String, String) sets} the resulting string, i.e. binary data not valid as
+	 * UTF-8 is only retained as is by the property sets provided by this library.
+	 * @param name The name of the property
+	 * @param value The value of the property
+	 * @return {@link Some} with previous value if such existed else {@link None}
+	 * @throws UnsupportedOperationException If the property set is immutable, see {@link #toMutable()}
+	 * @since 1.4
+	 */
+	default Option<byte[]> setBytes(String name, byte[] value) {
+		return set(name, value != null ? new String(value, UTF_8) : null).map(previous -> previous.getBytes(UTF_8));
+	}
 	
 	/**
 	 * Provides a map containing all properties (key,value).
@@ -66,9 +218,37 @@ public interface PropertySet {
 	 * @since 1.2
 	 */
 	Map<String, String> asMap();
+
+	/**
+	 * Get the version of the persisted property set this instance was read from. <br>
+	 * Property sets read directly from ZooKeeper carry the version they were read with, as do any copies created with {@link #toMutable()}. <br>
+	 * Property sets created using {@link #apply(String)} as well as those served from a local snapshot have no version. <br>
+	 * The default implementation has no version.
+	 * @return {@link Some} with the version if read from ZooKeeper, else {@link None}
+	 * @see PropertiesStorage#storeIfUnchanged(PropertySet)
+	 * @since 1.4
+	 */
+	default Option<PropertySetVersion> version() {
+		return None();
+	}
+
+	/**
+	 * Creates an editable copy of this property set. <br>
+	 * Property sets returned by the {@link PropertiesStorage} are immutable snapshots safe to share between threads, this method allows for modifying such
+	 * a property set e.g. in order to store the modified copy. <br>
+	 * The default implementation copies the properties provided by {@link #asMap()} into a new {@link #apply(String) property set}.
+	 * @return The mutable copy
+	 * @since 1.4
+	 */
+	default PropertySet toMutable() {
+		PropertySet copy = apply(name());
+		asMap().forEach(copy::set);
+		return copy;
+	}
 	
 	/**
-	 * Creates an instance of the property set.
+	 * Creates a mutable instance of the property set. <br>
+	 * Note that the instance is not thread safe.
 	 * @param name The name of the property set
 	 * @return The property set
 	 * @since 1.0
@@ -0,0 +1,216 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static javascalautils.OptionCompanion.None;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import javascalautils.Option;
+
+/**
+ * Encodes/decodes a complete property set to/from a compact binary format. <br>
+ * The format is:
+ *
+ * <pre>
+ * [magic:2][version:1][count:varint]([key length:varint][key:UTF-8][value length:varint][value:bytes])*
+ * </pre>
+ *
+ * The value is the raw bytes of the property, i.e. UTF-8 for values set as strings. Decoded values are kept as bytes until read as strings. <br>
+ *
+ * The first magic byte (<tt>0xF5</tt>) never occurs in UTF-8 encoded text, hence encoded data is never mistaken for plain text values. <br>
+ * Properties with <code>null</code> values are encoded as empty values, the same as in the {@link StorageFormat#Tree} format.
+ *
+ * @author Peter Nerg
+ * @since 1.4
+ */
+final class PropertySetCodec {
+
+	/** The magic bytes starting all encoded data. */
+	private static final byte[] Magic = { (byte) 0xF5, 'P' };
+
+	/** The current version of the format. */
+	static final byte Version = 1;
+
+	private static final int HeaderSize = Magic.length + 1;
+
+	/**
+	 * Inhibitive constructor.
+	 */
+	private PropertySetCodec() {
+	}
+
+	/**
+	 * Encodes the provided property set.
+	 *
+	 * @param propertySet
+	 *            The property set
+	 * @return The encoded data
+	 */
+	static byte[] encode(PropertySet propertySet) {
+		byte[][] encoded = new byte[propertySet.size() * 2][];
+		int[] count = { 0 };
+		int[] size = { HeaderSize };
+		PropertyValue.forEach(propertySet, (name, value) -> {
+			byte[] key = name.getBytes(UTF_8);
+			byte[] bytes = PropertyValue.orEmpty(value).bytes();
+			encoded[count[0] * 2] = key;
+			encoded[count[0] * 2 + 1] = bytes;
+			size[0] += varIntSize(key.length) + key.length + varIntSize(bytes.length) + bytes.length;
+			count[0]++;
+		});
+		int total = size[0] + varIntSize(count[0]);
+
+		ByteBuffer buffer = ByteBuffer.allocate(total);
+		buffer.put(Magic).put(Version);
+		putVarInt(buffer, count[0]);
+		for (int i = 0; i < count[0] * 2; i++) {
+			putVarInt(buffer, encoded[i].length);
+			buffer.put(encoded[i]);
+		}
+		return buffer.array();
+	}
+
+	/**
+	 * Checks if the provided data is encoded by this codec.
+	 *
+	 * @param data
+	 *            The data
+	 * @return <code>true</code> if the data starts with the magic header
+	 */
+	static boolean isEncoded(byte[] data) {
+		return data != null && data.length >= HeaderSize && data[0] == Magic[0] && data[1] == Magic[1];
+	}
+
+	/**
+	 * Decodes the provided data into a property set.
+	 *
+	 * @param name
+	 *            The name of the property set
+	 * @param data
+	 *            The encoded data
+	 * @return The immutable property set
+	 * @throws IllegalArgumentException
+	 *             If the data is not encoded by this codec, is of an unsupported version or is malformed
+	 */
+	static PropertySet decode(String name, byte[] data) {
+		return decode(name, data, None());
+	}
+
+	/**
+	 * Decodes the provided data read from ZooKeeper into a property set.
+	 *
+	 * @param name
+	 *            The name of the property set
+	 * @param data
+	 *            The encoded data
+	 * @param version
+	 *            The version of the property set as read from ZooKeeper
+	 * @return The immutable property set
+	 * @throws IllegalArgumentException
+	 *             If the data is not encoded by this codec, is of an unsupported version or is malformed
+	 */
+	static PropertySet decode(String name, byte[] data, Option<PropertySetVersion> version) {
+		if (!isEncoded(data)) {
+			throw new IllegalArgumentException("The data for [" + name + "] is not an encoded property set");
+		}
+		return decode(name, ByteBuffer.wrap(data), version);
+	}
+
+	/**
+	 * Decodes the data between the position and limit of the provided buffer into a property set. <br>
+	 * The buffer may be of any kind, e.g. a memory mapped file, the position of the buffer is advanced past the decoded data.
+	 *
+	 * @param name
+	 *            The name of the property set
+	 * @param buffer
+	 *            The buffer with the encoded data
+	 * @return The immutable property set
+	 * @throws IllegalArgumentException
+	 *             If the data is not encoded by this codec, is of an unsupported version or is malformed
+	 */
+	static PropertySet decode(String name, ByteBuffer buffer) {
+		return decode(name, buffer, None());
+	}
+
+	private static PropertySet decode(String name, ByteBuffer buffer, Option<PropertySetVersion> version) {
+		int start = buffer.position();
+		if (buffer.remaining() < HeaderSize || buffer.get(start) != Magic[0] || buffer.get(start + 1) != Magic[1]) {
+			throw new IllegalArgumentException("The data for [" + name + "] is not an encoded property set");
+		}
+		if (buffer.get(start + Magic.length) != Version) {
+			throw new IllegalArgumentException("Unsupported version [" + buffer.get(start + Magic.length) + "] of the encoded property set [" + name + "]");
+		}
+
+		Map<String, PropertyValue> properties = new HashMap<>();
+		try {
+			buffer.position(start + HeaderSize);
+			int count = getVarInt(buffer);
+			for (int i = 0; i < count; i++) {
+				String key = new String(getBytes(buffer), UTF_8);
+				properties.put(key, PropertyValue.of(getBytes(buffer)));
+			}
+		} catch (BufferUnderflowException | IndexOutOfBoundsException ex) {
+			throw new IllegalArgumentException("The encoded property set [" + name + "] is malformed", ex);
+		}
+		return ImmutablePropertySet.ofValues(name, properties, version);
+	}
+
+	private static byte[] getBytes(ByteBuffer buffer) {
+		int length = getVarInt(buffer);
+		if (length > buffer.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return bytes;
+	}
+
+	private static int varIntSize(int value) {
+		int size = 1;
+		while ((value >>>= 7) != 0) {
+			size++;
+		}
+		return size;
+	}
+
+	private static void putVarInt(ByteBuffer buffer, int value) {
+		while ((value & ~0x7F) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	private static int getVarInt(ByteBuffer buffer) {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			byte b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				if (value < 0) {
+					throw new IndexOutOfBoundsException("Negative length");
+				}
+				return value;
+			}
+		}
+		throw new IndexOutOfBoundsException("Malformed varint");
+	}
+}
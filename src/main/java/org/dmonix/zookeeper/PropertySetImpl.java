@@ -15,30 +15,60 @@
  */
 package org.dmonix.zookeeper;
 
+import static javascalautils.OptionCompanion.None;
 import static javascalautils.OptionCompanion.Option;
+import static javascalautils.OptionCompanion.Some;
+import static org.dmonix.zookeeper.PropertyParsers.BooleanParser;
+import static org.dmonix.zookeeper.PropertyParsers.DurationParser;
+import static org.dmonix.zookeeper.PropertyParsers.IntParser;
+import static org.dmonix.zookeeper.PropertyParsers.ListParser;
+import static org.dmonix.zookeeper.PropertyParsers.LongParser;
+import static org.dmonix.zookeeper.PropertyValue.string;
 
+import java.time.Duration;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import org.dmonix.zookeeper.PropertyParsers.Parsed;
 
 import javascalautils.Option;
 
 
 /**
- * The implementation of the property set.
+ * The implementation of the property set. <br>
+ * The values are kept as {@link PropertyValue} instances, i.e. values set as raw bytes are only decoded if read as strings.
  * 
  * @author Peter Nerg
  * @since 1.0
  */
-final class PropertySetImpl implements PropertySet {
+final class PropertySetImpl implements PropertySet, PropertyValue.Values {
 
 	private final String name;
-	private final Map<String, String> properties = new HashMap<>();
+	private final Option<PropertySetVersion> version;
+	private final Map<String, PropertyValue> properties = new HashMap<>();
+	/** Read-only views of the properties, created once as they reflect any later changes. */
+	private final Set<String> names = Collections.unmodifiableSet(properties.keySet());
+	private final Map<String, String> view = PropertyValue.asStrings(properties);
+	/** The typed values parsed so far, concurrent as typed reads may be performed by multiple threads. */
+	private final Map<String, Parsed> parsed = new ConcurrentHashMap<>();
 
 	PropertySetImpl(String name) {
+		this(name, None());
+	}
+
+	/**
+	 * @param name The name of the property set
+	 * @param version The version of the persisted property set this instance is a copy of
+	 */
+	PropertySetImpl(String name, Option<PropertySetVersion> version) {
 		this.name = name;
+		this.version = version;
 	}
 
 	/*
@@ -58,7 +88,130 @@ final class PropertySetImpl implements PropertySet {
 	 */
 	@Override
 	public Option<String> property(String name) {
-		return Option(properties.get(name));
+		PropertyValue value = properties.get(name);
+		return value != null ? Some(value.string()) : None();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#bytesProperty(java.lang.String)
+	 */
+	@Override
+	public Option<byte[]> bytesProperty(String name) {
+		PropertyValue value = properties.get(name);
+		return value != null ? Some(value.copyOfBytes()) : None();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#propertyOrDefault(java.lang.String, java.lang.String)
+	 */
+	@Override
+	public String propertyOrDefault(String name, String defaultValue) {
+		PropertyValue value = properties.get(name);
+		return value != null ? value.string() : defaultValue;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#containsProperty(java.lang.String)
+	 */
+	@Override
+	public boolean containsProperty(String name) {
+		return properties.containsKey(name);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#size()
+	 */
+	@Override
+	public int size() {
+		return properties.size();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#forEach(java.util.function.BiConsumer)
+	 */
+	@Override
+	public void forEach(BiConsumer<String, String> action) {
+		properties.forEach((key, value) -> action.accept(key, string(value)));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertyValue.Values#value(java.lang.String)
+	 */
+	@Override
+	public PropertyValue value(String name) {
+		return properties.get(name);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertyValue.Values#forEachValue(java.util.function.BiConsumer)
+	 */
+	@Override
+	public void forEachValue(BiConsumer<String, PropertyValue> action) {
+		properties.forEach(action);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#intProperty(java.lang.String, int)
+	 */
+	@Override
+	public int intProperty(String name, int defaultValue) {
+		return typedProperty(name, IntParser, defaultValue);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#longProperty(java.lang.String, long)
+	 */
+	@Override
+	public long longProperty(String name, long defaultValue) {
+		return typedProperty(name, LongParser, defaultValue);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#booleanProperty(java.lang.String, boolean)
+	 */
+	@Override
+	public boolean booleanProperty(String name, boolean defaultValue) {
+		return typedProperty(name, BooleanParser, defaultValue);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#durationProperty(java.lang.String, java.time.Duration)
+	 */
+	@Override
+	public Duration durationProperty(String name, Duration defaultValue) {
+		return typedProperty(name, DurationParser, defaultValue);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#listProperty(java.lang.String, java.util.List)
+	 */
+	@Override
+	public List<String> listProperty(String name, List<String> defaultValue) {
+		return typedProperty(name, ListParser, defaultValue);
 	}
 
 	/*
@@ -68,7 +221,7 @@ final class PropertySetImpl implements PropertySet {
 	 */
 	@Override
 	public Set<String> properties() {
-		return new HashSet<>(properties.keySet());
+		return names;
 	}
 
 	/*
@@ -78,7 +231,28 @@ final class PropertySetImpl implements PropertySet {
 	 */
 	@Override
 	public Option<String> set(String name, String value) {
-		return Option(properties.put(name, value));
+		parsed.remove(name);
+		return Option(string(properties.put(name, PropertyValue.of(value))));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertySet#setBytes(java.lang.String, byte[])
+	 */
+	@Override
+	public Option<byte[]> setBytes(String name, byte[] value) {
+		parsed.remove(name);
+		PropertyValue previous = properties.put(name, PropertyValue.of(value != null ? value.clone() : null));
+		return previous != null ? Some(previous.copyOfBytes()) : None();
+	}
+
+	/**
+	 * Sets a property without copying the value, used when copying values between the internal property sets.
+	 */
+	void setValue(String name, PropertyValue value) {
+		parsed.remove(name);
+		properties.put(name, value);
 	}
 
 	/* (non-Javadoc)
@@ -86,18 +260,56 @@ final class PropertySetImpl implements PropertySet {
 	 */
 	@Override
 	public Map<String, String> asMap() {
-		return Collections.unmodifiableMap(properties);
+		return view;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.dmonix.zookeeper.PropertySet#version()
+	 */
+	@Override
+	public Option<PropertySetVersion> version() {
+		return version;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.dmonix.zookeeper.PropertySet#toMutable()
+	 */
+	@Override
+	public PropertySet toMutable() {
+		PropertySetImpl copy = new PropertySetImpl(name, version);
+		copy.properties.putAll(properties);
+		return copy;
 	}
+
 	/**
 	 * Provides a meaningful string representation of the property set
 	 * @since 1.2
 	 */
 	@Override
 	public String toString() {
-		StringBuilder sb = new StringBuilder();
+		StringBuilder sb = new StringBuilder(name.length() + 2 + properties.size() * 32);
 		sb.append(name).append("{");
 		properties.forEach((k,v) -> sb.append(k).append(":").append(v).append(","));
 		sb.append("}");
 		return sb.toString();
 	}
+
+	/**
+	 * Get the typed value of the named property. <br>
+	 * The parsed value is cached for as long as the property is not set and it is read using the same parser.
+	 */
+	private <T> T typedProperty(String name, Function<String, T> parser, T defaultValue) {
+		Parsed cached = parsed.get(name);
+		T result = cached != null ? cached.value(parser) : null;
+		if (result != null) {
+			return result;
+		}
+		PropertyValue value = properties.get(name);
+		if (value == null) {
+			return defaultValue;
+		}
+		result = PropertyParsers.parse(this.name, name, value.string(), parser);
+		parsed.put(name, new Parsed(parser, result));
+		return result;
+	}
 }
@@ -0,0 +1,57 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import java.util.Set;
+
+import javascalautils.None;
+import javascalautils.Option;
+
+/**
+ * Listener for changes to a property set, see {@link PropertiesStorage#subscribe(String, PropertySetListener)}. <br>
+ * The listener is invoked by the event thread of ZooKeeper, hence it must neither block nor perform any synchronous operations on the storage. <br>
+ * Use {@link PropertiesStorage#async()} should the listener need to access the storage.
+ *
+ * @author Peter Nerg
+ * @since 1.4
+ */
+@FunctionalInterface
+public interface PropertySetListener {
+
+	/**
+	 * Invoked when the property set has changed. <br>
+	 * The first invocation is made once the property set initially has been read and contains all its properties as changed.
+	 *
+	 * @param propertySet
+	 *            The current state of the property set, {@link None} if the property set does not exist
+	 * @param changedProperties
+	 *            The names of the properties that have been added, changed or removed since the previous invocation
+	 */
+	void onChange(Option<PropertySet> propertySet, Set<String> changedProperties);
+
+	/**
+	 * Invoked if the subscription fails, e.g. failing to read the property set or the ZooKeeper session expiring before the property set initially has
+	 * been read. <br>
+	 * Should the session expire thereafter the property set is read anew once the session has been recovered and any changes made meanwhile are
+	 * notified, i.e. the subscription does not fail. <br>
+	 * The subscription is closed and no further notifications are delivered.
+	 *
+	 * @param error
+	 *            The reason for the failure
+	 */
+	default void onError(Throwable error) {
+	}
+}
@@ -0,0 +1,129 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static javascalautils.OptionCompanion.None;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import javascalautils.Option;
+
+/**
+ * A subscription backed by a {@link WatchedPropertySet}. <br>
+ * The listener is only notified if the property set actually has changed since the previous notification.
+ *
+ * @author Peter Nerg
+ * @since 1.4
+ */
+final class PropertySetSubscription implements Subscription, WatchedPropertySet.Listener {
+
+	private final String name;
+	private final PropertySetListener listener;
+	private final Consumer<PropertySetSubscription> onClose;
+	private final WatchedPropertySet watched;
+	/** The state delivered by the previous notification, only accessed by the ZooKeeper event thread. */
+	private Option<Map<String, PropertyValue>> previous = None();
+	/** If the listener has been notified at least once, only accessed by the ZooKeeper event thread. */
+	private boolean notified = false;
+	private volatile boolean closed = false;
+
+	/**
+	 * @param storage The storage to read the property set from
+	 * @param name The name of the property set
+	 * @param listener The listener to notify
+	 * @param onClose Invoked once when the subscription is closed
+	 */
+	PropertySetSubscription(ZooKeeperStorage storage, String name, PropertySetListener listener, Consumer<PropertySetSubscription> onClose) {
+		this.name = name;
+		this.listener = listener;
+		this.onClose = onClose;
+		this.watched = new WatchedPropertySet(storage, name, this);
+	}
+
+	/**
+	 * Starts the subscription by initiating the initial read of the property set.
+	 * @return This instance
+	 */
+	PropertySetSubscription start() {
+		watched.start();
+		return this;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.dmonix.zookeeper.Subscription#close()
+	 */
+	@Override
+	public void close() {
+		if (!closed) {
+			closed = true;
+			watched.discard();
+			onClose.accept(this);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.dmonix.zookeeper.WatchedPropertySet.Listener#onUpdate(javascalautils.Option, javascalautils.Option)
+	 */
+	@Override
+	public void onUpdate(Option<Map<String, PropertyValue>> snapshot, Option<PropertySetVersion> version) {
+		if (closed) {
+			return;
+		}
+		Set<String> changed = changes(previous.getOrElse(Collections::emptyMap), snapshot.getOrElse(Collections::emptyMap));
+		if (notified && changed.isEmpty() && previous.isDefined() == snapshot.isDefined()) {
+			return; // nothing has changed since the previous notification
+		}
+		previous = snapshot;
+		notified = true;
+		listener.onChange(snapshot.map(properties -> ImmutablePropertySet.ofValues(name, properties, version)), Collections.unmodifiableSet(changed));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.dmonix.zookeeper.WatchedPropertySet.Listener#onError(java.lang.Throwable)
+	 */
+	@Override
+	public void onError(Throwable error) {
+		if (!closed) {
+			close();
+			listener.onError(error);
+		}
+	}
+
+	/**
+	 * Get the names of all properties added, changed or removed between the two states.
+	 */
+	private static Set<String> changes(Map<String, PropertyValue> previous, Map<String, PropertyValue> current) {
+		Set<String> changed = new HashSet<>();
+		current.forEach((key, value) -> {
+			if (!previous.containsKey(key) || !Objects.equals(previous.get(key), value)) {
+				changed.add(key);
+			}
+		});
+		previous.keySet().stream().filter(key -> !current.containsKey(key)).forEach(changed::add);
+		return changed;
+	}
+}
@@ -0,0 +1,107 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import org.apache.zookeeper.data.Stat;
+
+/**
+ * The version of a persisted property set as read from ZooKeeper. <br>
+ * Consists of the data version and the child version (<tt>cversion</tt>) of the property set znode. <br>
+ * Each store of a property set increments the data version, the child version is incremented each time a property is added or removed. <br>
+ * Used with {@link PropertiesStorage#storeIfUnchanged(PropertySet)} to detect concurrent modifications.
+ *
+ * @author Peter Nerg
+ * @since 1.4
+ */
+public final class PropertySetVersion {
+
+	private final int version;
+	private final int cversion;
+
+	/**
+	 * @param version
+	 *            The data version of the property set znode
+	 * @param cversion
+	 *            The child version of the property set znode
+	 */
+	PropertySetVersion(int version, int cversion) {
+		this.version = version;
+		this.cversion = cversion;
+	}
+
+	/**
+	 * Creates the version from the provided stat of the property set znode.
+	 *
+	 * @param stat
+	 *            The stat
+	 * @return The version
+	 */
+	static PropertySetVersion of(Stat stat) {
+		return new PropertySetVersion(stat.getVersion(), stat.getCversion());
+	}
+
+	/**
+	 * Get the data version of the property set znode.
+	 * 
+	 * @return The version
+	 * @since 1.4
+	 */
+	public int version() {
+		return version;
+	}
+
+	/**
+	 * Get the child version of the property set znode.
+	 * 
+	 * @return The child version
+	 * @since 1.4
+	 */
+	public int cversion() {
+		return cversion;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof PropertySetVersion)) {
+			return false;
+		}
+		PropertySetVersion other = (PropertySetVersion) obj;
+		return version == other.version && cversion == other.cversion;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return 31 * version + cversion;
+	}
+
+	/**
+	 * Provides a meaningful string representation of the version
+	 */
+	@Override
+	public String toString() {
+		return "version:" + version + ",cversion:" + cversion;
+	}
+}
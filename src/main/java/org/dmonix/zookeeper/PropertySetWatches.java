@@ -0,0 +1,115 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+
+/**
+ * The single watcher set on all znodes watched by the {@link WatchedPropertySet watched property sets} of a storage. <br>
+ * Each event is dispatched to the watched property sets currently registered for the property set the watched znode belongs to, events without a path
+ * (i.e. changes to the state of the session) are dispatched to all registered property sets. <br>
+ * ZooKeeper keeps a watcher until the watch is triggered, there is no way to remove it. <br>
+ * As ZooKeeper only ever references this instance a discarded property set is not retained by any outstanding watches, an event for a property set no
+ * longer registered is simply ignored. <br>
+ * As all watches are lost with an expired session, and any reads in flight with a lost connection, the registered property sets are
+ * {@link #recover(ZooKeeper) recovered} once the session is connected anew.
+ *
+ * @author Peter Nerg
+ * @since 1.4
+ */
+final class PropertySetWatches implements Watcher {
+
+	/** The registered property sets mapped on the path of the property set znode. */
+	private final ConcurrentMap<String, Set<WatchedPropertySet>> watched = new ConcurrentHashMap<>();
+
+	/**
+	 * Registers the property set to receive the events for the provided path and its children.
+	 *
+	 * @param path
+	 *            The path of the property set znode
+	 * @param propertySet
+	 *            The property set
+	 */
+	void register(String path, WatchedPropertySet propertySet) {
+		watched.computeIfAbsent(path, p -> ConcurrentHashMap.newKeySet()).add(propertySet);
+	}
+
+	/**
+	 * Unregisters the property set, it will receive no further events.
+	 *
+	 * @param path
+	 *            The path of the property set znode
+	 * @param propertySet
+	 *            The property set
+	 */
+	void unregister(String path, WatchedPropertySet propertySet) {
+		watched.computeIfPresent(path, (p, registered) -> {
+			registered.remove(propertySet);
+			return registered.isEmpty() ? null : registered;
+		});
+	}
+
+	/**
+	 * The number of registered property sets.
+	 *
+	 * @return The number of property sets
+	 */
+	int size() {
+		return watched.values().stream().mapToInt(Set::size).sum();
+	}
+
+	/**
+	 * Recovers all registered property sets on the provided connection, invoked each time the session is connected anew.
+	 *
+	 * @param zk
+	 *            The new connection
+	 */
+	void recover(ZooKeeper zk) {
+		watched.values().forEach(registered -> registered.forEach(propertySet -> propertySet.recover(zk)));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.apache.zookeeper.Watcher#process(org.apache.zookeeper.WatchedEvent)
+	 */
+	@Override
+	public void process(WatchedEvent event) {
+		String path = event.getPath();
+		if (path == null) {
+			watched.values().forEach(registered -> dispatch(registered, event));
+			return;
+		}
+		Set<WatchedPropertySet> registered = watched.get(path);
+		if (registered == null && path.lastIndexOf('/') > 0) {
+			registered = watched.get(path.substring(0, path.lastIndexOf('/'))); // a property of the property set
+		}
+		if (registered != null) {
+			dispatch(registered, event);
+		}
+	}
+
+	private static void dispatch(Collection<WatchedPropertySet> registered, WatchedEvent event) {
+		registered.forEach(propertySet -> propertySet.process(event));
+	}
+}
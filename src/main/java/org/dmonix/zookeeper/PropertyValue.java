@@ -0,0 +1,294 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * The value of a single property, held either as raw bytes or as a string. <br>
+ * The other representation is created on first access using UTF-8, i.e. raw bytes read from ZooKeeper are only decoded should the value be read as a
+ * string and a string set by the user is only encoded once written to ZooKeeper. <br>
+ * Instances are immutable, the lazily created representation may be created by racing threads but the results are equal.
+ *
+ * @author Peter Nerg
+ * @since 1.4
+ */
+final class PropertyValue {
+
+	/** The empty value, written to ZooKeeper in place of properties without value. */
+	static final PropertyValue Empty = new PropertyValue(new byte[0], "");
+
+	private volatile byte[] bytes;
+	private volatile String string;
+
+	private PropertyValue(byte[] bytes, String string) {
+		this.bytes = bytes;
+		this.string = string;
+	}
+
+	/**
+	 * Creates a value from the provided string.
+	 *
+	 * @param value
+	 *            The value
+	 * @return The value, <code>null</code> if the provided value is <code>null</code>
+	 */
+	static PropertyValue of(String value) {
+		return value != null ? new PropertyValue(null, value) : null;
+	}
+
+	/**
+	 * Creates a value from the provided raw bytes. <br>
+	 * The array is not copied, the caller must not modify it after this call.
+	 *
+	 * @param value
+	 *            The value
+	 * @return The value, <code>null</code> if the provided value is <code>null</code>
+	 */
+	static PropertyValue of(byte[] value) {
+		return value != null ? new PropertyValue(value, null) : null;
+	}
+
+	/**
+	 * Get the value of the named property from the provided property set. <br>
+	 * The value is accessed without copying if the property set is one of the internal implementations.
+	 *
+	 * @param propertySet
+	 *            The property set
+	 * @param name
+	 *            The name of the property
+	 * @return The value, <code>null</code> if no such property
+	 */
+	static PropertyValue of(PropertySet propertySet, String name) {
+		if (propertySet instanceof Values) {
+			return ((Values) propertySet).value(name);
+		}
+		return of(propertySet.bytesProperty(name).orNull());
+	}
+
+	/**
+	 * Performs the provided action for each property (name, value) in the provided property set. <br>
+	 * The values are accessed without copying if the property set is one of the internal implementations.
+	 *
+	 * @param propertySet
+	 *            The property set
+	 * @param action
+	 *            The action to perform, the value is <code>null</code> for properties without value
+	 */
+	static void forEach(PropertySet propertySet, BiConsumer<String, PropertyValue> action) {
+		if (propertySet instanceof Values) {
+			((Values) propertySet).forEachValue(action);
+		} else {
+			propertySet.properties().forEach(name -> action.accept(name, of(propertySet.bytesProperty(name).orNull())));
+		}
+	}
+
+	/**
+	 * Get the value as a string, decoding the bytes using UTF-8 on first access.
+	 *
+	 * @return The value
+	 */
+	String string() {
+		String result = string;
+		if (result == null) {
+			result = new String(bytes, UTF_8);
+			string = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Get the value as raw bytes, encoding the string using UTF-8 on first access. <br>
+	 * The returned array is shared, it must not be modified.
+	 *
+	 * @return The value
+	 */
+	byte[] bytes() {
+		byte[] result = bytes;
+		if (result == null) {
+			result = string.getBytes(UTF_8);
+			bytes = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Get a copy of the raw bytes safe to hand out to users.
+	 *
+	 * @return The value
+	 */
+	byte[] copyOfBytes() {
+		return bytes().clone();
+	}
+
+	/**
+	 * Get the value as a string.
+	 *
+	 * @param value
+	 *            The value, may be <code>null</code>
+	 * @return The string, <code>null</code> if the value is <code>null</code>
+	 */
+	static String string(PropertyValue value) {
+		return value != null ? value.string() : null;
+	}
+
+	/**
+	 * Get the value or the {@link #Empty empty} value if <code>null</code>. <br>
+	 * Used when writing to ZooKeeper, a property set to <code>null</code> is stored as an empty value.
+	 *
+	 * @param value
+	 *            The value, may be <code>null</code>
+	 * @return The value, {@link #Empty} if the value is <code>null</code>
+	 */
+	static PropertyValue orEmpty(PropertyValue value) {
+		return value != null ? value : Empty;
+	}
+
+	/**
+	 * Creates a read-only live view of the provided values as strings.
+	 *
+	 * @param values
+	 *            The values
+	 * @return The view
+	 */
+	static Map<String, String> asStrings(Map<String, PropertyValue> values) {
+		return new StringView(values);
+	}
+
+	/**
+	 * Two values are equal if their raw bytes are equal.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof PropertyValue)) {
+			return false;
+		}
+		PropertyValue other = (PropertyValue) obj;
+		String s1 = string;
+		String s2 = other.string;
+		// both strings already present, no need to encode them
+		if (s1 != null && s2 != null && bytes == null && other.bytes == null) {
+			return s1.equals(s2);
+		}
+		return Arrays.equals(bytes(), other.bytes());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(bytes());
+	}
+
+	/**
+	 * Returns the value as a string.
+	 */
+	@Override
+	public String toString() {
+		return string();
+	}
+
+	/**
+	 * Implemented by the property sets providing direct access to their values.
+	 */
+	interface Values {
+
+		/**
+		 * Get the value of the named property.
+		 *
+		 * @param name
+		 *            The name of the property
+		 * @return The value, <code>null</code> if no such property
+		 */
+		PropertyValue value(String name);
+
+		/**
+		 * Performs the provided action for each property (name, value).
+		 *
+		 * @param action
+		 *            The action to perform
+		 */
+		void forEachValue(BiConsumer<String, PropertyValue> action);
+	}
+
+	/**
+	 * Read-only live view of values as strings.
+	 */
+	private static final class StringView extends AbstractMap<String, String> {
+		private final Map<String, PropertyValue> values;
+		private final Set<Map.Entry<String, String>> entries = new AbstractSet<Map.Entry<String, String>>() {
+			@Override
+			public Iterator<Map.Entry<String, String>> iterator() {
+				Iterator<Map.Entry<String, PropertyValue>> iterator = values.entrySet().iterator();
+				return new Iterator<Map.Entry<String, String>>() {
+					@Override
+					public boolean hasNext() {
+						return iterator.hasNext();
+					}
+
+					@Override
+					public Map.Entry<String, String> next() {
+						Map.Entry<String, PropertyValue> entry = iterator.next();
+						return new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), string(entry.getValue()));
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return values.size();
+			}
+		};
+
+		private StringView(Map<String, PropertyValue> values) {
+			this.values = values;
+		}
+
+		@Override
+		public Set<Map.Entry<String, String>> entrySet() {
+			return entries;
+		}
+
+		@Override
+		public int size() {
+			return values.size();
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return values.containsKey(key);
+		}
+
+		@Override
+		public String get(Object key) {
+			return string(values.get(key));
+		}
+	}
+}
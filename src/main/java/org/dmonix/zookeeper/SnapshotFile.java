@@ -0,0 +1,142 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads/writes a local snapshot of property sets to a single file. <br>
+ * The format is:
+ *
+ * <pre>
+ * [magic:4][version:1][count:4]([name length:4][name:UTF-8][data length:4][data:{@link PropertySetCodec encoded property set}])*
+ * </pre>
+ *
+ * The file is written to a temporary file in the same directory which is synced to disk and then atomically moved in place, i.e. readers never see a
+ * partially written file. <br>
+ * The file is read through a memory mapped buffer, the property sets are decoded directly from the mapped memory.
+ *
+ * @author Peter Nerg
+ * @since 1.4
+ */
+final class SnapshotFile {
+
+	/** The magic bytes starting all snapshot files. */
+	private static final byte[] Magic = { (byte) 0xF5, 'Z', 'P', 'S' };
+
+	/** The current version of the format. */
+	static final byte Version = 1;
+
+	private final Path path;
+
+	SnapshotFile(Path path) {
+		this.path = path;
+	}
+
+	/**
+	 * Reads all property sets in the snapshot file.
+	 *
+	 * @return The property sets mapped on their name, empty if there is no snapshot file
+	 * @throws IOException
+	 *             If failing to read the file or the file is malformed
+	 */
+	Map<String, PropertySet> read() throws IOException {
+		Map<String, PropertySet> propertySets = new HashMap<>();
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			byte[] magic = new byte[Magic.length];
+			buffer.get(magic);
+			if (!Arrays.equals(Magic, magic) || buffer.get() != Version) {
+				throw new IOException("The file [" + path + "] is not a property set snapshot of version [" + Version + "]");
+			}
+			int count = buffer.getInt();
+			for (int i = 0; i < count; i++) {
+				String name = getString(buffer);
+				int length = buffer.getInt();
+				ByteBuffer data = buffer.slice();
+				data.limit(length);
+				propertySets.put(name, PropertySetCodec.decode(name, data));
+				buffer.position(buffer.position() + length);
+			}
+		} catch (NoSuchFileException ex) {
+			// no snapshot written yet
+		} catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException ex) {
+			throw new IOException("The snapshot file [" + path + "] is malformed", ex);
+		}
+		return propertySets;
+	}
+
+	/**
+	 * Atomically replaces the snapshot file with the provided property sets.
+	 *
+	 * @param propertySets
+	 *            The property sets
+	 * @throws IOException
+	 *             If failing to write the file
+	 */
+	void write(Collection<PropertySet> propertySets) throws IOException {
+		Path directory = path.toAbsolutePath().getParent();
+		Files.createDirectories(directory);
+		Path temp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+				out.write(Magic);
+				out.writeByte(Version);
+				out.writeInt(propertySets.size());
+				for (PropertySet propertySet : propertySets) {
+					byte[] name = propertySet.name().getBytes(UTF_8);
+					byte[] data = PropertySetCodec.encode(propertySet);
+					out.writeInt(name.length);
+					out.write(name);
+					out.writeInt(data.length);
+					out.write(data);
+				}
+				out.flush();
+				channel.force(true); // the data must be on disk before the file is moved in place
+			}
+			Files.move(temp, path, ATOMIC_MOVE, REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private static String getString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, UTF_8);
+	}
+}
@@ -0,0 +1,417 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static javascalautils.OptionCompanion.None;
+import static javascalautils.OptionCompanion.Some;
+import static javascalautils.TryCompanion.Failure;
+import static javascalautils.TryCompanion.Success;
+import static javascalautils.concurrent.PromiseCompanion.Promise;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javascalautils.Option;
+import javascalautils.Try;
+import javascalautils.Unit;
+import javascalautils.concurrent.Future;
+import javascalautils.concurrent.Promise;
+
+/**
+ * Decorates a storage with a local on-disk snapshot of the property sets read. <br>
+ * Each property set successfully read from ZooKeeper is kept in the snapshot which is persisted to a local file whenever it changes. <br>
+ * A property set is considered changed if its {@link PropertySetVersion version} differs from the one in the snapshot. <br>
+ * The file is written by a background thread, any changes made while a write is in progress are coalesced into the next write. <br>
+ * Should a read fail, e.g. due to not yet being connected or an outage of ZooKeeper, the property set is served from the snapshot. <br>
+ * The snapshot file is read when the storage is created and the connection to ZooKeeper is established in the background, hence the storage is
+ * immediately usable regardless of the availability of ZooKeeper. <br>
+ * Once connected all property sets in the snapshot are read anew from ZooKeeper to reconcile the snapshot with the current data. <br>
+ * An unreadable snapshot file is treated as an empty snapshot.
+ *
+ * @author Peter Nerg
+ * @since 1.4
+ */
+final class SnapshotPropertiesStorage implements PropertiesStorage {
+
+	/** The delay (millis) between attempts to connect to ZooKeeper. */
+	private static final long ConnectRetryDelay = 1000;
+
+	private final ZooKeeperStorage storage;
+	private final PropertiesStorage delegate;
+	private final SnapshotFile file;
+	private final Map<String, PropertySet> snapshot = new ConcurrentHashMap<>();
+	private final Promise<Unit> reconciled = Promise();
+	private final AsyncPropertiesStorage async = new AsyncSnapshotStorage();
+	private final Thread connector = new Thread(this::connect, "zookeeper-properties-connector");
+	private List<Promise<Unit>> persistWaiters = new ArrayList<>();
+	private boolean dirty = false;
+	private volatile boolean closed = false;
+
+	/**
+	 * @param storage The storage connecting to ZooKeeper
+	 * @param delegate The storage to delegate all operations to, either the storage itself or a decorator of it
+	 * @param file The snapshot file
+	 */
+	SnapshotPropertiesStorage(ZooKeeperStorage storage, PropertiesStorage delegate, SnapshotFile file) {
+		this.storage = storage;
+		this.delegate = delegate;
+		this.file = file;
+		connector.setDaemon(true);
+	}
+
+	/**
+	 * Reads the snapshot file and starts connecting to ZooKeeper in the background.
+	 * @return This instance
+	 */
+	SnapshotPropertiesStorage start() {
+		try {
+			snapshot.putAll(file.read());
+		} catch (IOException ex) {
+			// start with an empty snapshot, it will be overwritten by the next successful read
+		}
+		connector.start();
+		return this;
+	}
+
+	/**
+	 * Future completed once connected to ZooKeeper and all property sets in the snapshot have been read anew.
+	 * @return The future
+	 */
+	Future<Unit> reconciled() {
+		return reconciled.future();
+	}
+
+	/**
+	 * Future completed once all changes made to the snapshot so far have been written to file. <br>
+	 * Only written once connected to ZooKeeper.
+	 * @return The future, failed if the write failed
+	 */
+	synchronized Future<Unit> persisted() {
+		Promise<Unit> promise = Promise();
+		persistWaiters.add(promise);
+		markDirty();
+		return promise.future();
+	}
+
+	/**
+	 * Reads the property set from the underlying storage, falling back to the snapshot should the read fail.
+	 */
+	@Override
+	public Try<Option<PropertySet>> get(String name) {
+		return fallback(name, delegate.get(name));
+	}
+
+	/**
+	 * Reads the property sets from the underlying storage, falling back to the snapshot for each property set that could not be read.
+	 */
+	@Override
+	public Map<String, Try<Option<PropertySet>>> getAll(Collection<String> names) {
+		Map<String, Try<Option<PropertySet>>> result = new LinkedHashMap<>();
+		delegate.getAll(names).forEach((name, propertySet) -> result.put(name, fallback(name, propertySet)));
+		return result;
+	}
+
+	/**
+	 * Lazy reads are not part of the snapshot as the values are read on demand, delegated to the underlying storage.
+	 */
+	@Override
+	public Try<Option<LazyPropertySet>> getLazy(String name) {
+		return delegate.getLazy(name);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertiesStorage#store(org.dmonix.zookeeper.PropertySet)
+	 */
+	@Override
+	public Try<Unit> store(PropertySet propertySet) {
+		return delegate.store(propertySet);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertiesStorage#storeIfUnchanged(org.dmonix.zookeeper.PropertySet)
+	 */
+	@Override
+	public Try<Unit> storeIfUnchanged(PropertySet propertySet) {
+		return delegate.storeIfUnchanged(propertySet);
+	}
+
+	/**
+	 * Deletes the property set, also removing it from the snapshot.
+	 */
+	@Override
+	public Try<Unit> delete(String name) {
+		Try<Unit> result = delegate.delete(name);
+		result.forEach(u -> update(name, None()));
+		return result;
+	}
+
+	/**
+	 * Lists the property sets from the underlying storage, falling back to the names of the property sets in the snapshot should the listing fail.
+	 */
+	@Override
+	public Try<List<String>> propertySets() {
+		Try<List<String>> result = delegate.propertySets();
+		return result.isSuccess() ? result : Success(snapshotNames());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertiesStorage#subscribe(java.lang.String, org.dmonix.zookeeper.PropertySetListener)
+	 */
+	@Override
+	public Subscription subscribe(String name, PropertySetListener listener) {
+		return delegate.subscribe(name, listener);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertiesStorage#layered(java.lang.String[])
+	 */
+	@Override
+	public Try<LayeredPropertySet> layered(String... names) {
+		return delegate.layered(names);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertiesStorage#async()
+	 */
+	@Override
+	public AsyncPropertiesStorage async() {
+		return async;
+	}
+
+	/**
+	 * Stops any ongoing connection attempt and closes the underlying storage. <br>
+	 * Any pending changes are written before closing, the snapshot file is retained for the next start.
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+		}
+		if (reconciled.future().isCompleted()) {
+			try {
+				connector.join(); // let the final write complete
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		} else {
+			connector.interrupt();
+		}
+		delegate.close();
+	}
+
+	/**
+	 * Connects to ZooKeeper retrying until successful or closed, then reconciles the snapshot. <br>
+	 * Thereafter the thread writes the snapshot file each time the snapshot has changed until closed.
+	 */
+	private void connect() {
+		while (!closed) {
+			try {
+				storage.connect();
+				break;
+			} catch (IOException ex) {
+				try {
+					TimeUnit.MILLISECONDS.sleep(ConnectRetryDelay);
+				} catch (InterruptedException ex2) {
+					return;
+				}
+			} catch (InterruptedException ex) {
+				return;
+			}
+		}
+		if (closed) {
+			storage.close(); // closed while connecting
+			return;
+		}
+		getAll(new ArrayList<>(snapshot.keySet()));
+		persist();
+		reconciled.trySuccess(Unit.Instance);
+		try {
+			while (awaitChange()) {
+				persist();
+			}
+		} catch (InterruptedException ex) {
+			// closed while connecting
+		}
+	}
+
+	/**
+	 * Waits for the snapshot to change.
+	 * @return <code>true</code> if the snapshot is to be written, <code>false</code> if closed with no pending changes
+	 */
+	private synchronized boolean awaitChange() throws InterruptedException {
+		while (!dirty && !closed) {
+			wait();
+		}
+		return dirty;
+	}
+
+	private synchronized void markDirty() {
+		dirty = true;
+		notifyAll();
+	}
+
+	/**
+	 * Updates the snapshot with a successful read, or serves the property set from the snapshot if the read failed.
+	 */
+	private Try<Option<PropertySet>> fallback(String name, Try<Option<PropertySet>> result) {
+		if (result.isSuccess()) {
+			result.forEach(propertySet -> update(name, propertySet));
+			return result;
+		}
+		PropertySet cached = snapshot.get(name);
+		return cached != null ? Success(Some(cached)) : result;
+	}
+
+	/**
+	 * Updates the snapshot with the current state of the property set, scheduling a write of the snapshot if it changed. <br>
+	 * Property sets without a version are always considered changed.
+	 */
+	private void update(String name, Option<PropertySet> propertySet) {
+		PropertySet current = propertySet.orNull();
+		PropertySet previous = current != null ? snapshot.put(name, current) : snapshot.remove(name);
+		if (previous == current) {
+			return; // e.g. the same cached instance
+		}
+		if (previous == null || current == null || !current.version().isDefined() || !current.version().equals(previous.version())) {
+			markDirty();
+		}
+	}
+
+	/**
+	 * Writes the snapshot to file, completing all waiters registered before the write started. <br>
+	 * Failing to write the snapshot does not affect the outcome of any operation, the snapshot is merely not updated until the next change.
+	 */
+	private void persist() {
+		List<Promise<Unit>> waiters;
+		synchronized (this) {
+			waiters = persistWaiters;
+			persistWaiters = new ArrayList<>();
+			dirty = false;
+		}
+		Try<Unit> result;
+		try {
+			file.write(new ArrayList<>(snapshot.values()));
+			result = Success(Unit.Instance);
+		} catch (IOException ex) {
+			// keep serving from memory, the next change will attempt to write the file again
+			result = Failure(ex);
+		}
+		for (Promise<Unit> waiter : waiters) {
+			waiter.complete(result);
+		}
+	}
+
+	private List<String> snapshotNames() {
+		List<String> names = new ArrayList<>(snapshot.keySet());
+		Collections.sort(names);
+		return Collections.unmodifiableList(names);
+	}
+
+	/**
+	 * The asynchronous view of the snapshot storage. <br>
+	 * Reads fall back to the snapshot in the same manner as for the synchronous operations.
+	 *
+	 * @author Peter Nerg
+	 * @since 1.4
+	 */
+	private final class AsyncSnapshotStorage implements AsyncPropertiesStorage {
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.dmonix.zookeeper.AsyncPropertiesStorage#get(java.lang.String)
+		 */
+		@Override
+		public Future<Option<PropertySet>> get(String name) {
+			Promise<Option<PropertySet>> promise = Promise();
+			delegate.async().get(name).onComplete(result -> promise.complete(fallback(name, result)));
+			return promise.future();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.dmonix.zookeeper.AsyncPropertiesStorage#getLazy(java.lang.String)
+		 */
+		@Override
+		public Future<Option<LazyPropertySet>> getLazy(String name) {
+			return delegate.async().getLazy(name);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.dmonix.zookeeper.AsyncPropertiesStorage#store(org.dmonix.zookeeper.PropertySet)
+		 */
+		@Override
+		public Future<Unit> store(PropertySet propertySet) {
+			return delegate.async().store(propertySet);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.dmonix.zookeeper.AsyncPropertiesStorage#storeIfUnchanged(org.dmonix.zookeeper.PropertySet)
+		 */
+		@Override
+		public Future<Unit> storeIfUnchanged(PropertySet propertySet) {
+			return delegate.async().storeIfUnchanged(propertySet);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.dmonix.zookeeper.AsyncPropertiesStorage#delete(java.lang.String)
+		 */
+		@Override
+		public Future<Unit> delete(String name) {
+			return delegate.async().delete(name).map(u -> {
+				update(name, None());
+				return u;
+			});
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see org.dmonix.zookeeper.AsyncPropertiesStorage#propertySets()
+		 */
+		@Override
+		public Future<List<String>> propertySets() {
+			Promise<List<String>> promise = Promise();
+			delegate.async().propertySets().onComplete(result -> promise.complete(result.isSuccess() ? result : Success(snapshotNames())));
+			return promise.future();
+		}
+	}
+}
@@ -0,0 +1,42 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+/**
+ * The format used for storing property sets in ZooKeeper. <br>
+ * Regardless of the chosen format property sets stored in either format can be read. <br>
+ * Storing a property set always writes it in the chosen format, e.g. storing a property set in {@link #Compact} format removes any properties stored in the
+ * {@link #Tree} format. <br>
+ * This allows for migrating property sets from one format to the other simply by reading and storing them.
+ *
+ * @author Peter Nerg
+ * @since 1.4
+ */
+public enum StorageFormat {
+	/**
+	 * Each property is stored as a child znode to the property set znode. <br>
+	 * The name of the znode is the name of the property and the data of the znode the value. <br>
+	 * This is the default format.
+	 */
+	Tree,
+
+	/**
+	 * The entire property set is encoded into the data of the property set znode. <br>
+	 * Reading the property set requires a single request to ZooKeeper and only one znode per property set is stored. <br>
+	 * The size of a property set is limited by the max size of a znode (<tt>jute.maxbuffer</tt>).
+	 */
+	Compact
+}
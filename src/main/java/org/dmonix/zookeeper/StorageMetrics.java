@@ -0,0 +1,143 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+/**
+ * Service provider interface for instrumenting the operations of a {@link PropertiesStorage}. <br>
+ * The storage reports the latency and outcome of each operation as well as the number of requests made to ZooKeeper and the amount of znode data read and
+ * written. <br>
+ * All methods are invoked on the hot path of the storage, potentially concurrently by both application threads and the event thread of ZooKeeper. <br>
+ * Implementations must hence be thread safe, fast and should not allocate any memory nor perform any blocking operations. <br>
+ * All methods have empty default implementations allowing an implementation to choose which measurements to collect. <br>
+ * A lightweight implementation is provided by {@link InMemoryStorageMetrics}.
+ *
+ * @author Peter Nerg
+ * @since 1.4
+ */
+public interface StorageMetrics {
+
+	/**
+	 * The instrumented operations.
+	 *
+	 * @author Peter Nerg
+	 * @since 1.4
+	 */
+	enum Operation {
+		/** Getting a property set, see {@link PropertiesStorage#get(String)}. */
+		Get,
+		/** Storing a property set, see {@link PropertiesStorage#store(PropertySet)}. */
+		Store,
+		/** Deleting a property set, see {@link PropertiesStorage#delete(String)}. */
+		Delete,
+		/** Listing the property sets, see {@link PropertiesStorage#propertySets()}. */
+		PropertySets
+	}
+
+	/**
+	 * The events of a storage with a {@link PropertiesStorageFactory#withCache() cache}.
+	 *
+	 * @author Peter Nerg
+	 * @since 1.4
+	 */
+	enum CacheEvent {
+		/** A property set was served from the cache. */
+		Hit,
+		/** A property set was not in the cache and had to be read from ZooKeeper. */
+		Miss,
+		/** A property set was evicted to make room for more frequently used property sets. */
+		Eviction,
+		/** A property set was removed from the cache as it had been cached for longer than the configured expiry. */
+		Expiry,
+		/** A read property set was not admitted to the cache as it was less frequently used than the property sets it would replace. */
+		Rejection
+	}
+
+	/**
+	 * Invoked when an operation has completed.
+	 *
+	 * @param operation
+	 *            The operation
+	 * @param nanos
+	 *            The time (nanoseconds) it took to complete the operation
+	 * @param success
+	 *            If the operation was successful
+	 */
+	default void onOperation(Operation operation, long nanos, boolean success) {
+	}
+
+	/**
+	 * Invoked when requests are sent to ZooKeeper as part of an operation. <br>
+	 * A <tt>multi</tt> transaction counts as a single request.
+	 *
+	 * @param operation
+	 *            The operation
+	 * @param count
+	 *            The number of requests
+	 */
+	default void onRequests(Operation operation, int count) {
+	}
+
+	/**
+	 * Invoked when znode data has been read from ZooKeeper as part of an operation.
+	 *
+	 * @param operation
+	 *            The operation
+	 * @param bytes
+	 *            The number of bytes read
+	 */
+	default void onBytesRead(Operation operation, long bytes) {
+	}
+
+	/**
+	 * Invoked when znode data is written to ZooKeeper as part of an operation.
+	 *
+	 * @param operation
+	 *            The operation
+	 * @param bytes
+	 *            The number of bytes written
+	 */
+	default void onBytesWritten(Operation operation, long bytes) {
+	}
+
+	/**
+	 * Invoked for each cache event, see {@link CacheEvent}.
+	 *
+	 * @param event
+	 *            The event
+	 */
+	default void onCacheEvent(CacheEvent event) {
+	}
+
+	/**
+	 * Invoked when the estimated size of the cached data has changed.
+	 *
+	 * @param bytes
+	 *            The estimated number of bytes retained by the cached property sets
+	 * @param entries
+	 *            The number of cached property sets
+	 */
+	default void onCacheSize(long bytes, int entries) {
+	}
+
+	/**
+	 * Get an instance that discards all measurements.
+	 *
+	 * @return The instance
+	 */
+	static StorageMetrics noOp() {
+		return NoOpStorageMetrics.Instance;
+	}
+}
@@ -0,0 +1,34 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import java.io.Closeable;
+
+/**
+ * A subscription for changes to a property set, see {@link PropertiesStorage#subscribe(String, PropertySetListener)}.
+ *
+ * @author Peter Nerg
+ * @since 1.4
+ */
+public interface Subscription extends Closeable {
+
+	/**
+	 * Cancels the subscription, no further notifications are delivered to the listener. <br>
+	 * Overrides the {@link Closeable#close()} method by not throwing an exception.
+	 */
+	@Override
+	void close();
+}
@@ -0,0 +1,212 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static javascalautils.TryCompanion.Failure;
+import static javascalautils.TryCompanion.Success;
+
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import javascalautils.Try;
+
+/**
+ * Compresses data written to ZooKeeper using {@link Deflater}. <br>
+ * Compressed data is prefixed with a header:
+ *
+ * <pre>
+ * [magic:2][version:1][uncompressed length:4][checksum:4][deflated data]
+ * </pre>
+ *
+ * The first magic byte (<tt>0xF5</tt>) never occurs in UTF-8 encoded text, hence compressed and plain data can be stored side by side. <br>
+ * Values written with another encoding (e.g. <tt>"&otilde;Z"</tt> in Latin-1) or as raw binary data may however start with the magic bytes. <br>
+ * The header therefore also carries a version and a CRC-32 checksum of the length and deflated data, data not matching the checksum is treated as plain
+ * data, i.e. such values written before compression was enabled are never mistaken for compressed data. <br>
+ * Data starting with the magic bytes is always compressed when written regardless of threshold and size, so it is never mistaken for plain data either.
+ * <br>
+ * Only data of at least the configured threshold size is compressed, and only if compressing actually makes it smaller. <br>
+ * Decompression is independent of the configured threshold, any data carrying a valid header is decompressed. <br>
+ * The uncompressed length is bounded, see {@link #MaxSize}, i.e. a corrupt or hostile header never makes the reader allocate more than that. <br>
+ * The {@link Deflater}/{@link Inflater} instances are kept per thread as they hold native resources expensive to allocate.
+ *
+ * @author Peter Nerg
+ * @since 1.4
+ */
+final class ValueCompression {
+
+	/**
+	 * Compression disabled, data is written as is. <br>
+	 * Data starting with the magic bytes (<tt>0xF5 'Z'</tt>) is however still escaped, i.e. compressed, so it is never mistaken for compressed data.
+	 */
+	static final ValueCompression Disabled = new ValueCompression(Integer.MAX_VALUE);
+
+	/** The max ratio between the uncompressed data and the max size of a ZooKeeper request. */
+	private static final int MaxRatio = 32;
+
+	/** The max size (bytes) of decompressed data, {@value #MaxRatio} times the max buffer in ZooKeeper. */
+	static final int MaxSize = Integer.getInteger("jute.maxbuffer", 0xfffff) * MaxRatio;
+
+	/** The max ratio achievable by deflate, used to reject headers claiming more data than the payload can hold. */
+	private static final int MaxDeflateRatio = 1032;
+
+	/** The magic bytes starting all compressed data. */
+	private static final byte[] Magic = { (byte) 0xF5, 'Z' };
+
+	/** The version of the header format. */
+	private static final byte Version = 1;
+
+	private static final int LengthOffset = Magic.length + 1;
+	private static final int ChecksumOffset = LengthOffset + 4;
+	private static final int HeaderSize = ChecksumOffset + 4;
+
+	private static final ThreadLocal<Deflater> deflater = ThreadLocal.withInitial(Deflater::new);
+	private static final ThreadLocal<Inflater> inflater = ThreadLocal.withInitial(Inflater::new);
+
+	private final int threshold;
+
+	/**
+	 * @param threshold
+	 *            The minimum size (bytes) of data to compress
+	 */
+	ValueCompression(int threshold) {
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Compresses the provided data if it is at least the size of the threshold or if it starts with the magic bytes. <br>
+	 * Data larger than {@link #MaxSize} is never compressed as it could not be decompressed.
+	 *
+	 * @param data
+	 *            The data
+	 * @return The compressed data, or the provided data if not compressed
+	 */
+	byte[] compress(byte[] data) {
+		boolean escape = hasMagic(data);
+		if ((data.length < threshold && !escape) || data.length > MaxSize) {
+			return data;
+		}
+		Deflater deflater = ValueCompression.deflater.get();
+		try {
+			deflater.setInput(data);
+			deflater.finish();
+			// only worth it if the compressed data including the header is smaller than the original
+			// unless the data must be escaped, then room is made for the worst case size of deflated data
+			byte[] compressed = new byte[escape ? HeaderSize + deflateBound(data.length) : data.length];
+			int length = HeaderSize;
+			while (!deflater.finished() && length < compressed.length) {
+				length += deflater.deflate(compressed, length, compressed.length - length);
+			}
+			if (!deflater.finished()) {
+				return data;
+			}
+			System.arraycopy(Magic, 0, compressed, 0, Magic.length);
+			compressed[Magic.length] = Version;
+			putInt(compressed, LengthOffset, data.length);
+			putInt(compressed, ChecksumOffset, checksum(compressed, length));
+			return Arrays.copyOf(compressed, length);
+		} finally {
+			deflater.reset();
+		}
+	}
+
+	/**
+	 * Decompresses the provided data if it carries a valid compression header.
+	 *
+	 * @param data
+	 *            The data
+	 * @return {@link javascalautils.Success} with the decompressed data, or the provided data if not compressed. <br>
+	 *         {@link javascalautils.Failure} with {@link IllegalArgumentException} if the compressed data is malformed or too large
+	 */
+	static Try<byte[]> decompress(byte[] data) {
+		if (!isCompressed(data)) {
+			return Success(data);
+		}
+		int size = getInt(data, LengthOffset);
+		if (size < 0 || size > MaxSize || size > (long) (data.length - HeaderSize) * MaxDeflateRatio) {
+			return Failure(new IllegalArgumentException("The compressed data is malformed, invalid size [" + size + "]"));
+		}
+		Inflater inflater = ValueCompression.inflater.get();
+		try {
+			inflater.setInput(data, HeaderSize, data.length - HeaderSize);
+			byte[] result = new byte[size];
+			int length = 0;
+			while (length < size && !inflater.finished()) {
+				int inflated = inflater.inflate(result, length, size - length);
+				if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				length += inflated;
+			}
+			if (length != size || !inflater.finished()) {
+				return Failure(new IllegalArgumentException("The compressed data is malformed, expected [" + size + "] bytes"));
+			}
+			return Success(result);
+		} catch (DataFormatException ex) {
+			return Failure(new IllegalArgumentException("The compressed data is malformed", ex));
+		} finally {
+			inflater.reset();
+		}
+	}
+
+	/**
+	 * Checks if the provided data carries a valid compression header, i.e. the magic bytes, a known version and a matching checksum.
+	 *
+	 * @param data
+	 *            The data
+	 * @return <code>true</code> if compressed
+	 */
+	static boolean isCompressed(byte[] data) {
+		return hasMagic(data) && data.length >= HeaderSize && data[Magic.length] == Version && getInt(data, ChecksumOffset) == checksum(data, data.length);
+	}
+
+	/**
+	 * Checks if the provided data starts with the magic bytes.
+	 */
+	private static boolean hasMagic(byte[] data) {
+		return data != null && data.length >= Magic.length && data[0] == Magic[0] && data[1] == Magic[1];
+	}
+
+	/**
+	 * The checksum of the uncompressed length and the deflated data.
+	 */
+	private static int checksum(byte[] data, int length) {
+		CRC32 crc = new CRC32();
+		crc.update(data, LengthOffset, 4);
+		crc.update(data, HeaderSize, length - HeaderSize);
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * The max size of deflated data, as defined by <tt>deflateBound</tt> in zlib.
+	 */
+	private static int deflateBound(int length) {
+		return length + (length >> 12) + (length >> 14) + (length >> 25) + 13;
+	}
+
+	private static void putInt(byte[] data, int offset, int value) {
+		data[offset] = (byte) (value >>> 24);
+		data[offset + 1] = (byte) (value >>> 16);
+		data[offset + 2] = (byte) (value >>> 8);
+		data[offset + 3] = (byte) value;
+	}
+
+	private static int getInt(byte[] data, int offset) {
+		return (data[offset] & 0xFF) << 24 | (data[offset + 1] & 0xFF) << 16 | (data[offset + 2] & 0xFF) << 8 | (data[offset + 3] & 0xFF);
+	}
+}
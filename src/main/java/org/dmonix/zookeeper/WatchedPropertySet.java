@@ -0,0 +1,406 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static javascalautils.OptionCompanion.None;
+import static javascalautils.OptionCompanion.Option;
+import static javascalautils.OptionCompanion.Some;
+import static javascalautils.TryCompanion.Try;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher.Event.EventType;
+import org.apache.zookeeper.Watcher.Event.KeeperState;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+
+import javascalautils.Option;
+import javascalautils.Try;
+
+/**
+ * Keeps a local copy of a single property set up to date using watches. <br>
+ * The instance receives the events for both the property set znode and all its property znodes through the {@link PropertySetWatches} of the storage,
+ * i.e. ZooKeeper never references the instance itself and a discarded instance is not retained by any outstanding watch. <br>
+ * Upon a change only the affected znodes are re-read. <br>
+ * Property sets stored in the {@link StorageFormat#Compact} format are kept up to date with a data watch on the property set znode. <br>
+ * The {@link PropertySetVersion version} of the property set is tracked with a data watch on the property set znode as each store modifies it, i.e.
+ * the notified state can be used with {@link PropertiesStorage#storeIfUnchanged(PropertySet)}. <br>
+ * All state is only accessed by the single event thread of ZooKeeper, the initial load is issued by the thread invoking {@link #start()} which happens-before
+ * any callback. <br>
+ * Should the session expire after the initial load the property set is re-read with new watches once the session has been recovered. <br>
+ * Should the connection be lost while reads are in flight the property set is re-read once re-connected, the watches themselves survive a lost
+ * connection. The listener is not notified in between. <br>
+ * The listener is notified only once all outstanding reads have completed, i.e. a burst of watch events such as the ones caused by storing a property set
+ * with hundreds of properties yields a single notification with the final state of the property set.
+ *
+ * @author Peter Nerg
+ * @since 1.4
+ */
+final class WatchedPropertySet {
+
+	/**
+	 * Receives the state of the watched property set.
+	 *
+	 * @author Peter Nerg
+	 * @since 1.4
+	 */
+	interface Listener {
+		/**
+		 * Invoked by the ZooKeeper event thread each time the outstanding reads for the property set have completed.
+		 *
+		 * @param snapshot
+		 *            Immutable snapshot of the property values, {@link javascalautils.None} if the property set does not exist
+		 * @param version
+		 *            The version of the property set, {@link javascalautils.None} if the property set does not exist
+		 */
+		void onUpdate(Option<Map<String, PropertyValue>> snapshot, Option<PropertySetVersion> version);
+
+		/**
+		 * Invoked if the property set no longer can be kept up to date, e.g. due to a failed read or the session expiring during the initial load. <br>
+		 * The watched property set is discarded before the invocation.
+		 *
+		 * @param error
+		 *            The error
+		 */
+		void onError(Throwable error);
+	}
+
+	private final ZooKeeperStorage storage;
+	private final String name;
+	private final String path;
+	private final PropertySetWatches watches;
+	/** The listener, <code>null</code> once released. */
+	private Listener listener;
+	/** The properties as currently known, the values are kept as read and only decoded once read as strings. */
+	private final Map<String, PropertyValue> properties = new HashMap<>();
+	/** If the property set is stored in the compact format. */
+	private boolean compact = false;
+	/** If the property set exists. */
+	private boolean exists = false;
+	/** The version of the property set as last read, only valid if the property set exists. */
+	private PropertySetVersion version;
+	/** The number of reads awaiting a response. */
+	private int pending = 0;
+	/** If the property set no longer can be kept up to date. */
+	private boolean failed = false;
+	/** If the listener has been notified at least once, i.e. the initial load has completed. */
+	private volatile boolean loaded = false;
+	/** If reads have been lost due to a lost connection or an expired session, the state is not notified until re-read once re-connected. */
+	private volatile boolean stale = false;
+	/** The connection the property set last was read on, a different connection means the session has been re-created and all watches are lost. */
+	private volatile ZooKeeper connection;
+	private volatile boolean discarded = false;
+
+	WatchedPropertySet(ZooKeeperStorage storage, String name, Listener listener) {
+		this.storage = storage;
+		this.name = name;
+		this.path = storage.propertySetPath(name);
+		this.watches = storage.watches();
+		this.listener = listener;
+	}
+
+	/**
+	 * Starts the initial load of the property set. <br>
+	 * Should there be no connection the listener is notified immediately by the invoking thread.
+	 */
+	void start() {
+		watches.register(path, this);
+		Try<ZooKeeper> connection = storage.connection();
+		connection.forEach(this::loadChildren);
+		connection.failed().forEach(this::onError);
+	}
+
+	/**
+	 * Marks this instance as no longer in use, it is unregistered from the watches of the storage and any further watch events are ignored. <br>
+	 * Any ongoing reads are still allowed to complete, thereafter the properties and the listener are released.
+	 */
+	void discard() {
+		discarded = true;
+		watches.unregister(path, this);
+	}
+
+	/**
+	 * Re-reads the property set if any reads were lost or if the session has been re-created since the property set was read, in the latter case all
+	 * watches were lost with the expired session. <br>
+	 * Invoked by the event thread of ZooKeeper each time the session is connected anew, a property set still in its initial load or already discarded
+	 * is left as is.
+	 *
+	 * @param zk
+	 *            The current connection
+	 */
+	void recover(ZooKeeper zk) {
+		if (discarded || failed || !(stale || (loaded && zk != connection))) {
+			return;
+		}
+		stale = false;
+		properties.clear();
+		compact = false;
+		exists = false;
+		loadChildren(zk);
+	}
+
+	/**
+	 * Processes an event for the property set znode, any of its property znodes or the session.
+	 *
+	 * @param event
+	 *            The event
+	 */
+	void process(WatchedEvent event) {
+		if (discarded) {
+			return;
+		}
+		if (event.getType() == EventType.None) {
+			// the session is gone and so are all the watches, the state is re-read once the session has recovered
+			if (event.getState() == KeeperState.Expired) {
+				onError(Code.SESSIONEXPIRED, path);
+			}
+			return;
+		}
+
+		storage.connection().forEach(zk -> {
+			if (path.equals(event.getPath())) {
+				switch (event.getType()) {
+				case NodeCreated:
+				case NodeChildrenChanged:
+					loadChildren(zk);
+					break;
+				case NodeDataChanged:
+					if (compact) {
+						loadCompact(zk);
+					} else {
+						loadVersion(zk);
+					}
+					break;
+				case NodeDeleted:
+					properties.clear();
+					compact = false;
+					exists = false;
+					watchExists(zk);
+					break;
+				default:
+					break;
+				}
+			} else {
+				String property = event.getPath().substring(path.length() + 1);
+				if (event.getType() == EventType.NodeDataChanged) {
+					loadProperty(zk, property);
+				}
+				// the property is removed (and possibly re-created in the same transaction)
+				// forget about it so it's re-read with a new watch once the children have been listed
+				else if (event.getType() == EventType.NodeDeleted) {
+					properties.remove(property);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Lists the children of the property set with a watch, any new properties are loaded while removed ones are discarded.
+	 */
+	private void loadChildren(ZooKeeper zk) {
+		connection = zk;
+		pending++;
+		zk.getChildren(path, watches, (rc, p, ctx, children, stat) -> {
+			onChildren(zk, Code.get(rc), children, stat);
+			done();
+		}, null);
+	}
+
+	private void onChildren(ZooKeeper zk, Code code, List<String> children, Stat stat) {
+		if (code == Code.NONODE) {
+			// set a watch to be notified if the property set is created
+			watchExists(zk);
+			return;
+		}
+		if (code != Code.OK) {
+			onError(code, path);
+			return;
+		}
+		if (children.isEmpty() && stat.getDataLength() > 0) {
+			loadCompact(zk);
+			return;
+		}
+		exists = true;
+		version = PropertySetVersion.of(stat);
+		loadVersion(zk); // sets the data watch on the property set znode, notified of any store modifying only property values
+		if (compact) { // the property set was previously stored in the compact format, none of the properties have a watch
+			properties.clear();
+			compact = false;
+		}
+
+		Set<String> removed = new HashSet<>(properties.keySet());
+		removed.removeAll(children);
+		properties.keySet().removeAll(removed);
+
+		List<String> added = new ArrayList<>(children);
+		added.removeAll(properties.keySet());
+		added.forEach(property -> loadProperty(zk, property));
+	}
+
+	/**
+	 * Reads the data of the property set znode with a watch, used for property sets stored in the {@link StorageFormat#Compact} format.
+	 */
+	private void loadCompact(ZooKeeper zk) {
+		pending++;
+		zk.getData(path, watches, (rc, p, ctx, data, stat) -> {
+			onCompact(zk, Code.get(rc), data, stat);
+			done();
+		}, null);
+	}
+
+	private void onCompact(ZooKeeper zk, Code code, byte[] data, Stat stat) {
+		if (code == Code.NONODE) {
+			watchExists(zk);
+			return;
+		}
+		if (code != Code.OK) {
+			onError(code, path);
+			return;
+		}
+		Try<byte[]> decompressed = ValueCompression.decompress(data);
+		if (decompressed.isFailure()) {
+			onError(decompressed.failed().orNull());
+			return;
+		}
+		if (PropertySetCodec.isEncoded(decompressed.orNull())) {
+			Try<PropertySet> decoded = Try(() -> PropertySetCodec.decode(name, decompressed.orNull()));
+			if (decoded.isFailure()) {
+				onError(decoded.failed().orNull());
+				return;
+			}
+			properties.clear();
+			PropertyValue.forEach(decoded.orNull(), properties::put);
+			compact = true;
+			exists = true;
+			version = PropertySetVersion.of(stat);
+		} else if (stat.getNumChildren() > 0 || compact) {
+			loadChildren(zk);
+		} else {
+			exists = true;
+			version = PropertySetVersion.of(stat);
+		}
+	}
+
+	/**
+	 * Reads the version of a property set stored as children with a data watch on the property set znode. <br>
+	 * Should the property set have been stored in the compact format meanwhile its data is read.
+	 */
+	private void loadVersion(ZooKeeper zk) {
+		pending++;
+		zk.exists(path, watches, (rc, p, ctx, stat) -> {
+			Code code = Code.get(rc);
+			if (code == Code.OK) {
+				if (stat.getDataLength() > 0) {
+					loadCompact(zk);
+				} else {
+					version = PropertySetVersion.of(stat);
+				}
+			}
+			// NONODE means the property set has been deleted, this is managed by the watch on the children
+			else if (code != Code.NONODE) {
+				onError(code, path);
+			}
+			done();
+		}, null);
+	}
+
+	/**
+	 * Reads the data of a single property with a watch.
+	 */
+	private void loadProperty(ZooKeeper zk, String property) {
+		pending++;
+		zk.getData(path + "/" + property, watches, (rc, p, ctx, data, stat) -> {
+			Code code = Code.get(rc);
+			if (code == Code.OK) {
+				Try<PropertyValue> value = ValueCompression.decompress(data).map(PropertyValue::of);
+				value.forEach(v -> properties.put(property, v));
+				value.failed().forEach(this::onError);
+			}
+			// NONODE means the property has been removed, this is managed by the watch on the children
+			else if (code != Code.NONODE) {
+				onError(code, p);
+			}
+			done();
+		}, null);
+	}
+
+	/**
+	 * Sets a watch to be notified if the property set is created.
+	 */
+	private void watchExists(ZooKeeper zk) {
+		pending++;
+		zk.exists(path, watches, (rc, p, ctx, stat) -> {
+			Code code = Code.get(rc);
+			if (code == Code.OK) { // the property set was created after we listed the children
+				loadChildren(zk);
+			} else if (code == Code.NONODE) {
+				properties.clear();
+				compact = false;
+				exists = false;
+			} else {
+				onError(code, path);
+			}
+			done();
+		}, null);
+	}
+
+	/**
+	 * Invoked once a read has completed, should there be no more outstanding reads the listener is notified. <br>
+	 * A discarded instance releases the properties and the listener once there are no more outstanding reads.
+	 */
+	private void done() {
+		if (--pending > 0 || listener == null) {
+			return;
+		}
+		if (!failed && !stale) {
+			loaded = true;
+			listener.onUpdate(exists ? Some(Collections.unmodifiableMap(new HashMap<>(properties))) : None(), exists ? Some(version) : None());
+		}
+		if (discarded) {
+			properties.clear();
+			listener = null;
+		}
+	}
+
+	/**
+	 * A lost connection as well as an expired session after the initial load is recovered from once re-connected, any other error means the property
+	 * set no longer can be kept up to date.
+	 */
+	private void onError(Code code, String path) {
+		if (code == Code.CONNECTIONLOSS || (code == Code.SESSIONEXPIRED && loaded)) {
+			stale = true;
+		} else {
+			onError(KeeperException.create(code, path));
+		}
+	}
+
+	private void onError(Throwable error) {
+		if (!failed) {
+			failed = true;
+			discard();
+			listener.onError(error);
+		}
+	}
+}
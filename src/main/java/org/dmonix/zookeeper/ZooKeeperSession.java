@@ -0,0 +1,379 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static javascalautils.TryCompanion.Try;
+import static javascalautils.concurrent.PromiseCompanion.Promise;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher.Event.KeeperState;
+import org.apache.zookeeper.ZooKeeper;
+
+import javascalautils.Unit;
+import javascalautils.concurrent.Future;
+import javascalautils.concurrent.Promise;
+
+/**
+ * A reference counted ZooKeeper session shared by all storage instances using the same connect string. <br>
+ * The session is created by the first call to {@link #acquire(String, int)} and closed once the last user has invoked {@link #release()}. <br>
+ * This avoids having each storage instance opening its own connection with the accompanying heartbeats and connection setup time. <br>
+ * <br>
+ * The session recovers by itself from being expired. <br>
+ * Upon expiry a new ZooKeeper connection is created in the background, retrying with jittered exponential backoff should it fail, and swapped in
+ * atomically once created. <br>
+ * The backoff is only reset once a connection has stayed connected for the session timeout, i.e. a connection that expires shortly after being
+ * connected is re-created with an increasing delay. <br>
+ * While the session is disconnected or expired {@link #zooKeeper()} fails immediately instead of handing out a connection on which requests would stall
+ * until the connection is re-established. <br>
+ * Note that any watches set on an expired connection are lost and so are the responses to any requests in flight when a connection is lost. <br>
+ * The {@link #addReconnectListener(Runnable) reconnect listeners} are notified each time the session is connected anew, allowing the owners of the
+ * watches to re-register them and to re-issue any lost requests.
+ *
+ * @author Peter Nerg
+ * @since 1.4
+ */
+final class ZooKeeperSession {
+
+	/** The initial delay (millis) before re-creating an expired connection. */
+	static final long InitialBackoff = 100;
+
+	/** The max delay (millis) before re-creating an expired connection. */
+	static final long MaxBackoff = 30_000;
+
+	/** All currently open sessions mapped on their connect string, access guarded by the map itself. */
+	private static final Map<String, ZooKeeperSession> sessions = new HashMap<>();
+
+	/** Performs the re-creation of expired connections and the connect timeouts for all sessions. */
+	private static final ScheduledExecutorService recovery = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "zookeeper-session-recovery");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final String connectString;
+	private final int sessionTimeout;
+	/** Completed the first time the session is connected. */
+	private final Promise<Unit> connected = Promise();
+	private final KnownPaths knownPaths = new KnownPaths();
+
+	/** The current connection, swapped upon session expiry. */
+	private volatile ZooKeeper zooKeeper;
+	/** The state of the current connection as reported by its watcher. */
+	private volatile KeeperState state = KeeperState.Disconnected;
+	/** If this session has been released by its last user. */
+	private volatile boolean closed = false;
+
+	/** The generation of the current connection, used to ignore events from replaced connections. Guarded by <code>this</code>. */
+	private int generation = 0;
+	/** The number of attempts to re-create the connection since the connection last was stable. Guarded by <code>this</code>. */
+	private int attempts = 0;
+
+	/** The time (nanos) the current connection was connected, 0 if not connected. Guarded by <code>this</code>. */
+	private long connectedAt = 0;
+	/** Notified each time the session is connected anew after a lost connection or an expiry. */
+	private final Set<Runnable> reconnectListeners = ConcurrentHashMap.newKeySet();
+
+	/** The number of users of this session, guarded by the {@link #sessions} map. */
+	private int references = 0;
+
+	private ZooKeeperSession(String connectString, int sessionTimeout) throws IOException {
+		this.connectString = connectString;
+		this.sessionTimeout = sessionTimeout;
+		this.zooKeeper = newZooKeeper(0);
+	}
+
+	/**
+	 * Acquires a session for the provided connect string. <br>
+	 * Blocks until connected, the session timeout is also used as the max time to wait for the connection to be established.
+	 *
+	 * @param connectString
+	 *            The connect string used to connect to ZooKeeper
+	 * @param sessionTimeout
+	 *            The session timeout (millis)
+	 * @return The session
+	 * @throws IOException
+	 *             If failing to connect to ZooKeeper
+	 * @throws InterruptedException
+	 * @see #acquire(String, int, int)
+	 */
+	static ZooKeeperSession acquire(String connectString, int sessionTimeout) throws IOException, InterruptedException {
+		return acquire(connectString, sessionTimeout, sessionTimeout);
+	}
+
+	/**
+	 * Acquires a session for the provided connect string. <br>
+	 * Blocks until connected, see {@link #acquireAsync(String, int, int)}.
+	 *
+	 * @param connectString
+	 *            The connect string used to connect to ZooKeeper
+	 * @param sessionTimeout
+	 *            The session timeout (millis)
+	 * @param connectTimeout
+	 *            The max time (millis) to wait for the connection to be established
+	 * @return The session
+	 * @throws IOException
+	 *             If failing to connect to ZooKeeper
+	 * @throws InterruptedException
+	 */
+	static ZooKeeperSession acquire(String connectString, int sessionTimeout, int connectTimeout) throws IOException, InterruptedException {
+		try {
+			// the future is guaranteed to complete within the connect timeout
+			return acquireAsync(connectString, sessionTimeout, connectTimeout).result(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (IOException | InterruptedException | RuntimeException ex) {
+			throw ex;
+		} catch (Throwable ex) {
+			throw new IOException("Failed to connect to ZooKeeper", ex);
+		}
+	}
+
+	/**
+	 * Asynchronously acquires a session for the provided connect string. <br>
+	 * Should there be an existing live session for the connect string that session is re-used, else a new session is created. <br>
+	 * The session timeout is only applied when creating a new session. <br>
+	 * No thread is blocked while connecting, the returned future is completed by the event thread of ZooKeeper once connected. <br>
+	 * Each successful acquire must be matched by an invocation to {@link #release()}, a failed acquire releases the session by itself.
+	 *
+	 * @param connectString
+	 *            The connect string used to connect to ZooKeeper
+	 * @param sessionTimeout
+	 *            The session timeout (millis)
+	 * @param connectTimeout
+	 *            The max time (millis) to wait for the connection to be established
+	 * @return The future session, failed with {@link IOException} if failing to connect within the connect timeout
+	 */
+	static Future<ZooKeeperSession> acquireAsync(String connectString, int sessionTimeout, int connectTimeout) {
+		ZooKeeperSession session;
+		synchronized (sessions) {
+			session = sessions.get(connectString);
+			if (session == null || !session.isAlive()) {
+				try {
+					session = new ZooKeeperSession(connectString, sessionTimeout);
+				} catch (IOException | RuntimeException ex) {
+					return Future.failed(ex);
+				}
+				sessions.put(connectString, session);
+			}
+			session.references++;
+		}
+
+		ZooKeeperSession acquired = session;
+		Promise<ZooKeeperSession> promise = Promise();
+		ScheduledFuture<?> timeout = recovery.schedule(() -> {
+			if (promise.tryFailure(new IOException("Failed to connect to ZooKeeper within [" + connectTimeout + "] ms"))) {
+				// closing a connection that never connected may block, keep it off the thread shared by all sessions
+				ForkJoinPool.commonPool().execute(acquired::release);
+			}
+		}, connectTimeout, TimeUnit.MILLISECONDS);
+		acquired.connected.future().onSuccess(u -> {
+			if (promise.trySuccess(acquired)) {
+				timeout.cancel(false);
+			}
+		});
+		return promise.future();
+	}
+
+	/**
+	 * Releases this session. <br>
+	 * The underlying connection is closed once the last user has released the session.
+	 */
+	void release() {
+		synchronized (sessions) {
+			if (--references > 0) {
+				return;
+			}
+			sessions.remove(connectString, this);
+		}
+		ZooKeeper released;
+		synchronized (this) {
+			closed = true;
+			released = zooKeeper;
+		}
+		Try(() -> released.close());
+	}
+
+	/**
+	 * Get the ZooKeeper connection of this session. <br>
+	 * Fails fast if the session currently is not connected, i.e. requests are never issued on a connection that is being re-established.
+	 *
+	 * @return The connection
+	 * @throws KeeperException
+	 *             {@link org.apache.zookeeper.KeeperException.ConnectionLossException ConnectionLossException} if disconnected,
+	 *             {@link org.apache.zookeeper.KeeperException.SessionExpiredException SessionExpiredException} if expired or released
+	 */
+	ZooKeeper zooKeeper() throws KeeperException {
+		ZooKeeper current = zooKeeper;
+		KeeperState currentState = state;
+		if (closed || currentState == KeeperState.Expired) {
+			throw KeeperException.create(Code.SESSIONEXPIRED);
+		}
+		if (currentState != KeeperState.SyncConnected) {
+			throw KeeperException.create(Code.CONNECTIONLOSS);
+		}
+		return current;
+	}
+
+	/**
+	 * Adds a listener notified by the event thread of ZooKeeper each time the session is connected anew, i.e. the connection has been re-established
+	 * after being lost or re-created after an expiry.
+	 *
+	 * @param listener
+	 *            The listener
+	 */
+	void addReconnectListener(Runnable listener) {
+		reconnectListeners.add(listener);
+	}
+
+	/**
+	 * Removes a previously added reconnect listener.
+	 *
+	 * @param listener
+	 *            The listener
+	 */
+	void removeReconnectListener(Runnable listener) {
+		reconnectListeners.remove(listener);
+	}
+
+	/**
+	 * The number of attempts to re-create the connection since the session last was stable, i.e. connected for at least the session timeout.
+	 *
+	 * @return The number of attempts
+	 */
+	synchronized int recoveryAttempts() {
+		return attempts;
+	}
+
+	/**
+	 * Get the paths known to exist as seen by this session.
+	 *
+	 * @return The known paths
+	 */
+	KnownPaths knownPaths() {
+		return knownPaths;
+	}
+
+	/**
+	 * If the session still is alive, i.e. not released by its last user. <br>
+	 * An expired session is still considered alive as it is being recovered.
+	 *
+	 * @return <code>true</code> if alive
+	 */
+	boolean isAlive() {
+		return !closed;
+	}
+
+	/**
+	 * If the session currently is connected to ZooKeeper.
+	 *
+	 * @return <code>true</code> if connected
+	 */
+	boolean isConnected() {
+		return !closed && state == KeeperState.SyncConnected;
+	}
+
+	/**
+	 * Creates a new ZooKeeper connection with a watcher tied to the provided generation.
+	 */
+	private ZooKeeper newZooKeeper(int generation) throws IOException {
+		return new ZooKeeper(connectString, sessionTimeout, event -> process(generation, event));
+	}
+
+	/**
+	 * Processes a connection event, events from connections that have been replaced are ignored.
+	 */
+	private void process(int eventGeneration, WatchedEvent event) {
+		boolean reconnected = false;
+		synchronized (this) {
+			if (closed || eventGeneration != generation || event.getState() == null) {
+				return;
+			}
+			switch (event.getState()) {
+			case SyncConnected:
+				reconnected = connectedAt != 0 || generation > 0; // i.e. all but the very first connect
+				if (connectedAt == 0) {
+					connectedAt = Math.max(1, System.nanoTime());
+				}
+				state = KeeperState.SyncConnected;
+				break;
+			case Disconnected: // the ZooKeeper client re-connects by itself while the session is still valid
+				state = KeeperState.Disconnected;
+				break;
+			case Expired:
+				// only a connection that has been stable resets the backoff, else a connection expiring right away would be re-created at once
+				if (connectedAt != 0 && System.nanoTime() - connectedAt >= TimeUnit.MILLISECONDS.toNanos(sessionTimeout)) {
+					attempts = 0;
+				}
+				connectedAt = 0;
+				state = KeeperState.Expired;
+				scheduleRecovery();
+				break;
+			default:
+				break;
+			}
+		}
+		if (event.getState() == KeeperState.SyncConnected) {
+			connected.trySuccess(Unit.Instance);
+		}
+		if (reconnected) {
+			reconnectListeners.forEach(Runnable::run);
+		}
+	}
+
+	/**
+	 * Schedules the re-creation of the connection using exponential backoff with jitter, i.e. the delay is randomly picked between half and the full
+	 * backoff. <br>
+	 * The jitter prevents all clients of an ensemble re-connecting at the very same time after e.g. a network partition.
+	 */
+	private synchronized void scheduleRecovery() {
+		long backoff = Math.min(MaxBackoff, InitialBackoff << Math.min(attempts, 20));
+		long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+		attempts++;
+		recovery.schedule(this::recover, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Replaces the expired connection with a new one. <br>
+	 * The paths known to exist are forgotten as the new session may be connected to a server with a different view.
+	 */
+	private synchronized void recover() {
+		if (closed || state != KeeperState.Expired) {
+			return;
+		}
+		ZooKeeper expired = zooKeeper;
+		try {
+			zooKeeper = newZooKeeper(generation + 1);
+			generation++;
+			state = KeeperState.Disconnected;
+			knownPaths.clear();
+			Try(() -> expired.close());
+		} catch (IOException | RuntimeException ex) {
+			scheduleRecovery(); // e.g. failing to resolve the host names, try again later
+		}
+	}
+}
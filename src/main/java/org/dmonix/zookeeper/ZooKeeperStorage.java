@@ -16,25 +16,46 @@
 package org.dmonix.zookeeper;
 
 import static javascalautils.OptionCompanion.None;
-import static javascalautils.OptionCompanion.Option;
+import static javascalautils.OptionCompanion.Some;
+import static javascalautils.TryCompanion.Failure;
 import static javascalautils.TryCompanion.Try;
-import static org.dmonix.zookeeper.ZooKeeperUtil.children;
-import static org.dmonix.zookeeper.ZooKeeperUtil.createRecursive;
-import static org.dmonix.zookeeper.ZooKeeperUtil.deleteRecursive;
-import static org.dmonix.zookeeper.ZooKeeperUtil.exists;
-import static org.dmonix.zookeeper.ZooKeeperUtil.getData;
+import static javascalautils.concurrent.PromiseCompanion.Promise;
+import static org.dmonix.zookeeper.ZooKeeperUtil.childrenAsync;
+import static org.dmonix.zookeeper.ZooKeeperUtil.copy;
+import static org.dmonix.zookeeper.ZooKeeperUtil.createRecursiveAsync;
+import static org.dmonix.zookeeper.ZooKeeperUtil.dataAsync;
+import static org.dmonix.zookeeper.ZooKeeperUtil.deleteRecursiveAsync;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.apache.zookeeper.Watcher.Event.KeeperState;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.BadVersionException;
+import org.apache.zookeeper.KeeperException.Code;
+import org.apache.zookeeper.KeeperException.NoNodeException;
+import org.apache.zookeeper.KeeperException.NodeExistsException;
 import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+import org.dmonix.zookeeper.StorageMetrics.Operation;
 
 import javascalautils.Option;
+import javascalautils.ThrowableFunction1;
 import javascalautils.Try;
 import javascalautils.Unit;
+import javascalautils.concurrent.Future;
+import javascalautils.concurrent.Promise;
 
 /**
  * The implementation of the proeprties storage.
@@ -43,30 +64,126 @@ import javascalautils.Unit;
  */
 class ZooKeeperStorage implements PropertiesStorage {
 
+	/** The default session timeout (millis) used for the ZooKeeper connection. */
+	static final int DefaultSessionTimeout = 10000;
+
+	/** The default max time (millis) to wait for the connection to ZooKeeper to be established. */
+	static final int DefaultConnectTimeout = 10000;
+	
 	private final String connectString;
 	private final String rootPath;
-	private Option<ZooKeeper> zooKeeper = None();
+	private final boolean incrementalStore;
+	private final StorageFormat format;
+	private final StorageMetrics metrics;
+	private final ValueCompression compression;
+	private final int sessionTimeout;
+	private final int connectTimeout;
+	private volatile Option<ZooKeeperSession> session = None();
+	private final AsyncPropertiesStorage async = new AsyncStorage();
+	private final Set<PropertySetSubscription> subscriptions = ConcurrentHashMap.newKeySet();
+	private final PropertySetWatches watches = new PropertySetWatches();
+	/** Re-arms the watched property sets once the session has been re-connected after a lost connection or an expiry. */
+	private final Runnable onReconnected = () -> connection().forEach(watches::recover);
 
 	/**
 	 * @param connectString
 	 * @param rootPath
 	 */
 	ZooKeeperStorage(String connectString, String rootPath) {
+		this(connectString, rootPath, false, StorageFormat.Tree);
+	}
+
+	/**
+	 * @param connectString
+	 * @param rootPath
+	 * @param incrementalStore If only the changed properties are to be written when storing a property set
+	 * @param format The format used when storing property sets
+	 */
+	ZooKeeperStorage(String connectString, String rootPath, boolean incrementalStore, StorageFormat format) {
+		this(connectString, rootPath, incrementalStore, format, StorageMetrics.noOp());
+	}
+
+	/**
+	 * @param connectString
+	 * @param rootPath
+	 * @param incrementalStore If only the changed properties are to be written when storing a property set
+	 * @param format The format used when storing property sets
+	 * @param metrics The metrics to report all operations to
+	 */
+	ZooKeeperStorage(String connectString, String rootPath, boolean incrementalStore, StorageFormat format, StorageMetrics metrics) {
+		this(connectString, rootPath, incrementalStore, format, metrics, ValueCompression.Disabled);
+	}
+
+	/**
+	 * @param connectString
+	 * @param rootPath
+	 * @param incrementalStore If only the changed properties are to be written when storing a property set
+	 * @param format The format used when storing property sets
+	 * @param metrics The metrics to report all operations to
+	 * @param compression The compression applied to data written to ZooKeeper
+	 */
+	ZooKeeperStorage(String connectString, String rootPath, boolean incrementalStore, StorageFormat format, StorageMetrics metrics, ValueCompression compression) {
+		this(connectString, rootPath, incrementalStore, format, metrics, compression, DefaultSessionTimeout, DefaultConnectTimeout);
+	}
+
+	/**
+	 * @param connectString
+	 * @param rootPath
+	 * @param incrementalStore If only the changed properties are to be written when storing a property set
+	 * @param format The format used when storing property sets
+	 * @param metrics The metrics to report all operations to
+	 * @param compression The compression applied to data written to ZooKeeper
+	 * @param sessionTimeout The session timeout (millis), also the max time to await the response of an operation
+	 * @param connectTimeout The max time (millis) to wait for the connection to be established
+	 */
+	ZooKeeperStorage(String connectString, String rootPath, boolean incrementalStore, StorageFormat format, StorageMetrics metrics, ValueCompression compression, int sessionTimeout, int connectTimeout) {
 		this.connectString = connectString;
 		this.rootPath = rootPath;
+		this.incrementalStore = incrementalStore;
+		this.format = format;
+		this.metrics = metrics;
+		this.compression = compression;
+		this.sessionTimeout = sessionTimeout;
+		this.connectTimeout = connectTimeout;
+	}
+
+	/**
+	 * Connects to ZooKeeper. <br>
+	 * The underlying ZooKeeper session is shared with all other storage instances using the same connect string.
+	 * @throws IOException If failing to connect
+	 * @throws InterruptedException
+	 */
+	synchronized void connect() throws IOException, InterruptedException {
+		if (session.isEmpty()) {
+			ZooKeeperSession acquired = ZooKeeperSession.acquire(connectString, sessionTimeout, connectTimeout);
+			acquired.addReconnectListener(onReconnected);
+			session = Some(acquired);
+		}
 	}
 
-	void connect() throws IOException, InterruptedException {
-		CountDownLatch latch = new CountDownLatch(1);
-		ZooKeeper zk = new ZooKeeper(connectString, 10000, event -> {
-			if (event.getState() == KeeperState.SyncConnected) {
-				latch.countDown();
+	/**
+	 * Asynchronously connects to ZooKeeper. <br>
+	 * No thread is blocked while connecting, the returned future is completed once connected or the connect timeout has passed.
+	 * @return The future result, failed with {@link IOException} if failing to connect
+	 * @see #connect()
+	 */
+	Future<Unit> connectAsync() {
+		synchronized (this) {
+			if (session.isDefined()) {
+				return Future.successful(Unit.Instance);
 			}
-		});
-		if (!latch.await(10, TimeUnit.SECONDS)) {
-			throw new IOException("Failed to connect to ZooKeeper");
 		}
-		zooKeeper = Option(zk);
+		return ZooKeeperSession.acquireAsync(connectString, sessionTimeout, connectTimeout).map(acquired -> {
+			synchronized (this) {
+				if (session.isEmpty()) {
+					acquired.addReconnectListener(onReconnected);
+					session = Some(acquired);
+					return Unit.Instance;
+				}
+			}
+			acquired.release(); // concurrently connected by some other invocation
+			return Unit.Instance;
+		});
 	}
 
 	/*
@@ -76,21 +193,187 @@ class ZooKeeperStorage implements PropertiesStorage {
 	 */
 	@Override
 	public Try<Option<PropertySet>> get(String name) {
-		return connection().flatMap(zk -> {
-			return Try(() -> {
-				String path = propertySetPath(name);
-				PropertySet propertySet = null;
-				if (exists(zk, path)) {
-					propertySet = PropertySet.apply(name);
-					for (String child : children(zk, path).get()) {
-						propertySet.set(child, getData(zk, path + "/" + child));
-					}
-				} 
-				return Option(propertySet);
-			});
+		return await(async.get(name));
+	}
+
+	/**
+	 * Gets all the named property sets. <br>
+	 * The reads for all property sets are issued at once before awaiting any result, i.e. the listing of children and reading of data for all property sets
+	 * are in flight at the same time.
+	 */
+	@Override
+	public Map<String, Try<Option<PropertySet>>> getAll(Collection<String> names) {
+		Map<String, Future<Option<PropertySet>>> futures = new LinkedHashMap<>();
+		names.forEach(name -> futures.put(name, async.get(name)));
+		Map<String, Try<Option<PropertySet>>> result = new LinkedHashMap<>();
+		futures.forEach((name, future) -> result.put(name, await(future)));
+		return result;
+	}
+
+	/**
+	 * Reads the named property set using the asynchronous API of ZooKeeper. <br>
+	 * Property sets stored in any of the {@link StorageFormat formats} are read, the configured format only decides which format is tried first. <br>
+	 * The returned future is completed once all responses have been received. <br>
+	 * All callbacks are invoked by the single event thread of ZooKeeper, hence there is no concurrent access to the property set being populated.
+	 * @param zk The ZooKeeper connection
+	 * @param name The name of the property set
+	 * @param stat Optional (may be <code>null</code>) holder for the stat of the property set znode, populated when the future completes
+	 * @param operation The operation the read is performed for, used for reporting metrics
+	 * @return The future result
+	 */
+	private Future<Option<PropertySet>> read(ZooKeeper zk, String name, Stat stat, Operation operation) {
+		Promise<Option<PropertySet>> promise = Promise();
+		if (format == StorageFormat.Compact) {
+			readCompact(zk, name, stat, promise, operation);
+		} else {
+			readTree(zk, name, stat, promise, operation);
+		}
+		return promise.future();
+	}
+
+	/**
+	 * Reads a property set by first listing the children of the property set znode. <br>
+	 * Should there be no children but data on the znode it is assumed to be stored in the {@link StorageFormat#Compact} format.
+	 */
+	private void readTree(ZooKeeper zk, String name, Stat statHolder, Promise<Option<PropertySet>> promise, Operation operation) {
+		String path = propertySetPath(name);
+		metrics.onRequests(operation, 1);
+		zk.getChildren(path, false, (rc, p, ctx, children, stat) -> {
+			Code code = Code.get(rc);
+			if (code == Code.NONODE) { // no such property set
+				promise.success(None());
+				return;
+			}
+			if (code != Code.OK) {
+				promise.failure(KeeperException.create(code, path));
+				return;
+			}
+
+			if (children.isEmpty() && stat.getDataLength() > 0) {
+				readCompact(zk, name, statHolder, promise, operation);
+				return;
+			}
+			copy(stat, statHolder);
+			Option<PropertySetVersion> version = Some(PropertySetVersion.of(stat));
+			promise.completeWith(readProperties(zk, name, children, operation).map(properties -> Some(ImmutablePropertySet.ofValues(name, properties, version))));
+		}, null);
+	}
+
+	/**
+	 * Reads a property set by getting the data of the property set znode. <br>
+	 * Should the data not be an encoded property set but the znode has children it is assumed to be stored in the {@link StorageFormat#Tree} format.
+	 */
+	private void readCompact(ZooKeeper zk, String name, Stat statHolder, Promise<Option<PropertySet>> promise, Operation operation) {
+		String path = propertySetPath(name);
+		metrics.onRequests(operation, 1);
+		zk.getData(path, false, (rc, p, ctx, data, stat) -> {
+			Code code = Code.get(rc);
+			if (code == Code.NONODE) { // no such property set
+				promise.success(None());
+				return;
+			}
+			if (code != Code.OK) {
+				promise.failure(KeeperException.create(code, path));
+				return;
+			}
+
+			metrics.onBytesRead(operation, stat.getDataLength());
+			Try<byte[]> decompressed = ValueCompression.decompress(data);
+			if (decompressed.isFailure()) {
+				promise.failure(decompressed.failed().orNull());
+			} else if (PropertySetCodec.isEncoded(decompressed.orNull())) {
+				copy(stat, statHolder);
+				promise.complete(Try(() -> Some(PropertySetCodec.decode(name, decompressed.orNull(), Some(PropertySetVersion.of(stat))))));
+			} else if (stat.getNumChildren() > 0) {
+				readTree(zk, name, statHolder, promise, operation);
+			} else {
+				copy(stat, statHolder);
+				promise.success(Some(ImmutablePropertySet.ofValues(name, Collections.emptyMap(), Some(PropertySetVersion.of(stat)))));
+			}
+		}, null);
+	}
+
+	/**
+	 * Reads the data of all the provided properties. <br>
+	 * The data for all properties is requested in one go. <br>
+	 * I.e. all data requests are in flight at the same time making the read cost roughly one round trip regardless of the number of properties. <br>
+	 * Properties removed after listing the children are not included in the result. <br>
+	 * The values are kept as raw bytes, decoding them into strings is deferred until read as such.
+	 */
+	private Future<Map<String, PropertyValue>> readProperties(ZooKeeper zk, String name, Collection<String> children, Operation operation) {
+		String path = propertySetPath(name);
+		Map<String, PropertyValue> properties = new HashMap<>();
+		if (children.isEmpty()) {
+			return Future.successful(properties);
+		}
+
+		Promise<Map<String, PropertyValue>> promise = Promise();
+		AtomicInteger pending = new AtomicInteger(children.size());
+		metrics.onRequests(operation, children.size());
+		for (String child : children) {
+			zk.getData(path + "/" + child, false, (rc, p, ctx, data, stat) -> {
+				Code code = Code.get(rc);
+				if (code == Code.OK) {
+					metrics.onBytesRead(operation, stat.getDataLength());
+					Try<PropertyValue> value = ValueCompression.decompress(data).map(PropertyValue::of);
+					value.forEach(v -> properties.put(child, v));
+					value.failed().forEach(promise::tryFailure);
+				}
+				// NONODE means the property was removed after listing the children, simply treat it as not existing
+				else if (code != Code.NONODE) {
+					promise.tryFailure(KeeperException.create(code, p));
+				}
+				if (pending.decrementAndGet() == 0) {
+					promise.trySuccess(properties);
+				}
+			}, null);
+		}
+		return promise.future();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertiesStorage#getLazy(java.lang.String)
+	 */
+	@Override
+	public Try<Option<LazyPropertySet>> getLazy(String name) {
+		return await(async.getLazy(name));
+	}
+
+	/**
+	 * Reads the named property set lazily, i.e. only the names of the properties are listed. <br>
+	 * Property sets stored in the {@link StorageFormat#Compact} format are read in full as all properties are anyway fetched in a single request.
+	 * @param zk The ZooKeeper connection
+	 * @param name The name of the property set
+	 * @return The future result
+	 */
+	private Future<Option<LazyPropertySet>> readLazy(ZooKeeper zk, String name) {
+		Stat stat = new Stat();
+		return children(zk, propertySetPath(name), stat, Operation.Get).flatMap(children -> {
+			if (children.isEmpty()) {
+				return Future.successful(None());
+			}
+			if (children.get().isEmpty() && stat.getDataLength() > 0) {
+				return read(zk, name, null, Operation.Get).map(propertySet -> propertySet.map(ps -> lazyPropertySet(name, ps.version(), ps.properties(), values(ps))));
+			}
+			return Future.successful(Some(lazyPropertySet(name, Some(PropertySetVersion.of(stat)), children.get(), Collections.emptyMap())));
 		});
 	}
 
+	/**
+	 * Creates a lazy property set reading the values of the properties not already read using this storage.
+	 */
+	private LazyPropertySet lazyPropertySet(String name, Option<PropertySetVersion> version, Collection<String> properties, Map<String, PropertyValue> loaded) {
+		return new LazyPropertySetImpl(name, version, properties, loaded, names -> await(withConnection(zk -> readProperties(zk, name, names, Operation.Get))));
+	}
+
+	private static Map<String, PropertyValue> values(PropertySet propertySet) {
+		Map<String, PropertyValue> values = new HashMap<>();
+		PropertyValue.forEach(propertySet, values::put);
+		return values;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -98,20 +381,214 @@ class ZooKeeperStorage implements PropertiesStorage {
 	 */
 	@Override
 	public Try<Unit> store(PropertySet propertySet) {
+		return await(async.store(propertySet));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertiesStorage#storeIfUnchanged(org.dmonix.zookeeper.PropertySet)
+	 */
+	@Override
+	public Try<Unit> storeIfUnchanged(PropertySet propertySet) {
+		return await(async.storeIfUnchanged(propertySet));
+	}
+
+	/**
+	 * Asynchronously stores the property set. <br>
+	 * Unless already known to exist the root path is optimistically created in parallel with reading the persisted property set, as ZooKeeper processes
+	 * the requests of a session in order the read is not delayed by this. Once the root path is known to exist a store costs one read and one write. <br>
+	 * Should the operation fail due to a missing node the root path is created and the operation is attempted once more.
+	 * @param zk The ZooKeeper connection
+	 * @param propertySet The property set to store
+	 * @param ifUnchanged If the persisted property set must be of the same version as the provided property set
+	 * @return The future result
+	 */
+	private Future<Unit> store(ZooKeeper zk, PropertySet propertySet, boolean ifUnchanged) {
 		String path = propertySetPath(propertySet.name());
+		KnownPaths knownPaths = knownPaths();
+		// the requests for creating the root path are not reported as they are a one off
+		Future<Unit> root = createRecursiveAsync(zk, rootPath, knownPaths);
+		Future<OpBatch> changes = changes(zk, path, propertySet, ifUnchanged);
+		Promise<Unit> promise = Promise();
+		root.flatMap(u -> changes).flatMap(batch -> commit(zk, batch, Operation.Store)).onComplete(result -> {
+			if (result.failed().map(ex -> ex instanceof NoNodeException).getOrElse(() -> false)) {
+				// either the root path has been removed or some property was concurrently removed
+				// make sure the root path exists and give it one more go
+				knownPaths.forget(rootPath);
+				promise.completeWith(createRecursiveAsync(zk, rootPath, knownPaths).flatMap(u -> changes(zk, path, propertySet, ifUnchanged)).flatMap(batch -> commit(zk, batch, Operation.Store)));
+			} else {
+				promise.complete(result);
+			}
+		});
+		if (!ifUnchanged) {
+			return promise.future();
+		}
+		// the versioned write failed due to a concurrent modification after the version was verified
+		return promise.future().transform(u -> u, ex -> isConflict(ex) ? conflict(propertySet, "modified concurrently", ex) : ex);
+	}
 
-		// if that fails there's no point to continue with the rest of the operation, hence the flatMap
-		return delete(propertySet.name()).flatMap(u -> {
-			return Try(() -> {
-				ZooKeeper zk = zooKeeper.get();
-				ZooKeeperUtil.createRecursive(zk, path, new byte[0]); // recreate the property set znode
-				for (String prop : propertySet.properties()) { // write the properties one by one
-					createRecursive(zk, path + "/" + prop, propertySet.property(prop).get().getBytes());
+	/**
+	 * Creates the operations needed to store the property set.
+	 * @param zk The ZooKeeper connection
+	 * @param path The path to the property set
+	 * @param propertySet The property set to store
+	 * @param ifUnchanged If the operations are to verify the version of the persisted property set
+	 * @return The future operations, failed if the persisted property set is not of the expected version
+	 */
+	private Future<OpBatch> changes(ZooKeeper zk, String path, PropertySet propertySet, boolean ifUnchanged) {
+		if (format == StorageFormat.Compact) {
+			return compact(zk, path, propertySet, ifUnchanged);
+		}
+		return incrementalStore ? diff(zk, path, propertySet, ifUnchanged) : replace(zk, path, propertySet, ifUnchanged);
+	}
+
+	/**
+	 * Creates the operations needed to store the property set in the {@link StorageFormat#Compact} format. <br>
+	 * Any properties stored in the {@link StorageFormat#Tree} format are removed as part of the same transaction. <br>
+	 * For incremental stores the data is only written if it differs from the persisted data.
+	 * @param zk The ZooKeeper connection
+	 * @param path The path to the property set
+	 * @param propertySet The property set to store
+	 * @param ifUnchanged If the operations are to verify the version of the persisted property set
+	 * @return The future operations
+	 */
+	private Future<OpBatch> compact(ZooKeeper zk, String path, PropertySet propertySet, boolean ifUnchanged) {
+		byte[] data = compression.compress(PropertySetCodec.encode(propertySet));
+		Stat stat = new Stat();
+		return data(zk, path, stat, Operation.Store).flatMap(current -> {
+			if (ifUnchanged && !isExpectedVersion(propertySet, current.isDefined() ? stat : null)) {
+				return Future.failed(conflict(propertySet, "modified", null));
+			}
+			if (current.isEmpty()) {
+				return Future.successful(new OpBatch().create(path, data)); // the property set znode doesn't exist, create it
+			}
+			Future<Option<List<String>>> children = Future.successful(None());
+			if (stat.getNumChildren() > 0) {
+				children = children(zk, path, null, Operation.Store);
+			}
+			return children.map(legacy -> {
+				OpBatch batch = new OpBatch();
+				boolean hasLegacy = legacy.exists(list -> !list.isEmpty());
+				// the versioned write goes first to have it in the first transaction should the batch be split
+				if (ifUnchanged || !incrementalStore || hasLegacy || !Arrays.equals(current.get(), data)) {
+					batch.setData(path, data, expectedVersion(propertySet, ifUnchanged));
 				}
+				legacy.forEach(list -> list.forEach(child -> batch.delete(path + "/" + child, -1)));
+				return batch;
 			});
 		});
 	}
 
+	/**
+	 * Creates the operations needed to bring the persisted property set in line with the provided one. <br>
+	 * The current properties are read and compared to the provided ones, only properties that are added, changed or removed yield an operation. <br>
+	 * Storing a property set identical to the persisted one yields no operations at all. <br>
+	 * Any change also writes the (empty) data of the property set znode, this increments its version marking the property set as modified.
+	 * @param zk The ZooKeeper connection
+	 * @param path The path to the property set
+	 * @param propertySet The property set to store
+	 * @param ifUnchanged If the operations are to verify the version of the persisted property set
+	 * @return The future operations
+	 */
+	private Future<OpBatch> diff(ZooKeeper zk, String path, PropertySet propertySet, boolean ifUnchanged) {
+		Stat stat = new Stat();
+		return read(zk, propertySet.name(), stat, Operation.Store).flatMap(current -> {
+			if (ifUnchanged && !isExpectedVersion(propertySet, current.isDefined() ? stat : null)) {
+				return Future.failed(conflict(propertySet, "modified", null));
+			}
+			PropertySet existing = current.getOrElse(() -> ImmutablePropertySet.of(propertySet.name(), Collections.emptyMap()));
+			List<String> removed = new ArrayList<>();
+			for (String prop : existing.properties()) {
+				if (!propertySet.containsProperty(prop)) {
+					removed.add(prop);
+				}
+			}
+			Map<String, PropertyValue> created = new LinkedHashMap<>();
+			Map<String, PropertyValue> changed = new LinkedHashMap<>();
+			PropertyValue.forEach(propertySet, (prop, v) -> {
+				PropertyValue value = PropertyValue.orEmpty(v);
+				if (!existing.containsProperty(prop)) {
+					created.put(prop, value);
+				} else if (!value.equals(PropertyValue.orEmpty(PropertyValue.of(existing, prop)))) {
+					changed.put(prop, value);
+				}
+			});
+
+			OpBatch batch = new OpBatch();
+			if (current.isEmpty()) {
+				batch.create(path, new byte[0]); // the property set znode doesn't exist, create it
+			} else if (ifUnchanged || stat.getDataLength() > 0 || !removed.isEmpty() || !created.isEmpty() || !changed.isEmpty()) {
+				// clears any data of the compact format as the properties are written as children, and marks the property set as modified
+				batch.setData(path, new byte[0], expectedVersion(propertySet, ifUnchanged));
+			}
+			removed.forEach(prop -> batch.delete(path + "/" + prop, -1));
+			created.forEach((prop, value) -> batch.create(path + "/" + prop, compression.compress(value.bytes())));
+			changed.forEach((prop, value) -> batch.setData(path + "/" + prop, compression.compress(value.bytes()), -1));
+			return Future.successful(batch);
+		});
+	}
+
+	/**
+	 * Creates the operations needed to replace any existing properties for the property set with the provided ones. <br>
+	 * All existing properties are deleted and the new ones created in a single <tt>multi</tt> transaction. <br>
+	 * This makes the store atomic, i.e. readers will never see a half written property set. <br>
+	 * Only if the property set is too large to fit in a single request is the operation split into multiple transactions.
+	 * @param zk The ZooKeeper connection
+	 * @param path The path to the property set
+	 * @param propertySet The property set to store
+	 * @param ifUnchanged If the operations are to verify the version of the persisted property set
+	 * @return The future operations
+	 */
+	private Future<OpBatch> replace(ZooKeeper zk, String path, PropertySet propertySet, boolean ifUnchanged) {
+		Stat stat = new Stat();
+		return children(zk, path, stat, Operation.Store).flatMap(children -> {
+			if (ifUnchanged && !isExpectedVersion(propertySet, children.isDefined() ? stat : null)) {
+				return Future.failed(conflict(propertySet, "modified", null));
+			}
+			OpBatch batch = new OpBatch();
+			if (children.isEmpty()) {
+				batch.create(path, new byte[0]); // the property set znode doesn't exist, create it
+			} else {
+				// clears any data of the compact format as the properties are written as children, and marks the property set as modified
+				batch.setData(path, new byte[0], expectedVersion(propertySet, ifUnchanged));
+				children.get().forEach(child -> batch.delete(path + "/" + child, -1));
+			}
+			PropertyValue.forEach(propertySet, (prop, value) -> batch.create(path + "/" + prop, compression.compress(PropertyValue.orEmpty(value).bytes())));
+			return Future.successful(batch);
+		});
+	}
+
+	/**
+	 * Checks if the persisted property set is of the same version as the provided property set.
+	 * @param propertySet The property set to store
+	 * @param stat The stat of the persisted property set, <code>null</code> if not existing
+	 * @return <code>true</code> if of the expected version
+	 */
+	private static boolean isExpectedVersion(PropertySet propertySet, Stat stat) {
+		PropertySetVersion expected = propertySet.version().orNull();
+		return stat != null ? PropertySetVersion.of(stat).equals(expected) : expected == null;
+	}
+
+	/**
+	 * Get the data version to expect when writing the property set znode.
+	 */
+	private static int expectedVersion(PropertySet propertySet, boolean ifUnchanged) {
+		return ifUnchanged ? propertySet.version().map(PropertySetVersion::version).getOrElse(() -> -1) : -1;
+	}
+
+	/**
+	 * Checks if the provided error from a versioned write is caused by a concurrent modification.
+	 */
+	private static boolean isConflict(Throwable ex) {
+		return ex instanceof BadVersionException || ex instanceof NodeExistsException || ex instanceof NoNodeException;
+	}
+
+	private static ConcurrentModificationException conflict(PropertySet propertySet, String reason, Throwable cause) {
+		String expected = propertySet.version().map(PropertySetVersion::toString).getOrElse(() -> "not existing");
+		return new ConcurrentModificationException("The property set [" + propertySet.name() + "] has been " + reason + ", expected [" + expected + "]", cause);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -119,7 +596,21 @@ class ZooKeeperStorage implements PropertiesStorage {
 	 */
 	@Override
 	public Try<List<String>> propertySets() {
-		return connection().flatMap(zk -> children(zk, rootPath));
+		return await(async.propertySets());
+	}
+
+	/**
+	 * Asynchronously lists the names of all property sets.
+	 * @param zk The ZooKeeper connection
+	 * @return The future result, failed with {@link NoNodeException} if the root path doesn't exist
+	 */
+	private Future<List<String>> propertySets(ZooKeeper zk) {
+		return children(zk, rootPath, null, Operation.PropertySets).flatMap(children -> {
+			if (children.isEmpty()) {
+				return Future.failed(new NoNodeException(rootPath));
+			}
+			return Future.successful(children.get());
+		});
 	}
 
 	/*
@@ -129,20 +620,156 @@ class ZooKeeperStorage implements PropertiesStorage {
 	 */
 	@Override
 	public Try<Unit> delete(String name) {
-		String path = propertySetPath(name);
-		return connection().flatMap(zk -> deleteRecursive(zk, path));
+		return await(async.delete(name));
+	}
+
+	/**
+	 * Asynchronously deletes the property set. <br>
+	 * The property set znode and all its descendants are deleted bottom-up, in a single <tt>multi</tt> transaction unless too large to fit in one request,
+	 * see {@link ZooKeeperUtil#deleteRecursiveAsync(ZooKeeper, String)}.
+	 * @param zk The ZooKeeper connection
+	 * @param name The name of the property set
+	 * @return The future result
+	 */
+	private Future<Unit> delete(ZooKeeper zk, String name) {
+		return deleteRecursiveAsync(zk, propertySetPath(name)).map(deleted -> {
+			// one listing per deleted node (or one for a non-existing set) and at least one multi transaction if anything was deleted
+			metrics.onRequests(Operation.Delete, deleted == 0 ? 1 : deleted + 1);
+			return Unit.Instance;
+		});
+	}
+
+	/**
+	 * Lists the children of the provided path reporting the request to the metrics.
+	 * @see ZooKeeperUtil#childrenAsync(ZooKeeper, String, Stat)
+	 */
+	private Future<Option<List<String>>> children(ZooKeeper zk, String path, Stat stat, Operation operation) {
+		metrics.onRequests(operation, 1);
+		return childrenAsync(zk, path, stat);
+	}
+
+	/**
+	 * Gets the data of the provided path reporting the request and the data read to the metrics.
+	 * @see ZooKeeperUtil#dataAsync(ZooKeeper, String, Stat)
+	 */
+	private Future<Option<byte[]>> data(ZooKeeper zk, String path, Stat stat, Operation operation) {
+		metrics.onRequests(operation, 1);
+		return dataAsync(zk, path, stat).map(data -> {
+			data.forEach(d -> metrics.onBytesRead(operation, d.length));
+			return data;
+		});
+	}
+
+	/**
+	 * Commits the provided operations reporting the transactions and data written to the metrics.
+	 * @see OpBatch#commit(ZooKeeper)
+	 */
+	private Future<Unit> commit(ZooKeeper zk, OpBatch batch, Operation operation) {
+		metrics.onRequests(operation, batch.transactions());
+		metrics.onBytesWritten(operation, batch.bytes());
+		return batch.commit(zk);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertiesStorage#subscribe(java.lang.String, org.dmonix.zookeeper.PropertySetListener)
+	 */
+	@Override
+	public Subscription subscribe(String name, PropertySetListener listener) {
+		PropertySetSubscription subscription = new PropertySetSubscription(this, name, listener, subscriptions::remove);
+		subscriptions.add(subscription);
+		return subscription.start();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertiesStorage#layered(java.lang.String[])
+	 */
+	@Override
+	public Try<LayeredPropertySet> layered(String... names) {
+		return LayeredPropertySetImpl.layered(this, Arrays.asList(names), sessionTimeout);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.dmonix.zookeeper.PropertiesStorage#async()
+	 */
+	@Override
+	public AsyncPropertiesStorage async() {
+		return async;
+	}
+
+	/**
+	 * Applies the provided function on the ZooKeeper connection.
+	 * @param function The function
+	 * @return The future result of the function, failed if there is no connection
+	 */
+	private <T> Future<T> withConnection(ThrowableFunction1<ZooKeeper, Future<T>> function) {
+		return connection().map(function).recover(ex -> Future.<T>failed(ex)).orNull();
 	}
 
-	private Try<ZooKeeper> connection() {
-		return Try(() -> zooKeeper.get());
+	/**
+	 * Applies the provided function on the ZooKeeper connection reporting the latency and outcome to the metrics. <br>
+	 * The metrics are reported before the returned future is completed.
+	 * @param operation The operation
+	 * @param function The function
+	 * @return The future result of the function, failed if there is no connection
+	 */
+	private <T> Future<T> measure(Operation operation, ThrowableFunction1<ZooKeeper, Future<T>> function) {
+		long start = System.nanoTime();
+		Promise<T> promise = Promise();
+		withConnection(function).onComplete(result -> {
+			metrics.onOperation(operation, System.nanoTime() - start, result.isSuccess());
+			promise.complete(result);
+		});
+		return promise.future();
+	}
+
+	/**
+	 * Get the ZooKeeper connection held by this instance.
+	 * @return The connection, {@link javascalautils.Failure} if not connected
+	 */
+	Try<ZooKeeper> connection() {
+		return Try(() -> session.get().zooKeeper());
+	}
+
+	/**
+	 * Get the paths known to exist by the ZooKeeper session held by this instance.
+	 * @return The known paths, an empty instance if not connected
+	 */
+	private KnownPaths knownPaths() {
+		return session.map(ZooKeeperSession::knownPaths).getOrElse(KnownPaths::new);
+	}
+
+	/**
+	 * Awaits the result of an asynchronous ZooKeeper operation. <br>
+	 * Any response is guaranteed by ZooKeeper to arrive within the session timeout, either with data or a connection loss. 
+	 * @param future The future to await
+	 * @return The result of the future
+	 */
+	<T> Try<T> await(Future<T> future) {
+		return Try(() -> future.result(sessionTimeout, TimeUnit.MILLISECONDS));
 	}
 
 	/**
-	 * Closes any open ZooKeeper connection
+	 * Closes all subscriptions and releases the ZooKeeper session held by this instance. <br>
+	 * The underlying connection is closed once no other storage instance is using it.
 	 */
 	@Override
 	public void close() {
-		zooKeeper.forEach(zk -> Try(() -> zk.close()));
+		new ArrayList<>(subscriptions).forEach(Subscription::close);
+		Option<ZooKeeperSession> released;
+		synchronized (this) {
+			released = session;
+			session = None();
+		}
+		released.forEach(previous -> {
+			previous.removeReconnectListener(onReconnected);
+			previous.release();
+		});
 	}
 
 	/**
@@ -154,8 +781,106 @@ class ZooKeeperStorage implements PropertiesStorage {
 		super.finalize();
 	}
 
-	private String propertySetPath(String name) {
+	/**
+	 * Get the metrics all operations are reported to.
+	 * @return The metrics
+	 */
+	StorageMetrics metrics() {
+		return metrics;
+	}
+
+	/**
+	 * Get the watcher dispatching the watch events to the watched property sets of this storage.
+	 * @return The watches
+	 */
+	PropertySetWatches watches() {
+		return watches;
+	}
+
+	/**
+	 * Get the root path under which all property sets are stored.
+	 * @return The root path
+	 */
+	String rootPath() {
+		return rootPath;
+	}
+
+	/**
+	 * Get the path to the named property set.
+	 * @param name The name of the property set
+	 * @return The path
+	 */
+	String propertySetPath(String name) {
 		return rootPath + "/" + name;
 	}
 
+	/**
+	 * The asynchronous view of the storage. <br>
+	 * All operations are performed using the asynchronous API of ZooKeeper, i.e. no thread is blocked awaiting any response.
+	 *
+	 * @author Peter Nerg
+	 * @since 1.4
+	 */
+	private final class AsyncStorage implements AsyncPropertiesStorage {
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see org.dmonix.zookeeper.AsyncPropertiesStorage#get(java.lang.String)
+		 */
+		@Override
+		public Future<Option<PropertySet>> get(String name) {
+			return measure(Operation.Get, zk -> read(zk, name, null, Operation.Get));
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see org.dmonix.zookeeper.AsyncPropertiesStorage#getLazy(java.lang.String)
+		 */
+		@Override
+		public Future<Option<LazyPropertySet>> getLazy(String name) {
+			return measure(Operation.Get, zk -> readLazy(zk, name));
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see org.dmonix.zookeeper.AsyncPropertiesStorage#store(org.dmonix.zookeeper.PropertySet)
+		 */
+		@Override
+		public Future<Unit> store(PropertySet propertySet) {
+			return measure(Operation.Store, zk -> ZooKeeperStorage.this.store(zk, propertySet, false));
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see org.dmonix.zookeeper.AsyncPropertiesStorage#storeIfUnchanged(org.dmonix.zookeeper.PropertySet)
+		 */
+		@Override
+		public Future<Unit> storeIfUnchanged(PropertySet propertySet) {
+			return measure(Operation.Store, zk -> ZooKeeperStorage.this.store(zk, propertySet, true));
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see org.dmonix.zookeeper.AsyncPropertiesStorage#delete(java.lang.String)
+		 */
+		@Override
+		public Future<Unit> delete(String name) {
+			return measure(Operation.Delete, zk -> ZooKeeperStorage.this.delete(zk, name));
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see org.dmonix.zookeeper.AsyncPropertiesStorage#propertySets()
+		 */
+		@Override
+		public Future<List<String>> propertySets() {
+			return measure(Operation.PropertySets, zk -> ZooKeeperStorage.this.propertySets(zk));
+		}
+	}
 }
@@ -15,21 +15,35 @@
  */
 package org.dmonix.zookeeper;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static javascalautils.OptionCompanion.None;
 import static javascalautils.OptionCompanion.Option;
+import static javascalautils.OptionCompanion.Some;
 import static javascalautils.TryCompanion.Try;
 import static javascalautils.TryCompanion.Success;
+import static javascalautils.concurrent.PromiseCompanion.Promise;
 import static org.apache.zookeeper.CreateMode.PERSISTENT;
 import static org.apache.zookeeper.ZooDefs.Ids.OPEN_ACL_UNSAFE;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.Code;
 import org.apache.zookeeper.KeeperException.NoNodeException;
+import org.apache.zookeeper.KeeperException.NotEmptyException;
 import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
 
+import javascalautils.Option;
 import javascalautils.Try;
 import javascalautils.Unit;
+import javascalautils.concurrent.Future;
+import javascalautils.concurrent.Promise;
 
 /**
  * Utility classes for ZooKeeper data management.
@@ -38,6 +52,9 @@ import javascalautils.Unit;
  * @since 1.0
  */
 final class ZooKeeperUtil {
+	/** The number of attempts to delete a subtree that is concurrently modified. */
+	private static final int DeleteAttempts = 3;
+
 	/**
 	 * 	Inhibitive constructor.
 	 */
@@ -45,18 +62,96 @@ final class ZooKeeperUtil {
 	}
 	/**
 	 * Recursively deletes a path. <br>
-	 * The method will recursively list and delete all child nodes to the provided path. Will fail if ZK is down.
+	 * Blocks until the asynchronous delete has completed, see {@link #deleteRecursiveAsync(ZooKeeper, String)}. Will fail if ZK is down.
 	 * 
 	 * @param zooKeeper
 	 *            The ZooKeeper connection
 	 * @param path
 	 *            The path to delete
-	 * @return The result
+	 * @return The result, the number of deleted nodes
 	 * @since 1.0
 	 */
-	static Try<Unit> deleteRecursive(ZooKeeper zooKeeper, String path) {
-		return children(zooKeeper, path).getOrElse(Collections::emptyList).stream().map(child -> deleteRecursive(zooKeeper, path + "/" + child))
-				.reduce(Success(Unit.Instance), (t1, t2) -> t1.flatMap(v -> t2)).flatMap(t -> delete(zooKeeper, path));
+	static Try<Integer> deleteRecursive(ZooKeeper zooKeeper, String path) {
+		// each request is guaranteed a response within the session timeout, hence no need for an additional timeout
+		return Try(() -> deleteRecursiveAsync(zooKeeper, path).result(Long.MAX_VALUE, TimeUnit.MILLISECONDS));
+	}
+
+	/**
+	 * Asynchronously and recursively deletes a path. <br>
+	 * The subtree is first listed with all <tt>getChildren</tt> requests on the same level in flight at the same time, i.e. the listing costs one round
+	 * trip per level of the tree rather than one per node. <br>
+	 * The nodes are then deleted bottom-up using chunked <tt>multi</tt> transactions, a subtree small enough to fit in one request is deleted atomically.
+	 * <br>
+	 * Should the subtree concurrently be modified (e.g. a node added) the delete fails, in such case the subtree is listed anew and the delete attempted once
+	 * more.
+	 * 
+	 * @param zooKeeper
+	 *            The ZooKeeper connection
+	 * @param path
+	 *            The path to delete
+	 * @return The future result, the number of deleted nodes (0 if the path doesn't exist)
+	 * @since 1.4
+	 */
+	static Future<Integer> deleteRecursiveAsync(ZooKeeper zooKeeper, String path) {
+		return deleteRecursiveAsync(zooKeeper, path, DeleteAttempts, 0);
+	}
+
+	private static Future<Integer> deleteRecursiveAsync(ZooKeeper zooKeeper, String path, int attempts, int deleted) {
+		return listRecursiveAsync(zooKeeper, path).flatMap(nodes -> {
+			// a child path is always longer than the path of its parent, i.e. sorting on length yields children before parents
+			nodes.sort(Comparator.comparingInt(String::length).reversed());
+			OpBatch batch = new OpBatch();
+			nodes.forEach(node -> batch.delete(node, -1));
+			Promise<Integer> promise = Promise();
+			batch.commit(zooKeeper).onComplete(result -> {
+				int total = deleted + batch.committed();
+				boolean modified = result.failed().map(ex -> ex instanceof NotEmptyException || ex instanceof NoNodeException).getOrElse(() -> false);
+				if (result.isSuccess()) {
+					promise.success(total);
+				} else if (modified && attempts > 1) {
+					promise.completeWith(deleteRecursiveAsync(zooKeeper, path, attempts - 1, total));
+				} else {
+					promise.failure(result.failed().orNull());
+				}
+			});
+			return promise.future();
+		});
+	}
+
+	/**
+	 * Asynchronously lists the provided path and all its descendants. <br>
+	 * The children of a node are listed as soon as the node itself has been listed, nodes removed while listing are not included.
+	 * 
+	 * @param zooKeeper
+	 *            The ZooKeeper connection
+	 * @param path
+	 *            The path to list
+	 * @return The future result, the paths of all nodes including the provided path, empty if the path doesn't exist
+	 * @since 1.4
+	 */
+	static Future<List<String>> listRecursiveAsync(ZooKeeper zooKeeper, String path) {
+		Promise<List<String>> promise = Promise();
+		List<String> nodes = Collections.synchronizedList(new ArrayList<>());
+		AtomicInteger pending = new AtomicInteger(1);
+		listRecursiveAsync(zooKeeper, path, nodes, pending, promise);
+		return promise.future();
+	}
+
+	private static void listRecursiveAsync(ZooKeeper zooKeeper, String path, List<String> nodes, AtomicInteger pending, Promise<List<String>> promise) {
+		zooKeeper.getChildren(path, false, (rc, p, ctx, children) -> {
+			Code code = Code.get(rc);
+			if (code == Code.OK) {
+				nodes.add(path);
+				pending.addAndGet(children.size());
+				String parent = path.equals("/") ? "" : path;
+				children.forEach(child -> listRecursiveAsync(zooKeeper, parent + "/" + child, nodes, pending, promise));
+			} else if (code != Code.NONODE) { // a removed node is simply not listed
+				promise.tryFailure(KeeperException.create(code, path));
+			}
+			if (pending.decrementAndGet() == 0) {
+				promise.trySuccess(new ArrayList<>(nodes));
+			}
+		}, null);
 	}
 
 	/**
@@ -121,7 +216,9 @@ final class ZooKeeperUtil {
 	}
 
 	/**
-	 * Attempts to create the provided node it doesn't already exists.
+	 * Attempts to create the provided node it doesn't already exists. <br>
+	 * The node is optimistically created without first checking if it exists, an existing node is detected by the create failing. <br>
+	 * I.e. the operation always costs a single request to ZooKeeper.
 	 * 
 	 * @param zooKeeper
 	 *            The ZooKeeper connection
@@ -135,24 +232,16 @@ final class ZooKeeperUtil {
 	 * @since 1.0
 	 */
 	static boolean createIfNotExist(ZooKeeper zooKeeper, String path, byte[] data) throws KeeperException, InterruptedException {
-		boolean result = false;
 		try {
-			// check if the path exists before trying to create
-			if (!exists(zooKeeper, path)) {
-				zooKeeper.create(path, data, OPEN_ACL_UNSAFE, PERSISTENT);
-				result = true;
-			}
+			zooKeeper.create(path, data, OPEN_ACL_UNSAFE, PERSISTENT);
+			return true;
+		} catch (KeeperException.NodeExistsException ex) {
+			return false; // already existing, created by us or some other process/thread
 		}
-		// this may still happen in a concurrent world some other process/thread may end up creating the path
-		// after we did the exists(...) operation, so just in case we need to manage the exception
-		catch (KeeperException.NodeExistsException ex) {
-		}
-
-		return result;
 	}
 
 	/**
-	 * Attempts to get the byte data from the provided path
+	 * Attempts to get the data from the provided path decoded as a UTF-8 string
 	 * 
 	 * @param zooKeeper
 	 *            The ZooKeeper connection
@@ -164,7 +253,7 @@ final class ZooKeeperUtil {
 	 * @since 1.0
 	 */
 	static String getData(ZooKeeper zooKeeper, String path) throws KeeperException, InterruptedException {
-		return Option(zooKeeper.getData(path, null, null)).map(bytes -> new String(bytes)).orNull();
+		return Option(zooKeeper.getData(path, null, null)).map(bytes -> new String(bytes, UTF_8)).orNull();
 	}
 
 	/**
@@ -182,4 +271,139 @@ final class ZooKeeperUtil {
 	static boolean exists(ZooKeeper zooKeeper, String path) throws KeeperException, InterruptedException {
 		return zooKeeper.exists(path, null) != null;
 	}
+
+	/**
+	 * Asynchronously gets the children of the provided path. <br>
+	 * A non-existing path is treated by returning {@link javascalautils.None}.
+	 * 
+	 * @param zooKeeper
+	 *            The ZooKeeper connection
+	 * @param path
+	 *            The path
+	 * @param stat
+	 *            Optional (may be <code>null</code>) holder for the stat of the node, populated when the future completes
+	 * @return The future result of the operation
+	 * @since 1.4
+	 */
+	static Future<Option<List<String>>> childrenAsync(ZooKeeper zooKeeper, String path, Stat stat) {
+		Promise<Option<List<String>>> promise = Promise();
+		zooKeeper.getChildren(path, false, (rc, p, ctx, children, childrenStat) -> {
+			Code code = Code.get(rc);
+			if (code == Code.OK) {
+				copy(childrenStat, stat);
+				promise.success(Some(children));
+			} else if (code == Code.NONODE) {
+				promise.success(None());
+			} else {
+				promise.failure(KeeperException.create(code, path));
+			}
+		}, null);
+		return promise.future();
+	}
+
+	/**
+	 * Asynchronously gets the data of the provided path. <br>
+	 * A non-existing path is treated by returning {@link javascalautils.None}.
+	 * 
+	 * @param zooKeeper
+	 *            The ZooKeeper connection
+	 * @param path
+	 *            The path
+	 * @param stat
+	 *            Optional (may be <code>null</code>) holder for the stat of the node, populated when the future completes
+	 * @return The future result of the operation
+	 * @since 1.4
+	 */
+	static Future<Option<byte[]>> dataAsync(ZooKeeper zooKeeper, String path, Stat stat) {
+		Promise<Option<byte[]>> promise = Promise();
+		zooKeeper.getData(path, false, (rc, p, ctx, data, dataStat) -> {
+			Code code = Code.get(rc);
+			if (code == Code.OK) {
+				copy(dataStat, stat);
+				promise.success(Some(data != null ? data : new byte[0]));
+			} else if (code == Code.NONODE) {
+				promise.success(None());
+			} else {
+				promise.failure(KeeperException.create(code, path));
+			}
+		}, null);
+		return promise.future();
+	}
+
+	/**
+	 * Asynchronously creates the provided path adding any parent nodes that are missing. <br>
+	 * An already existing path is not considered an error.
+	 * 
+	 * @param zooKeeper
+	 *            The ZooKeeper connection
+	 * @param path
+	 *            The path
+	 * @return The future result of the operation
+	 * @since 1.4
+	 */
+	static Future<Unit> createRecursiveAsync(ZooKeeper zooKeeper, String path) {
+		return createRecursiveAsync(zooKeeper, path, new KnownPaths());
+	}
+
+	/**
+	 * Asynchronously creates the provided path adding any parent nodes that are missing. <br>
+	 * A path already known to exist is not created at all, i.e. completes immediately without any request to ZooKeeper. <br>
+	 * Else the path is optimistically created, only should the parent be missing are the parent nodes created. <br>
+	 * All created or found to exist paths are added to the known paths.
+	 * 
+	 * @param zooKeeper
+	 *            The ZooKeeper connection
+	 * @param path
+	 *            The path
+	 * @param knownPaths
+	 *            The paths known to exist
+	 * @return The future result of the operation
+	 * @since 1.4
+	 */
+	static Future<Unit> createRecursiveAsync(ZooKeeper zooKeeper, String path, KnownPaths knownPaths) {
+		if (knownPaths.isKnown(path)) {
+			return Future.successful(Unit.Instance);
+		}
+		Promise<Unit> promise = Promise();
+		zooKeeper.create(path, new byte[0], OPEN_ACL_UNSAFE, PERSISTENT, (rc, p, ctx, name) -> {
+			Code code = Code.get(rc);
+			if (code == Code.OK || code == Code.NODEEXISTS) {
+				knownPaths.add(path);
+				promise.success(Unit.Instance);
+			} else if (code == Code.NONODE) { // missing parent, create it and try again
+				String parentPath = path.substring(0, path.lastIndexOf("/"));
+				knownPaths.forget(parentPath); // evidently no longer existing
+				promise.completeWith(createRecursiveAsync(zooKeeper, parentPath, knownPaths).flatMap(u -> createRecursiveAsync(zooKeeper, path, knownPaths)));
+			} else {
+				promise.failure(KeeperException.create(code, path));
+			}
+		}, null);
+		return promise.future();
+	}
+
+	/**
+	 * Copies all the values of one stat to another.
+	 * 
+	 * @param from
+	 *            The stat to copy from
+	 * @param to
+	 *            The stat to copy to, if <code>null</code> nothing is copied
+	 * @since 1.4
+	 */
+	static void copy(Stat from, Stat to) {
+		if (to == null) {
+			return;
+		}
+		to.setCzxid(from.getCzxid());
+		to.setMzxid(from.getMzxid());
+		to.setCtime(from.getCtime());
+		to.setMtime(from.getMtime());
+		to.setVersion(from.getVersion());
+		to.setCversion(from.getCversion());
+		to.setAversion(from.getAversion());
+		to.setEphemeralOwner(from.getEphemeralOwner());
+		to.setDataLength(from.getDataLength());
+		to.setNumChildren(from.getNumChildren());
+		to.setPzxid(from.getPzxid());
+	}
 }
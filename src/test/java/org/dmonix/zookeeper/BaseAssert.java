@@ -17,6 +17,7 @@ package org.dmonix.zookeeper;
 
 import java.time.Duration;
 import java.util.Locale;
+import java.util.function.BooleanSupplier;
 
 import org.junit.Assert;
 
@@ -37,4 +38,33 @@ public class BaseAssert extends Assert {
         System.setProperty("user.variant", Locale.US.getVariant());
     }
 
+    /**
+     * Asserts that the provided condition is fulfilled within the {@link #Timeout}. <br>
+     * Used for asserting asynchronous behavior such as updates triggered by watches.
+     * @param condition The condition to fulfill
+     */
+    static void assertEventually(BooleanSupplier condition) {
+    	assertEventually(condition, Timeout);
+    }
+
+    /**
+     * Asserts that the provided condition is fulfilled within the provided timeout. <br>
+     * Used for asynchronous behavior slower than the {@link #Timeout} such as the client re-connecting.
+     * @param condition The condition to fulfill
+     * @param timeout The time in millis to wait
+     */
+    static void assertEventually(BooleanSupplier condition, long timeout) {
+    	long deadline = System.currentTimeMillis() + timeout;
+    	while (!condition.getAsBoolean()) {
+    		if (System.currentTimeMillis() > deadline) {
+    			fail("The condition was not fulfilled within ["+timeout+"] ms");
+    		}
+    		try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				fail("Interrupted while awaiting condition");
+			}
+    	}
+    }
 }
@@ -0,0 +1,160 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Test the class {@link CachePolicy}
+ * @author Peter Nerg
+ */
+public class TestCachePolicy extends BaseAssert {
+
+	private final CachePolicy policy = new CachePolicy(1000);
+	private final List<CachePolicy.Node> evicted = new ArrayList<>();
+
+	@Test
+	public void admit() {
+		assertTrue(policy.admit(new Entry("a"), 400, evicted));
+		assertTrue(policy.admit(new Entry("b"), 400, evicted));
+		assertEquals(800, policy.size());
+		assertEquals(2, policy.entries());
+		assertTrue(evicted.isEmpty());
+	}
+
+	@Test
+	public void admit_tooLarge() {
+		assertFalse(policy.admit(new Entry("a"), 1001, evicted));
+		assertEquals(0, policy.size());
+		assertTrue(evicted.isEmpty());
+	}
+
+	@Test
+	public void admit_removed() {
+		Entry entry = new Entry("a");
+		policy.remove(entry);
+		assertFalse(policy.admit(entry, 100, evicted));
+		assertEquals(0, policy.entries());
+	}
+
+	@Test
+	public void admit_moreFrequentEvicts() {
+		Entry a = new Entry("a");
+		policy.admit(a, 600, evicted);
+		Entry b = new Entry("b");
+		policy.onMiss("b");
+		policy.onMiss("b");
+		assertTrue(policy.admit(b, 600, evicted));
+		assertEquals(1, evicted.size());
+		assertTrue(evicted.get(0) == a);
+		assertEquals(600, policy.size());
+	}
+
+	@Test
+	public void admit_lessFrequentRejected() {
+		Entry a = new Entry("a");
+		policy.onMiss("a");
+		policy.admit(a, 600, evicted);
+		policy.onMiss("a");
+		Entry b = new Entry("b");
+		policy.onMiss("b");
+		assertFalse(policy.admit(b, 600, evicted));
+		assertTrue(evicted.isEmpty());
+		assertEquals(1, policy.entries());
+		// once rejected the entry is never admitted
+		assertFalse(policy.admit(b, 100, evicted));
+	}
+
+	@Test
+	public void admit_referencedGetsSecondChance() {
+		Entry a = new Entry("a");
+		Entry b = new Entry("b");
+		policy.admit(a, 400, evicted);
+		policy.admit(b, 400, evicted);
+		policy.onHit(a);
+		Entry c = new Entry("c");
+		policy.onMiss("c");
+		policy.onMiss("c");
+		policy.onMiss("c");
+		assertTrue(policy.admit(c, 400, evicted));
+		assertEquals(1, evicted.size());
+		assertTrue(evicted.get(0) == b);
+	}
+
+	@Test
+	public void admit_residentGrows() {
+		Entry a = new Entry("a");
+		Entry b = new Entry("b");
+		policy.admit(a, 400, evicted);
+		policy.admit(b, 400, evicted);
+		assertTrue(policy.admit(b, 700, evicted));
+		assertEquals(1, evicted.size());
+		assertTrue(evicted.get(0) == a);
+		assertEquals(700, policy.size());
+	}
+
+	@Test
+	public void admit_residentGrowsTooLarge() {
+		Entry a = new Entry("a");
+		Entry b = new Entry("b");
+		policy.admit(a, 400, evicted);
+		policy.admit(b, 400, evicted);
+		assertFalse(policy.admit(b, 1001, evicted));
+		assertEquals(1, evicted.size());
+		assertTrue(evicted.get(0) == b);
+		assertEquals(400, policy.size());
+	}
+
+	@Test
+	public void remove() {
+		Entry a = new Entry("a");
+		policy.admit(a, 400, evicted);
+		policy.remove(a);
+		assertEquals(0, policy.size());
+		assertEquals(0, policy.entries());
+	}
+
+	@Test
+	public void clear() {
+		Entry a = new Entry("a");
+		policy.admit(a, 400, evicted);
+		policy.admit(new Entry("b"), 400, evicted);
+		policy.clear();
+		assertEquals(0, policy.size());
+		assertEquals(0, policy.entries());
+		assertFalse(policy.admit(a, 400, evicted));
+	}
+
+	@Test
+	public void unbounded() {
+		CachePolicy unbounded = new CachePolicy(CachePolicy.Unbounded);
+		for (int i = 0; i < 100; i++) {
+			unbounded.onMiss("key-" + i);
+			assertTrue(unbounded.admit(new Entry("key-" + i), Integer.MAX_VALUE, evicted));
+		}
+		assertEquals(100, unbounded.entries());
+		assertTrue(evicted.isEmpty());
+	}
+
+	private static final class Entry extends CachePolicy.Node {
+		private Entry(String key) {
+			super(key);
+		}
+	}
+}
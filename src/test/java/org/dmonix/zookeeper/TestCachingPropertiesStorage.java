@@ -0,0 +1,487 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static javascalautils.concurrent.PromiseCompanion.Promise;
+import static org.apache.zookeeper.CreateMode.PERSISTENT;
+import static org.apache.zookeeper.ZooDefs.Ids.OPEN_ACL_UNSAFE;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.zookeeper.KeeperException;
+import org.dmonix.zookeeper.StorageMetrics.CacheEvent;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javascalautils.Option;
+import javascalautils.Try;
+import javascalautils.concurrent.Future;
+import javascalautils.concurrent.Promise;
+import junitextensions.OptionAssert;
+import zookeeperjunit.CloseableZooKeeper;
+import zookeeperjunit.ZKFactory;
+import zookeeperjunit.ZKInstance;
+import zookeeperjunit.ZooKeeperAssert;
+
+/**
+ * Test the class {@link CachingPropertiesStorage}
+ * @author Peter Nerg
+ */
+public class TestCachingPropertiesStorage extends BaseAssert implements ZooKeeperAssert, OptionAssert {
+	private static ZKInstance instance = ZKFactory.apply().create();
+
+	private final String rootPath = "/TestCachingPropertiesStorage";
+	private final String propertySetName = "test-set";
+	private final String propertySetPath = rootPath + "/" + propertySetName;
+
+	private final ZooKeeperStorage zooKeeperStorage = new ZooKeeperStorage(instance.connectString().get(), rootPath);
+	private final CachingPropertiesStorage storage = new CachingPropertiesStorage(zooKeeperStorage);
+	private CloseableZooKeeper zooKeeper;
+
+	@BeforeClass
+	public static void startZooKeeper() throws TimeoutException, Throwable {
+		instance.start().result(duration);
+	}
+
+	@AfterClass
+	public static void stopZooKeeper() throws TimeoutException, Throwable {
+		instance.destroy().result(duration);
+	}
+
+	@Before
+	public void before() throws IOException, InterruptedException {
+		zooKeeperStorage.connect();
+		zooKeeper = connection();
+		PropertySet set = PropertySet.apply(propertySetName);
+		set.set("host", "localhost");
+		set.set("port", "6969");
+		assertSuccess(zooKeeperStorage.store(set));
+	}
+
+	@After
+	public void after() {
+		zooKeeper.deleteRecursively(rootPath);
+		zooKeeper.close();
+		storage.close();
+	}
+
+	/* (non-Javadoc)
+	 * @see zookeeperjunit.ZooKeeperAssert#instance()
+	 */
+	@Override
+	public ZKInstance instance() {
+		return instance;
+	}
+
+	@Test
+	public void get_nonExisting() {
+		Try<Option<PropertySet>> result = storage.get("no-such-set");
+		assertSuccess(result);
+		assertNone(result.orNull());
+	}
+
+	@Test
+	public void get() {
+		PropertySet set = get(propertySetName);
+		assertEquals(2, set.properties().size());
+		assertSome("localhost", set.property("host"));
+		assertSome("6969", set.property("port"));
+	}
+
+	@Test
+	public void getAll() {
+		Map<String, Try<Option<PropertySet>>> result = storage.getAll(Arrays.asList(propertySetName, "no-such-set"));
+		assertEquals(2, result.size());
+		assertSome("localhost", result.get(propertySetName).orNull().orNull().property("host"));
+		assertNone(result.get("no-such-set").orNull());
+	}
+
+	@Test
+	public void get_cacheHitReturnsSameSnapshot() {
+		assertTrue(get(propertySetName) == get(propertySetName));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void get_cacheHitIsImmutable() {
+		get(propertySetName).set("host", "modified");
+	}
+
+	@Test
+	public void get_toMutable() {
+		PropertySet copy = get(propertySetName).toMutable();
+		copy.set("host", "modified");
+		assertSome("localhost", get(propertySetName).property("host"));
+	}
+
+	@Test
+	public void get_createdExternally() throws KeeperException, InterruptedException {
+		get_nonExisting();
+		zooKeeper.create(rootPath + "/no-such-set", new byte[0], OPEN_ACL_UNSAFE, PERSISTENT);
+		zooKeeper.create(rootPath + "/no-such-set/key", "value".getBytes(), OPEN_ACL_UNSAFE, PERSISTENT);
+		assertEventually(() -> storage.get("no-such-set").orNull().exists(set -> set.property("key").isDefined()));
+	}
+
+	@Test
+	public void get_valueChangedExternally() throws KeeperException, InterruptedException {
+		get();
+		zooKeeper.setData(propertySetPath + "/host", "remote-host".getBytes(), -1);
+		assertEventually(() -> get(propertySetName).property("host").contains("remote-host"));
+	}
+
+	@Test
+	public void get_propertyAddedExternally() throws KeeperException, InterruptedException {
+		get();
+		zooKeeper.create(propertySetPath + "/user", "peter".getBytes(), OPEN_ACL_UNSAFE, PERSISTENT);
+		assertEventually(() -> get(propertySetName).property("user").contains("peter"));
+	}
+
+	@Test
+	public void get_propertyRemovedExternally() throws KeeperException, InterruptedException {
+		get();
+		zooKeeper.delete(propertySetPath + "/port", -1);
+		assertEventually(() -> get(propertySetName).property("port").isEmpty());
+		assertSome("localhost", get(propertySetName).property("host"));
+	}
+
+	@Test
+	public void get_storedExternally() {
+		get();
+		PropertySet set = PropertySet.apply(propertySetName);
+		set.set("host", "other-host");
+		set.set("port", "6969");
+		assertSuccess(zooKeeperStorage.store(set));
+		assertEventually(() -> get(propertySetName).property("host").contains("other-host"));
+	}
+
+	@Test
+	public void get_deletedExternally() {
+		get();
+		assertSuccess(zooKeeperStorage.delete(propertySetName));
+		assertEventually(() -> storage.get(propertySetName).orNull().isEmpty());
+	}
+
+	@Test
+	public void get_storedExternallyInCompactFormat() throws IOException, InterruptedException {
+		get();
+		ZooKeeperStorage compactStorage = new ZooKeeperStorage(instance.connectString().get(), rootPath, false, StorageFormat.Compact);
+		try {
+			compactStorage.connect();
+			PropertySet set = PropertySet.apply(propertySetName);
+			set.set("host", "compact-host");
+			assertSuccess(compactStorage.store(set));
+			assertEventually(() -> get(propertySetName).property("host").contains("compact-host") && get(propertySetName).properties().size() == 1);
+
+			set.set("port", "7070");
+			assertSuccess(compactStorage.store(set));
+			assertEventually(() -> get(propertySetName).property("port").contains("7070"));
+
+			//back to the tree format
+			set.set("host", "tree-host");
+			assertSuccess(zooKeeperStorage.store(set));
+			assertEventually(() -> get(propertySetName).property("host").contains("tree-host"));
+			assertSome("7070", get(propertySetName).property("port"));
+		} finally {
+			compactStorage.close();
+		}
+	}
+
+	@Test
+	public void store() {
+		get();
+		PropertySet set = PropertySet.apply(propertySetName);
+		set.set("host", "new-host");
+		assertSuccess(storage.store(set));
+
+		PropertySet result = get(propertySetName);
+		assertEquals(1, result.properties().size());
+		assertSome("new-host", result.property("host"));
+	}
+
+	@Test
+	public void storeIfUnchanged() {
+		PropertySet set = get(propertySetName).toMutable();
+		assertTrue(set.version().isDefined());
+		set.set("host", "new-host");
+		assertSuccess(storage.storeIfUnchanged(set));
+		assertSome("new-host", get(propertySetName).property("host"));
+		assertFailure(storage.storeIfUnchanged(set)); // the version is no longer current
+	}
+
+	@Test
+	public void storeIfUnchanged_updatedByWatch() {
+		get();
+		// modifies only the value of a property, i.e. the cached version is updated by the data watch on the property set
+		PropertySet modified = zooKeeperStorage.get(propertySetName).orNull().orNull().toMutable();
+		modified.set("host", "remote-host");
+		assertSuccess(zooKeeperStorage.store(modified));
+		assertEventually(() -> get(propertySetName).version().equals(zooKeeperStorage.get(propertySetName).orNull().orNull().version()));
+
+		PropertySet set = get(propertySetName).toMutable();
+		assertSome("remote-host", set.property("host"));
+		set.set("host", "new-host");
+		assertSuccess(storage.storeIfUnchanged(set));
+	}
+
+	@Test
+	public void delete() {
+		get();
+		assertSuccess(storage.delete(propertySetName));
+		assertNone(storage.get(propertySetName).orNull());
+	}
+
+	@Test
+	public void propertySets() {
+		Try<List<String>> result = storage.propertySets();
+		assertSuccess(result);
+		assertEquals(1, result.orNull().size());
+		assertTrue(result.orNull().contains(propertySetName));
+	}
+
+	@Test
+	public void propertySets_addedExternally() {
+		propertySets();
+		assertSuccess(zooKeeperStorage.store(PropertySet.apply("other-set")));
+		assertEventually(() -> storage.propertySets().orNull().contains("other-set"));
+	}
+
+	@Test
+	public void propertySets_keptWhenStoringExisting() {
+		List<String> names = storage.propertySets().orNull();
+		PropertySet set = PropertySet.apply(propertySetName);
+		set.set("host", "modified");
+		assertSuccess(storage.store(set));
+		assertSame(names, storage.propertySets().orNull());
+	}
+
+	@Test
+	public void propertySets_invalidatedWhenCreatedOrDeleted() {
+		propertySets();
+		assertSuccess(storage.store(PropertySet.apply("other-set")));
+		assertTrue(storage.propertySets().orNull().contains("other-set"));
+		assertSuccess(storage.delete("other-set"));
+		assertFalse(storage.propertySets().orNull().contains("other-set"));
+	}
+
+	@Test
+	public void get_loadInProgressCountsAsMiss() throws Throwable {
+		InMemoryStorageMetrics metrics = new InMemoryStorageMetrics();
+		ZooKeeperStorage measured = newStorage(metrics);
+		CachingPropertiesStorage cachingStorage = new CachingPropertiesStorage(measured, CachePolicy.Unbounded, 0);
+		try {
+			// issued from the event thread the load can't complete in between the two reads
+			Promise<Option<PropertySet>> loaded = Promise();
+			measured.connection().get().exists(rootPath, false, (rc, path, ctx, stat) -> {
+				cachingStorage.async().get(propertySetName);
+				loaded.completeWith(cachingStorage.async().get(propertySetName));
+			}, null);
+			assertSome(loaded.future().result(duration));
+			assertSome(cachingStorage.get(propertySetName).orNull());
+			assertEquals(2, metrics.cacheEvents(CacheEvent.Miss));
+			assertEquals(1, metrics.cacheEvents(CacheEvent.Hit));
+		} finally {
+			cachingStorage.close();
+		}
+	}
+
+	@Test
+	public void async_get() {
+		get();
+		Future<Option<PropertySet>> result = storage.async().get(propertySetName);
+		assertTrue(result.isCompleted()); //served from the cache
+		assertSome("6969", result.value().orNull().orNull().orNull().property("port"));
+	}
+
+	@Test
+	public void async_store() throws Throwable {
+		get();
+		PropertySet set = PropertySet.apply(propertySetName);
+		set.set("host", "async-host");
+		storage.async().store(set).result(duration);
+		assertSome("async-host", storage.async().get(propertySetName).result(duration).orNull().property("host"));
+	}
+
+	@Test
+	public void async_delete() throws Throwable {
+		get();
+		storage.async().delete(propertySetName).result(duration);
+		assertNone(storage.async().get(propertySetName).result(duration));
+		assertFalse(storage.async().propertySets().result(duration).contains(propertySetName));
+	}
+
+	@Test
+	public void estimateSize() {
+		assertEquals(CachingPropertiesStorage.EntryOverhead, CachingPropertiesStorage.estimateSize(Collections.emptyMap()));
+		long expected = CachingPropertiesStorage.EntryOverhead + CachingPropertiesStorage.PropertyOverhead + 2 * "host".length() + "localhost".length();
+		assertEquals(expected, CachingPropertiesStorage.estimateSize(Collections.singletonMap("host", PropertyValue.of("localhost"))));
+	}
+
+	@Test
+	public void get_cacheEvents() throws IOException, InterruptedException {
+		InMemoryStorageMetrics metrics = new InMemoryStorageMetrics();
+		CachingPropertiesStorage cachingStorage = new CachingPropertiesStorage(newStorage(metrics), CachePolicy.Unbounded, 0);
+		try {
+			assertSome(cachingStorage.get(propertySetName).orNull());
+			assertSome(cachingStorage.get(propertySetName).orNull());
+			assertEquals(1, metrics.cacheEvents(CacheEvent.Miss));
+			assertEquals(1, metrics.cacheEvents(CacheEvent.Hit));
+			assertEquals(1, metrics.cacheEntries());
+			assertTrue(metrics.cacheBytes() > 0);
+		} finally {
+			cachingStorage.close();
+		}
+		assertEquals(0, metrics.cacheEntries());
+	}
+
+	@Test
+	public void get_bounded() throws IOException, InterruptedException {
+		store("set-a");
+		store("set-b");
+		InMemoryStorageMetrics metrics = new InMemoryStorageMetrics();
+		// room for two of the property sets
+		CachingPropertiesStorage cachingStorage = new CachingPropertiesStorage(newStorage(metrics), 2000, 0);
+		try {
+			PropertySet frequent = cachingStorage.get(propertySetName).orNull().orNull();
+			assertTrue(frequent == cachingStorage.get(propertySetName).orNull().orNull());
+			assertSome(cachingStorage.get("set-a").orNull());
+
+			// as frequently used as the entry it would replace, hence rejected but still served
+			assertSome("localhost", cachingStorage.get("set-b").orNull().orNull().property("host"));
+			assertEquals(1, metrics.cacheEvents(CacheEvent.Rejection));
+			assertEquals(2, metrics.cacheEntries());
+			assertTrue(metrics.cacheBytes() <= 2000);
+
+			// more frequently used, evicts the entry not accessed since
+			assertTrue(frequent == cachingStorage.get(propertySetName).orNull().orNull());
+			assertSome(cachingStorage.get("set-b").orNull());
+			assertEquals(1, metrics.cacheEvents(CacheEvent.Eviction));
+			assertEquals(2, metrics.cacheEntries());
+
+			// the frequently used entry survived the scan
+			assertTrue(frequent == cachingStorage.get(propertySetName).orNull().orNull());
+		} finally {
+			cachingStorage.close();
+		}
+	}
+
+	@Test
+	public void get_scanKeepsWatchesBounded() throws IOException, InterruptedException {
+		for (int i = 0; i < 50; i++) {
+			store("scan-" + i);
+		}
+		InMemoryStorageMetrics metrics = new InMemoryStorageMetrics();
+		ZooKeeperStorage measured = newStorage(metrics);
+		// room for two of the property sets
+		CachingPropertiesStorage cachingStorage = new CachingPropertiesStorage(measured, 2000, 0);
+		try {
+			for (int i = 0; i < 50; i++) {
+				assertSome("localhost", cachingStorage.get("scan-" + i).orNull().orNull().property("host"));
+				assertTrue(metrics.cacheEntries() <= 2);
+				// only the resident entries are registered for watch events
+				assertTrue(measured.watches().size() <= metrics.cacheEntries());
+			}
+			assertTrue(metrics.cacheEvents(CacheEvent.Rejection) + metrics.cacheEvents(CacheEvent.Eviction) >= 48);
+
+			// triggers the outstanding watches of a property set not admitted to the cache
+			PropertySet set = PropertySet.apply("scan-49");
+			set.set("host", "remote-host");
+			assertSuccess(zooKeeperStorage.store(set));
+			assertSome("remote-host", cachingStorage.get("scan-49").orNull().orNull().property("host"));
+		} finally {
+			cachingStorage.close();
+		}
+		assertEquals(0, measured.watches().size());
+	}
+
+	@Test
+	public void get_tooLargeForCache() throws IOException, InterruptedException {
+		InMemoryStorageMetrics metrics = new InMemoryStorageMetrics();
+		CachingPropertiesStorage cachingStorage = new CachingPropertiesStorage(newStorage(metrics), 100, 0);
+		try {
+			assertSome("localhost", cachingStorage.get(propertySetName).orNull().orNull().property("host"));
+			assertSome("localhost", cachingStorage.get(propertySetName).orNull().orNull().property("host"));
+			assertEquals(2, metrics.cacheEvents(CacheEvent.Miss));
+			assertEquals(2, metrics.cacheEvents(CacheEvent.Rejection));
+			assertEquals(0, metrics.cacheEntries());
+		} finally {
+			cachingStorage.close();
+		}
+	}
+
+	@Test
+	public void get_expired() throws IOException, InterruptedException {
+		InMemoryStorageMetrics metrics = new InMemoryStorageMetrics();
+		CachingPropertiesStorage cachingStorage = new CachingPropertiesStorage(newStorage(metrics), CachePolicy.Unbounded, TimeUnit.MILLISECONDS.toNanos(50));
+		try {
+			PropertySet first = cachingStorage.get(propertySetName).orNull().orNull();
+			Thread.sleep(100);
+			PropertySet second = cachingStorage.get(propertySetName).orNull().orNull();
+			assertFalse(first == second);
+			assertEquals(1, metrics.cacheEvents(CacheEvent.Expiry));
+			assertEquals(2, metrics.cacheEvents(CacheEvent.Miss));
+			assertEquals(1, metrics.cacheEntries());
+		} finally {
+			cachingStorage.close();
+		}
+	}
+
+	@Test
+	public void get_sessionExpiredTwice() throws Throwable {
+		get();
+		for (int i = 1; i <= 2; i++) {
+			TestZooKeeperSession.expire(instance.connectString().get(), zooKeeperStorage.connection().get());
+			String host = "host-" + i;
+			zooKeeper.setData(rootPath + "/" + propertySetName + "/host", host.getBytes(), -1);
+			// the cached property set is re-read once the session has been recovered
+			assertEventually(() -> get(propertySetName).property("host").contains(host));
+		}
+	}
+
+	@Test
+	public void get_notConnected() {
+		CachingPropertiesStorage notConnected = new CachingPropertiesStorage(new ZooKeeperStorage(instance.connectString().get(), rootPath));
+		assertFailure(notConnected.get(propertySetName));
+		assertFailure(notConnected.propertySets());
+	}
+
+	private ZooKeeperStorage newStorage(StorageMetrics metrics) throws IOException, InterruptedException {
+		ZooKeeperStorage newStorage = new ZooKeeperStorage(instance.connectString().get(), rootPath, false, StorageFormat.Tree, metrics);
+		newStorage.connect();
+		return newStorage;
+	}
+
+	private void store(String name) {
+		PropertySet set = PropertySet.apply(name);
+		set.set("host", "localhost");
+		set.set("port", "6969");
+		assertSuccess(zooKeeperStorage.store(set));
+	}
+
+	private PropertySet get(String name) {
+		Try<Option<PropertySet>> result = storage.get(name);
+		assertSuccess(result);
+		assertSome(result.orNull());
+		return result.orNull().orNull();
+	}
+}
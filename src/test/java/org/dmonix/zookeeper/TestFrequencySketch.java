@@ -0,0 +1,61 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import org.junit.Test;
+
+/**
+ * Test the class {@link FrequencySketch}
+ * @author Peter Nerg
+ */
+public class TestFrequencySketch extends BaseAssert {
+
+	private final FrequencySketch sketch = new FrequencySketch(512);
+
+	@Test
+	public void frequency_unknown() {
+		assertEquals(0, sketch.frequency("no-such-key"));
+	}
+
+	@Test
+	public void increment() {
+		sketch.increment("key");
+		sketch.increment("key");
+		sketch.increment("other");
+		assertEquals(2, sketch.frequency("key"));
+		assertEquals(1, sketch.frequency("other"));
+	}
+
+	@Test
+	public void increment_saturates() {
+		for (int i = 0; i < 100; i++) {
+			sketch.increment("key");
+		}
+		assertEquals(FrequencySketch.MaxFrequency, sketch.frequency("key"));
+	}
+
+	@Test
+	public void reset_halvesFrequencies() {
+		for (int i = 0; i < 8; i++) {
+			sketch.increment("key");
+		}
+		// enough other additions to trigger the periodic reset
+		for (int i = 0; i < 10 * 512; i++) {
+			sketch.increment("key-" + i);
+		}
+		assertTrue(sketch.frequency("key") <= 4);
+	}
+}
@@ -0,0 +1,190 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import junitextensions.OptionAssert;
+
+/**
+ * Test the class {@link ImmutablePropertySet}
+ * @author Peter Nerg
+ */
+public class TestImmutablePropertySet extends BaseAssert implements OptionAssert {
+	private final Map<String, String> properties = new HashMap<>();
+	private final PropertySet propertySet;
+
+	public TestImmutablePropertySet() {
+		properties.put("host", "localhost");
+		properties.put("port", "6969");
+		properties.put("null", null);
+		propertySet = ImmutablePropertySet.of(TestImmutablePropertySet.class.getSimpleName(), properties);
+	}
+
+	@Test
+	public void name() {
+		assertEquals(TestImmutablePropertySet.class.getSimpleName(), propertySet.name());
+	}
+
+	@Test
+	public void property() {
+		assertSome("localhost", propertySet.property("host"));
+		assertSome("6969", propertySet.property("port"));
+		assertNone(propertySet.property("null"));
+		assertNone(propertySet.property("NO-SUCH-PROPERTY"));
+		assertNone(propertySet.property(null));
+	}
+
+	@Test
+	public void property_sameInstance() {
+		assertTrue(propertySet.property("host") == propertySet.property("host"));
+	}
+
+	@Test
+	public void of_copiesProperties() {
+		properties.put("host", "modified");
+		assertSome("localhost", propertySet.property("host"));
+	}
+
+	@Test
+	public void propertyOrDefault() {
+		assertEquals("localhost", propertySet.propertyOrDefault("host", "default"));
+		assertEquals("default", propertySet.propertyOrDefault("null", "default"));
+		assertEquals("default", propertySet.propertyOrDefault("NO-SUCH-PROPERTY", "default"));
+	}
+
+	@Test
+	public void containsProperty() {
+		assertTrue(propertySet.containsProperty("host"));
+		assertTrue(propertySet.containsProperty("null"));
+		assertFalse(propertySet.containsProperty("NO-SUCH-PROPERTY"));
+	}
+
+	@Test
+	public void size() {
+		assertEquals(3, propertySet.size());
+	}
+
+	@Test
+	public void forEach() {
+		List<String> names = new ArrayList<>();
+		Map<String, String> result = new HashMap<>();
+		propertySet.forEach((name, value) -> {
+			names.add(name);
+			result.put(name, value);
+		});
+		assertEquals(Arrays.asList("host", "null", "port"), names);
+		assertEquals(properties, result);
+	}
+
+	@Test
+	public void properties() {
+		assertEquals(3, propertySet.properties().size());
+		assertTrue(propertySet.properties().contains("host"));
+		assertFalse(propertySet.properties().contains("NO-SUCH-PROPERTY"));
+		assertEquals(Arrays.asList("host", "null", "port"), Arrays.asList(propertySet.properties().toArray()));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void properties_readOnly() {
+		propertySet.properties().remove("host");
+	}
+
+	@Test
+	public void properties_empty() {
+		assertTrue(ImmutablePropertySet.of("empty", new HashMap<>()).properties().isEmpty());
+	}
+
+	@Test
+	public void asMap() {
+		Map<String, String> map = propertySet.asMap();
+		assertEquals(properties, map);
+		assertEquals(map, properties);
+		assertEquals(properties.hashCode(), map.hashCode());
+		assertEquals("localhost", map.get("host"));
+		assertNull(map.get("NO-SUCH-PROPERTY"));
+		assertTrue(map.containsKey("null"));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void asMap_readOnly() {
+		propertySet.asMap().put("host", "modified");
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void set() {
+		propertySet.set("host", "modified");
+	}
+
+	@Test
+	public void toMutable() {
+		PropertySet copy = propertySet.toMutable();
+		assertEquals(propertySet.asMap(), copy.asMap());
+		assertSome("localhost", copy.set("host", "modified"));
+		assertSome("modified", copy.property("host"));
+		assertSome("localhost", propertySet.property("host"));
+	}
+
+	@Test
+	public void intProperty() {
+		assertEquals(6969, propertySet.intProperty("port", 0));
+		assertEquals(6969, propertySet.intProperty("port", 0)); //memoized
+		assertEquals(6969L, propertySet.longProperty("port", 0L)); //other type parsed anew
+		assertEquals(42, propertySet.intProperty("NO-SUCH-PROPERTY", 42));
+		assertEquals(42, propertySet.intProperty("null", 42));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void intProperty_invalid() {
+		propertySet.intProperty("host", 0);
+	}
+	
+	@Test
+	public void testToString() {
+		assertEquals(TestImmutablePropertySet.class.getSimpleName() + "{host:localhost,null:null,port:6969,}", propertySet.toString());
+	}
+
+	@Test
+	public void bytesProperty() {
+		assertTrue(Arrays.equals("localhost".getBytes(UTF_8), propertySet.bytesProperty("host").orNull()));
+		assertNone(propertySet.bytesProperty("null"));
+		assertNone(propertySet.bytesProperty("NO-SUCH-PROPERTY"));
+	}
+
+	@Test
+	public void ofValues_decodedOnRead() {
+		Map<String, PropertyValue> values = new HashMap<>();
+		values.put("binary", PropertyValue.of(new byte[] { 0, (byte) 0xFF }));
+		values.put("text", PropertyValue.of("v\u00e4rde".getBytes(UTF_8)));
+		PropertySet set = ImmutablePropertySet.ofValues("set", values);
+		assertTrue(Arrays.equals(new byte[] { 0, (byte) 0xFF }, set.bytesProperty("binary").orNull()));
+		assertSome("v\u00e4rde", set.property("text"));
+		assertTrue(set.property("text") == set.property("text"));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void setBytes() {
+		propertySet.setBytes("host", new byte[0]);
+	}
+}
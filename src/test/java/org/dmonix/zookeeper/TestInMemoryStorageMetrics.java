@@ -0,0 +1,99 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static org.dmonix.zookeeper.StorageMetrics.Operation.Get;
+import static org.dmonix.zookeeper.StorageMetrics.Operation.Store;
+
+import org.dmonix.zookeeper.StorageMetrics.CacheEvent;
+import org.junit.Test;
+
+/**
+ * Test the class {@link InMemoryStorageMetrics}
+ * @author Peter Nerg
+ */
+public class TestInMemoryStorageMetrics extends BaseAssert {
+
+	private final InMemoryStorageMetrics metrics = new InMemoryStorageMetrics();
+
+	@Test
+	public void onOperation() {
+		metrics.onOperation(Get, 1000, true);
+		metrics.onOperation(Get, 2000, false);
+		assertEquals(1, metrics.successes(Get));
+		assertEquals(1, metrics.failures(Get));
+		assertEquals(2, metrics.latency(Get).count());
+		assertEquals(0, metrics.latency(Store).count());
+	}
+
+	@Test
+	public void onRequests() {
+		metrics.onRequests(Get, 1);
+		metrics.onRequests(Get, 10);
+		assertEquals(11, metrics.requests(Get));
+		assertEquals(0, metrics.requests(Store));
+	}
+
+	@Test
+	public void onBytes() {
+		metrics.onBytesRead(Get, 100);
+		metrics.onBytesWritten(Store, 200);
+		assertEquals(100, metrics.bytesRead(Get));
+		assertEquals(0, metrics.bytesWritten(Get));
+		assertEquals(200, metrics.bytesWritten(Store));
+	}
+
+	@Test
+	public void onCacheEvent() {
+		metrics.onCacheEvent(CacheEvent.Hit);
+		metrics.onCacheEvent(CacheEvent.Hit);
+		metrics.onCacheEvent(CacheEvent.Hit);
+		metrics.onCacheEvent(CacheEvent.Miss);
+		metrics.onCacheEvent(CacheEvent.Eviction);
+		assertEquals(3, metrics.cacheEvents(CacheEvent.Hit));
+		assertEquals(1, metrics.cacheEvents(CacheEvent.Eviction));
+		assertEquals(0, metrics.cacheEvents(CacheEvent.Rejection));
+		assertEquals(0.75, metrics.cacheHitRatio(), 0.001);
+	}
+
+	@Test
+	public void cacheHitRatio_noLookups() {
+		assertEquals(0, metrics.cacheHitRatio(), 0.001);
+	}
+
+	@Test
+	public void onCacheSize() {
+		metrics.onCacheSize(4096, 3);
+		assertEquals(4096, metrics.cacheBytes());
+		assertEquals(3, metrics.cacheEntries());
+	}
+
+	@Test
+	public void noOp() {
+		StorageMetrics.noOp().onOperation(Get, 1000, true);
+		StorageMetrics.noOp().onRequests(Get, 1);
+		StorageMetrics.noOp().onBytesRead(Get, 1);
+		StorageMetrics.noOp().onBytesWritten(Get, 1);
+		StorageMetrics.noOp().onCacheEvent(CacheEvent.Hit);
+		StorageMetrics.noOp().onCacheSize(1, 1);
+	}
+
+	@Test
+	public void toString_t() {
+		assertTrue(metrics.toString().contains("PropertySets{"));
+		assertTrue(metrics.toString().contains("Cache{"));
+	}
+}
@@ -0,0 +1,70 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import org.junit.Test;
+
+/**
+ * Test the class {@link KnownPaths}
+ * @author Peter Nerg
+ */
+public class TestKnownPaths extends BaseAssert {
+
+	private final KnownPaths knownPaths = new KnownPaths();
+
+	@Test
+	public void empty() {
+		assertFalse(knownPaths.isKnown("/root"));
+		assertEquals(0, knownPaths.size());
+	}
+
+	@Test
+	public void add() {
+		knownPaths.add("/root");
+		assertTrue(knownPaths.isKnown("/root"));
+		assertFalse(knownPaths.isKnown("/root/child"));
+	}
+
+	@Test
+	public void forget() {
+		knownPaths.add("/root");
+		knownPaths.add("/root/child");
+		knownPaths.add("/root/child/grandchild");
+		knownPaths.add("/rootless");
+		knownPaths.forget("/root");
+		assertFalse(knownPaths.isKnown("/root"));
+		assertFalse(knownPaths.isKnown("/root/child"));
+		assertFalse(knownPaths.isKnown("/root/child/grandchild"));
+		assertTrue(knownPaths.isKnown("/rootless"));
+	}
+
+	@Test
+	public void clear() {
+		knownPaths.add("/root");
+		knownPaths.clear();
+		assertEquals(0, knownPaths.size());
+	}
+
+	@Test
+	public void maxSize() {
+		KnownPaths bounded = new KnownPaths(2);
+		bounded.add("/a");
+		bounded.add("/b");
+		bounded.add("/c");
+		assertEquals(1, bounded.size());
+		assertTrue(bounded.isKnown("/c"));
+	}
+}
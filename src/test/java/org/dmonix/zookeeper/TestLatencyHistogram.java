@@ -0,0 +1,84 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import org.junit.Test;
+
+/**
+ * Test the class {@link LatencyHistogram}
+ * @author Peter Nerg
+ */
+public class TestLatencyHistogram extends BaseAssert {
+
+	private final LatencyHistogram histogram = new LatencyHistogram();
+
+	@Test
+	public void empty() {
+		assertEquals(0, histogram.count());
+		assertEquals(0, histogram.max());
+		assertEquals(0, histogram.mean(), 0);
+		assertEquals(0, histogram.percentile(99));
+	}
+
+	@Test
+	public void smallValuesAreExact() {
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i);
+		}
+		assertEquals(100, histogram.count());
+		assertEquals(100, histogram.max());
+		assertEquals(50.5, histogram.mean(), 0.001);
+		assertEquals(50, histogram.percentile(50));
+		assertEquals(99, histogram.percentile(99));
+		assertEquals(100, histogram.percentile(100));
+	}
+
+	@Test
+	public void largeValuesWithinPrecision() {
+		for (long i = 1; i <= 10000; i++) {
+			histogram.record(i * 1000);
+		}
+		assertWithinPrecision(5000000, histogram.percentile(50));
+		assertWithinPrecision(9900000, histogram.percentile(99));
+		assertEquals(10000000, histogram.percentile(100));
+	}
+
+	@Test
+	public void negativeValue() {
+		histogram.record(-1);
+		assertEquals(1, histogram.count());
+		assertEquals(0, histogram.percentile(50));
+	}
+
+	@Test
+	public void extremeValue() {
+		histogram.record(Long.MAX_VALUE);
+		assertEquals(Long.MAX_VALUE, histogram.percentile(50));
+	}
+
+	@Test
+	public void bucketBoundaries() {
+		for (long value : new long[] { 127, 128, 129, 255, 256, 1L << 40, (1L << 40) + 12345 }) {
+			long highest = LatencyHistogram.highestValue(LatencyHistogram.index(value));
+			assertTrue(highest >= value);
+			assertTrue(highest - value <= value / 64);
+		}
+	}
+
+	private static void assertWithinPrecision(long expected, long actual) {
+		assertEquals(expected, actual, expected / 64.0);
+	}
+}
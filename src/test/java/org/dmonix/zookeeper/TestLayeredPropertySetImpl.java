@@ -0,0 +1,221 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static org.apache.zookeeper.CreateMode.PERSISTENT;
+import static org.apache.zookeeper.ZooDefs.Ids.OPEN_ACL_UNSAFE;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.zookeeper.KeeperException;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import junitextensions.OptionAssert;
+import zookeeperjunit.CloseableZooKeeper;
+import zookeeperjunit.ZKFactory;
+import zookeeperjunit.ZKInstance;
+import zookeeperjunit.ZooKeeperAssert;
+
+/**
+ * Test the class {@link LayeredPropertySetImpl}
+ * @author Peter Nerg
+ */
+public class TestLayeredPropertySetImpl extends BaseAssert implements ZooKeeperAssert, OptionAssert {
+	private static ZKInstance instance = ZKFactory.apply().create();
+
+	private final String rootPath = "/TestLayeredPropertySetImpl";
+
+	private final ZooKeeperStorage storage = new ZooKeeperStorage(instance.connectString().get(), rootPath);
+	private CloseableZooKeeper zooKeeper;
+	private LayeredPropertySet layered;
+
+	@BeforeClass
+	public static void startZooKeeper() throws TimeoutException, Throwable {
+		instance.start().result(duration);
+	}
+
+	@AfterClass
+	public static void stopZooKeeper() throws TimeoutException, Throwable {
+		instance.destroy().result(duration);
+	}
+
+	@Before
+	public void before() throws IOException, InterruptedException {
+		storage.connect();
+		zooKeeper = connection();
+		store("global", "host", "global-host", "port", "6969", "timeout", "30s");
+		store("service-a", "host", "service-host", "threads", "10");
+		layered = storage.layered("service-a", "global").orNull();
+	}
+
+	@After
+	public void after() {
+		layered.close();
+		zooKeeper.deleteRecursively(rootPath);
+		zooKeeper.close();
+		storage.close();
+	}
+
+	/* (non-Javadoc)
+	 * @see zookeeperjunit.ZooKeeperAssert#instance()
+	 */
+	@Override
+	public ZKInstance instance() {
+		return instance;
+	}
+
+	private void store(String name, String... properties) {
+		PropertySet set = PropertySet.apply(name);
+		for (int i = 0; i < properties.length; i += 2) {
+			set.set(properties[i], properties[i + 1]);
+		}
+		assertSuccess(storage.store(set));
+	}
+
+	@Test
+	public void layers() {
+		assertEquals(Arrays.asList("service-a", "global"), layered.layers());
+		assertEquals("service-a", layered.name());
+	}
+
+	@Test
+	public void property() {
+		assertSome("service-host", layered.property("host"));
+		assertSome("6969", layered.property("port"));
+		assertSome("10", layered.property("threads"));
+		assertNone(layered.property("no-such-property"));
+		assertNone(layered.property(null));
+		assertEquals("default", layered.propertyOrDefault("no-such-property", "default"));
+		assertEquals(4, layered.size());
+	}
+
+	@Test
+	public void layerOf() {
+		assertSome("service-a", layered.layerOf("host"));
+		assertSome("global", layered.layerOf("port"));
+		assertNone(layered.layerOf("no-such-property"));
+	}
+
+	@Test
+	public void typedProperty() {
+		assertEquals(10, layered.intProperty("threads", 0));
+		assertEquals(6969, layered.intProperty("port", 0));
+		assertEquals(30, layered.durationProperty("timeout", null).getSeconds());
+	}
+
+	@Test
+	public void asMap() {
+		Map<String, String> expected = new HashMap<>();
+		expected.put("host", "service-host");
+		expected.put("port", "6969");
+		expected.put("threads", "10");
+		expected.put("timeout", "30s");
+		assertEquals(expected, layered.asMap());
+		assertEquals(expected, layered.toMutable().asMap());
+		assertTrue(layered.properties().contains("timeout"));
+	}
+
+	@Test
+	public void overrideAdded() throws KeeperException, InterruptedException {
+		zooKeeper.create(rootPath + "/service-a/port", "7070".getBytes(), OPEN_ACL_UNSAFE, PERSISTENT);
+		assertEventually(() -> layered.property("port").contains("7070"));
+		assertSome("service-a", layered.layerOf("port"));
+	}
+
+	@Test
+	public void overrideRemoved() {
+		store("service-a", "threads", "10");
+		assertEventually(() -> layered.property("host").contains("global-host"));
+		assertSome("global", layered.layerOf("host"));
+	}
+
+	@Test
+	public void shadowedChange() throws KeeperException, InterruptedException {
+		zooKeeper.setData(rootPath + "/global/host", "other-host".getBytes(), -1);
+		zooKeeper.setData(rootPath + "/global/port", "7070".getBytes(), -1);
+		assertEventually(() -> layered.property("port").contains("7070"));
+		assertSome("service-host", layered.property("host"));
+	}
+
+	@Test
+	public void layerDeleted() {
+		assertSuccess(storage.delete("global"));
+		assertEventually(() -> layered.size() == 2);
+		assertNone(layered.property("port"));
+	}
+
+	@Test
+	public void nonExistingLayer() {
+		LayeredPropertySet other = storage.layered("no-such-set", "global").orNull();
+		try {
+			assertSome("global-host", other.property("host"));
+			store("no-such-set", "host", "created-host");
+			assertEventually(() -> other.property("host").contains("created-host"));
+		} finally {
+			other.close();
+		}
+	}
+
+	@Test
+	public void close() throws KeeperException, InterruptedException {
+		layered.close();
+		zooKeeper.setData(rootPath + "/global/port", "7070".getBytes(), -1);
+		//the event thread is shared, once another subscriber sees the change any watch of the closed view would have been processed as well
+		AtomicBoolean changed = new AtomicBoolean();
+		Subscription subscription = storage.subscribe("global", (ps, changes) -> changed.set(ps.exists(p -> p.property("port").contains("7070"))));
+		assertEventually(changed::get);
+		subscription.close();
+		assertSome("6969", layered.property("port"));
+		assertNone(layered.failure());
+	}
+
+	@Test
+	public void failure() throws KeeperException, InterruptedException {
+		assertNone(layered.failure());
+		PropertySet compact = PropertySet.apply("compact");
+		compact.set("host", "compact-host");
+		zooKeeper.create(rootPath + "/compact", PropertySetCodec.encode(compact), OPEN_ACL_UNSAFE, PERSISTENT);
+		LayeredPropertySet other = storage.layered("compact", "global").orNull();
+		try {
+			assertSome("compact-host", other.property("host"));
+			// an unsupported version of the encoded property set can't be read
+			zooKeeper.setData(rootPath + "/compact", new byte[] { (byte) 0xF5, 'P', 99 }, -1);
+			assertEventually(() -> other.failure().isDefined());
+			assertSome("compact-host", other.property("host"));
+		} finally {
+			other.close();
+		}
+	}
+
+	@Test
+	public void noLayers() {
+		assertFailure(storage.layered());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void set() {
+		layered.set("host", "modified");
+	}
+}
@@ -0,0 +1,166 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static javascalautils.OptionCompanion.None;
+import static javascalautils.TryCompanion.Failure;
+import static javascalautils.TryCompanion.Success;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import javascalautils.Try;
+import junitextensions.OptionAssert;
+import junitextensions.TryAssert;
+
+/**
+ * Test the class {@link LazyPropertySetImpl}
+ * @author Peter Nerg
+ */
+public class TestLazyPropertySetImpl extends BaseAssert implements OptionAssert, TryAssert {
+	private final Map<String, String> stored = new HashMap<>();
+	private final List<Collection<String>> requests = new ArrayList<>();
+	private boolean fail = false;
+	private final LazyPropertySet propertySet;
+
+	public TestLazyPropertySetImpl() {
+		stored.put("host", "localhost");
+		stored.put("port", "6969");
+		stored.put("flags", "a,b");
+		propertySet = new LazyPropertySetImpl("lazy-set", None(), stored.keySet(), Collections.singletonMap("flags", PropertyValue.of("a,b")), this::load);
+	}
+
+	private Try<Map<String, PropertyValue>> load(Collection<String> names) {
+		requests.add(names);
+		if (fail) {
+			return Failure(new IllegalArgumentException("Failed"));
+		}
+		Map<String, PropertyValue> result = new HashMap<>();
+		names.stream().filter(stored::containsKey).forEach(name -> result.put(name, PropertyValue.of(stored.get(name))));
+		return Success(result);
+	}
+
+	@Test
+	public void name() {
+		assertEquals("lazy-set", propertySet.name());
+	}
+
+	@Test
+	public void properties_doesNotLoad() {
+		assertEquals(3, propertySet.properties().size());
+		assertEquals(3, propertySet.size());
+		assertTrue(propertySet.containsProperty("host"));
+		assertFalse(propertySet.containsProperty("no-such-property"));
+		assertTrue(requests.isEmpty());
+	}
+
+	@Test
+	public void property_loadedOnce() {
+		assertSome("localhost", propertySet.property("host"));
+		assertSome("localhost", propertySet.property("host"));
+		assertEquals(Arrays.asList(Arrays.asList("host")), requests);
+	}
+
+	@Test
+	public void property_preloaded() {
+		assertTrue(propertySet.isLoaded("flags"));
+		assertEquals(Arrays.asList("a", "b"), propertySet.listProperty("flags", Collections.emptyList()));
+		assertTrue(requests.isEmpty());
+	}
+
+	@Test
+	public void property_nonExisting() {
+		assertNone(propertySet.property("no-such-property"));
+		assertEquals("default", propertySet.propertyOrDefault("no-such-property", "default"));
+		assertEquals(42, propertySet.intProperty("no-such-property", 42));
+		assertTrue(requests.isEmpty());
+	}
+
+	@Test
+	public void property_removedBeforeRead() {
+		stored.remove("host");
+		assertNone(propertySet.property("host"));
+		assertTrue(propertySet.isLoaded("host"));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void property_failedToLoad() {
+		fail = true;
+		propertySet.property("host");
+	}
+
+	@Test
+	public void property_retriedAfterFailure() {
+		fail = true;
+		assertFailure(propertySet.prefetch(Arrays.asList("host")));
+		assertFalse(propertySet.isLoaded("host"));
+		fail = false;
+		assertSome("localhost", propertySet.property("host"));
+	}
+
+	@Test
+	public void prefetch() {
+		assertSuccess(propertySet.prefetch(Arrays.asList("host", "port", "flags", "no-such-property")));
+		assertEquals(Arrays.asList(Arrays.asList("host", "port")), requests);
+		assertEquals(6969, propertySet.intProperty("port", 0));
+		assertEquals(1, requests.size());
+	}
+
+	@Test
+	public void prefetch_allLoaded() {
+		assertSuccess(propertySet.prefetch(Arrays.asList("flags")));
+		assertTrue(requests.isEmpty());
+	}
+
+	@Test
+	public void asMap() {
+		assertEquals(stored, propertySet.asMap());
+		assertEquals(1, requests.size());
+	}
+
+	@Test
+	public void forEach() {
+		Map<String, String> result = new HashMap<>();
+		propertySet.forEach(result::put);
+		assertEquals(stored, result);
+	}
+
+	@Test
+	public void toMutable() {
+		PropertySet copy = propertySet.toMutable();
+		copy.set("host", "modified");
+		assertSome("modified", copy.property("host"));
+		assertSome("localhost", propertySet.property("host"));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void set() {
+		propertySet.set("host", "modified");
+	}
+
+	@Test
+	public void testToString() {
+		assertEquals("lazy-set{flags:a,b,host:?,port:?,}", propertySet.toString());
+		assertTrue(requests.isEmpty());
+	}
+}
@@ -0,0 +1,74 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import org.junit.Test;
+
+/**
+ * Test the class {@link OpBatch}
+ * @author Peter Nerg
+ */
+public class TestOpBatch extends BaseAssert {
+
+	@Test
+	public void empty() {
+		OpBatch batch = new OpBatch();
+		assertTrue(batch.isEmpty());
+		assertEquals(0, batch.size());
+		assertTrue(batch.chunks().isEmpty());
+		assertEquals(0, batch.transactions());
+		assertEquals(0, batch.bytes());
+	}
+
+	@Test
+	public void singleChunk() {
+		OpBatch batch = new OpBatch().delete("/a", -1).create("/b", new byte[10]).setData("/c", new byte[10], 1);
+		assertFalse(batch.isEmpty());
+		assertEquals(3, batch.size());
+		assertEquals(1, batch.chunks().size());
+		assertEquals(3, batch.chunks().get(0).size());
+	}
+
+	@Test
+	public void multipleChunks() {
+		OpBatch batch = new OpBatch(1000);
+		for (int i = 0; i < 10; i++) {
+			batch.create("/node-" + i, new byte[400]);
+		}
+		assertEquals(10, batch.size());
+		assertEquals(5, batch.chunks().size());
+		assertEquals(5, batch.transactions());
+		assertEquals(4000, batch.bytes());
+		batch.chunks().forEach(chunk -> assertEquals(2, chunk.size()));
+	}
+
+	@Test
+	public void multipleChunks_nonAsciiPaths() {
+		// 101 characters but 201 bytes in UTF-8, only one operation fits per chunk
+		String path = "/" + new String(new char[100]).replace('\0', '\u00f6');
+		OpBatch batch = new OpBatch(1000);
+		for (int i = 0; i < 4; i++) {
+			batch.create(path + i, new byte[300]);
+		}
+		assertEquals(4, batch.chunks().size());
+	}
+
+	@Test
+	public void oversizedOperation() {
+		OpBatch batch = new OpBatch(100).create("/large", new byte[1000]).create("/small", new byte[0]);
+		assertEquals(2, batch.chunks().size());
+	}
+}
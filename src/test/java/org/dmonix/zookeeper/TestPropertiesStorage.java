@@ -0,0 +1,136 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static javascalautils.OptionCompanion.Option;
+import static javascalautils.TryCompanion.Success;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+import javascalautils.Option;
+import javascalautils.Try;
+import javascalautils.Unit;
+import junitextensions.OptionAssert;
+import junitextensions.TryAssert;
+
+/**
+ * Test the default methods of the interface {@link PropertiesStorage}
+ * @author Peter Nerg
+ */
+public class TestPropertiesStorage extends BaseAssert implements TryAssert, OptionAssert {
+
+	private final PropertiesStorage storage = new MapPropertiesStorage();
+
+	@Test
+	public void storeIfUnchanged() {
+		Try<Unit> result = storage.storeIfUnchanged(PropertySet.apply("set"));
+		assertFailure(result);
+		assertTrue(result.failed().orNull() instanceof UnsupportedOperationException);
+		assertNone(storage.get("set").orNull());
+	}
+
+	@Test
+	public void getAll() {
+		storage.store(PropertySet.apply("set"));
+		Map<String, Try<Option<PropertySet>>> result = storage.getAll().orNull();
+		assertEquals(1, result.size());
+		assertSome(result.get("set").orNull());
+	}
+
+	@Test
+	public void async() throws Throwable {
+		PropertySet set = PropertySet.apply("set");
+		set.set("host", "localhost");
+		storage.async().store(set).result(duration);
+		assertSome("localhost", storage.async().get("set").result(duration).orNull().property("host"));
+		assertEquals(1, storage.async().propertySets().result(duration).size());
+		storage.async().delete("set").result(duration);
+		assertNone(storage.async().get("set").result(duration));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void async_storeIfUnchanged() throws Throwable {
+		storage.async().storeIfUnchanged(PropertySet.apply("set")).result(duration);
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void subscribe() {
+		storage.subscribe("set", (propertySet, changed) -> {});
+	}
+
+	@Test
+	public void getLazy() throws Throwable {
+		PropertySet set = PropertySet.apply("set");
+		set.set("host", "localhost");
+		storage.store(set);
+		LazyPropertySet lazy = storage.getLazy("set").orNull().orNull();
+		assertTrue(lazy.isLoaded("host"));
+		assertSome("localhost", lazy.property("host"));
+		assertSuccess(lazy.prefetch(lazy.properties()));
+		assertSome("localhost", storage.async().getLazy("set").result(duration).orNull().property("host"));
+		assertNone(storage.getLazy("no-such-set").orNull());
+	}
+
+	@Test
+	public void layered() {
+		Try<LayeredPropertySet> result = storage.layered("set");
+		assertFailure(result);
+		assertTrue(result.failed().orNull() instanceof UnsupportedOperationException);
+	}
+
+	@Test
+	public void layered_noLayers() {
+		assertFailure(storage.layered());
+	}
+
+	/**
+	 * A storage implementing only the methods that are not default methods, as an external implementation would.
+	 */
+	private static final class MapPropertiesStorage implements PropertiesStorage {
+		private final Map<String, PropertySet> propertySets = new ConcurrentHashMap<>();
+
+		@Override
+		public Try<Option<PropertySet>> get(String name) {
+			return Success(Option(propertySets.get(name)));
+		}
+
+		@Override
+		public Try<Unit> store(PropertySet propertySet) {
+			propertySets.put(propertySet.name(), propertySet.toMutable());
+			return Success(Unit.Instance);
+		}
+
+		@Override
+		public Try<Unit> delete(String name) {
+			propertySets.remove(name);
+			return Success(Unit.Instance);
+		}
+
+		@Override
+		public Try<List<String>> propertySets() {
+			return Success(new ArrayList<>(propertySets.keySet()));
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
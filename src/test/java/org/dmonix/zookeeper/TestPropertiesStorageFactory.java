@@ -15,12 +15,19 @@
  */
 package org.dmonix.zookeeper;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.concurrent.TimeoutException;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import javascalautils.Try;
+import javascalautils.concurrent.Future;
 import junitextensions.TryAssert;
 import zookeeperjunit.ZKFactory;
 import zookeeperjunit.ZKInstance;
@@ -53,4 +60,152 @@ public class TestPropertiesStorageFactory extends BaseAssert implements TryAsser
 	public void create() {
 		assertSuccess(factory.create());
 	}
+
+	@Test
+	public void withIncrementalStore() {
+		assertNotNull(factory.withIncrementalStore());
+	}
+
+	@Test
+	public void withStorageFormat() {
+		assertNotNull(factory.withStorageFormat(StorageFormat.Compact));
+	}
+
+	@Test
+	public void withMetrics() {
+		assertNotNull(factory.withMetrics(new InMemoryStorageMetrics()));
+	}
+
+	@Test
+	public void create_withMetrics() {
+		InMemoryStorageMetrics metrics = new InMemoryStorageMetrics();
+		Try<PropertiesStorage> storage = factory.withMetrics(metrics).create();
+		assertSuccess(storage);
+		storage.forEach(s -> s.get("no-such-set"));
+		assertEquals(1, metrics.successes(StorageMetrics.Operation.Get));
+		storage.forEach(PropertiesStorage::close);
+	}
+
+	@Test
+	public void create_withCache() {
+		Try<PropertiesStorage> storage = factory.withCache().create();
+		assertSuccess(storage);
+		assertTrue(storage.orNull() instanceof CachingPropertiesStorage);
+		storage.forEach(PropertiesStorage::close);
+	}
+
+	@Test
+	public void create_withBoundedCache() {
+		Try<PropertiesStorage> storage = factory.withCache(1024 * 1024).withCacheExpiry(Duration.ofMinutes(5)).create();
+		assertSuccess(storage);
+		assertTrue(storage.orNull() instanceof CachingPropertiesStorage);
+		storage.forEach(PropertiesStorage::close);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void withCache_zero() {
+		factory.withCache(0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void withCacheExpiry_zero() {
+		factory.withCacheExpiry(Duration.ZERO);
+	}
+
+	@Test
+	public void withCompression() {
+		assertNotNull(factory.withCompression(1024));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void withCompression_negative() {
+		factory.withCompression(-1);
+	}
+
+	@Test
+	public void withSnapshot() {
+		assertNotNull(factory.withSnapshot(Paths.get("snapshot.bin")));
+	}
+
+	@Test
+	public void create_withSnapshot() throws IOException {
+		Path file = Files.createTempFile(TestPropertiesStorageFactory.class.getSimpleName(), ".bin");
+		try {
+			Try<PropertiesStorage> storage = factory.withSnapshot(file).create();
+			assertSuccess(storage);
+			assertEventually(() -> storage.orNull().propertySets().isSuccess());
+			storage.forEach(PropertiesStorage::close);
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void create_withSnapshot_notAvailable() throws IOException {
+		Path file = Files.createTempFile(TestPropertiesStorageFactory.class.getSimpleName(), ".bin");
+		try {
+			//created immediately even though ZooKeeper is not available
+			Try<PropertiesStorage> storage = PropertiesStorageFactory.apply("localhost:1").withSnapshot(file).create();
+			assertSuccess(storage);
+			assertFailure(storage.orNull().get("no-such-set"));
+			storage.forEach(PropertiesStorage::close);
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void withSessionTimeout() {
+		assertNotNull(factory.withSessionTimeout(Duration.ofSeconds(5)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void withSessionTimeout_zero() {
+		factory.withSessionTimeout(Duration.ZERO);
+	}
+
+	@Test
+	public void withConnectTimeout() {
+		assertNotNull(factory.withConnectTimeout(Duration.ofSeconds(5)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void withConnectTimeout_negative() {
+		factory.withConnectTimeout(Duration.ofSeconds(-1));
+	}
+
+	@Test
+	public void createAsync() throws Throwable {
+		PropertiesStorage storage = factory.createAsync().result(duration);
+		try {
+			assertSuccess(storage.propertySets().recover(ex -> null)); // the root path may not exist
+		} finally {
+			storage.close();
+		}
+	}
+
+	@Test
+	public void createAsync_notAvailable() throws Throwable {
+		Future<PropertiesStorage> storage = PropertiesStorageFactory.apply("localhost:1").withConnectTimeout(Duration.ofMillis(200)).createAsync();
+		assertFalse(storage.isCompleted()); // the invoking thread is not blocked by the connection attempt
+		try {
+			storage.result(duration);
+			fail("Expected IOException");
+		} catch (IOException ex) {
+			// expected
+		}
+	}
+
+	@Test
+	public void createAsync_withSnapshot_notAvailable() throws Throwable {
+		Path file = Files.createTempFile(TestPropertiesStorageFactory.class.getSimpleName(), ".bin");
+		try {
+			//completed immediately even though ZooKeeper is not available
+			Future<PropertiesStorage> storage = PropertiesStorageFactory.apply("localhost:1").withSnapshot(file).createAsync();
+			assertTrue(storage.isCompleted());
+			storage.result(duration).close();
+		} finally {
+			Files.delete(file);
+		}
+	}
 }
@@ -0,0 +1,176 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static javascalautils.OptionCompanion.Option;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import javascalautils.Option;
+import junitextensions.OptionAssert;
+
+/**
+ * Test the default methods of the interface {@link PropertySet}
+ * @author Peter Nerg
+ */
+public class TestPropertySet extends BaseAssert implements OptionAssert {
+
+	private final PropertySet propertySet = new MapPropertySet("set");
+
+	@Test
+	public void propertyOrDefault() {
+		propertySet.set("host", "localhost");
+		assertEquals("localhost", propertySet.propertyOrDefault("host", "default"));
+		assertEquals("default", propertySet.propertyOrDefault("no-such-property", "default"));
+	}
+
+	@Test
+	public void containsProperty() {
+		propertySet.set("host", "localhost");
+		assertTrue(propertySet.containsProperty("host"));
+		assertFalse(propertySet.containsProperty("no-such-property"));
+	}
+
+	@Test
+	public void size() {
+		assertEquals(0, propertySet.size());
+		propertySet.set("host", "localhost");
+		propertySet.set("port", "6969");
+		assertEquals(2, propertySet.size());
+	}
+
+	@Test
+	public void forEach() {
+		propertySet.set("host", "localhost");
+		propertySet.set("port", "6969");
+		Map<String, String> result = new HashMap<>();
+		propertySet.forEach(result::put);
+		assertEquals(propertySet.asMap(), result);
+	}
+
+	@Test
+	public void intProperty() {
+		propertySet.set("int", " 42 ");
+		assertEquals(42, propertySet.intProperty("int", 0));
+		assertEquals(69, propertySet.intProperty("no-such-property", 69));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void intProperty_invalid() {
+		propertySet.set("int", "not-a-number");
+		propertySet.intProperty("int", 0);
+	}
+
+	@Test
+	public void longProperty() {
+		propertySet.set("long", "4711");
+		assertEquals(4711L, propertySet.longProperty("long", 0));
+	}
+
+	@Test
+	public void booleanProperty() {
+		propertySet.set("boolean", "TRUE");
+		assertTrue(propertySet.booleanProperty("boolean", false));
+		assertTrue(propertySet.booleanProperty("no-such-property", true));
+	}
+
+	@Test
+	public void durationProperty() {
+		propertySet.set("duration", "30s");
+		assertEquals(Duration.ofSeconds(30), propertySet.durationProperty("duration", Duration.ZERO));
+	}
+
+	@Test
+	public void listProperty() {
+		propertySet.set("list", "a, b,,c");
+		assertEquals(Arrays.asList("a", "b", "c"), propertySet.listProperty("list", Collections.emptyList()));
+	}
+
+	@Test
+	public void bytesProperty() {
+		propertySet.set("host", "localhost");
+		assertTrue(Arrays.equals("localhost".getBytes(UTF_8), propertySet.bytesProperty("host").orNull()));
+		assertNone(propertySet.bytesProperty("no-such-property"));
+	}
+
+	@Test
+	public void setBytes() {
+		assertNone(propertySet.setBytes("host", "localhost".getBytes(UTF_8)));
+		assertSome("localhost", propertySet.property("host"));
+		assertTrue(Arrays.equals("localhost".getBytes(UTF_8), propertySet.setBytes("host", null).orNull()));
+		assertTrue(propertySet.containsProperty("host"));
+	}
+
+	@Test
+	public void version() {
+		assertNone(propertySet.version());
+	}
+
+	@Test
+	public void toMutable() {
+		propertySet.set("host", "localhost");
+		PropertySet copy = propertySet.toMutable();
+		copy.set("host", "modified");
+		assertEquals("set", copy.name());
+		assertSome("localhost", propertySet.property("host"));
+		assertSome("modified", copy.property("host"));
+	}
+
+	/**
+	 * A property set implementing only the methods that are not default methods, as an external implementation would.
+	 */
+	private static final class MapPropertySet implements PropertySet {
+		private final String name;
+		private final Map<String, String> properties = new HashMap<>();
+
+		private MapPropertySet(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String name() {
+			return name;
+		}
+
+		@Override
+		public Option<String> property(String name) {
+			return Option(properties.get(name));
+		}
+
+		@Override
+		public Set<String> properties() {
+			return properties.keySet();
+		}
+
+		@Override
+		public Option<String> set(String name, String value) {
+			return Option(properties.put(name, value));
+		}
+
+		@Override
+		public Map<String, String> asMap() {
+			return new HashMap<>(properties);
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import junitextensions.OptionAssert;
+import junitextensions.ReflectionAssert;
+
+/**
+ * Test the class {@link PropertySetCodec}
+ * @author Peter Nerg
+ */
+public class TestPropertySetCodec extends BaseAssert implements OptionAssert, ReflectionAssert {
+
+	@Test
+	public void testConstructor() {
+		assertPrivateConstructor(PropertySetCodec.class);
+	}
+
+	@Test
+	public void encodeDecode_empty() {
+		byte[] data = PropertySetCodec.encode(PropertySet.apply("empty"));
+		assertTrue(PropertySetCodec.isEncoded(data));
+		PropertySet decoded = PropertySetCodec.decode("empty", data);
+		assertEquals("empty", decoded.name());
+		assertTrue(decoded.properties().isEmpty());
+	}
+
+	@Test
+	public void encodeDecode() {
+		PropertySet set = PropertySet.apply("set");
+		set.set("host", "localhost");
+		set.set("empty", "");
+		set.set("unicode", "\u00e5\u00e4\u00f6 \u20ac \ud83d\ude00");
+		char[] large = new char[1000];
+		Arrays.fill(large, 'x');
+		set.set("large", new String(large));
+
+		PropertySet decoded = PropertySetCodec.decode("set", PropertySetCodec.encode(set));
+		assertEquals(set.asMap(), decoded.asMap());
+	}
+
+	@Test
+	public void encode_nullValue() {
+		PropertySet set = PropertySet.apply("set");
+		set.set("null", null);
+		set.set("host", "localhost");
+		PropertySet decoded = PropertySetCodec.decode("set", PropertySetCodec.encode(set));
+		assertEquals(2, decoded.properties().size());
+		assertSome("", decoded.property("null"));
+		assertSome("localhost", decoded.property("host"));
+	}
+
+	@Test
+	public void isEncoded_plainData() {
+		assertFalse(PropertySetCodec.isEncoded(null));
+		assertFalse(PropertySetCodec.isEncoded(new byte[0]));
+		assertFalse(PropertySetCodec.isEncoded("some text".getBytes(UTF_8)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void decode_notEncoded() {
+		PropertySetCodec.decode("set", "some text".getBytes(UTF_8));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void decode_unsupportedVersion() {
+		byte[] data = PropertySetCodec.encode(PropertySet.apply("set"));
+		data[2] = 99;
+		PropertySetCodec.decode("set", data);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void decode_truncated() {
+		PropertySet set = PropertySet.apply("set");
+		set.set("host", "localhost");
+		byte[] data = PropertySetCodec.encode(set);
+		PropertySetCodec.decode("set", Arrays.copyOf(data, data.length - 3));
+	}
+
+	@Test
+	public void decode_directBuffer() {
+		PropertySet set = PropertySet.apply("set");
+		set.set("host", "localhost");
+		set.set("unicode", "\u00e5\u00e4\u00f6");
+		byte[] data = PropertySetCodec.encode(set);
+		ByteBuffer buffer = ByteBuffer.allocateDirect(data.length + 2);
+		buffer.put((byte) 1).put(data).put((byte) 2);
+		buffer.position(1);
+		buffer.limit(data.length + 1);
+
+		assertEquals(set.asMap(), PropertySetCodec.decode("set", buffer).asMap());
+		assertEquals(data.length + 1, buffer.position());
+	}
+
+	@Test
+	public void encodeDecode_bytes() {
+		byte[] binary = { (byte) 0xF5, 'P', 0, (byte) 0xFF };
+		PropertySet set = PropertySet.apply("set");
+		set.setBytes("binary", binary);
+		PropertySet decoded = PropertySetCodec.decode("set", PropertySetCodec.encode(set));
+		assertTrue(Arrays.equals(binary, decoded.bytesProperty("binary").orNull()));
+	}
+}
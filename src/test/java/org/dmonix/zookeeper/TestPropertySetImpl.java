@@ -15,6 +15,17 @@
  */
 package org.dmonix.zookeeper;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static javascalautils.OptionCompanion.Some;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.junit.Test;
 
 import junitextensions.OptionAssert;
@@ -77,4 +88,208 @@ public class TestPropertySetImpl extends BaseAssert implements OptionAssert {
 		set_nonExisting();
 		assertNotNull(propertySet.toString());
 	}
+
+	@Test
+	public void intProperty() {
+		propertySet.set("int", " 42 ");
+		assertEquals(42, propertySet.intProperty("int", 0));
+		assertEquals(-1, propertySet.intProperty("no-such-property", -1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void intProperty_invalid() {
+		propertySet.set("int", "not-a-number");
+		propertySet.intProperty("int", 0);
+	}
+
+	@Test
+	public void longProperty() {
+		propertySet.set("long", "9876543210");
+		assertEquals(9876543210L, propertySet.longProperty("long", 0));
+		assertEquals(-1, propertySet.longProperty("no-such-property", -1));
+	}
+
+	@Test
+	public void booleanProperty() {
+		propertySet.set("true", "TRUE");
+		propertySet.set("false", "false");
+		assertTrue(propertySet.booleanProperty("true", false));
+		assertFalse(propertySet.booleanProperty("false", true));
+		assertTrue(propertySet.booleanProperty("no-such-property", true));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void booleanProperty_invalid() {
+		propertySet.set("boolean", "yes");
+		propertySet.booleanProperty("boolean", false);
+	}
+
+	@Test
+	public void durationProperty() {
+		propertySet.set("iso", "PT1M30S");
+		propertySet.set("seconds", "30s");
+		propertySet.set("millis", "250");
+		propertySet.set("days", "2 d");
+		assertEquals(Duration.ofSeconds(90), propertySet.durationProperty("iso", Duration.ZERO));
+		assertEquals(Duration.ofSeconds(30), propertySet.durationProperty("seconds", Duration.ZERO));
+		assertEquals(Duration.ofMillis(250), propertySet.durationProperty("millis", Duration.ZERO));
+		assertEquals(Duration.ofDays(2), propertySet.durationProperty("days", Duration.ZERO));
+		assertEquals(Duration.ofHours(1), propertySet.durationProperty("no-such-property", Duration.ofHours(1)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void durationProperty_invalidUnit() {
+		propertySet.set("duration", "30 weeks");
+		propertySet.durationProperty("duration", Duration.ZERO);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void durationProperty_invalidIso() {
+		propertySet.set("duration", "PT-invalid");
+		propertySet.durationProperty("duration", Duration.ZERO);
+	}
+
+	@Test
+	public void listProperty() {
+		propertySet.set("list", " a, b ,,c ");
+		assertEquals(Arrays.asList("a", "b", "c"), propertySet.listProperty("list", Collections.emptyList()));
+		assertTrue(propertySet.listProperty("no-such-property", Collections.emptyList()).isEmpty());
+	}
+
+	@Test
+	public void typedProperty_isMemoized() {
+		propertySet.set("list", "a,b");
+		List<String> first = propertySet.listProperty("list", Collections.emptyList());
+		assertSame(first, propertySet.listProperty("list", Collections.emptyList()));
+	}
+
+	@Test
+	public void typedProperty_invalidatedBySet() {
+		propertySet.set("int", "1");
+		assertEquals(1, propertySet.intProperty("int", 0));
+		propertySet.set("int", "2");
+		assertEquals(2, propertySet.intProperty("int", 0));
+	}
+
+	@Test
+	public void typedProperty_differentTypes() {
+		propertySet.set("value", "1");
+		assertEquals(1, propertySet.intProperty("value", 0));
+		assertEquals(1L, propertySet.longProperty("value", 0));
+		assertEquals(Arrays.asList("1"), propertySet.listProperty("value", Collections.emptyList()));
+		assertEquals(1, propertySet.intProperty("value", 0));
+	}
+
+	@Test
+	public void propertyOrDefault() {
+		set_nonExisting();
+		assertEquals("new-value", propertySet.propertyOrDefault("new-key", "default"));
+		assertEquals("default", propertySet.propertyOrDefault("NO-SUCH-PROPERTY", "default"));
+	}
+
+	@Test
+	public void containsProperty() {
+		assertFalse(propertySet.containsProperty("new-key"));
+		set_nonExisting();
+		assertTrue(propertySet.containsProperty("new-key"));
+	}
+
+	@Test
+	public void size() {
+		assertEquals(0, propertySet.size());
+		set_nonExisting();
+		assertEquals(1, propertySet.size());
+	}
+
+	@Test
+	public void forEach() {
+		set_nonExisting();
+		propertySet.set("other-key", "other-value");
+		Map<String, String> result = new HashMap<>();
+		propertySet.forEach(result::put);
+		assertEquals(propertySet.asMap(), result);
+	}
+
+	@Test
+	public void properties_isCachedView() {
+		Set<String> properties = propertySet.properties();
+		assertSame(properties, propertySet.properties());
+		set_nonExisting();
+		assertTrue(properties.contains("new-key"));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void properties_readOnly() {
+		set_nonExisting();
+		propertySet.properties().remove("new-key");
+	}
+
+	@Test
+	public void bytesProperty_nonExisting() {
+		assertNone(propertySet.bytesProperty("NO-SUCH-PROPERTY"));
+	}
+
+	@Test
+	public void bytesProperty_stringValue() {
+		propertySet.set("key", "v\u00e4rde");
+		assertTrue(Arrays.equals("v\u00e4rde".getBytes(UTF_8), propertySet.bytesProperty("key").orNull()));
+	}
+
+	@Test
+	public void setBytes() {
+		byte[] value = { 0, (byte) 0xFF, (byte) 0xF5, 'Z' };
+		assertNone(propertySet.setBytes("binary", value));
+		assertTrue(Arrays.equals(value, propertySet.bytesProperty("binary").orNull()));
+		assertTrue(propertySet.containsProperty("binary"));
+	}
+
+	@Test
+	public void setBytes_isCopied() {
+		byte[] value = { 1, 2, 3 };
+		propertySet.setBytes("binary", value);
+		value[0] = 42;
+		propertySet.bytesProperty("binary").orNull()[1] = 42;
+		assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, propertySet.bytesProperty("binary").orNull()));
+	}
+
+	@Test
+	public void setBytes_readAsString() {
+		assertNone(propertySet.setBytes("key", "v\u00e4rde".getBytes(UTF_8)));
+		assertSome("v\u00e4rde", propertySet.property("key"));
+		assertEquals("v\u00e4rde", propertySet.asMap().get("key"));
+	}
+
+	@Test
+	public void setBytes_overwriteExisting() {
+		set_nonExisting();
+		assertTrue(Arrays.equals("new-value".getBytes(UTF_8), propertySet.setBytes("new-key", new byte[] { 1 }).orNull()));
+		assertSome("\u0001", propertySet.property("new-key"));
+	}
+
+	@Test
+	public void setBytes_resetsParsedValue() {
+		propertySet.set("port", "6969");
+		assertEquals(6969, propertySet.intProperty("port", 0));
+		propertySet.setBytes("port", "7070".getBytes(UTF_8));
+		assertEquals(7070, propertySet.intProperty("port", 0));
+	}
+
+	@Test
+	public void toMutable_bytes() {
+		byte[] value = { 0, (byte) 0xFF };
+		propertySet.setBytes("binary", value);
+		assertTrue(Arrays.equals(value, propertySet.toMutable().bytesProperty("binary").orNull()));
+	}
+
+	@Test
+	public void version_none() {
+		assertNone(propertySet.version());
+		assertNone(propertySet.toMutable().version());
+	}
+
+	@Test
+	public void toMutable_keepsVersion() {
+		PropertySetImpl read = new PropertySetImpl("set", Some(new PropertySetVersion(3, 7)));
+		assertSome(new PropertySetVersion(3, 7), read.toMutable().version());
+	}
 }
@@ -0,0 +1,278 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static javascalautils.TryCompanion.Try;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javascalautils.Option;
+import junitextensions.OptionAssert;
+import zookeeperjunit.CloseableZooKeeper;
+import zookeeperjunit.ZKFactory;
+import zookeeperjunit.ZKInstance;
+import zookeeperjunit.ZooKeeperAssert;
+
+/**
+ * Test the class {@link PropertySetSubscription}
+ * @author Peter Nerg
+ */
+public class TestPropertySetSubscription extends BaseAssert implements ZooKeeperAssert, OptionAssert {
+	private static ZKInstance instance = ZKFactory.apply().create();
+
+	private final String rootPath = "/TestPropertySetSubscription";
+	private final String propertySetName = "test-set";
+	private final String propertySetPath = rootPath + "/" + propertySetName;
+
+	private final ZooKeeperStorage storage = new ZooKeeperStorage(instance.connectString().get(), rootPath);
+	private final RecordingListener listener = new RecordingListener();
+	private CloseableZooKeeper zooKeeper;
+
+	@BeforeClass
+	public static void startZooKeeper() throws TimeoutException, Throwable {
+		instance.start().result(duration);
+	}
+
+	@AfterClass
+	public static void stopZooKeeper() throws TimeoutException, Throwable {
+		instance.destroy().result(duration);
+	}
+
+	@Before
+	public void before() throws IOException, InterruptedException {
+		storage.connect();
+		zooKeeper = connection();
+		PropertySet set = PropertySet.apply(propertySetName);
+		set.set("host", "localhost");
+		set.set("port", "6969");
+		assertSuccess(storage.store(set));
+	}
+
+	@After
+	public void after() {
+		zooKeeper.deleteRecursively(rootPath);
+		zooKeeper.close();
+		storage.close();
+	}
+
+	/* (non-Javadoc)
+	 * @see zookeeperjunit.ZooKeeperAssert#instance()
+	 */
+	@Override
+	public ZKInstance instance() {
+		return instance;
+	}
+
+	@Test
+	public void initialNotification() {
+		storage.subscribe(propertySetName, listener);
+		assertEventually(() -> listener.changes.size() == 1, TestZooKeeperSession.ReconnectTimeout);
+		assertSome("localhost", listener.last().property("host"));
+		assertEquals(new HashSet<>(Arrays.asList("host", "port")), listener.changes.get(0));
+	}
+
+	@Test
+	public void initialNotification_nonExisting() {
+		storage.subscribe("no-such-set", listener);
+		assertEventually(() -> listener.changes.size() == 1);
+		assertNone(listener.propertySets.get(0));
+		assertTrue(listener.changes.get(0).isEmpty());
+	}
+
+	@Test
+	public void valueChanged() throws KeeperException, InterruptedException {
+		initialNotification();
+		zooKeeper.setData(propertySetPath + "/host", "remote-host".getBytes(), -1);
+		assertEventually(() -> listener.changes.size() == 2);
+		assertSome("remote-host", listener.last().property("host"));
+		assertEquals(new HashSet<>(Arrays.asList("host")), listener.changes.get(1));
+	}
+
+	@Test
+	public void storeIfUnchanged() {
+		initialNotification();
+		PropertySet set = listener.last().toMutable();
+		set.set("host", "new-host");
+		assertSuccess(storage.storeIfUnchanged(set));
+		assertEventually(() -> listener.changes.size() == 2);
+		// the notified property set carries the version of the stored property set
+		PropertySet next = listener.last().toMutable();
+		next.set("port", "7070");
+		assertSuccess(storage.storeIfUnchanged(next));
+	}
+
+	@Test
+	public void created() {
+		initialNotification_nonExisting();
+		PropertySet set = PropertySet.apply("no-such-set");
+		set.set("key", "value");
+		assertSuccess(storage.store(set));
+		assertEventually(() -> listener.changes.size() == 2);
+		assertSome("value", listener.last().property("key"));
+	}
+
+	@Test
+	public void deleted() {
+		initialNotification();
+		assertSuccess(storage.delete(propertySetName));
+		assertEventually(() -> listener.changes.size() == 2);
+		assertNone(listener.propertySets.get(1));
+		assertEquals(new HashSet<>(Arrays.asList("host", "port")), listener.changes.get(1));
+	}
+
+	@Test
+	public void storeIsCoalesced() throws InterruptedException {
+		initialNotification();
+		PropertySet set = PropertySet.apply(propertySetName);
+		for (int i = 0; i < 300; i++) {
+			set.set("key-" + i, "value-" + i);
+		}
+		assertSuccess(storage.store(set));
+		assertEventually(() -> listener.changes.size() >= 2 && listener.last().properties().size() == 300);
+		Thread.sleep(100); // allow for any unexpected additional notification
+		assertEquals(2, listener.changes.size());
+		assertEquals(302, listener.changes.get(1).size()); // 300 added and 2 removed
+	}
+
+	@Test
+	public void compressedValue() throws KeeperException, InterruptedException {
+		initialNotification();
+		char[] large = new char[10000];
+		Arrays.fill(large, 'x');
+		zooKeeper.setData(propertySetPath + "/host", new ValueCompression(0).compress(new String(large).getBytes(UTF_8)), -1);
+		assertEventually(() -> listener.changes.size() == 2);
+		assertSome(new String(large), listener.last().property("host"));
+	}
+
+	@Test
+	public void unchangedStoreIsNotNotified() throws InterruptedException {
+		initialNotification();
+		assertSuccess(storage.store(storage.get(propertySetName).orNull().orNull()));
+		Thread.sleep(100);
+		assertEquals(1, listener.changes.size());
+	}
+
+	@Test
+	public void close() throws KeeperException, InterruptedException {
+		Subscription subscription = storage.subscribe(propertySetName, listener);
+		assertEventually(() -> listener.changes.size() == 1);
+		subscription.close();
+		subscription.close();
+		zooKeeper.setData(propertySetPath + "/host", "remote-host".getBytes(), -1);
+		Thread.sleep(100);
+		assertEquals(1, listener.changes.size());
+	}
+
+	@Test
+	public void close_storage() throws KeeperException, InterruptedException {
+		initialNotification();
+		storage.close();
+		zooKeeper.setData(propertySetPath + "/host", "remote-host".getBytes(), -1);
+		Thread.sleep(100);
+		assertEquals(1, listener.changes.size());
+	}
+
+	@Test
+	public void sessionExpiredTwice() throws Throwable {
+		initialNotification();
+		for (int i = 1; i <= 2; i++) {
+			TestZooKeeperSession.expire(instance.connectString().get(), storage.connection().get());
+			// changed while the session is being recovered, the watches are re-registered once recovered
+			String host = "host-" + i;
+			zooKeeper.setData(propertySetPath + "/host", host.getBytes(), -1);
+			assertEventually(() -> listener.last().property("host").contains(host));
+			// make sure the connection used for the next expiry is the recovered one
+			assertEventually(() -> storage.connection().isSuccess());
+		}
+		assertTrue(listener.errors.isEmpty());
+		assertEquals(3, listener.changes.size());
+		zooKeeper.setData(propertySetPath + "/port", "7070".getBytes(), -1);
+		assertEventually(() -> listener.last().property("port").contains("7070"));
+	}
+
+	@Test
+	public void connectionLostWhileReading() throws Throwable {
+		ZooKeeper zk = storage.connection().get();
+		// issued from the event thread, i.e. the initial read is in flight as the connection is dropped
+		zk.exists(rootPath, false, (rc, path, ctx, stat) -> {
+			storage.subscribe(propertySetName, listener);
+			Try(() -> TestZooKeeperSession.dropConnection(zk));
+		}, null);
+		// the read is re-issued once re-connected
+		assertEventually(() -> listener.changes.size() == 1, TestZooKeeperSession.ReconnectTimeout);
+		assertSome("localhost", listener.last().property("host"));
+		assertTrue(listener.errors.isEmpty());
+
+		// dropped once more with a read triggered by a change in flight
+		zooKeeper.setData(propertySetPath + "/host", "remote-host".getBytes(), -1);
+		TestZooKeeperSession.dropConnection(zk);
+		assertEventually(() -> listener.last().property("host").contains("remote-host"), TestZooKeeperSession.ReconnectTimeout);
+		zooKeeper.setData(propertySetPath + "/port", "7070".getBytes(), -1);
+		assertEventually(() -> listener.last().property("port").contains("7070"));
+		assertTrue(listener.errors.isEmpty());
+	}
+
+	@Test
+	public void notConnected() {
+		ZooKeeperStorage notConnected = new ZooKeeperStorage(instance.connectString().get(), rootPath);
+		notConnected.subscribe(propertySetName, listener);
+		assertEquals(1, listener.errors.size());
+		assertTrue(listener.changes.isEmpty());
+	}
+
+	@Test
+	public void viaCache() {
+		CachingPropertiesStorage cache = new CachingPropertiesStorage(storage);
+		cache.subscribe(propertySetName, listener);
+		assertEventually(() -> listener.changes.size() == 1);
+	}
+
+	private static final class RecordingListener implements PropertySetListener {
+		private final List<Option<PropertySet>> propertySets = new CopyOnWriteArrayList<>();
+		private final List<Set<String>> changes = new CopyOnWriteArrayList<>();
+		private final List<Throwable> errors = new CopyOnWriteArrayList<>();
+
+		@Override
+		public void onChange(Option<PropertySet> propertySet, Set<String> changedProperties) {
+			propertySets.add(propertySet);
+			changes.add(changedProperties);
+		}
+
+		@Override
+		public void onError(Throwable error) {
+			errors.add(error);
+		}
+
+		private PropertySet last() {
+			return propertySets.get(propertySets.size() - 1).orNull();
+		}
+	}
+}
@@ -0,0 +1,50 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import org.apache.zookeeper.data.Stat;
+import org.junit.Test;
+
+/**
+ * Test the class {@link PropertySetVersion}
+ * @author Peter Nerg
+ */
+public class TestPropertySetVersion extends BaseAssert {
+
+	@Test
+	public void of() {
+		Stat stat = new Stat();
+		stat.setVersion(3);
+		stat.setCversion(7);
+		PropertySetVersion version = PropertySetVersion.of(stat);
+		assertEquals(3, version.version());
+		assertEquals(7, version.cversion());
+	}
+
+	@Test
+	public void equals() {
+		assertEquals(new PropertySetVersion(3, 7), new PropertySetVersion(3, 7));
+		assertEquals(new PropertySetVersion(3, 7).hashCode(), new PropertySetVersion(3, 7).hashCode());
+		assertNotEquals(new PropertySetVersion(3, 7), new PropertySetVersion(4, 7));
+		assertNotEquals(new PropertySetVersion(3, 7), new PropertySetVersion(3, 8));
+		assertNotEquals(new PropertySetVersion(3, 7), null);
+	}
+
+	@Test
+	public void testToString() {
+		assertEquals("version:3,cversion:7", new PropertySetVersion(3, 7).toString());
+	}
+}
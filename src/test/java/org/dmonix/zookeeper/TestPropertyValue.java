@@ -0,0 +1,107 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Test the class {@link PropertyValue}
+ * @author Peter Nerg
+ */
+public class TestPropertyValue extends BaseAssert {
+
+	@Test
+	public void of_null() {
+		assertNull(PropertyValue.of((String) null));
+		assertNull(PropertyValue.of((byte[]) null));
+	}
+
+	@Test
+	public void string_decodesUtf8() {
+		assertEquals("v\u00e4rde", PropertyValue.of("v\u00e4rde".getBytes(UTF_8)).string());
+	}
+
+	@Test
+	public void string_sameInstance() {
+		PropertyValue value = PropertyValue.of("value".getBytes(UTF_8));
+		assertSame(value.string(), value.string());
+	}
+
+	@Test
+	public void bytes_encodesUtf8() {
+		byte[] expected = "v\u00e4rde".getBytes(UTF_8);
+		assertArrayEquals(expected, PropertyValue.of("v\u00e4rde").bytes());
+	}
+
+	@Test
+	public void bytes_notCopied() {
+		byte[] bytes = { 1, 2, 3 };
+		assertSame(bytes, PropertyValue.of(bytes).bytes());
+	}
+
+	@Test
+	public void copyOfBytes() {
+		byte[] bytes = { 1, 2, 3 };
+		byte[] copy = PropertyValue.of(bytes).copyOfBytes();
+		assertNotSame(bytes, copy);
+		assertArrayEquals(bytes, copy);
+	}
+
+	@Test
+	public void equals() {
+		assertEquals(PropertyValue.of("value"), PropertyValue.of("value"));
+		assertEquals(PropertyValue.of("v\u00e4rde"), PropertyValue.of("v\u00e4rde".getBytes(UTF_8)));
+		assertEquals(PropertyValue.of("v\u00e4rde").hashCode(), PropertyValue.of("v\u00e4rde".getBytes(UTF_8)).hashCode());
+		assertNotEquals(PropertyValue.of("value"), PropertyValue.of("other"));
+		// invalid UTF-8 sequences decode to the same string but are still different values
+		assertNotEquals(PropertyValue.of(new byte[] { (byte) 0xFF }), PropertyValue.of(new byte[] { (byte) 0xFE }));
+	}
+
+	@Test
+	public void of_propertySet() {
+		PropertySet propertySet = PropertySet.apply("set");
+		propertySet.setBytes("binary", new byte[] { 1, 2 });
+		assertArrayEquals(new byte[] { 1, 2 }, PropertyValue.of(propertySet, "binary").bytes());
+		assertNull(PropertyValue.of(propertySet, "no-such-property"));
+	}
+
+	@Test
+	public void asStrings() {
+		Map<String, PropertyValue> values = new HashMap<>();
+		values.put("key", PropertyValue.of("value".getBytes(UTF_8)));
+		values.put("null", null);
+		Map<String, String> strings = PropertyValue.asStrings(values);
+		assertEquals("value", strings.get("key"));
+		assertNull(strings.get("null"));
+		assertTrue(strings.containsKey("null"));
+		assertEquals(2, strings.size());
+		values.put("other", PropertyValue.of("other"));
+		assertEquals("other", strings.get("other"));
+	}
+
+	@Test
+	public void orEmpty() {
+		PropertyValue value = PropertyValue.of("value");
+		assertSame(value, PropertyValue.orEmpty(value));
+		assertEquals(0, PropertyValue.orEmpty(null).bytes().length);
+		assertEquals("", PropertyValue.orEmpty(null).string());
+	}
+}
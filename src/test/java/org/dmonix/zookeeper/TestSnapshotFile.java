@@ -0,0 +1,116 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test the class {@link SnapshotFile}
+ * @author Peter Nerg
+ */
+public class TestSnapshotFile extends BaseAssert {
+	private final Path directory;
+	private final Path path;
+	private final SnapshotFile file;
+
+	public TestSnapshotFile() throws IOException {
+		directory = Files.createTempDirectory(TestSnapshotFile.class.getSimpleName());
+		path = directory.resolve("snapshot.bin");
+		file = new SnapshotFile(path);
+	}
+
+	@After
+	public void after() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			files.forEach(p -> p.toFile().delete());
+		}
+		Files.delete(directory);
+	}
+
+	private static PropertySet propertySet(String name, String... properties) {
+		PropertySet set = PropertySet.apply(name);
+		for (int i = 0; i < properties.length; i += 2) {
+			set.set(properties[i], properties[i + 1]);
+		}
+		return set;
+	}
+
+	@Test
+	public void read_noFile() throws IOException {
+		assertTrue(file.read().isEmpty());
+	}
+
+	@Test
+	public void writeRead() throws IOException {
+		PropertySet first = propertySet("first", "host", "localhost", "port", "6969");
+		PropertySet second = propertySet("second");
+		file.write(Arrays.asList(first, second));
+
+		Map<String, PropertySet> read = file.read();
+		assertEquals(2, read.size());
+		assertEquals(first.asMap(), read.get("first").asMap());
+		assertEquals("second", read.get("second").name());
+		assertTrue(read.get("second").properties().isEmpty());
+	}
+
+	@Test
+	public void write_replacesFile() throws IOException {
+		file.write(Arrays.asList(propertySet("first", "host", "localhost")));
+		file.write(Arrays.asList(propertySet("second", "host", "remote-host")));
+
+		Map<String, PropertySet> read = file.read();
+		assertEquals(Collections.singleton("second"), read.keySet());
+		try (Stream<Path> files = Files.list(directory)) {
+			assertEquals(1, files.count()); //no temporary files left
+		}
+	}
+
+	@Test
+	public void write_createsDirectory() throws IOException {
+		Path nested = directory.resolve("nested");
+		SnapshotFile nestedFile = new SnapshotFile(nested.resolve("snapshot.bin"));
+		try {
+			nestedFile.write(Arrays.asList(propertySet("first", "host", "localhost")));
+			assertEquals(1, nestedFile.read().size());
+		} finally {
+			Files.delete(nested.resolve("snapshot.bin"));
+			Files.delete(nested);
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void read_notSnapshot() throws IOException {
+		Files.write(path, "some text".getBytes());
+		file.read();
+	}
+
+	@Test(expected = IOException.class)
+	public void read_truncated() throws IOException {
+		file.write(Arrays.asList(propertySet("first", "host", "localhost")));
+		byte[] data = Files.readAllBytes(path);
+		Files.write(path, Arrays.copyOf(data, data.length - 3));
+		file.read();
+	}
+}
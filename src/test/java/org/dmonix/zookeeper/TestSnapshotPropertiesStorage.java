@@ -0,0 +1,231 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javascalautils.Option;
+import javascalautils.Try;
+import junitextensions.OptionAssert;
+import zookeeperjunit.ZKFactory;
+import zookeeperjunit.ZKInstance;
+import zookeeperjunit.ZooKeeperAssert;
+
+/**
+ * Test the class {@link SnapshotPropertiesStorage}
+ * @author Peter Nerg
+ */
+public class TestSnapshotPropertiesStorage extends BaseAssert implements ZooKeeperAssert, OptionAssert {
+	private static ZKInstance instance = ZKFactory.apply().create();
+
+	private final String rootPath = "/TestSnapshotPropertiesStorage";
+	private final String propertySetName = "test-set";
+
+	private final ZooKeeperStorage zooKeeperStorage = new ZooKeeperStorage(instance.connectString().get(), rootPath);
+	private final Path directory;
+	private final SnapshotFile file;
+	private SnapshotPropertiesStorage storage;
+
+	public TestSnapshotPropertiesStorage() throws IOException {
+		directory = Files.createTempDirectory(TestSnapshotPropertiesStorage.class.getSimpleName());
+		file = new SnapshotFile(directory.resolve("snapshot.bin"));
+	}
+
+	@BeforeClass
+	public static void startZooKeeper() throws TimeoutException, Throwable {
+		instance.start().result(duration);
+	}
+
+	@AfterClass
+	public static void stopZooKeeper() throws TimeoutException, Throwable {
+		instance.destroy().result(duration);
+	}
+
+	@Before
+	public void before() throws Throwable {
+		zooKeeperStorage.connect();
+		PropertySet set = PropertySet.apply(propertySetName);
+		set.set("host", "localhost");
+		set.set("port", "6969");
+		assertSuccess(zooKeeperStorage.store(set));
+		storage = create(instance.connectString().get());
+		storage.reconciled().result(duration);
+	}
+
+	@After
+	public void after() throws IOException {
+		zooKeeperStorage.delete(propertySetName);
+		zooKeeperStorage.close();
+		storage.close();
+		Files.deleteIfExists(directory.resolve("snapshot.bin"));
+		Files.delete(directory);
+	}
+
+	/* (non-Javadoc)
+	 * @see zookeeperjunit.ZooKeeperAssert#instance()
+	 */
+	@Override
+	public ZKInstance instance() {
+		return instance;
+	}
+
+	private SnapshotPropertiesStorage create(String connectString) {
+		ZooKeeperStorage storage = new ZooKeeperStorage(connectString, rootPath);
+		return new SnapshotPropertiesStorage(storage, storage, file).start();
+	}
+
+	/**
+	 * Creates a storage towards a non-existing ZooKeeper, i.e. all reads are served from the snapshot.
+	 */
+	private SnapshotPropertiesStorage disconnected() {
+		return create("localhost:1");
+	}
+
+	@Test
+	public void get_storedInSnapshot() throws Throwable {
+		assertSome("localhost", storage.get(propertySetName).orNull().orNull().property("host"));
+		storage.persisted().result(duration);
+		assertEquals(Collections.singleton(propertySetName), file.read().keySet());
+	}
+
+	@Test
+	public void get_servedFromSnapshot() throws Throwable {
+		get_storedInSnapshot();
+		SnapshotPropertiesStorage disconnected = disconnected();
+		try {
+			Try<Option<PropertySet>> result = disconnected.get(propertySetName);
+			assertSuccess(result);
+			assertSome("6969", result.orNull().orNull().property("port"));
+			assertFailure(disconnected.get("not-in-snapshot"));
+			assertEquals(Arrays.asList(propertySetName), disconnected.propertySets().orNull());
+		} finally {
+			disconnected.close();
+		}
+	}
+
+	@Test
+	public void async_get_servedFromSnapshot() throws Throwable {
+		get_storedInSnapshot();
+		SnapshotPropertiesStorage disconnected = disconnected();
+		try {
+			assertSome("6969", disconnected.async().get(propertySetName).result(duration).orNull().property("port"));
+			assertEquals(Arrays.asList(propertySetName), disconnected.async().propertySets().result(duration));
+		} finally {
+			disconnected.close();
+		}
+	}
+
+	@Test
+	public void getAll_servedFromSnapshot() throws Throwable {
+		get_storedInSnapshot();
+		SnapshotPropertiesStorage disconnected = disconnected();
+		try {
+			assertSuccess(disconnected.getAll(Arrays.asList(propertySetName)).get(propertySetName));
+		} finally {
+			disconnected.close();
+		}
+	}
+
+	@Test
+	public void reconciled() throws Throwable {
+		get_storedInSnapshot();
+		PropertySet set = PropertySet.apply(propertySetName);
+		set.set("host", "remote-host");
+		assertSuccess(zooKeeperStorage.store(set));
+
+		SnapshotPropertiesStorage restarted = create(instance.connectString().get());
+		try {
+			restarted.reconciled().result(duration);
+			assertSome("remote-host", file.read().get(propertySetName).property("host"));
+		} finally {
+			restarted.close();
+		}
+	}
+
+	@Test
+	public void reconciled_deleted() throws Throwable {
+		get_storedInSnapshot();
+		assertSuccess(zooKeeperStorage.delete(propertySetName));
+
+		SnapshotPropertiesStorage restarted = create(instance.connectString().get());
+		try {
+			restarted.reconciled().result(duration);
+			assertTrue(file.read().isEmpty());
+		} finally {
+			restarted.close();
+		}
+	}
+
+	@Test
+	public void delete_removedFromSnapshot() throws Throwable {
+		get_storedInSnapshot();
+		assertSuccess(storage.delete(propertySetName));
+		storage.persisted().result(duration);
+		assertTrue(file.read().isEmpty());
+	}
+
+	@Test
+	public void get_unchangedNotWritten() throws Throwable {
+		get_storedInSnapshot();
+		FileTime written = Files.getLastModifiedTime(directory.resolve("snapshot.bin"));
+		Files.setLastModifiedTime(directory.resolve("snapshot.bin"), FileTime.fromMillis(written.toMillis() - 60000));
+		FileTime backdated = Files.getLastModifiedTime(directory.resolve("snapshot.bin"));
+		assertSuccess(storage.get(propertySetName));
+		closeAndAssertModified(backdated, false);
+	}
+
+	@Test
+	public void get_changedWrittenOnClose() throws Throwable {
+		get_storedInSnapshot();
+		FileTime written = Files.getLastModifiedTime(directory.resolve("snapshot.bin"));
+		Files.setLastModifiedTime(directory.resolve("snapshot.bin"), FileTime.fromMillis(written.toMillis() - 60000));
+		FileTime backdated = Files.getLastModifiedTime(directory.resolve("snapshot.bin"));
+		PropertySet set = PropertySet.apply(propertySetName);
+		set.set("host", "remote-host");
+		assertSuccess(zooKeeperStorage.store(set));
+		assertSuccess(storage.get(propertySetName));
+		closeAndAssertModified(backdated, true);
+		assertSome("remote-host", file.read().get(propertySetName).property("host"));
+	}
+
+	/**
+	 * Closes the storage which writes any pending changes to file.
+	 */
+	private void closeAndAssertModified(FileTime backdated, boolean modified) throws IOException {
+		storage.close();
+		assertEquals(modified, !backdated.equals(Files.getLastModifiedTime(directory.resolve("snapshot.bin"))));
+	}
+
+	@Test
+	public void store() {
+		PropertySet set = PropertySet.apply(propertySetName);
+		set.set("host", "remote-host");
+		assertSuccess(storage.store(set));
+		assertSome("remote-host", storage.get(propertySetName).orNull().orNull().property("host"));
+	}
+}
@@ -0,0 +1,177 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import org.junit.Test;
+
+import junitextensions.TryAssert;
+
+/**
+ * Test the class {@link ValueCompression}
+ * @author Peter Nerg
+ */
+public class TestValueCompression extends BaseAssert implements TryAssert {
+	private final ValueCompression compression = new ValueCompression(100);
+
+	/**
+	 * Sets the checksum of the header to match the data.
+	 */
+	private static byte[] withChecksum(byte[] data) {
+		CRC32 crc = new CRC32();
+		crc.update(data, 3, 4);
+		crc.update(data, 11, data.length - 11);
+		int checksum = (int) crc.getValue();
+		for (int i = 0; i < 4; i++) {
+			data[7 + i] = (byte) (checksum >>> (24 - 8 * i));
+		}
+		return data;
+	}
+
+	private static byte[] repeated(int length) {
+		byte[] bytes = new byte[length];
+		Arrays.fill(bytes, (byte) 'x');
+		return bytes;
+	}
+
+	@Test
+	public void compress_belowThreshold() {
+		byte[] value = "small value".getBytes(UTF_8);
+		byte[] data = compression.compress(value);
+		assertFalse(ValueCompression.isCompressed(data));
+		assertSame(value, ValueCompression.decompress(data).orNull());
+	}
+
+	@Test
+	public void compress_compressed() {
+		byte[] value = repeated(10000);
+		byte[] data = compression.compress(value);
+		assertTrue(ValueCompression.isCompressed(data));
+		assertTrue(data.length < 100);
+		assertTrue(Arrays.equals(value, ValueCompression.decompress(data).orNull()));
+	}
+
+	@Test
+	public void compress_incompressible() {
+		byte[] random = new byte[1000];
+		new Random(4711).nextBytes(random);
+		assertSame(random, compression.compress(random));
+	}
+
+	@Test
+	public void compress_disabled() {
+		byte[] data = ValueCompression.Disabled.compress(repeated(10000));
+		assertFalse(ValueCompression.isCompressed(data));
+	}
+
+	@Test
+	public void compress_disabled_escapesMagic() {
+		byte[] value = repeated(10000);
+		value[0] = (byte) 0xF5;
+		value[1] = 'Z';
+		byte[] data = ValueCompression.Disabled.compress(value);
+		assertNotSame(value, data);
+		assertTrue(ValueCompression.isCompressed(data));
+		assertTrue(Arrays.equals(value, ValueCompression.decompress(data).orNull()));
+	}
+
+	@Test
+	public void compress_noThreshold() {
+		byte[] value = ("{\"key\": \"" + new String(repeated(1000), UTF_8) + "\"}").getBytes(UTF_8);
+		byte[] data = new ValueCompression(0).compress(value);
+		assertTrue(ValueCompression.isCompressed(data));
+		assertTrue(Arrays.equals(value, ValueCompression.decompress(data).orNull()));
+	}
+
+	@Test
+	public void compress_escapesMagic() {
+		byte[] value = { (byte) 0xF5, 'Z', 0, 0, 0, 1, 42 };
+		byte[] data = ValueCompression.Disabled.compress(value);
+		assertTrue(ValueCompression.isCompressed(data));
+		assertTrue(Arrays.equals(value, ValueCompression.decompress(data).orNull()));
+	}
+
+	@Test
+	public void compress_escapesMagic_incompressible() {
+		byte[] value = new byte[1000];
+		new Random(4711).nextBytes(value);
+		value[0] = (byte) 0xF5;
+		value[1] = 'Z';
+		byte[] data = compression.compress(value);
+		assertTrue(data.length > value.length);
+		assertTrue(Arrays.equals(value, ValueCompression.decompress(data).orNull()));
+	}
+
+	@Test
+	public void decompress_plain() {
+		byte[] data = "plain".getBytes(UTF_8);
+		assertSame(data, ValueCompression.decompress(data).orNull());
+	}
+
+	@Test
+	public void decompress_truncated() {
+		byte[] data = compression.compress(repeated(10000));
+		byte[] truncated = Arrays.copyOf(data, data.length - 5);
+		// no longer matches the checksum, i.e. treated as plain data
+		assertSame(truncated, ValueCompression.decompress(truncated).orNull());
+	}
+
+	@Test
+	public void decompress_corrupt() {
+		byte[] data = withChecksum(new byte[] { (byte) 0xF5, 'Z', 1, 0, 0, 0, 10, 0, 0, 0, 0, 0x55, 0x55, 0x55, 0x55 });
+		assertFailure(ValueCompression.decompress(data));
+	}
+
+	@Test
+	public void decompress_hostileSize() {
+		byte[] data = withChecksum(new byte[] { (byte) 0xF5, 'Z', 1, 0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0, 0, 0, 0, 0x55 });
+		assertFailure(ValueCompression.decompress(data));
+	}
+
+	@Test
+	public void decompress_negativeSize() {
+		byte[] data = withChecksum(new byte[] { (byte) 0xF5, 'Z', 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0, 0, 0, 0, 0x55 });
+		assertFailure(ValueCompression.decompress(data));
+	}
+
+	@Test
+	public void decompress_legacyLatin1() {
+		// o-tilde and Z followed by text as written by a Latin-1 client before compression was enabled
+		byte[] data = "\u00f5Zero downtime deployments".getBytes(ISO_8859_1);
+		assertFalse(ValueCompression.isCompressed(data));
+		assertSame(data, ValueCompression.decompress(data).orNull());
+	}
+
+	@Test
+	public void compress_aboveMaxSize() {
+		byte[] value = repeated(ValueCompression.MaxSize + 1);
+		assertSame(value, compression.compress(value));
+	}
+
+	@Test
+	public void isCompressed() {
+		assertFalse(ValueCompression.isCompressed(null));
+		assertFalse(ValueCompression.isCompressed(new byte[0]));
+		assertFalse(ValueCompression.isCompressed("some text".getBytes(UTF_8)));
+		assertFalse(ValueCompression.isCompressed(PropertySetCodec.encode(PropertySet.apply("set"))));
+	}
+}
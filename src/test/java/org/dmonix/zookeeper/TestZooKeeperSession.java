@@ -0,0 +1,205 @@
+/**
+ *  Copyright 2016 Peter Nerg
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.dmonix.zookeeper;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.KeeperException.SessionExpiredException;
+import org.apache.zookeeper.Watcher.Event.KeeperState;
+import org.apache.zookeeper.ZooKeeper;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import zookeeperjunit.ZKFactory;
+import zookeeperjunit.ZKInstance;
+
+/**
+ * Test the class {@link ZooKeeperSession}
+ * @author Peter Nerg
+ */
+public class TestZooKeeperSession extends BaseAssert {
+	/** The time in millis to allow for the client to re-connect after {@link #dropConnection(ZooKeeper)}. */
+	static final long ReconnectTimeout = 20_000;
+
+	private static ZKInstance instance = ZKFactory.apply().create();
+
+	private final String connectString = instance.connectString().get();
+
+	@BeforeClass
+	public static void startZooKeeper() throws TimeoutException, Throwable {
+		instance.start().result(duration);
+	}
+
+	@AfterClass
+	public static void stopZooKeeper() throws TimeoutException, Throwable {
+		instance.destroy().result(duration);
+	}
+
+	@Test
+	public void acquire_shared() throws IOException, InterruptedException {
+		ZooKeeperSession first = ZooKeeperSession.acquire(connectString, 5000);
+		ZooKeeperSession second = ZooKeeperSession.acquire(connectString, 5000);
+		assertSame(first, second);
+		assertTrue(first.isAlive());
+
+		first.release();
+		assertTrue(second.isAlive()); //still one user left
+
+		second.release();
+		assertFalse(second.isAlive());
+	}
+
+	@Test
+	public void acquire_afterRelease() throws IOException, InterruptedException {
+		ZooKeeperSession first = ZooKeeperSession.acquire(connectString, 5000);
+		first.release();
+
+		ZooKeeperSession second = ZooKeeperSession.acquire(connectString, 5000);
+		assertNotSame(first, second);
+		assertTrue(second.isAlive());
+		second.release();
+	}
+
+	@Test
+	public void zooKeeper() throws IOException, InterruptedException, KeeperException {
+		ZooKeeperSession session = ZooKeeperSession.acquire(connectString, 5000);
+		try {
+			assertTrue(session.isConnected());
+			assertNotNull(session.zooKeeper());
+		} finally {
+			session.release();
+		}
+	}
+
+	@Test(expected = SessionExpiredException.class)
+	public void zooKeeper_released() throws IOException, InterruptedException, KeeperException {
+		ZooKeeperSession session = ZooKeeperSession.acquire(connectString, 5000);
+		session.release();
+		assertFalse(session.isConnected());
+		session.zooKeeper();
+	}
+
+	@Test
+	public void recover_expired() throws Exception {
+		ZooKeeperSession session = ZooKeeperSession.acquire(connectString, 5000);
+		try {
+			ZooKeeper expired = session.zooKeeper();
+			expire(connectString, expired);
+			awaitRecovered(session, expired);
+			assertTrue(session.isAlive());
+			ZooKeeper recovered = session.zooKeeper();
+			assertNotEquals(expired.getSessionId(), recovered.getSessionId());
+			assertNotNull(recovered.exists("/", false));
+		} finally {
+			session.release();
+		}
+	}
+
+	@Test
+	public void recover_expiredTwice() throws Exception {
+		ZooKeeperSession session = ZooKeeperSession.acquire(connectString, 5000);
+		AtomicInteger recovered = new AtomicInteger();
+		session.addReconnectListener(recovered::incrementAndGet);
+		try {
+			for (int i = 1; i <= 2; i++) {
+				ZooKeeper expired = session.zooKeeper();
+				expire(connectString, expired);
+				awaitRecovered(session, expired);
+				int expected = i;
+				assertEventually(() -> recovered.get() == expected);
+			}
+			// expired right after being recovered, i.e. the backoff is not reset
+			assertEquals(2, session.recoveryAttempts());
+		} finally {
+			session.release();
+		}
+	}
+
+	/**
+	 * The session recovers in the background, waits for the new connection to be swapped in.
+	 */
+	private static void awaitRecovered(ZooKeeperSession session, ZooKeeper expired) throws KeeperException, InterruptedException {
+		long deadline = System.currentTimeMillis() + 20_000;
+		while (!session.isConnected() || session.zooKeeper() == expired) {
+			assertTrue("session not recovered in time", System.currentTimeMillis() < deadline);
+			Thread.sleep(50);
+		}
+	}
+
+	/**
+	 * Expires the session of the provided connection by closing another connection using the same session id.
+	 */
+	static void expire(String connectString, ZooKeeper zooKeeper) throws IOException, InterruptedException {
+		CountDownLatch connected = new CountDownLatch(1);
+		ZooKeeper duplicate = new ZooKeeper(connectString, 5000, event -> {
+			if (event.getState() == KeeperState.SyncConnected) {
+				connected.countDown();
+			}
+		}, zooKeeper.getSessionId(), zooKeeper.getSessionPasswd());
+		try {
+			assertTrue("duplicate session not connected in time", connected.await(5, TimeUnit.SECONDS));
+		} finally {
+			duplicate.close();
+		}
+	}
+
+	@Test
+	public void reconnected() throws Exception {
+		ZooKeeperSession session = ZooKeeperSession.acquire(connectString, 5000);
+		AtomicInteger reconnected = new AtomicInteger();
+		session.addReconnectListener(reconnected::incrementAndGet);
+		try {
+			ZooKeeper zk = session.zooKeeper();
+			dropConnection(zk);
+			assertEventually(() -> reconnected.get() == 1, ReconnectTimeout);
+			// the same session is re-connected
+			assertTrue(zk == session.zooKeeper());
+			assertEquals(0, session.recoveryAttempts());
+		} finally {
+			session.release();
+		}
+	}
+
+	/**
+	 * Drops the connection by closing the socket, the client re-connects by itself using the same session. <br>
+	 * Any requests in flight fail with a connection loss. <br>
+	 * The client only notices the closed socket once its select times out, allow for {@link #ReconnectTimeout} for it to re-connect.
+	 */
+	static void dropConnection(ZooKeeper zooKeeper) throws ReflectiveOperationException {
+		Field cnxn = ZooKeeper.class.getDeclaredField("cnxn");
+		cnxn.setAccessible(true);
+		Object clientCnxn = cnxn.get(zooKeeper);
+		Field sendThread = clientCnxn.getClass().getDeclaredField("sendThread");
+		sendThread.setAccessible(true);
+		Object thread = sendThread.get(clientCnxn);
+		Method closeSocket = thread.getClass().getDeclaredMethod("testableCloseSocket");
+		closeSocket.setAccessible(true);
+		closeSocket.invoke(thread);
+	}
+
+	@Test(expected = IOException.class)
+	public void acquire_failedToConnect() throws IOException, InterruptedException {
+		ZooKeeperSession.acquire("localhost:1", 500);
+	}
+}
@@ -15,11 +15,22 @@
  */
 package org.dmonix.zookeeper;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.zookeeper.CreateMode.PERSISTENT;
+import static org.apache.zookeeper.ZooDefs.Ids.OPEN_ACL_UNSAFE;
+
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+import org.dmonix.zookeeper.StorageMetrics.Operation;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -28,6 +39,8 @@ import org.junit.Test;
 
 import javascalautils.Option;
 import javascalautils.Try;
+import javascalautils.Unit;
+import javascalautils.concurrent.Future;
 import junitextensions.OptionAssert;
 import zookeeperjunit.CloseableZooKeeper;
 import zookeeperjunit.ZKFactory;
@@ -99,6 +112,141 @@ public class TestZooKeeperStorage extends BaseAssert implements ZooKeeperAssert,
 		assertSome("6969", set.property("port"));
 	}
 	
+	@Test
+	public void getPropertySet_manyProperties() {
+		PropertySet set = PropertySet.apply(propertySetName);
+		for (int i = 0; i < 200; i++) {
+			set.set("key-" + i, "value-" + i);
+		}
+		assertSuccess(storage.store(set));
+
+		Try<Option<PropertySet>> propertySet = storage.get(propertySetName);
+		assertSuccess(propertySet);
+		PropertySet result = propertySet.orNull().orNull(); ////orNull will never happen, just to avoid exception mgmt
+		assertEquals(200, result.properties().size());
+		assertSome("value-0", result.property("key-0"));
+		assertSome("value-199", result.property("key-199"));
+	}
+
+	@Test
+	public void getPropertySet_emptySet() {
+		assertSuccess(storage.store(PropertySet.apply(propertySetName)));
+
+		Try<Option<PropertySet>> propertySet = storage.get(propertySetName);
+		assertSuccess(propertySet);
+		assertTrue(propertySet.orNull().orNull().properties().isEmpty());
+	}
+	
+	@Test
+	public void getAll() {
+		storePropertySet();
+		PropertySet other = PropertySet.apply("other-set");
+		other.set("user", "peter");
+		assertSuccess(storage.store(other));
+
+		Map<String, Try<Option<PropertySet>>> result = storage.getAll(Arrays.asList(propertySetName, "other-set", "no-such-set"));
+		assertEquals(Arrays.asList(propertySetName, "other-set", "no-such-set"), new ArrayList<>(result.keySet()));
+		assertSome("localhost", result.get(propertySetName).orNull().orNull().property("host"));
+		assertSome("peter", result.get("other-set").orNull().orNull().property("user"));
+		assertNone(result.get("no-such-set").orNull());
+		assertSuccess(storage.delete("other-set"));
+	}
+
+	@Test
+	public void getAll_allSets() {
+		storePropertySet();
+		Try<Map<String, Try<Option<PropertySet>>>> result = storage.getAll();
+		assertSuccess(result);
+		assertTrue(result.orNull().containsKey(propertySetName));
+		assertSome("6969", result.orNull().get(propertySetName).orNull().orNull().property("port"));
+	}
+
+	@Test
+	public void getAll_notConnected() {
+		ZooKeeperStorage notConnected = new ZooKeeperStorage(instance.connectString().get(), rootPath);
+		Map<String, Try<Option<PropertySet>>> result = notConnected.getAll(Arrays.asList(propertySetName));
+		assertEquals(1, result.size());
+		assertFailure(result.get(propertySetName));
+		assertFailure(notConnected.getAll());
+	}
+
+	@Test
+	public void getLazy_nonSuchSet() {
+		assertNone(storage.getLazy("no-such-set").orNull());
+	}
+
+	@Test
+	public void getLazy() {
+		storePropertySet();
+		LazyPropertySet propertySet = storage.getLazy(propertySetName).orNull().orNull();
+		assertEquals(2, propertySet.size());
+		assertTrue(propertySet.containsProperty("host"));
+		assertFalse(propertySet.isLoaded("host"));
+
+		assertSome("localhost", propertySet.property("host"));
+		assertTrue(propertySet.isLoaded("host"));
+		assertFalse(propertySet.isLoaded("port"));
+		assertEquals(6969, propertySet.intProperty("port", 0));
+		assertTrue(propertySet.isLoaded("port"));
+	}
+
+	@Test
+	public void getLazy_prefetch() {
+		storePropertySet();
+		LazyPropertySet propertySet = storage.getLazy(propertySetName).orNull().orNull();
+		assertSuccess(propertySet.prefetch(Arrays.asList("host", "port", "no-such-property")));
+		assertTrue(propertySet.isLoaded("host"));
+		assertTrue(propertySet.isLoaded("port"));
+
+		storage.delete(propertySetName); //all values are read, no further requests
+		assertEquals("localhost", propertySet.propertyOrDefault("host", null));
+	}
+
+	@Test
+	public void getLazy_propertyRemoved() {
+		storePropertySet();
+		LazyPropertySet propertySet = storage.getLazy(propertySetName).orNull().orNull();
+		PropertySet withoutHost = PropertySet.apply(propertySetName);
+		withoutHost.set("port", "6969");
+		assertSuccess(storage.store(withoutHost));
+		assertNone(propertySet.property("host"));
+		assertSome("6969", propertySet.property("port"));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void getLazy_notConnected() throws IOException, InterruptedException {
+		storePropertySet();
+		ZooKeeperStorage other = new ZooKeeperStorage(instance.connectString().get(), rootPath);
+		other.connect();
+		LazyPropertySet propertySet = other.getLazy(propertySetName).orNull().orNull();
+		other.close();
+		propertySet.property("host");
+	}
+
+	@Test
+	public void getLazy_compact() throws IOException, InterruptedException {
+		ZooKeeperStorage compactStorage = new ZooKeeperStorage(instance.connectString().get(), rootPath, false, StorageFormat.Compact);
+		try {
+			compactStorage.connect();
+			PropertySet set = PropertySet.apply(propertySetName);
+			set.set("host", "localhost");
+			assertSuccess(compactStorage.store(set));
+
+			LazyPropertySet propertySet = compactStorage.getLazy(propertySetName).orNull().orNull();
+			assertTrue(propertySet.isLoaded("host")); //read in full as it is a single request anyway
+			assertEquals(set.asMap(), propertySet.asMap());
+		} finally {
+			compactStorage.close();
+		}
+	}
+
+	@Test
+	public void async_getLazy() throws Throwable {
+		storePropertySet();
+		Future<Option<LazyPropertySet>> result = storage.async().getLazy(propertySetName);
+		assertEquals(2, result.result(duration).orNull().size());
+	}
+
 	@Test
 	public void storePropertySet() {
 		PropertySet set = PropertySet.apply(propertySetName);
@@ -132,6 +280,449 @@ public class TestZooKeeperStorage extends BaseAssert implements ZooKeeperAssert,
 		}
 	}
 	
+	@Test
+	public void storePropertySet_newRootPath() {
+		ZooKeeperStorage otherStorage = new ZooKeeperStorage(instance.connectString().get(), rootPath + "/no/such/path");
+		try {
+			otherStorage.connect();
+			assertSuccess(otherStorage.store(PropertySet.apply(propertySetName)));
+			try(CloseableZooKeeper zk = connection()) {
+				assertSuccess(true, zk.exists(rootPath + "/no/such/path/" + propertySetName));
+			}
+			assertSuccess(otherStorage.delete(propertySetName));
+		} catch (IOException | InterruptedException ex) {
+			fail(ex.getMessage());
+		} finally {
+			otherStorage.close();
+		}
+	}
+
+	@Test
+	public void storePropertySet_rootPathRemoved() throws Throwable {
+		ZooKeeperStorage otherStorage = new ZooKeeperStorage(instance.connectString().get(), rootPath + "/removed");
+		try {
+			otherStorage.connect();
+			assertSuccess(otherStorage.store(PropertySet.apply(propertySetName)));
+			try(CloseableZooKeeper zk = connection()) {
+				assertSuccess(2, ZooKeeperUtil.deleteRecursive(zk, rootPath + "/removed"));
+			}
+			// the root path is known to exist by the session, the store must still recover
+			assertSuccess(otherStorage.store(PropertySet.apply(propertySetName)));
+			try(CloseableZooKeeper zk = connection()) {
+				assertSuccess(true, zk.exists(rootPath + "/removed/" + propertySetName));
+			}
+		} finally {
+			otherStorage.delete(propertySetName);
+			otherStorage.close();
+		}
+	}
+
+	@Test
+	public void store_afterSessionExpired() throws Throwable {
+		ZooKeeperStorage expiring = new ZooKeeperStorage(instance.connectString().get(), rootPath);
+		try {
+			expiring.connect();
+			TestZooKeeperSession.expire(instance.connectString().get(), expiring.connection().get());
+			// operations fail fast until the session has been recovered in the background
+			long deadline = System.currentTimeMillis() + 20_000;
+			while (expiring.store(PropertySet.apply(propertySetName)).isFailure()) {
+				assertTrue("session not recovered in time", System.currentTimeMillis() < deadline);
+				Thread.sleep(50);
+			}
+			assertSome(expiring.get(propertySetName).orNull());
+		} finally {
+			expiring.close();
+		}
+	}
+
+	@Test
+	public void storePropertySet_largeSet() {
+		PropertySet set = PropertySet.apply(propertySetName);
+		char[] value = new char[10000];
+		Arrays.fill(value, 'x');
+		for (int i = 0; i < 100; i++) { // approx 1MB in total, i.e. more than one transaction
+			set.set("key-" + i, new String(value));
+		}
+		assertSuccess(storage.store(set));
+		assertEquals(100, storage.get(propertySetName).orNull().orNull().properties().size());
+	}
+
+	@Test
+	public void storePropertySet_incremental() throws KeeperException, InterruptedException {
+		storePropertySet();
+		ZooKeeperStorage incrementalStorage = new ZooKeeperStorage(instance.connectString().get(), rootPath, true, StorageFormat.Tree);
+		try(CloseableZooKeeper zk = connection()) {
+			incrementalStorage.connect();
+			Stat hostStat = zk.exists(propertySetPath+"/host", false);
+			
+			PropertySet set = PropertySet.apply(propertySetName);
+			set.set("host", "localhost"); //unchanged
+			set.set("user", "peter"); //added
+			//port is removed
+			assertSuccess(incrementalStorage.store(set));
+
+			assertEquals(hostStat.getMzxid(), zk.exists(propertySetPath+"/host", false).getMzxid()); //the unchanged property shall not have been touched
+			assertSuccess(false, zk.exists(propertySetPath+"/port"));
+			assertSuccess(true, zk.exists(propertySetPath+"/user"));
+			
+			set.set("host", "127.0.0.1"); //changed
+			assertSuccess(incrementalStorage.store(set));
+			PropertySet result = storage.get(propertySetName).orNull().orNull();
+			assertEquals(2, result.properties().size());
+			assertSome("127.0.0.1", result.property("host"));
+			assertSome("peter", result.property("user"));
+		} catch (IOException ex) {
+			fail(ex.getMessage());
+		} finally {
+			incrementalStorage.close();
+		}
+	}
+
+	@Test
+	public void storePropertySet_nullValue() {
+		PropertySet set = PropertySet.apply(propertySetName);
+		set.set("host", "localhost");
+		set.set("empty", null);
+		assertSuccess(storage.store(set));
+
+		PropertySet result = storage.get(propertySetName).orNull().orNull();
+		assertEquals(2, result.properties().size());
+		assertSome("", result.property("empty"));
+	}
+
+	@Test
+	public void storePropertySet_compactNullValue() throws IOException, InterruptedException {
+		ZooKeeperStorage compactStorage = new ZooKeeperStorage(instance.connectString().get(), rootPath, false, StorageFormat.Compact);
+		try {
+			compactStorage.connect();
+			PropertySet set = PropertySet.apply(propertySetName);
+			set.set("host", "localhost");
+			set.set("empty", null);
+			assertSuccess(compactStorage.store(set));
+
+			// same key set as for the tree format
+			PropertySet result = compactStorage.get(propertySetName).orNull().orNull();
+			assertEquals(2, result.properties().size());
+			assertSome("", result.property("empty"));
+			assertSome("localhost", result.property("host"));
+		} finally {
+			compactStorage.close();
+		}
+	}
+
+	@Test
+	public void storePropertySet_incrementalNullValue() throws IOException, InterruptedException {
+		storePropertySet();
+		ZooKeeperStorage incrementalStorage = new ZooKeeperStorage(instance.connectString().get(), rootPath, true, StorageFormat.Tree);
+		try {
+			incrementalStorage.connect();
+			PropertySet set = PropertySet.apply(propertySetName);
+			set.set("host", null); //changed
+			set.set("empty", null); //added
+			assertSuccess(incrementalStorage.store(set));
+			//storing the same null values once more is not a change
+			assertSuccess(incrementalStorage.store(set));
+
+			PropertySet result = storage.get(propertySetName).orNull().orNull();
+			assertEquals(2, result.properties().size());
+			assertSome("", result.property("host"));
+			assertSome("", result.property("empty"));
+		} finally {
+			incrementalStorage.close();
+		}
+	}
+
+	@Test
+	public void storePropertySet_incrementalNewSet() throws IOException, InterruptedException {
+		ZooKeeperStorage incrementalStorage = new ZooKeeperStorage(instance.connectString().get(), rootPath + "/incremental", true, StorageFormat.Tree);
+		try {
+			incrementalStorage.connect();
+			PropertySet set = PropertySet.apply(propertySetName);
+			set.set("host", "localhost");
+			assertSuccess(incrementalStorage.store(set));
+			assertSome("localhost", incrementalStorage.get(propertySetName).orNull().orNull().property("host"));
+			assertSuccess(incrementalStorage.delete(propertySetName));
+		} finally {
+			incrementalStorage.close();
+		}
+	}
+
+	@Test
+	public void storePropertySet_compact() throws IOException, InterruptedException {
+		ZooKeeperStorage compactStorage = new ZooKeeperStorage(instance.connectString().get(), rootPath, false, StorageFormat.Compact);
+		try(CloseableZooKeeper zk = connection()) {
+			compactStorage.connect();
+			PropertySet set = PropertySet.apply(propertySetName);
+			set.set("host", "localhost");
+			set.set("port", "6969");
+			assertSuccess(compactStorage.store(set));
+			
+			assertEquals(0, zk.getChildren(propertySetPath).orNull().count());
+			assertTrue(PropertySetCodec.isEncoded(zk.getData(propertySetPath).orNull()));
+
+			//read using both formats
+			assertEquals(set.asMap(), compactStorage.get(propertySetName).orNull().orNull().asMap());
+			assertEquals(set.asMap(), storage.get(propertySetName).orNull().orNull().asMap());
+		} finally {
+			compactStorage.close();
+		}
+	}
+
+	@Test
+	public void storePropertySet_compressed() throws IOException, InterruptedException {
+		ZooKeeperStorage compressing = new ZooKeeperStorage(instance.connectString().get(), rootPath, false, StorageFormat.Tree, StorageMetrics.noOp(), new ValueCompression(100));
+		try(CloseableZooKeeper zk = connection()) {
+			compressing.connect();
+			char[] large = new char[10000];
+			Arrays.fill(large, 'x');
+			PropertySet set = PropertySet.apply(propertySetName);
+			set.set("large", new String(large));
+			set.set("small", "value");
+			assertSuccess(compressing.store(set));
+
+			assertTrue(ValueCompression.isCompressed(zk.getData(propertySetPath + "/large").orNull()));
+			assertEquals("value", new String(zk.getData(propertySetPath + "/small").orNull()));
+
+			//read by storages both with and without compression
+			assertEquals(set.asMap(), compressing.get(propertySetName).orNull().orNull().asMap());
+			assertEquals(set.asMap(), storage.get(propertySetName).orNull().orNull().asMap());
+			assertEquals(new String(large), storage.getLazy(propertySetName).orNull().orNull().propertyOrDefault("large", null));
+		} finally {
+			compressing.close();
+		}
+	}
+
+	@Test
+	public void storePropertySet_compactCompressed() throws IOException, InterruptedException {
+		ZooKeeperStorage compressing = new ZooKeeperStorage(instance.connectString().get(), rootPath, true, StorageFormat.Compact, StorageMetrics.noOp(), new ValueCompression(100));
+		try(CloseableZooKeeper zk = connection()) {
+			compressing.connect();
+			PropertySet set = PropertySet.apply(propertySetName);
+			for (int i = 0; i < 100; i++) {
+				set.set("key-" + i, "value-" + i);
+			}
+			assertSuccess(compressing.store(set));
+			assertTrue(ValueCompression.isCompressed(zk.getData(propertySetPath).orNull()));
+			assertSuccess(compressing.store(set)); //incremental store of unchanged data
+
+			assertEquals(set.asMap(), compressing.get(propertySetName).orNull().orNull().asMap());
+			assertEquals(set.asMap(), storage.get(propertySetName).orNull().orNull().asMap());
+		} finally {
+			compressing.close();
+		}
+	}
+
+	@Test
+	public void storePropertySet_bytes() {
+		try(CloseableZooKeeper zk = connection()) {
+			byte[] binary = { (byte) 0xF5, 'Z', 0, 0, 0, 1, (byte) 0xFF };
+			PropertySet set = PropertySet.apply(propertySetName);
+			set.setBytes("binary", binary);
+			set.set("text", "v\u00e4rde");
+			assertSuccess(storage.store(set));
+
+			assertArrayEquals("v\u00e4rde".getBytes(UTF_8), zk.getData(propertySetPath + "/text").orNull());
+			PropertySet stored = storage.get(propertySetName).orNull().orNull();
+			assertArrayEquals(binary, stored.bytesProperty("binary").orNull());
+			assertSome("v\u00e4rde", stored.property("text"));
+			assertArrayEquals(binary, storage.getLazy(propertySetName).orNull().orNull().bytesProperty("binary").orNull());
+		}
+	}
+
+	@Test
+	public void storePropertySet_bytesIncremental() throws IOException, InterruptedException {
+		ZooKeeperStorage incremental = new ZooKeeperStorage(instance.connectString().get(), rootPath, true, StorageFormat.Tree);
+		try(CloseableZooKeeper zk = connection()) {
+			incremental.connect();
+			PropertySet set = PropertySet.apply(propertySetName);
+			set.setBytes("binary", new byte[] { (byte) 0xFE });
+			assertSuccess(incremental.store(set));
+			set.setBytes("binary", new byte[] { (byte) 0xFF }); //decodes to the same string as the previous value
+			assertSuccess(incremental.store(set));
+			assertArrayEquals(new byte[] { (byte) 0xFF }, zk.getData(propertySetPath + "/binary").orNull());
+		} finally {
+			incremental.close();
+		}
+	}
+
+	@Test
+	public void storePropertySet_compactBytes() throws IOException, InterruptedException {
+		ZooKeeperStorage compactStorage = new ZooKeeperStorage(instance.connectString().get(), rootPath, false, StorageFormat.Compact);
+		try {
+			compactStorage.connect();
+			byte[] binary = { (byte) 0xF5, 'P', 1, 0, (byte) 0xFF };
+			PropertySet set = PropertySet.apply(propertySetName);
+			set.setBytes("binary", binary);
+			set.set("text", "v\u00e4rde");
+			assertSuccess(compactStorage.store(set));
+
+			PropertySet stored = compactStorage.get(propertySetName).orNull().orNull();
+			assertArrayEquals(binary, stored.bytesProperty("binary").orNull());
+			assertSome("v\u00e4rde", stored.property("text"));
+		} finally {
+			compactStorage.close();
+		}
+	}
+
+	@Test
+	public void getPropertySet_version() {
+		storePropertySet();
+		PropertySet set = storage.get(propertySetName).orNull().orNull();
+		assertTrue(set.version().isDefined());
+		assertEquals(set.version(), set.toMutable().version());
+		assertEquals(set.version(), storage.getLazy(propertySetName).orNull().orNull().version());
+	}
+
+	@Test
+	public void storePropertySet_incrementsVersion() {
+		storePropertySet();
+		PropertySetVersion version = storage.get(propertySetName).orNull().orNull().version().orNull();
+		storePropertySet();
+		PropertySetVersion stored = storage.get(propertySetName).orNull().orNull().version().orNull();
+		assertEquals(version.version() + 1, stored.version());
+	}
+
+	@Test
+	public void storeIfUnchanged_newSet() {
+		PropertySet set = PropertySet.apply(propertySetName);
+		set.set("host", "localhost");
+		assertSuccess(storage.storeIfUnchanged(set));
+		assertSome("localhost", storage.get(propertySetName).orNull().orNull().property("host"));
+		assertConflict(storage.storeIfUnchanged(set)); //has no version, i.e. expected not to exist
+	}
+
+	@Test
+	public void storeIfUnchanged() {
+		storePropertySet();
+		PropertySet set = storage.get(propertySetName).orNull().orNull().toMutable();
+		set.set("host", "127.0.0.1");
+		assertSuccess(storage.storeIfUnchanged(set));
+		assertSome("127.0.0.1", storage.get(propertySetName).orNull().orNull().property("host"));
+		assertConflict(storage.storeIfUnchanged(set)); //the version is no longer current
+	}
+
+	@Test
+	public void storeIfUnchanged_modified() {
+		storePropertySet();
+		PropertySet set = storage.get(propertySetName).orNull().orNull().toMutable();
+		storePropertySet();
+		set.set("host", "127.0.0.1");
+		assertConflict(storage.storeIfUnchanged(set));
+		assertSome("localhost", storage.get(propertySetName).orNull().orNull().property("host"));
+	}
+
+	@Test
+	public void storeIfUnchanged_deleted() {
+		storePropertySet();
+		PropertySet set = storage.get(propertySetName).orNull().orNull().toMutable();
+		assertSuccess(storage.delete(propertySetName));
+		assertConflict(storage.storeIfUnchanged(set));
+		assertNone(storage.get(propertySetName).orNull());
+	}
+
+	@Test
+	public void storeIfUnchanged_incremental() throws IOException, InterruptedException {
+		ZooKeeperStorage incremental = new ZooKeeperStorage(instance.connectString().get(), rootPath, true, StorageFormat.Tree);
+		try {
+			incremental.connect();
+			storePropertySet();
+			PropertySet set = incremental.get(propertySetName).orNull().orNull().toMutable();
+			PropertySet other = incremental.get(propertySetName).orNull().orNull().toMutable();
+			set.set("host", "127.0.0.1"); //only changes the value of an existing property
+			assertSuccess(incremental.storeIfUnchanged(set));
+			other.set("port", "7070");
+			assertConflict(incremental.storeIfUnchanged(other));
+		} finally {
+			incremental.close();
+		}
+	}
+
+	@Test
+	public void storeIfUnchanged_compact() throws IOException, InterruptedException {
+		ZooKeeperStorage compactStorage = new ZooKeeperStorage(instance.connectString().get(), rootPath, true, StorageFormat.Compact);
+		try {
+			compactStorage.connect();
+			PropertySet set = PropertySet.apply(propertySetName);
+			set.set("host", "localhost");
+			assertSuccess(compactStorage.storeIfUnchanged(set));
+			PropertySet stored = compactStorage.get(propertySetName).orNull().orNull().toMutable();
+			assertSuccess(compactStorage.storeIfUnchanged(stored)); //unchanged data still verifies and increments the version
+			assertConflict(compactStorage.storeIfUnchanged(stored));
+		} finally {
+			compactStorage.close();
+		}
+	}
+
+	@Test
+	public void async_storeIfUnchanged_concurrentWriters() throws Throwable {
+		storePropertySet();
+		PropertySet set = storage.get(propertySetName).orNull().orNull();
+		List<Future<Unit>> writers = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			PropertySet copy = set.toMutable();
+			copy.set("writer", String.valueOf(i));
+			writers.add(storage.async().storeIfUnchanged(copy));
+		}
+		int succeeded = 0;
+		for (Future<Unit> writer : writers) {
+			Try<Unit> result = storage.await(writer);
+			if (result.isSuccess()) {
+				succeeded++;
+			} else {
+				assertConflict(result);
+			}
+		}
+		assertEquals(1, succeeded);
+	}
+
+	private void assertConflict(Try<Unit> result) {
+		assertFailure(result);
+		assertTrue(result.failed().orNull() instanceof ConcurrentModificationException);
+	}
+
+	@Test
+	public void storePropertySet_migrateToCompact() throws IOException, InterruptedException {
+		storePropertySet();
+		ZooKeeperStorage compactStorage = new ZooKeeperStorage(instance.connectString().get(), rootPath, true, StorageFormat.Compact);
+		try(CloseableZooKeeper zk = connection()) {
+			compactStorage.connect();
+			PropertySet set = compactStorage.get(propertySetName).orNull().orNull(); //read from the tree format
+			assertEquals(2, set.properties().size());
+			assertSuccess(compactStorage.store(set));
+			
+			assertSuccess(false, zk.exists(propertySetPath+"/host"));
+			assertSuccess(false, zk.exists(propertySetPath+"/port"));
+			assertEquals(set.asMap(), compactStorage.get(propertySetName).orNull().orNull().asMap());
+		} finally {
+			compactStorage.close();
+		}
+	}
+
+	@Test
+	public void storePropertySet_migrateToTree() throws IOException, InterruptedException {
+		storePropertySet_compact();
+		PropertySet set = storage.get(propertySetName).orNull().orNull();
+		assertSuccess(storage.store(set));
+		try(CloseableZooKeeper zk = connection()) {
+			assertSuccess(true, zk.exists(propertySetPath+"/host"));
+			assertEquals(0, zk.getData(propertySetPath).orNull().length);
+		}
+		assertEquals(set.asMap(), storage.get(propertySetName).orNull().orNull().asMap());
+	}
+
+	@Test
+	public void getPropertySet_compactEmptySet() throws IOException, InterruptedException {
+		ZooKeeperStorage compactStorage = new ZooKeeperStorage(instance.connectString().get(), rootPath, false, StorageFormat.Compact);
+		try {
+			compactStorage.connect();
+			assertSuccess(compactStorage.store(PropertySet.apply(propertySetName)));
+			assertTrue(compactStorage.get(propertySetName).orNull().orNull().properties().isEmpty());
+			assertNone(compactStorage.get("no-such-set").orNull());
+		} finally {
+			compactStorage.close();
+		}
+	}
+
 	@Test
 	public void delete_nonExisting() {
 		assertSuccess(storage.delete("no-such-set"));
@@ -149,6 +740,19 @@ public class TestZooKeeperStorage extends BaseAssert implements ZooKeeperAssert,
 		
 	}
 	
+	@Test
+	public void delete_nestedNodes() throws KeeperException, InterruptedException {
+		storePropertySet();
+		try(CloseableZooKeeper zk = connection()) {
+			zk.create(propertySetPath+"/host/nested", new byte[0], OPEN_ACL_UNSAFE, PERSISTENT);
+			zk.create(propertySetPath+"/host/nested/deeper", new byte[0], OPEN_ACL_UNSAFE, PERSISTENT);
+		}
+		assertSuccess(storage.delete(propertySetName));
+		try(CloseableZooKeeper zk = connection()) {
+			assertSuccess(false, zk.exists(propertySetPath));
+		}
+	}
+
 	@Test
 	public void propertySets_noSets() {
 		Try<List<String>> propertySets = storage.propertySets();
@@ -165,6 +769,129 @@ public class TestZooKeeperStorage extends BaseAssert implements ZooKeeperAssert,
 		assertTrue(propertySets.orNull().contains(propertySetName));
 	}
 	
+	@Test
+	public void async_get() throws Throwable {
+		storePropertySet();
+		Option<PropertySet> result = storage.async().get(propertySetName).result(duration);
+		assertSome("6969", result.orNull().property("port"));
+		assertNone(storage.async().get("no-such-set").result(duration));
+	}
+
+	@Test
+	public void async_store() throws Throwable {
+		PropertySet set = PropertySet.apply(propertySetName);
+		set.set("host", "async-host");
+		storage.async().store(set).result(duration);
+
+		try(CloseableZooKeeper zk = connection()) {
+			assertSuccess("async-host", zk.getData(propertySetPath+"/host").map(String::new));
+		}
+	}
+
+	@Test
+	public void async_storeCompact() throws Throwable {
+		ZooKeeperStorage compactStorage = new ZooKeeperStorage(instance.connectString().get(), rootPath, false, StorageFormat.Compact);
+		compactStorage.connect();
+		try {
+			storePropertySet();
+			PropertySet set = PropertySet.apply(propertySetName);
+			set.set("host", "compact-host");
+			compactStorage.async().store(set).result(duration);
+			Option<PropertySet> result = storage.async().get(propertySetName).result(duration);
+			assertEquals(1, result.orNull().properties().size());
+			assertSome("compact-host", result.orNull().property("host"));
+		} finally {
+			compactStorage.close();
+		}
+	}
+
+	@Test
+	public void async_delete() throws Throwable {
+		storePropertySet();
+		storage.async().delete(propertySetName).result(duration);
+		storage.async().delete("no-such-set").result(duration);
+
+		try(CloseableZooKeeper zk = connection()) {
+			assertSuccess(false, zk.exists(propertySetPath));
+		}
+	}
+
+	@Test
+	public void async_propertySets() throws Throwable {
+		storePropertySet();
+		assertTrue(storage.async().propertySets().result(duration).contains(propertySetName));
+	}
+
+	@Test(expected = KeeperException.NoNodeException.class)
+	public void async_propertySets_noRootPath() throws Throwable {
+		ZooKeeperStorage other = new ZooKeeperStorage(instance.connectString().get(), "/no-such-root");
+		other.connect();
+		try {
+			other.async().propertySets().result(duration);
+		} finally {
+			other.close();
+		}
+	}
+
+	@Test
+	public void async_notConnected() {
+		ZooKeeperStorage notConnected = new ZooKeeperStorage(instance.connectString().get(), rootPath);
+		Future<Option<PropertySet>> result = notConnected.async().get(propertySetName);
+		assertTrue(result.isCompleted());
+		assertFailure(result.value().orNull());
+	}
+
+	@Test
+	public void metrics() throws IOException, InterruptedException {
+		storePropertySet();
+		InMemoryStorageMetrics metrics = new InMemoryStorageMetrics();
+		ZooKeeperStorage measured = new ZooKeeperStorage(instance.connectString().get(), rootPath, false, StorageFormat.Tree, metrics);
+		measured.connect();
+		try {
+			PropertySet set = PropertySet.apply(propertySetName);
+			set.set("host", "localhost");
+			set.set("port", "6969");
+			assertSuccess(measured.store(set));
+			assertEquals(1, metrics.successes(Operation.Store));
+			assertEquals(2, metrics.requests(Operation.Store)); //list children + multi
+			assertEquals(13, metrics.bytesWritten(Operation.Store));
+
+			assertSuccess(measured.get(propertySetName));
+			assertEquals(1, metrics.successes(Operation.Get));
+			assertEquals(3, metrics.requests(Operation.Get)); //list children + get data per property
+			assertEquals(13, metrics.bytesRead(Operation.Get));
+			assertTrue(metrics.latency(Operation.Get).max() > 0);
+
+			assertSuccess(measured.propertySets());
+			assertEquals(1, metrics.requests(Operation.PropertySets));
+
+			assertSuccess(measured.delete(propertySetName));
+			assertEquals(4, metrics.requests(Operation.Delete)); //list children per node + multi
+		} finally {
+			measured.close();
+		}
+		assertFailure(measured.get(propertySetName));
+		assertEquals(1, metrics.failures(Operation.Get));
+	}
+
+	@Test
+	public void connect_sharedSession() throws IOException, InterruptedException {
+		ZooKeeperStorage other = new ZooKeeperStorage(instance.connectString().get(), rootPath);
+		other.connect();
+		assertSame(storage.connection().orNull(), other.connection().orNull());
+
+		other.close();
+		assertFailure(other.connection());
+		assertSuccess(storage.propertySets()); //the shared session shall still be open
+	}
+
+	@Test
+	public void close_twice() {
+		storage.close();
+		storage.close();
+		assertFailure(storage.connection());
+	}
+
 	@Test
 	public void finalize_t() throws Throwable {
 		storage.finalize();
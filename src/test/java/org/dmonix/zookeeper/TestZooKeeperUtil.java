@@ -22,10 +22,12 @@ import static org.apache.zookeeper.CreateMode.PERSISTENT;
 import static org.apache.zookeeper.ZooDefs.Ids.OPEN_ACL_UNSAFE;
 
 import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import javascalautils.Option;
 import javascalautils.Try;
 import junitextensions.ReflectionAssert;
 import zookeeperjunit.CloseableZooKeeper;
@@ -129,19 +131,110 @@ public class TestZooKeeperUtil extends BaseAssert implements ZooKeeperAssert, Re
 	
 	@Test
 	public void deleteRecursive_leafNode() {
-		assertSuccess(ZooKeeperUtil.deleteRecursive(zooKeeper, "/empty"));
+		assertSuccess(1, ZooKeeperUtil.deleteRecursive(zooKeeper, "/empty"));
 		assertNotExists("/empty");
 	}
 
 	@Test
 	public void deleteRecursive_withChildren() {
-		assertSuccess(ZooKeeperUtil.deleteRecursive(zooKeeper, "/parent"));
+		assertSuccess(7, ZooKeeperUtil.deleteRecursive(zooKeeper, "/parent"));
 		assertNotExists("/parent");
 	}
 	
+	@Test
+	public void deleteRecursive_subTree() {
+		assertSuccess(3, ZooKeeperUtil.deleteRecursive(zooKeeper, "/parent/child1"));
+		assertNotExists("/parent/child1");
+		assertExists("/parent/child2/child21");
+	}
+	
 	@Test
 	public void deleteRecursive_nonExisting() {
-		assertSuccess(ZooKeeperUtil.deleteRecursive(zooKeeper, "/no-such-path"));
+		assertSuccess(0, ZooKeeperUtil.deleteRecursive(zooKeeper, "/no-such-path"));
+	}
+
+	@Test
+	public void deleteRecursiveAsync_wideAndDeep() throws Throwable {
+		createZNode("/tree");
+		for (int i = 0; i < 20; i++) {
+			createZNode("/tree/n" + i);
+			for (int j = 0; j < 10; j++) {
+				createZNode("/tree/n" + i + "/n" + j);
+			}
+		}
+		assertEquals(221, ZooKeeperUtil.deleteRecursiveAsync(zooKeeper, "/tree").result(duration).intValue());
+		assertNotExists("/tree");
+	}
+
+	@Test
+	public void listRecursiveAsync() throws Throwable {
+		List<String> nodes = ZooKeeperUtil.listRecursiveAsync(zooKeeper, "/parent").result(duration);
+		assertEquals(7, nodes.size());
+		assertTrue(nodes.contains("/parent"));
+		assertTrue(nodes.contains("/parent/child2/child22"));
+	}
+
+	@Test
+	public void listRecursiveAsync_nonExisting() throws Throwable {
+		assertTrue(ZooKeeperUtil.listRecursiveAsync(zooKeeper, "/no-such-path").result(duration).isEmpty());
+	}
+
+	@Test
+	public void childrenAsync_existingPath() throws Throwable {
+		Option<List<String>> children = ZooKeeperUtil.childrenAsync(zooKeeper, "/parent", null).result(duration);
+		assertEquals(2, children.orNull().size());
+	}
+
+	@Test
+	public void childrenAsync_noSuchPath() throws Throwable {
+		assertTrue(ZooKeeperUtil.childrenAsync(zooKeeper, "/no-such-path", null).result(duration).isEmpty());
+	}
+
+	@Test
+	public void dataAsync_existingPath() throws Throwable {
+		Stat stat = new Stat();
+		Option<byte[]> data = ZooKeeperUtil.dataAsync(zooKeeper, "/parent", stat).result(duration);
+		assertEquals(0, data.orNull().length);
+		assertEquals(2, stat.getNumChildren());
+	}
+
+	@Test
+	public void dataAsync_noSuchPath() throws Throwable {
+		assertTrue(ZooKeeperUtil.dataAsync(zooKeeper, "/no-such-path", null).result(duration).isEmpty());
+	}
+
+	@Test
+	public void createRecursiveAsync() throws Throwable {
+		ZooKeeperUtil.createRecursiveAsync(zooKeeper, "/empty/child/grandchild").result(duration);
+		assertExists("/empty/child/grandchild");
+		ZooKeeperUtil.createRecursiveAsync(zooKeeper, "/empty/child/grandchild").result(duration); //already existing
+	}
+
+	@Test
+	public void createRecursiveAsync_knownPaths() throws Throwable {
+		KnownPaths knownPaths = new KnownPaths();
+		ZooKeeperUtil.createRecursiveAsync(zooKeeper, "/empty/child/grandchild", knownPaths).result(duration);
+		assertExists("/empty/child/grandchild");
+		assertTrue(knownPaths.isKnown("/empty/child/grandchild"));
+		assertTrue(knownPaths.isKnown("/empty/child"));
+		assertFalse(knownPaths.isKnown("/empty")); // never touched as the parent existed
+	}
+
+	@Test
+	public void createRecursiveAsync_knownPathNotCreated() throws Throwable {
+		KnownPaths knownPaths = new KnownPaths();
+		knownPaths.add("/not-created");
+		ZooKeeperUtil.createRecursiveAsync(zooKeeper, "/not-created", knownPaths).result(duration);
+		assertNotExists("/not-created");
+	}
+
+	@Test
+	public void createRecursiveAsync_staleKnownParent() throws Throwable {
+		KnownPaths knownPaths = new KnownPaths();
+		knownPaths.add("/removed");
+		ZooKeeperUtil.createRecursiveAsync(zooKeeper, "/removed/child", knownPaths).result(duration);
+		assertExists("/removed/child");
+		assertTrue(knownPaths.isKnown("/removed"));
 	}
 
 	private void createZNode(String path) throws KeeperException, InterruptedException {